@@ -0,0 +1,41 @@
+package net.tnemc.ghost.benchmark;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Runs the benchmarks once per thread count in the ghost.threads system property, a comma
+ * separated list defaulting to 1,4. Every other argument is passed to JMH.
+ */
+public final class GhostBenchmarks {
+
+  private GhostBenchmarks() {
+  }
+
+  public static void main(String[] arguments) throws Exception {
+    final CommandLineOptions options = new CommandLineOptions(arguments);
+
+    for(String count : System.getProperty("ghost.threads", "1,4").split(",")) {
+      final int threads = Integer.parseInt(count.trim());
+      new Runner(new OptionsBuilder().parent(options).threads(threads).build()).run();
+    }
+  }
+}
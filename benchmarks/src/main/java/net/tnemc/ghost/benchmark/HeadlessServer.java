@@ -0,0 +1,82 @@
+package net.tnemc.ghost.benchmark;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A stand-in Bukkit {@link Server} so GhostProvider can run without a Minecraft server. It only
+ * answers the calls Ghost makes; everything else returns null, zero or false.
+ */
+public final class HeadlessServer {
+
+  private static final Logger LOGGER = Logger.getLogger("Ghost-Benchmark");
+
+  private HeadlessServer() {
+  }
+
+  /**
+   * Installs the stub as the Bukkit server if no server has been set yet.
+   */
+  public static synchronized void install() {
+    if(Bukkit.getServer() != null) return;
+
+    final Server server = (Server)Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[] { Server.class }, (proxy, method, arguments)->{
+      switch(method.getName()) {
+        case "getWorlds":
+        case "getOnlinePlayers":
+          return Collections.emptyList();
+        case "getLogger":
+          return LOGGER;
+        case "getName":
+          return "Headless";
+        case "getVersion":
+        case "getBukkitVersion":
+          return "benchmark";
+        case "isPrimaryThread":
+          return true;
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "equals":
+          return proxy == arguments[0];
+        case "toString":
+          return "HeadlessServer";
+        default:
+          return defaultValue(method.getReturnType());
+      }
+    });
+    Bukkit.setServer(server);
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if(!type.isPrimitive() || type == void.class) return null;
+    if(type == boolean.class) return false;
+    if(type == char.class) return '\0';
+    if(type == byte.class) return (byte)0;
+    if(type == short.class) return (short)0;
+    if(type == int.class) return 0;
+    if(type == long.class) return 0L;
+    if(type == float.class) return 0F;
+    return 0D;
+  }
+}
@@ -0,0 +1,98 @@
+package net.tnemc.ghost.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Benchmarks of the {@link net.tnemc.ghost.core.GhostProvider} economy methods. The thread count is
+ * set per run by {@link GhostBenchmarks}, so the same methods measure both the single threaded and
+ * contended cases.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProviderBenchmark {
+
+  @Benchmark
+  public BigDecimal getHoldings(ProviderState state, ThreadState thread) {
+    return state.provider.getHoldings(thread.account(state), thread.world(state), thread.currency(state));
+  }
+
+  @Benchmark
+  public boolean addHoldings(ProviderState state, ThreadState thread) {
+    return state.provider.addHoldings(thread.account(state), ThreadState.AMOUNT, thread.world(state), thread.currency(state));
+  }
+
+  @Benchmark
+  public boolean removeHoldings(ProviderState state, ThreadState thread) {
+    return state.provider.removeHoldings(thread.account(state), ThreadState.AMOUNT, thread.world(state), thread.currency(state));
+  }
+
+  @Benchmark
+  public boolean transferHoldings(ProviderState state, ThreadState thread) {
+    return state.provider.transferHoldings(thread.account(state), thread.account(state), ThreadState.AMOUNT,
+                                           thread.world(state), thread.currency(state));
+  }
+
+  /**
+   * Every call adds a new account, so the store grows for the length of the run.
+   */
+  @Benchmark
+  public boolean createAccount(ProviderState state) {
+    return state.provider.createAccount(UUID.randomUUID());
+  }
+
+  @Benchmark
+  public BigDecimal asyncGetHoldings(ProviderState state, ThreadState thread) {
+    return state.provider.asyncGetHoldings(thread.account(state), thread.world(state), thread.currency(state)).join();
+  }
+
+  @Benchmark
+  public Boolean asyncAddHoldings(ProviderState state, ThreadState thread) {
+    return state.provider.asyncAddHoldings(thread.account(state), ThreadState.AMOUNT, thread.world(state), thread.currency(state)).join();
+  }
+
+  @Benchmark
+  public Boolean asyncRemoveHoldings(ProviderState state, ThreadState thread) {
+    return state.provider.asyncRemoveHoldings(thread.account(state), ThreadState.AMOUNT, thread.world(state), thread.currency(state)).join();
+  }
+
+  @Benchmark
+  public Boolean asyncTransferHoldings(ProviderState state, ThreadState thread) {
+    return state.provider.asyncTransferHoldings(thread.account(state), thread.account(state), ThreadState.AMOUNT,
+                                                thread.world(state), thread.currency(state)).join();
+  }
+
+  @Benchmark
+  public Boolean asyncCreateAccount(ProviderState state) {
+    return state.provider.asyncCreateAccount(UUID.randomUUID()).join();
+  }
+}
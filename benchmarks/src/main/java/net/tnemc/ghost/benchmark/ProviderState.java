@@ -0,0 +1,143 @@
+package net.tnemc.ghost.benchmark;
+
+import net.tnemc.ghost.core.GhostProvider;
+import net.tnemc.ghost.core.async.GhostExecutor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A headless {@link GhostProvider} shared by every benchmark thread, populated with funded accounts
+ * spread over the configured worlds and currencies.
+ */
+@State(Scope.Benchmark)
+public class ProviderState {
+
+  /**
+   * The number of accounts created before measuring.
+   */
+  @Param({ "1000", "100000" })
+  public int accounts;
+
+  /**
+   * The number of distinct worlds balances are spread over.
+   */
+  @Param({ "1", "8" })
+  public int worlds;
+
+  /**
+   * The number of distinct currencies balances are spread over.
+   */
+  @Param({ "1", "4" })
+  public int currencies;
+
+  /**
+   * Whether balances are stored as fixed point longs or BigDecimals.
+   */
+  @Param({ "false", "true" })
+  public boolean fixedPoint;
+
+  /**
+   * uniform: threads pick from every account. hot: every thread works on the same few accounts,
+   * measuring lock contention.
+   */
+  @Param({ "uniform", "hot" })
+  public String distribution;
+
+  static final int HOT_ACCOUNTS = 8;
+
+  GhostProvider provider;
+  GhostExecutor executor;
+  UUID[] ids;
+  String[] worldNames;
+  String[] currencyNames;
+  int pick;
+
+  private File folder;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    HeadlessServer.install();
+
+    final MemoryConfiguration configuration = new MemoryConfiguration();
+    final ConfigurationSection ghost = configuration.createSection("Ghost");
+    ghost.set("Currencies.Default.FixedPoint", fixedPoint);
+    ghost.set("Currencies.Default.Scale", 2);
+    ghost.set("Journal.Enabled", false);
+    ghost.set("Snapshot.Enabled", false);
+    ghost.set("Executor.Threads.Read", 4);
+    ghost.set("Executor.Threads.Write", 4);
+    ghost.set("Executor.Threads.Transfer", 4);
+    ghost.set("Executor.Queue", 65536);
+
+    folder = Files.createTempDirectory("ghost-benchmark").toFile();
+    executor = GhostExecutor.fromConfig(ghost.getConfigurationSection("Executor"));
+    provider = new GhostProvider(ghost, executor, folder, Logger.getLogger("Ghost-Benchmark"));
+
+    worldNames = new String[worlds];
+    for(int i = 0; i < worlds; i++) {
+      worldNames[i] = "world" + i;
+    }
+    currencyNames = new String[currencies];
+    for(int i = 0; i < currencies; i++) {
+      currencyNames[i] = "Currency" + i;
+    }
+
+    final BigDecimal funds = new BigDecimal("1000000.00");
+    ids = new UUID[accounts];
+    for(int i = 0; i < accounts; i++) {
+      ids[i] = UUID.randomUUID();
+      provider.createAccount(ids[i]);
+      for(String world : worldNames) {
+        for(String currency : currencyNames) {
+          provider.setHoldings(ids[i], funds, world, currency);
+        }
+      }
+    }
+    pick = (distribution.equalsIgnoreCase("hot"))? Math.min(HOT_ACCOUNTS, accounts) : accounts;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    executor.shutdown(10, TimeUnit.SECONDS);
+    provider.close();
+
+    final File[] files = folder.listFiles();
+    if(files != null) {
+      for(File file : files) {
+        file.delete();
+      }
+    }
+    folder.delete();
+  }
+}
@@ -0,0 +1,113 @@
+package net.tnemc.ghost.benchmark;
+
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostAccountStore;
+import net.tnemc.ghost.core.currency.CurrencySettings;
+import net.tnemc.ghost.core.currency.GhostCurrency;
+import net.tnemc.ghost.core.storage.MemoryStorage;
+import net.tnemc.ghost.core.storage.WriteBehind;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A store of many buyers and a few shops, recorded by a {@link WriteBehind} writing to a
+ * {@link MemoryStorage}. The number of changes recorded and written is reported by
+ * {@link WriteCounters}, so the coalescing ratio can be checked.
+ */
+@State(Scope.Benchmark)
+public class ShopState {
+
+  /**
+   * The number of shop accounts every purchase pays into.
+   */
+  @Param({ "10" })
+  public int shops;
+
+  /**
+   * The number of buyer accounts purchases are paid from.
+   */
+  @Param({ "10000" })
+  public int buyers;
+
+  /**
+   * How often a batch is written, in milliseconds.
+   */
+  @Param({ "1000" })
+  public long interval;
+
+  /**
+   * The number of pending changes that has a batch written straight away.
+   */
+  @Param({ "16384" })
+  public int flushSize;
+
+  static final String WORLD = "world";
+  static final String CURRENCY = "Default";
+  static final BigDecimal PRICE = new BigDecimal("0.25");
+
+  GhostAccountStore store;
+  WriteBehind writeBehind;
+  GhostAccount[] shopAccounts;
+  GhostAccount[] buyerAccounts;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    store = new GhostAccountStore(new CurrencySettings(new GhostCurrency(CURRENCY, true, 2)));
+    final MemoryStorage storage = new MemoryStorage();
+    storage.open(store);
+
+    final BigDecimal funds = new BigDecimal("1000000000.00");
+    shopAccounts = new GhostAccount[shops];
+    for(int i = 0; i < shops; i++) {
+      shopAccounts[i] = create(BigDecimal.ZERO);
+    }
+    buyerAccounts = new GhostAccount[buyers];
+    for(int i = 0; i < buyers; i++) {
+      buyerAccounts[i] = create(funds);
+    }
+
+    writeBehind = new WriteBehind(storage, store.getKeys(), interval, flushSize, Logger.getLogger("Ghost-Benchmark"));
+    store.addListener(writeBehind);
+    writeBehind.start();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    store.removeListener(writeBehind);
+    writeBehind.close();
+  }
+
+  private GhostAccount create(BigDecimal funds) {
+    final UUID id = UUID.randomUUID();
+    store.createAccount(id);
+
+    final GhostAccount account = store.getAccount(id);
+    store.setHoldings(account, WORLD, CURRENCY, funds);
+    return account;
+  }
+}
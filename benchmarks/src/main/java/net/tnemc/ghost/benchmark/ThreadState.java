@@ -0,0 +1,58 @@
+package net.tnemc.ghost.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Per-thread randomness, so picking the next account doesn't contend between benchmark threads.
+ */
+@State(Scope.Thread)
+public class ThreadState {
+
+  static final BigDecimal AMOUNT = new BigDecimal("1.25");
+
+  private SplittableRandom random;
+
+  @Setup
+  public void setup() {
+    random = new SplittableRandom();
+  }
+
+  int pick(int bound) {
+    return random.nextInt(bound);
+  }
+
+  UUID account(ProviderState state) {
+    return state.ids[random.nextInt(state.pick)];
+  }
+
+  String world(ProviderState state) {
+    return state.worldNames[random.nextInt(state.worldNames.length)];
+  }
+
+  String currency(ProviderState state) {
+    return state.currencyNames[random.nextInt(state.currencyNames.length)];
+  }
+}
@@ -0,0 +1,48 @@
+package net.tnemc.ghost.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Shop purchases recorded by the write-behind layer. Each purchase moves money from a random buyer
+ * to a random shop, so the shops' balances change on almost every call and should be written once
+ * per batch rather than once per purchase. The changes recorded and written are reported alongside
+ * the throughput by {@link WriteCounters}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBehindBenchmark {
+
+  @Benchmark
+  public boolean purchase(ShopState state, ThreadState thread, WriteCounters counters) {
+    return state.store.transferHoldings(state.buyerAccounts[thread.pick(state.buyers)], state.shopAccounts[thread.pick(state.shops)],
+                                        ShopState.WORLD, ShopState.CURRENCY, ShopState.PRICE);
+  }
+}
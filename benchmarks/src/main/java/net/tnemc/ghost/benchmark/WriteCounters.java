@@ -0,0 +1,75 @@
+package net.tnemc.ghost.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reports the changes the {@link ShopState} write-behind recorded and wrote during each iteration as
+ * secondary results, so the coalescing ratio shows up next to the throughput. JMH sums the counters
+ * of every thread, so only the first thread reports the shared totals.
+ */
+@AuxCounters(AuxCounters.Type.EVENTS)
+@State(Scope.Thread)
+public class WriteCounters {
+
+  /**
+   * The balance changes recorded by the write-behind.
+   */
+  public long recorded;
+
+  /**
+   * The balance changes written to storage after coalescing.
+   */
+  public long written;
+
+  /**
+   * The batches written to storage.
+   */
+  public long batches;
+
+  private long startRecorded;
+  private long startWritten;
+  private long startBatches;
+
+  @Setup(Level.Iteration)
+  public void start(ShopState state) {
+    recorded = 0;
+    written = 0;
+    batches = 0;
+
+    startRecorded = state.writeBehind.getRecorded();
+    startWritten = state.writeBehind.getWritten();
+    startBatches = state.writeBehind.getBatches();
+  }
+
+  @TearDown(Level.Iteration)
+  public void count(ShopState state, ThreadParams thread) {
+    if(thread.getThreadIndex() != 0) return;
+
+    recorded = state.writeBehind.getRecorded() - startRecorded;
+    written = state.writeBehind.getWritten() - startWritten;
+    batches = state.writeBehind.getBatches() - startBatches;
+  }
+}
@@ -2,17 +2,29 @@ package net.tnemc.ghost.core;
 
 import net.tnemc.commands.core.CommandsHandler;
 import net.tnemc.core.Reserve;
+import net.tnemc.ghost.core.async.GhostExecutor;
+import net.tnemc.ghost.core.ledger.LedgerProgress;
+import net.tnemc.ghost.core.listeners.PlayerIdentityListener;
+import net.tnemc.ghost.core.listeners.PlayerSessionListener;
+import net.tnemc.ghost.core.listeners.WorldLifecycleListener;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
 
 /*
  * Ghost Server Plugin
@@ -34,10 +46,22 @@ public class Ghost extends JavaPlugin implements TabCompleter {
 
   CommandsHandler handler;
 
+  private GhostExecutor executor;
+
+  private GhostProvider provider;
+
+  private final AtomicBoolean ledgerRunning = new AtomicBoolean();
+
+  //The thread running the last ledger export or import, interrupted and joined on disable.
+  private volatile Thread ledger;
+
   @Override
   public void onEnable() {
     System.out.println("Enabling Ghost....");
 
+    saveDefaultConfig();
+    executor = GhostExecutor.fromConfig(getConfig().getConfigurationSection("Ghost.Executor"));
+
     System.out.println("Enabling TNCH...");
     handler = new CommandsHandler(this, YamlConfiguration.loadConfiguration(new InputStreamReader(getResource("commands.yml")))).withTranslator((message)->{
       if(message.equalsIgnoreCase("Messages.Command.Developer")) {
@@ -55,17 +79,159 @@ public class Ghost extends JavaPlugin implements TabCompleter {
       return true;
     }));
 
+    handler.addExecutor("ghost_exe", ((commandSender, command, s, strings) ->{
+      commandSender.sendMessage(ChatColor.GOLD + "/ghost stats" + ChatColor.WHITE + " - Shows economy call metrics.");
+      commandSender.sendMessage(ChatColor.GOLD + "/ghost reload" + ChatColor.WHITE + " - Reloads the configured currencies and their formats.");
+      commandSender.sendMessage(ChatColor.GOLD + "/ghost export <file>" + ChatColor.WHITE + " - Exports every account to a ledger file.");
+      commandSender.sendMessage(ChatColor.GOLD + "/ghost import <file>" + ChatColor.WHITE + " - Imports the accounts in a ledger file.");
+      return true;
+    }));
+    handler.addExecutor("ghost_reload_exe", ((commandSender, command, s, strings) ->{
+      if(provider == null) {
+        commandSender.sendMessage(ChatColor.RED + "Ghost's economy provider isn't running.");
+        return true;
+      }
+
+      reloadConfig();
+      provider.reloadCurrencies(getConfig().getConfigurationSection("Ghost.Currencies"));
+      commandSender.sendMessage(ChatColor.GOLD + "Reloaded " + provider.getCurrencies().getCurrencies().size() + " currencies.");
+      return true;
+    }));
+    handler.addExecutor("ghost_stats_exe", ((commandSender, command, s, strings) ->{
+      if(provider == null) {
+        commandSender.sendMessage(ChatColor.RED + "Ghost's economy provider isn't running.");
+        return true;
+      }
+
+      if(strings.length > 0 && strings[0].equalsIgnoreCase("reset")) {
+        provider.getMetrics().reset();
+        commandSender.sendMessage(ChatColor.GOLD + "Ghost metrics have been reset.");
+        return true;
+      }
+
+      commandSender.sendMessage(ChatColor.GOLD + "Ghost Economy Metrics");
+      for(String line : provider.getMetrics().report()) {
+        commandSender.sendMessage(ChatColor.WHITE + line);
+      }
+      return true;
+    }));
+
+    handler.addExecutor("ghost_export_exe", ((commandSender, command, s, strings) ->{
+      ledger(commandSender, strings, true);
+      return true;
+    }));
+    handler.addExecutor("ghost_import_exe", ((commandSender, command, s, strings) ->{
+      ledger(commandSender, strings, false);
+      return true;
+    }));
+
     handler.load();
 
     final boolean reserve = Bukkit.getPluginManager().isPluginEnabled("Reserve");
     System.out.println("Is Reserve Enabled? " + ((reserve)? "Yes" : "No"));
 
     if(reserve) {
-      Reserve.instance().registerProvider(new GhostProvider(this));
+      provider = new GhostProvider(this);
+      Reserve.instance().registerProvider(provider);
+
+      for(Player player : Bukkit.getOnlinePlayers()) {
+        provider.identify(player.getUniqueId(), player.getName());
+        provider.playerJoined(player.getUniqueId());
+      }
+      Bukkit.getPluginManager().registerEvents(new PlayerIdentityListener(provider), this);
+      Bukkit.getPluginManager().registerEvents(new PlayerSessionListener(provider), this);
+      Bukkit.getPluginManager().registerEvents(new WorldLifecycleListener(provider), this);
     }
 
   }
 
+  @Override
+  public void onDisable() {
+    final Thread running = ledger;
+    if(running != null && running.isAlive()) {
+      getLogger().info("Cancelling the running ledger export or import...");
+      running.interrupt();
+      try {
+        running.join(TimeUnit.SECONDS.toMillis(getConfig().getLong("Ghost.Executor.DrainTimeout", 10)));
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if(running.isAlive()) getLogger().warning("The ledger export or import didn't stop in time.");
+    }
+
+    if(executor != null) {
+      getLogger().info("Draining Ghost economy operations...");
+      if(!executor.shutdown(getConfig().getLong("Ghost.Executor.DrainTimeout", 10), TimeUnit.SECONDS)) {
+        getLogger().warning("Some queued Ghost economy operations didn't finish in time and were dropped.");
+      }
+    }
+
+    if(provider != null) {
+      getLogger().info("Wrote " + provider.flush() + " pending Ghost balance changes.");
+      provider.close();
+    }
+  }
+
+  /**
+   * Runs a ledger export or import on its own thread, so neither the server thread nor the economy
+   * executor is held up, reporting progress to the sender every ten percent. Interrupting the thread
+   * stops it at the next chunk.
+   */
+  private void ledger(CommandSender sender, String[] arguments, boolean export) {
+    if(provider == null) {
+      sender.sendMessage(ChatColor.RED + "Ghost's economy provider isn't running.");
+      return;
+    }
+
+    final String name = (arguments.length > 0)? arguments[0] : "";
+    if(name.isEmpty() || name.contains("/") || name.contains("\\") || name.contains("..")) {
+      sender.sendMessage(ChatColor.RED + "The ledger must be a file name in Ghost's plugin folder.");
+      return;
+    }
+
+    final File file = new File(getDataFolder(), (name.endsWith(".ghl"))? name : name + ".ghl");
+    if(!export && !file.isFile()) {
+      sender.sendMessage(ChatColor.RED + "There's no ledger named " + file.getName() + ".");
+      return;
+    }
+    if(!ledgerRunning.compareAndSet(false, true)) {
+      sender.sendMessage(ChatColor.RED + "A ledger export or import is already running.");
+      return;
+    }
+
+    final String action = (export)? "Export" : "Import";
+    sender.sendMessage(ChatColor.GOLD + action + "ing " + file.getName() + "...");
+    final Thread thread = new Thread(()->{
+      final int[] reported = { 0 };
+      final LedgerProgress progress = (done, total)->{
+        final int percent = (total <= 0L)? 100 : (int)(done * 100L / total);
+        if(percent / 10 <= reported[0] / 10) return;
+
+        reported[0] = percent;
+        message(sender, ChatColor.GOLD + action + " of " + file.getName() + " is " + percent + "% done.");
+      };
+
+      try {
+        final long start = System.nanoTime();
+        final long accounts = (export)? provider.exportLedger(file, progress) : provider.importLedger(file, progress);
+        message(sender, ChatColor.GOLD + action + "ed " + accounts + " accounts " + ((export)? "to " : "from ") + file.getName()
+                        + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+      } catch(IOException e) {
+        getLogger().log(Level.SEVERE, "Unable to " + action.toLowerCase(Locale.ROOT) + " the ledger " + file.getName() + ".", e);
+        message(sender, ChatColor.RED + action + " of " + file.getName() + " failed: " + e.getMessage());
+      } finally {
+        ledgerRunning.set(false);
+      }
+    }, "Ghost-Ledger");
+    thread.setDaemon(true);
+    ledger = thread;
+    thread.start();
+  }
+
+  private void message(CommandSender sender, String message) {
+    if(isEnabled()) Bukkit.getScheduler().runTask(this, ()->sender.sendMessage(message));
+  }
+
   @Override
   public boolean onCommand(CommandSender sender, Command command, String label, String[] arguments) {
 
@@ -78,4 +244,8 @@ public class Ghost extends JavaPlugin implements TabCompleter {
     System.out.println("Tab Complete");
     return handler.tab(sender, command, alias, arguments);
   }
-}
\ No newline at end of file
+
+  public GhostExecutor getExecutor() {
+    return executor;
+  }
+}
@@ -0,0 +1,276 @@
+package net.tnemc.ghost.core;
+
+import net.tnemc.ghost.core.account.GhostAccountStore;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+import net.tnemc.ghost.core.account.WorldPartitions;
+import net.tnemc.ghost.core.storage.FileStorage;
+import net.tnemc.ghost.core.storage.MemoryStorage;
+import net.tnemc.ghost.core.storage.StorageBackend;
+import net.tnemc.ghost.core.storage.StorageLoader;
+import net.tnemc.ghost.core.storage.WriteBehind;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Ties a {@link StorageBackend} to the store. On startup the stored accounts are loaded, or served
+ * lazily while the rest are loaded in the background, and from then on every change is recorded by
+ * a {@link WriteBehind} and written to the backend in batches. A checkpoint asks the backend for a
+ * snapshot so older changes can be discarded.
+ */
+public class GhostPersistence {
+
+  private final GhostAccountStore store;
+  private final StorageBackend backend;
+  private final WriteBehind writeBehind;
+  private final WorldPartitions partitions;
+  private final long interval;
+  private final Logger logger;
+
+  //Completed, never exceptionally, once every stored account has been loaded.
+  private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+
+  private ScheduledExecutorService scheduler;
+
+  /**
+   * @param store The store to persist.
+   * @param folder The data folder, which evicted worlds are written to.
+   * @param backend Where balances are stored.
+   * @param storageConfig The Storage configuration section, or null for the defaults.
+   * @param snapshotConfig The Snapshot configuration section, or null for the defaults.
+   * @param logger The logger.
+   */
+  public GhostPersistence(GhostAccountStore store, File folder, StorageBackend backend, ConfigurationSection storageConfig,
+                          ConfigurationSection snapshotConfig, Logger logger) {
+    this.store = store;
+    this.backend = backend;
+    this.logger = logger;
+    this.partitions = new WorldPartitions(store, new File(folder, "worlds"), logger);
+    store.setPartitions(partitions);
+    this.interval = (snapshotConfig == null)? 15L : snapshotConfig.getLong("Interval", 15L);
+    this.writeBehind = new WriteBehind(backend, store.getKeys(),
+                                       (storageConfig == null)? 1000L : storageConfig.getLong("FlushInterval", 1000L),
+                                       (storageConfig == null)? 16384 : storageConfig.getInt("FlushSize", 16384), logger);
+  }
+
+  /**
+   * Creates the backend named by the Storage.Backend setting, File unless it's Memory.
+   * @param folder The data folder.
+   * @param keys The keys of the store.
+   * @param config The Ghost configuration section.
+   * @param logger The logger.
+   * @return The backend.
+   */
+  public static StorageBackend createBackend(File folder, HoldingsKeys keys, ConfigurationSection config, Logger logger) {
+    if(config.getString("Storage.Backend", "File").equalsIgnoreCase("Memory")) {
+      return new MemoryStorage();
+    }
+    return new FileStorage(folder, keys, config.getConfigurationSection("Journal"), config.getConfigurationSection("Snapshot"), logger);
+  }
+
+  /**
+   * Loads the stored accounts into the store, then starts recording changes.
+   */
+  public void open() {
+    //The backend holds every balance, so partitions from an earlier run are never needed.
+    partitions.clean();
+
+    StorageLoader loader = null;
+    try {
+      loader = backend.open(store);
+    } catch(IOException e) {
+      logger.log(Level.SEVERE, "Unable to load the stored Ghost balances.", e);
+    }
+
+    writeBehind.start();
+    store.addListener(writeBehind);
+
+    if(loader == null) {
+      loaded.complete(null);
+    } else {
+      final StorageLoader stored = loader;
+      final Thread thread = new Thread(()->materialize(stored), "Ghost-Snapshot-Loader");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    if(interval > 0) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(runnable->{
+        final Thread thread = new Thread(runnable, "Ghost-Checkpoint");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(this::checkpointQuietly, interval, interval, TimeUnit.MINUTES);
+    }
+  }
+
+  private void materialize(StorageLoader loader) {
+    try {
+      if(!loader.verifyBalances()) {
+        logger.severe("The stored Ghost balances failed their checksum, some may be wrong.");
+      }
+      logger.info("Loaded the remaining " + loader.loadAll(store) + " stored accounts.");
+    } catch(RuntimeException e) {
+      logger.log(Level.SEVERE, "Unable to load every stored Ghost account.", e);
+    } finally {
+      store.setLoader(null);
+      loaded.complete(null);
+    }
+  }
+
+  /**
+   * @return True once every stored account has been loaded into the store.
+   */
+  public boolean isLoaded() {
+    return loaded.isDone();
+  }
+
+  /**
+   * @return A future completed once every stored account has been loaded into the store, for
+   * chaining work that needs them without blocking a thread until then.
+   */
+  public CompletableFuture<Void> getLoaded() {
+    return loaded;
+  }
+
+  /**
+   * Waits for every stored account to be loaded into the store.
+   */
+  public void awaitLoaded() throws InterruptedException {
+    try {
+      loaded.get();
+    } catch(ExecutionException e) {
+      throw new IllegalStateException("The stored accounts failed to load.", e.getCause());
+    }
+  }
+
+  /**
+   * Waits for every stored account to be loaded into the store, restoring the interrupt
+   * flag if the wait is interrupted.
+   */
+  public void awaitLoadedQuietly() {
+    try {
+      awaitLoaded();
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Writes every recorded change, then asks the backend for a snapshot of every account so the
+   * changes it covers can be discarded. Writing the changes first means the journal kept after a
+   * checkpoint only holds changes made after it.
+   * @return The number of accounts written.
+   * @throws IOException If the snapshot can't be written.
+   */
+  public synchronized int checkpoint() throws IOException {
+    try {
+      awaitLoaded();
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing a snapshot.", e);
+    }
+    writeBehind.flush();
+    return backend.snapshot(store);
+  }
+
+  /**
+   * Writes every recorded change to the backend now, rather than with the next batch.
+   * @return The number of changes written.
+   */
+  public int flush() {
+    return writeBehind.flush();
+  }
+
+  /**
+   * Evicts the balances of a world from memory, once every account has been loaded. Runs under the
+   * same monitor as {@link #checkpoint()}, so a snapshot never misses a world being evicted.
+   * @param world The name of the world.
+   * @return The number of balances evicted.
+   * @throws IOException If the world's partition can't be written.
+   */
+  public synchronized int evict(String world) throws IOException {
+    try {
+      awaitLoaded();
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for accounts to load.", e);
+    }
+    return partitions.evict(world);
+  }
+
+  /**
+   * @return The partitions that evicted worlds' balances are written to.
+   */
+  public WorldPartitions getPartitions() {
+    return partitions;
+  }
+
+  private void checkpointQuietly() {
+    try {
+      checkpoint();
+    } catch(IOException e) {
+      logger.log(Level.SEVERE, "Unable to write a Ghost snapshot.", e);
+    }
+  }
+
+  /**
+   * Stops the periodic checkpoints, writes every recorded change and a final snapshot, and closes
+   * the backend.
+   */
+  public void close() {
+    if(scheduler != null) {
+      scheduler.shutdown();
+      try {
+        scheduler.awaitTermination(30, TimeUnit.SECONDS);
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    store.removeListener(writeBehind);
+    writeBehind.close();
+    checkpointQuietly();
+    backend.close();
+    partitions.clean();
+  }
+
+  /**
+   * @return Where balances are stored.
+   */
+  public StorageBackend getBackend() {
+    return backend;
+  }
+
+  /**
+   * @return The layer that batches changes on their way to the backend.
+   */
+  public WriteBehind getWriteBehind() {
+    return writeBehind;
+  }
+}
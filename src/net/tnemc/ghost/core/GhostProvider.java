@@ -2,18 +2,56 @@ package net.tnemc.ghost.core;
 
 import net.tnemc.core.economy.EconomyAPI;
 import net.tnemc.core.economy.currency.Currency;
-import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.access.AccessControl;
+import net.tnemc.ghost.core.account.AccountPurger;
+import net.tnemc.ghost.core.account.GhostAccountStore;
+import net.tnemc.ghost.core.account.HoldingsOperation;
+import net.tnemc.ghost.core.account.HoldingsResult;
+import net.tnemc.ghost.core.account.HoldingsTransfer;
+import net.tnemc.ghost.core.account.WorldPartitions;
+import net.tnemc.ghost.core.async.GhostExecutor;
+import net.tnemc.ghost.core.async.MainThreadExecutor;
+import net.tnemc.ghost.core.async.OperationType;
+import net.tnemc.ghost.core.async.TransferBatcher;
+import net.tnemc.ghost.core.cache.AccountCache;
+import net.tnemc.ghost.core.cache.ColdAccounts;
+import net.tnemc.ghost.core.change.BalanceChange;
+import net.tnemc.ghost.core.change.ChangeStream;
+import net.tnemc.ghost.core.change.ChangeSubscription;
+import net.tnemc.ghost.core.currency.BalanceRules;
+import net.tnemc.ghost.core.currency.CurrencyFormatter;
+import net.tnemc.ghost.core.currency.CurrencyRegistry;
+import net.tnemc.ghost.core.currency.CurrencySettings;
+import net.tnemc.ghost.core.ledger.LedgerExporter;
+import net.tnemc.ghost.core.ledger.LedgerImporter;
+import net.tnemc.ghost.core.ledger.LedgerProgress;
+import net.tnemc.ghost.core.limit.RateLimits;
+import net.tnemc.ghost.core.metrics.GhostMetrics;
+import net.tnemc.ghost.core.metrics.Operation;
+import net.tnemc.ghost.core.ranking.BalanceRanking;
+import net.tnemc.ghost.core.ranking.RankedBalance;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /*
  * Ghost Server Plugin
@@ -33,21 +71,402 @@ import java.util.function.Supplier;
  */
 public class GhostProvider implements EconomyAPI {
 
-  private Map<String, GhostAccount> stringAccounts = new HashMap<>();
+  /**
+   * The world used by the overloads that don't specify one.
+   */
+  public static final String DEFAULT_WORLD = "world";
+
+  private final GhostAccountStore store;
+
+  private final CurrencyRegistry currencies;
+
+  private final CurrencyFormatter formatter = new CurrencyFormatter();
+
+  private final BalanceRules rules = new BalanceRules();
+
+  private final GhostExecutor executor;
+
+  private final GhostPersistence persistence;
+
+  private final AccountPurger purger;
+
+  //Null if access control is disabled, so every accessor has full access as before.
+  private final AccessControl access;
+
+  //Null if rate limiting is disabled.
+  private final RateLimits limits;
+
+  //Null if change notifications are disabled.
+  private final ChangeStream changes;
+
+  private final LedgerExporter exporter;
+  private final LedgerImporter importer;
+
+  private final GhostMetrics metrics;
+
+  //Null if leaderboards are disabled.
+  private final BalanceRanking ranking;
+
+  //Null if every account is kept in memory.
+  private final AccountCache cache;
 
-  private Map<UUID, GhostAccount> idAccounts = new HashMap<>();
+  private final Set<String> loadedWorlds = ConcurrentHashMap.newKeySet();
+  private final boolean evictWorlds;
+  private final Logger logger;
 
-  public List<String> validCurrencies = new ArrayList<>();
+  //Only set when async transfers run in the batched throughput mode.
+  private TransferBatcher batcher;
+
+  //Only set with the Ghost plugin, since it needs the plugin to schedule tasks.
+  private MainThreadExecutor mainThread;
 
   private Ghost plugin;
 
   public GhostProvider(Ghost plugin) {
+    this(plugin.getConfig().getConfigurationSection("Ghost"), plugin.getExecutor(), plugin.getDataFolder(), plugin.getLogger());
     this.plugin = plugin;
-    validCurrencies.add("Dollar");
+    this.mainThread = new MainThreadExecutor(plugin, plugin.getConfig().getLong("Ghost.Executor.MainThreadBudget", 5L), plugin.getLogger());
+  }
+
+  /**
+   * Creates a provider that doesn't depend on the Ghost plugin, such as for benchmarks.
+   * @param config The Ghost configuration section.
+   * @param executor The executor the async methods run on.
+   * @param dataFolder The folder the journal and snapshot are kept in.
+   * @param logger The logger.
+   */
+  public GhostProvider(ConfigurationSection config, GhostExecutor executor, File dataFolder, Logger logger) {
+    this.executor = executor;
+    this.metrics = new GhostMetrics(config.getBoolean("Metrics.Enabled", true), executor);
+    this.store = new GhostAccountStore(CurrencySettings.fromConfig(config.getConfigurationSection("Currencies")));
 
+    this.currencies = new CurrencyRegistry(currencyDefaultSingular(), this::currencyDefaultSingular);
+    currencies.reload(config.getConfigurationSection("Currencies"));
+    formatter.reload(config.getConfigurationSection("Currencies"));
+    rules.reload(config.getConfigurationSection("Currencies"));
+    store.setRules(rules);
     for(World world : Bukkit.getServer().getWorlds()) {
-      validCurrencies.add(world.getName() + "Dollar");
+      loadedWorlds.add(world.getName());
+    }
+    currencies.addWorlds(loadedWorlds);
+    this.logger = logger;
+    this.evictWorlds = config.getBoolean("Worlds.Evict", true);
+
+    //Registered before the journal is replayed, so every balance is ranked.
+    if(config.getBoolean("Ranking.Enabled", true)) {
+      ranking = new BalanceRanking(store.getKeys(), store.getIndex());
+      store.addListener(ranking);
+    } else {
+      ranking = null;
+    }
+
+    //Set before the journal is replayed, so accounts loaded on startup count towards the maximum.
+    if(config.getBoolean("Cache.Enabled", true)) {
+      final ColdAccounts cold = new ColdAccounts(new File(dataFolder, "accounts.cold"), store.getKeys(), logger);
+      cold.clean();
+      cache = new AccountCache(store, cold, config.getInt("Cache.MaxAccounts", 250000), (task)->{
+        if(!executor.execute(OperationType.MAINTENANCE, task)) {
+          throw new RejectedExecutionException("The maintenance queue is full or shut down.");
+        }
+      });
+      store.setCache(cache);
+      store.addListener(cache);
+    } else {
+      cache = null;
+    }
+
+    //Loaded before the journal is replayed, so accessors of string accounts follow them into the
+    //player's account when replayed identifications merge the two.
+    if(config.getBoolean("Access.Enabled", true)) {
+      access = new AccessControl(store.getIndex(), new File(dataFolder, "access.dat"), config.getInt("Access.CacheSize", 4096), logger);
+      access.load();
+      store.addListener(access);
+    } else {
+      access = null;
+    }
+
+    limits = RateLimits.fromConfig(config.getConfigurationSection("RateLimit"));
+    metrics.watch(limits);
+
+    persistence = new GhostPersistence(store, dataFolder, GhostPersistence.createBackend(dataFolder, store.getKeys(), config, logger),
+                                       config.getConfigurationSection("Storage"), config.getConfigurationSection("Snapshot"), logger);
+    persistence.open();
+
+    //Set once the stored balances have been restored, so restoring them isn't published.
+    if(config.getBoolean("Changes.Enabled", true)) {
+      changes = new ChangeStream(store.getKeys(), config.getInt("Changes.Capacity", 65536),
+                                 config.getLong("Changes.PollInterval", 5L), logger);
+      store.setChanges(changes);
+    } else {
+      changes = null;
+    }
+
+    metrics.watch(persistence.getWriteBehind());
+    if(metrics.isEnabled() && config.getBoolean("Metrics.JMX", true)) {
+      metrics.registerMBeans(logger);
+    }
+
+    //Worlds that had balances last time but aren't loaded now.
+    if(evictWorlds) {
+      for(String world : store.getKeys().worlds()) {
+        if(!loadedWorlds.contains(world)) background(OperationType.MAINTENANCE, ()->evict(world), "evict the balances of world " + world + ", they'll stay in memory");
+      }
+    }
+
+    final ConfigurationSection purge = config.getConfigurationSection("Purge");
+    purger = new AccountPurger(store, (purge == null)? 2 : purge.getInt("Parallelism", 2),
+                               (purge == null)? 4096 : purge.getInt("SliceSize", 4096),
+                               (purge == null)? 1L : purge.getLong("Pause", 1L), TimeUnit.MILLISECONDS);
+
+    final ConfigurationSection ledger = config.getConfigurationSection("Ledger");
+    exporter = new LedgerExporter(store, (ledger == null)? 4 : ledger.getInt("Parallelism", 4),
+                                  (ledger == null)? 4096 : ledger.getInt("ChunkSize", 4096));
+    importer = new LedgerImporter(store, (ledger == null)? 4 : ledger.getInt("Parallelism", 4));
+
+    final ConfigurationSection transfers = config.getConfigurationSection("Transfers");
+    if(transfers != null && transfers.getString("Mode", "Strict").equalsIgnoreCase("Throughput")) {
+      batcher = new TransferBatcher(store, executor,
+                                    config.getInt("Executor.Threads.Transfer", OperationType.TRANSFER.getDefaultThreads()),
+                                    transfers.getInt("BatchSize", 256));
+    }
+  }
+
+  /**
+   * Flushes and closes everything that needs it. Called when Ghost is disabled, after the async
+   * executor has been drained.
+   */
+  public void close() {
+    if(mainThread != null) mainThread.close();
+    purger.shutdown();
+    if(limits != null) limits.shutdown();
+    if(changes != null) changes.close();
+    persistence.close();
+    if(cache != null) cache.close();
+    metrics.unregisterMBeans();
+  }
+
+  /**
+   * Writes every balance change still waiting for the next batch to storage. Called when Ghost is
+   * disabled, once the async executor has been drained, so the final batch holds every change.
+   * @return The number of changes written.
+   */
+  public int flush() {
+    return persistence.flush();
+  }
+
+  /**
+   * Records the current name of a player, so every String overload given their name resolves to
+   * their UUID account. See {@link GhostAccountStore#identify(UUID, String)}.
+   * @param id The UUID of the player.
+   * @param name The player's current name.
+   * @return True if the name was new or changed.
+   */
+  public boolean identify(UUID id, String name) {
+    return store.identify(id, name);
+  }
+
+  /**
+   * Marks a string account as a player's account from before their UUID was known, such as one a
+   * plugin created with the player's name, so it's merged into their UUID account the next time
+   * they join. Unmarked string accounts are never merged, so a bank or town that shares a player's
+   * name keeps its balances. See {@link GhostAccountStore#markLegacy(String)}.
+   * @param identifier The exact identifier of the string account.
+   * @return True if the account was marked, false if there's no such account or it already was.
+   */
+  public boolean markLegacyPlayer(String identifier) {
+    return store.markLegacy(identifier);
+  }
+
+  /**
+   * Used when a player is about to join. Loads their account in the background if it was unloaded,
+   * so their first economy call doesn't wait on the disk.
+   * @param id The UUID of the player.
+   */
+  public void prefetch(UUID id) {
+    if(cache != null) background(OperationType.READ, ()->store.getAccount(id), "prefetch the account of " + id + ", it'll be loaded when it's first used");
+  }
+
+  /**
+   * Used when a player joins. Keeps their account in memory until they quit.
+   * @param id The UUID of the player.
+   */
+  public void playerJoined(UUID id) {
+    if(cache != null) cache.pin(id);
+  }
+
+  /**
+   * Used when a player quits, so their account can be unloaded once it's no longer used.
+   * @param id The UUID of the player.
+   */
+  public void playerQuit(UUID id) {
+    if(cache != null) cache.unpin(id);
+  }
+
+  /**
+   * Used when a world is loaded. Gives the world its default currency and starts restoring its
+   * balances in the background if they were evicted.
+   * @param world The name of the world.
+   */
+  public void worldLoaded(String world) {
+    loadedWorlds.add(world);
+    currencies.addWorld(world);
+
+    final WorldPartitions partitions = persistence.getPartitions();
+    if(partitions.isEvicted(world)) {
+      background(OperationType.MAINTENANCE, ()->partitions.restore(world), "restore the balances of world " + world + ", they'll be restored as they're used");
+    }
+  }
+
+  /**
+   * Used when a world is unloaded. Removes the world's default currency and, if enabled, evicts its
+   * balances from memory in the background. They're restored as soon as they're used again.
+   * @param world The name of the world.
+   */
+  public void worldUnloaded(String world) {
+    loadedWorlds.remove(world);
+    currencies.removeWorld(world);
+
+    if(evictWorlds) {
+      background(OperationType.MAINTENANCE, ()->evict(world), "evict the balances of world " + world + ", they'll stay in memory");
+    }
+  }
+
+  /**
+   * Runs a task nothing waits on, logging it if its pool doesn't accept it, since no future reports
+   * the rejection.
+   * @param type The pool to run it on.
+   * @param task The task.
+   * @param action What the task does, for the log.
+   */
+  private void background(OperationType type, Runnable task, String action) {
+    if(!executor.execute(type, task)) {
+      logger.warning("Unable to " + action + ". The " + type.getConfigNode() + " queue is full or Ghost is shutting down.");
+    }
+  }
+
+  private void evict(String world) {
+    //Loaded again while this was queued.
+    if(loadedWorlds.contains(world)) return;
+
+    try {
+      persistence.evict(world);
+    } catch(IOException e) {
+      logger.log(Level.WARNING, "Unable to evict the balances of world " + world + ", they'll stay in memory.", e);
+    }
+  }
+
+  /**
+   * @return The registry of currencies and the worlds they can be used in.
+   */
+  public CurrencyRegistry getCurrencies() {
+    return currencies;
+  }
+
+  /**
+   * Reloads which currencies exist, and where, their formats and their balance limits from the
+   * Ghost.Currencies configuration section.
+   * Storage settings such as FixedPoint are only read on startup and aren't changed by a reload.
+   * @param section The configuration section.
+   */
+  public void reloadCurrencies(ConfigurationSection section) {
+    currencies.reload(section);
+    formatter.reload(section);
+    rules.reload(section);
+  }
+
+  /**
+   * @return The latency and throughput metrics of this provider.
+   */
+  public GhostMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Runs an operation on the executor and records its latency, from now until it completes.
+   */
+  private <T> CompletableFuture<T> supply(Operation operation, OperationType type, Supplier<T> supplier) {
+    return timed(operation, metrics.start(), executor.supply(type, supplier));
+  }
+
+  /**
+   * Runs an async balance change once it's within the rate limits. The tokens are taken on the
+   * calling thread, where the calling plugin is known.
+   * @param account The identifier of the changed account, or null to only count towards the plugin limit.
+   * @param changes The number of changes.
+   * @param rejected The result if the change is over the limit.
+   * @param call Starts the change.
+   */
+  private <T> CompletableFuture<T> limited(Object account, int changes, T rejected, Supplier<CompletableFuture<T>> call) {
+    if(limits == null) return call.get();
+
+    final long delay = limits.acquireAsync(limitKey(account), changes);
+    if(delay < 0L) return CompletableFuture.completedFuture(rejected);
+    return (delay == 0L)? call.get() : limits.delay(delay).thenCompose((ignore)->call.get());
+  }
+
+  /**
+   * @param account The identifier of the changed account, or null to only count towards the plugin limit.
+   * @param changes The number of changes.
+   * @return True if a sync balance change is within the rate limits. Changes made while running an
+   * async operation are part of it, and were already limited when it was called, wherever it runs.
+   */
+  private boolean admit(Object account, int changes) {
+    return limits == null || GhostExecutor.isRunningOperation() || limits.tryAcquire(limitKey(account), changes);
+  }
+
+  /**
+   * Resolves an account identifier the way the store does, so a player shares one rate limit
+   * whether a plugin passes their name or their UUID.
+   * @param account The identifier of the account, or null.
+   * @return The UUID of the player a name belongs to, unless a string account has that exact name,
+   * or the identifier as it was.
+   */
+  private Object limitKey(Object account) {
+    if(!(account instanceof String) || store.getIndex().get((String)account) != null) return account;
+
+    final UUID player = store.getIndex().getPlayer((String)account);
+    return (player != null)? player : account;
+  }
+
+  /**
+   * @return An executor that runs tasks on the server's main thread, batched into a single scheduler
+   * task per tick. Pass it to the async methods of a returned future, such as
+   * {@code asyncGetHoldings(id).thenAcceptAsync(callback, provider.mainThread())}, to use Bukkit objects
+   * in the callback. Without the Ghost plugin, such as in benchmarks, tasks run on the calling thread.
+   */
+  public Executor mainThread() {
+    final MainThreadExecutor current = mainThread;
+    return (current == null)? Runnable::run : current;
+  }
+
+  /**
+   * Used to complete the result of any async method on the server's main thread, so callbacks added
+   * with thenAccept and the like can use Bukkit objects. Completions are batched into a single
+   * scheduler task per tick, see {@link #mainThread()}. Callbacks added from the main thread always
+   * run on it; ones added from another thread run on that thread if the result already completed.
+   * @param future The future returned by an async method.
+   * @return A future completed on the main thread with the same result.
+   */
+  public <T> CompletableFuture<T> onMainThread(CompletableFuture<T> future) {
+    //Already done, so callbacks added on the main thread will run right away, on the main thread.
+    if(future.isDone() && Bukkit.isPrimaryThread()) return future;
+
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    future.whenComplete((value, error)->mainThread().execute(()->{
+      if(error != null) {
+        result.completeExceptionally(error);
+      } else {
+        result.complete(value);
+      }
+    }));
+    return result;
+  }
+
+  private <T> CompletableFuture<T> timed(Operation operation, long start, CompletableFuture<T> future) {
+    if(metrics.isEnabled()) {
+      future.whenComplete((result, error)->metrics.recordAsync(operation, start));
     }
+    return future;
   }
 
   /**
@@ -127,7 +546,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean hasCurrency(String name) {
-    return validCurrencies.contains(name);
+    final long start = metrics.start();
+    try {
+      return currencies.has(name);
+    } finally {
+      metrics.record(Operation.CURRENCY, start);
+    }
   }
 
   /**
@@ -138,7 +562,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean hasCurrency(String name, String world) {
-    return validCurrencies.contains(name);
+    final long start = metrics.start();
+    try {
+      return currencies.has(name, world);
+    } finally {
+      metrics.record(Operation.CURRENCY, start);
+    }
   }
 
   /**
@@ -148,18 +577,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncHasCurrency(String name) {
-    return CompletableFuture.supplyAsync(new Supplier<Boolean>() {
-
-      /**
-       * Gets a result.
-       *
-       * @return a result
-       */
-      @Override
-      public Boolean get() {
-        return validCurrencies.contains(name);
-      }
-    });
+    return supply(Operation.CURRENCY, OperationType.READ, ()->hasCurrency(name));
   }
 
   /**
@@ -170,18 +588,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncHasCurrency(String name, String world) {
-    return CompletableFuture.supplyAsync(new Supplier<Boolean>() {
-
-      /**
-       * Gets a result.
-       *
-       * @return a result
-       */
-      @Override
-      public Boolean get() {
-        return validCurrencies.contains(name);
-      }
-    });
+    return supply(Operation.CURRENCY, OperationType.READ, ()->hasCurrency(name, world));
   }
 
   /**
@@ -191,7 +598,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean hasAccount(String identifier) {
-    return stringAccounts.containsKey(identifier);
+    final long start = metrics.start();
+    try {
+      return store.hasAccount(identifier);
+    } finally {
+      metrics.record(Operation.HAS_ACCOUNT, start);
+    }
   }
 
   /**
@@ -201,7 +613,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean hasAccount(UUID identifier) {
-    return idAccounts.containsKey(identifier);
+    final long start = metrics.start();
+    try {
+      return store.hasAccount(identifier);
+    } finally {
+      metrics.record(Operation.HAS_ACCOUNT, start);
+    }
   }
 
   /**
@@ -211,18 +628,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncHasAccount(String identifier) {
-    return CompletableFuture.supplyAsync(new Supplier<Boolean>() {
-
-      /**
-       * Gets a result.
-       *
-       * @return a result
-       */
-      @Override
-      public Boolean get() {
-        return stringAccounts.containsKey(identifier);
-      }
-    });
+    return supply(Operation.HAS_ACCOUNT, OperationType.READ, ()->hasAccount(identifier));
   }
 
   /**
@@ -232,18 +638,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncHasAccount(UUID identifier) {
-    return CompletableFuture.supplyAsync(new Supplier<Boolean>() {
-
-      /**
-       * Gets a result.
-       *
-       * @return a result
-       */
-      @Override
-      public Boolean get() {
-        return idAccounts.containsKey(identifier);
-      }
-    });
+    return supply(Operation.HAS_ACCOUNT, OperationType.READ, ()->hasAccount(identifier));
   }
 
   /**
@@ -253,9 +648,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean createAccount(String identifier) {
-    GhostAccount account = new GhostAccount(identifier);
-    stringAccounts.put(identifier, account);
-    return true;
+    final long start = metrics.start();
+    try {
+      return store.createAccount(identifier);
+    } finally {
+      metrics.record(Operation.CREATE_ACCOUNT, start);
+    }
   }
 
   /**
@@ -265,9 +663,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean createAccount(UUID identifier) {
-    GhostAccount account = new GhostAccount(identifier);
-    idAccounts.put(identifier, account);
-    return true;
+    final long start = metrics.start();
+    try {
+      return store.createAccount(identifier);
+    } finally {
+      metrics.record(Operation.CREATE_ACCOUNT, start);
+    }
   }
 
   /**
@@ -277,14 +678,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCreateAccount(String identifier) {
-    return CompletableFuture.supplyAsync(new Supplier<Boolean>() {
-      @Override
-      public Boolean get() {
-        GhostAccount account = new GhostAccount(identifier);
-        stringAccounts.put(identifier, account);
-        return true;
-      }
-    });
+    return supply(Operation.CREATE_ACCOUNT, OperationType.WRITE, ()->createAccount(identifier));
   }
 
   /**
@@ -294,14 +688,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCreateAccount(UUID identifier) {
-    return CompletableFuture.supplyAsync(new Supplier<Boolean>() {
-      @Override
-      public Boolean get() {
-        GhostAccount account = new GhostAccount(identifier);
-        idAccounts.put(identifier, account);
-        return true;
-      }
-    });
+    return supply(Operation.CREATE_ACCOUNT, OperationType.WRITE, ()->createAccount(identifier));
   }
 
   /**
@@ -311,8 +698,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean deleteAccount(String identifier) {
-    stringAccounts.remove(identifier);
-    return true;
+    final long start = metrics.start();
+    try {
+      return store.deleteAccount(identifier);
+    } finally {
+      metrics.record(Operation.DELETE_ACCOUNT, start);
+    }
   }
 
   /**
@@ -322,8 +713,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean deleteAccount(UUID identifier) {
-    idAccounts.remove(identifier);
-    return true;
+    final long start = metrics.start();
+    try {
+      return store.deleteAccount(identifier);
+    } finally {
+      metrics.record(Operation.DELETE_ACCOUNT, start);
+    }
   }
 
   /**
@@ -333,10 +728,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncDeleteAccount(String identifier) {
-    return CompletableFuture.supplyAsync(()->{
-      stringAccounts.remove(identifier);
-      return true;
-    });
+    return supply(Operation.DELETE_ACCOUNT, OperationType.WRITE, ()->deleteAccount(identifier));
   }
 
   /**
@@ -346,10 +738,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncDeleteAccount(UUID identifier) {
-    return CompletableFuture.supplyAsync(()->{
-      idAccounts.remove(identifier);
-      return true;
-    });
+    return supply(Operation.DELETE_ACCOUNT, OperationType.WRITE, ()->deleteAccount(identifier));
   }
 
   /**
@@ -360,7 +749,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean isAccessor(String identifier, String accessor) {
-    return true;
+    final long start = metrics.start();
+    try {
+      return access == null || access.isAccessor(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -371,7 +765,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean isAccessor(String identifier, UUID accessor) {
-    return true;
+    final long start = metrics.start();
+    try {
+      return access == null || access.isAccessor(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -382,7 +781,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean isAccessor(UUID identifier, String accessor) {
-    return true;
+    final long start = metrics.start();
+    try {
+      return access == null || access.isAccessor(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -393,7 +797,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean isAccessor(UUID identifier, UUID accessor) {
-    return true;
+    final long start = metrics.start();
+    try {
+      return access == null || access.isAccessor(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -404,7 +813,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canWithdraw(String identifier, String accessor) {
-    return true;
+    final long start = metrics.start();
+    try {
+      return access == null || access.canWithdraw(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -415,7 +829,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canWithdraw(String identifier, UUID accessor) {
-    return true;
+    final long start = metrics.start();
+    try {
+      return access == null || access.canWithdraw(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -426,7 +845,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canWithdraw(UUID identifier, String accessor) {
-    return true;
+    final long start = metrics.start();
+    try {
+      return access == null || access.canWithdraw(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -437,7 +861,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canWithdraw(UUID identifier, UUID accessor) {
-    return true;
+    final long start = metrics.start();
+    try {
+      return access == null || access.canWithdraw(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -448,7 +877,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanWithdraw(String identifier, String accessor) {
-    return CompletableFuture.supplyAsync(()->true);
+    return supply(Operation.ACCESS, OperationType.READ, ()->canWithdraw(identifier, accessor));
   }
 
   /**
@@ -459,7 +888,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanWithdraw(String identifier, UUID accessor) {
-    return CompletableFuture.supplyAsync(()->true);
+    return supply(Operation.ACCESS, OperationType.READ, ()->canWithdraw(identifier, accessor));
   }
 
   /**
@@ -470,7 +899,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanWithdraw(UUID identifier, String accessor) {
-    return CompletableFuture.supplyAsync(()->true);
+    return supply(Operation.ACCESS, OperationType.READ, ()->canWithdraw(identifier, accessor));
   }
 
   /**
@@ -481,7 +910,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanWithdraw(UUID identifier, UUID accessor) {
-    return CompletableFuture.supplyAsync(()->true);
+    return supply(Operation.ACCESS, OperationType.READ, ()->canWithdraw(identifier, accessor));
   }
 
   /**
@@ -492,7 +921,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canDeposit(String identifier, String accessor) {
-    return true;
+    final long start = metrics.start();
+    try {
+      return access == null || access.canDeposit(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -503,7 +937,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canDeposit(String identifier, UUID accessor) {
-    return true;
+    final long start = metrics.start();
+    try {
+      return access == null || access.canDeposit(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -514,7 +953,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canDeposit(UUID identifier, String accessor) {
-    return true;
+    final long start = metrics.start();
+    try {
+      return access == null || access.canDeposit(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -525,7 +969,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canDeposit(UUID identifier, UUID accessor) {
-    return true;
+    final long start = metrics.start();
+    try {
+      return access == null || access.canDeposit(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -536,7 +985,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanDeposit(String identifier, String accessor) {
-    return CompletableFuture.supplyAsync(()->true);
+    return supply(Operation.ACCESS, OperationType.READ, ()->canDeposit(identifier, accessor));
   }
 
   /**
@@ -547,7 +996,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanDeposit(String identifier, UUID accessor) {
-    return CompletableFuture.supplyAsync(()->true);
+    return supply(Operation.ACCESS, OperationType.READ, ()->canDeposit(identifier, accessor));
   }
 
   /**
@@ -558,7 +1007,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanDeposit(UUID identifier, String accessor) {
-    return CompletableFuture.supplyAsync(()->true);
+    return supply(Operation.ACCESS, OperationType.READ, ()->canDeposit(identifier, accessor));
   }
 
   /**
@@ -569,7 +1018,139 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanDeposit(UUID identifier, UUID accessor) {
-    return CompletableFuture.supplyAsync(()->true);
+    return supply(Operation.ACCESS, OperationType.READ, ()->canDeposit(identifier, accessor));
+  }
+
+  /**
+   * Used to share an account, or change what an accessor it's shared with may do. The owner of an
+   * account always has full access to it.
+   * @param identifier The identifier of the account.
+   * @param accessor The identifier of the user to share the account with.
+   * @param withdraw Whether or not the accessor may withdraw holdings from the account.
+   * @param deposit Whether or not the accessor may deposit holdings into the account.
+   * @return True if the access changed, false if it was already granted or access control is disabled.
+   */
+  public boolean setAccessor(String identifier, String accessor, boolean withdraw, boolean deposit) {
+    final long start = metrics.start();
+    try {
+      return access != null && access.grant(identifier, accessor, withdraw, deposit);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
+  }
+
+  /**
+   * Used to share an account, or change what an accessor it's shared with may do. The owner of an
+   * account always has full access to it.
+   * @param identifier The identifier of the account.
+   * @param accessor The identifier of the user to share the account with.
+   * @param withdraw Whether or not the accessor may withdraw holdings from the account.
+   * @param deposit Whether or not the accessor may deposit holdings into the account.
+   * @return True if the access changed, false if it was already granted or access control is disabled.
+   */
+  public boolean setAccessor(String identifier, UUID accessor, boolean withdraw, boolean deposit) {
+    final long start = metrics.start();
+    try {
+      return access != null && access.grant(identifier, accessor, withdraw, deposit);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
+  }
+
+  /**
+   * Used to share an account, or change what an accessor it's shared with may do. The owner of an
+   * account always has full access to it.
+   * @param identifier The identifier of the account.
+   * @param accessor The identifier of the user to share the account with.
+   * @param withdraw Whether or not the accessor may withdraw holdings from the account.
+   * @param deposit Whether or not the accessor may deposit holdings into the account.
+   * @return True if the access changed, false if it was already granted or access control is disabled.
+   */
+  public boolean setAccessor(UUID identifier, String accessor, boolean withdraw, boolean deposit) {
+    final long start = metrics.start();
+    try {
+      return access != null && access.grant(identifier, accessor, withdraw, deposit);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
+  }
+
+  /**
+   * Used to share an account, or change what an accessor it's shared with may do. The owner of an
+   * account always has full access to it.
+   * @param identifier The identifier of the account.
+   * @param accessor The identifier of the user to share the account with.
+   * @param withdraw Whether or not the accessor may withdraw holdings from the account.
+   * @param deposit Whether or not the accessor may deposit holdings into the account.
+   * @return True if the access changed, false if it was already granted or access control is disabled.
+   */
+  public boolean setAccessor(UUID identifier, UUID accessor, boolean withdraw, boolean deposit) {
+    final long start = metrics.start();
+    try {
+      return access != null && access.grant(identifier, accessor, withdraw, deposit);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
+  }
+
+  /**
+   * Used to stop sharing an account with an accessor.
+   * @param identifier The identifier of the account.
+   * @param accessor The identifier of the user the account is shared with.
+   * @return True if the accessor had access to the account.
+   */
+  public boolean removeAccessor(String identifier, String accessor) {
+    final long start = metrics.start();
+    try {
+      return access != null && access.revoke(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
+  }
+
+  /**
+   * Used to stop sharing an account with an accessor.
+   * @param identifier The identifier of the account.
+   * @param accessor The identifier of the user the account is shared with.
+   * @return True if the accessor had access to the account.
+   */
+  public boolean removeAccessor(String identifier, UUID accessor) {
+    final long start = metrics.start();
+    try {
+      return access != null && access.revoke(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
+  }
+
+  /**
+   * Used to stop sharing an account with an accessor.
+   * @param identifier The identifier of the account.
+   * @param accessor The identifier of the user the account is shared with.
+   * @return True if the accessor had access to the account.
+   */
+  public boolean removeAccessor(UUID identifier, String accessor) {
+    final long start = metrics.start();
+    try {
+      return access != null && access.revoke(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
+  }
+
+  /**
+   * Used to stop sharing an account with an accessor.
+   * @param identifier The identifier of the account.
+   * @param accessor The identifier of the user the account is shared with.
+   * @return True if the accessor had access to the account.
+   */
+  public boolean removeAccessor(UUID identifier, UUID accessor) {
+    final long start = metrics.start();
+    try {
+      return access != null && access.revoke(identifier, accessor);
+    } finally {
+      metrics.record(Operation.ACCESS, start);
+    }
   }
 
   /**
@@ -579,10 +1160,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public BigDecimal getHoldings(String identifier) {
-    if(hasAccount(identifier)) {
-      return stringAccounts.get(identifier).getHoldings("world", "Dollar");
-    }
-    return BigDecimal.ZERO;
+    return getHoldings(identifier, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -592,10 +1170,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public BigDecimal getHoldings(UUID identifier) {
-    if(hasAccount(identifier)) {
-      return idAccounts.get(identifier).getHoldings("world", "Dollar");
-    }
-    return BigDecimal.ZERO;
+    return getHoldings(identifier, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -606,10 +1181,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public BigDecimal getHoldings(String identifier, String world) {
-    if(hasAccount(identifier)) {
-      return stringAccounts.get(identifier).getHoldings(world, world + "Dollar");
-    }
-    return BigDecimal.ZERO;
+    return getHoldings(identifier, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -620,10 +1192,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public BigDecimal getHoldings(UUID identifier, String world) {
-    if(hasAccount(identifier)) {
-      return idAccounts.get(identifier).getHoldings(world, world + "Dollar");
-    }
-    return BigDecimal.ZERO;
+    return getHoldings(identifier, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -635,10 +1204,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public BigDecimal getHoldings(String identifier, String world, String currency) {
-    if(hasAccount(identifier)) {
-      return stringAccounts.get(identifier).getHoldings(world, currency);
+    final long start = metrics.start();
+    try {
+      return store.getHoldings(store.getAccount(identifier), world, currency);
+    } finally {
+      metrics.record(Operation.GET_HOLDINGS, start);
     }
-    return BigDecimal.ZERO;
   }
 
   /**
@@ -650,10 +1221,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public BigDecimal getHoldings(UUID identifier, String world, String currency) {
-    if(hasAccount(identifier)) {
-      return idAccounts.get(identifier).getHoldings(world, currency);
+    final long start = metrics.start();
+    try {
+      return store.getHoldings(store.getAccount(identifier), world, currency);
+    } finally {
+      metrics.record(Operation.GET_HOLDINGS, start);
     }
-    return BigDecimal.ZERO;
   }
 
   /**
@@ -663,12 +1236,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<BigDecimal> asyncGetHoldings(String identifier) {
-    return CompletableFuture.supplyAsync(()->{
-      if(hasAccount(identifier)) {
-        return stringAccounts.get(identifier).getHoldings("world", "Dollar");
-      }
-      return BigDecimal.ZERO;
-    });
+    return supply(Operation.GET_HOLDINGS, OperationType.READ, ()->getHoldings(identifier));
   }
 
   /**
@@ -678,12 +1246,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<BigDecimal> asyncGetHoldings(UUID identifier) {
-    return CompletableFuture.supplyAsync(()->{
-      if(hasAccount(identifier)) {
-        return idAccounts.get(identifier).getHoldings("world", "Dollar");
-      }
-      return BigDecimal.ZERO;
-    });
+    return supply(Operation.GET_HOLDINGS, OperationType.READ, ()->getHoldings(identifier));
   }
 
   /**
@@ -694,12 +1257,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<BigDecimal> asyncGetHoldings(String identifier, String world) {
-    return CompletableFuture.supplyAsync(()->{
-      if(hasAccount(identifier)) {
-        return stringAccounts.get(identifier).getHoldings(world, world + "Dollar");
-      }
-      return BigDecimal.ZERO;
-    });
+    return supply(Operation.GET_HOLDINGS, OperationType.READ, ()->getHoldings(identifier, world));
   }
 
   /**
@@ -710,12 +1268,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<BigDecimal> asyncGetHoldings(UUID identifier, String world) {
-    return CompletableFuture.supplyAsync(()->{
-      if(hasAccount(identifier)) {
-        return idAccounts.get(identifier).getHoldings(world, world + "Dollar");
-      }
-      return BigDecimal.ZERO;
-    });
+    return supply(Operation.GET_HOLDINGS, OperationType.READ, ()->getHoldings(identifier, world));
   }
 
   /**
@@ -727,12 +1280,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<BigDecimal> asyncGetHoldings(String identifier, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->{
-      if(hasAccount(identifier)) {
-        return stringAccounts.get(identifier).getHoldings(world, currency);
-      }
-      return BigDecimal.ZERO;
-    });
+    return supply(Operation.GET_HOLDINGS, OperationType.READ, ()->getHoldings(identifier, world, currency));
   }
 
   /**
@@ -744,12 +1292,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<BigDecimal> asyncGetHoldings(UUID identifier, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->{
-      if(hasAccount(identifier)) {
-        return idAccounts.get(identifier).getHoldings(world, currency);
-      }
-      return BigDecimal.ZERO;
-    });
+    return supply(Operation.GET_HOLDINGS, OperationType.READ, ()->getHoldings(identifier, world, currency));
   }
 
   /**
@@ -760,7 +1303,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean hasHoldings(String identifier, BigDecimal amount) {
-    return hasAccount(identifier) && stringAccounts.get(identifier).getHoldings("world", "Dollar").compareTo(amount) >= 0;
+    return hasHoldings(identifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -771,7 +1314,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean hasHoldings(UUID identifier, BigDecimal amount) {
-    return hasAccount(identifier) && idAccounts.get(identifier).getHoldings("world", "Dollar").compareTo(amount) >= 0;
+    return hasHoldings(identifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -783,7 +1326,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean hasHoldings(String identifier, BigDecimal amount, String world) {
-    return hasAccount(identifier) && stringAccounts.get(identifier).getHoldings(world, world + "Dollar").compareTo(amount) >= 0;
+    return hasHoldings(identifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -795,7 +1338,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean hasHoldings(UUID identifier, BigDecimal amount, String world) {
-    return hasAccount(identifier) && idAccounts.get(identifier).getHoldings(world, world + "Dollar").compareTo(amount) >= 0;
+    return hasHoldings(identifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -808,7 +1351,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean hasHoldings(String identifier, BigDecimal amount, String world, String currency) {
-    return hasAccount(identifier) && stringAccounts.get(identifier).getHoldings(world, currency).compareTo(amount) >= 0;
+    final long start = metrics.start();
+    try {
+      return store.hasHoldings(store.getAccount(identifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.HAS_HOLDINGS, start);
+    }
   }
 
   /**
@@ -821,7 +1369,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean hasHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
-    return hasAccount(identifier) && idAccounts.get(identifier).getHoldings(world, currency).compareTo(amount) >= 0;
+    final long start = metrics.start();
+    try {
+      return store.hasHoldings(store.getAccount(identifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.HAS_HOLDINGS, start);
+    }
   }
 
   /**
@@ -832,7 +1385,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncHasHoldings(String identifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier) && stringAccounts.get(identifier).getHoldings("world", "Dollar").compareTo(amount) >= 0);
+    return supply(Operation.HAS_HOLDINGS, OperationType.READ, ()->hasHoldings(identifier, amount));
   }
 
   /**
@@ -843,7 +1396,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncHasHoldings(UUID identifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier) && idAccounts.get(identifier).getHoldings("world", "Dollar").compareTo(amount) >= 0);
+    return supply(Operation.HAS_HOLDINGS, OperationType.READ, ()->hasHoldings(identifier, amount));
   }
 
   /**
@@ -855,7 +1408,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncHasHoldings(String identifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier) && stringAccounts.get(identifier).getHoldings(world, "Dollar").compareTo(amount) >= 0);
+    return supply(Operation.HAS_HOLDINGS, OperationType.READ, ()->hasHoldings(identifier, amount, world));
   }
 
   /**
@@ -867,7 +1420,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncHasHoldings(UUID identifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier) && idAccounts.get(identifier).getHoldings(world, "Dollar").compareTo(amount) >= 0);
+    return supply(Operation.HAS_HOLDINGS, OperationType.READ, ()->hasHoldings(identifier, amount, world));
   }
 
   /**
@@ -880,7 +1433,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncHasHoldings(String identifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier) && stringAccounts.get(identifier).getHoldings(world, currency).compareTo(amount) >= 0);
+    return supply(Operation.HAS_HOLDINGS, OperationType.READ, ()->hasHoldings(identifier, amount, world, currency));
   }
 
   /**
@@ -893,7 +1446,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncHasHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier) && idAccounts.get(identifier).getHoldings(world, currency).compareTo(amount) >= 0);
+    return supply(Operation.HAS_HOLDINGS, OperationType.READ, ()->hasHoldings(identifier, amount, world, currency));
   }
 
   /**
@@ -904,11 +1457,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean setHoldings(String identifier, BigDecimal amount) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = stringAccounts.get(identifier);
-    account.setHoldings("world", "Dollar", amount);
-    stringAccounts.put(identifier, account);
-    return true;
+    return setHoldings(identifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -919,11 +1468,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean setHoldings(UUID identifier, BigDecimal amount) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = idAccounts.get(identifier);
-    account.setHoldings("world", "Dollar", amount);
-    idAccounts.put(identifier, account);
-    return true;
+    return setHoldings(identifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -935,11 +1480,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean setHoldings(String identifier, BigDecimal amount, String world) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = stringAccounts.get(identifier);
-    account.setHoldings(world, "Dollar", amount);
-    stringAccounts.put(identifier, account);
-    return true;
+    return setHoldings(identifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -951,11 +1492,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean setHoldings(UUID identifier, BigDecimal amount, String world) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = idAccounts.get(identifier);
-    account.setHoldings(world, "Dollar", amount);
-    idAccounts.put(identifier, account);
-    return true;
+    return setHoldings(identifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -968,11 +1505,13 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean setHoldings(String identifier, BigDecimal amount, String world, String currency) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = stringAccounts.get(identifier);
-    account.setHoldings(world, currency, amount);
-    stringAccounts.put(identifier, account);
-    return true;
+    final long start = metrics.start();
+    try {
+      if(!admit(identifier, 1)) return false;
+      return store.trySetHoldings(store.getAccount(identifier), world, currency, amount).isSuccess();
+    } finally {
+      metrics.record(Operation.SET_HOLDINGS, start);
+    }
   }
 
   /**
@@ -985,11 +1524,13 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean setHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = idAccounts.get(identifier);
-    account.setHoldings(world, currency, amount);
-    idAccounts.put(identifier, account);
-    return true;
+    final long start = metrics.start();
+    try {
+      if(!admit(identifier, 1)) return false;
+      return store.trySetHoldings(store.getAccount(identifier), world, currency, amount).isSuccess();
+    } finally {
+      metrics.record(Operation.SET_HOLDINGS, start);
+    }
   }
 
   /**
@@ -1000,13 +1541,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncSetHoldings(String identifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = stringAccounts.get(identifier);
-      account.setHoldings("world", "Dollar", amount);
-      stringAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.SET_HOLDINGS, OperationType.WRITE, ()->setHoldings(identifier, amount)));
   }
 
   /**
@@ -1017,13 +1552,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncSetHoldings(UUID identifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = idAccounts.get(identifier);
-      account.setHoldings("world", "Dollar", amount);
-      idAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.SET_HOLDINGS, OperationType.WRITE, ()->setHoldings(identifier, amount)));
   }
 
   /**
@@ -1035,13 +1564,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncSetHoldings(String identifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = stringAccounts.get(identifier);
-      account.setHoldings(world, "Dollar", amount);
-      stringAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.SET_HOLDINGS, OperationType.WRITE, ()->setHoldings(identifier, amount, world)));
   }
 
   /**
@@ -1053,13 +1576,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncSetHoldings(UUID identifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = idAccounts.get(identifier);
-      account.setHoldings(world, "Dollar", amount);
-      idAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.SET_HOLDINGS, OperationType.WRITE, ()->setHoldings(identifier, amount, world)));
   }
 
   /**
@@ -1072,13 +1589,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncSetHoldings(String identifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = stringAccounts.get(identifier);
-      account.setHoldings(world, currency, amount);
-      stringAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.SET_HOLDINGS, OperationType.WRITE, ()->setHoldings(identifier, amount, world, currency)));
   }
 
   /**
@@ -1091,13 +1602,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncSetHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = idAccounts.get(identifier);
-      account.setHoldings(world, currency, amount);
-      idAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.SET_HOLDINGS, OperationType.WRITE, ()->setHoldings(identifier, amount, world, currency)));
   }
 
   /**
@@ -1108,11 +1613,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean addHoldings(String identifier, BigDecimal amount) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = stringAccounts.get(identifier);
-    account.setHoldings("world", "Dollar", account.getHoldings("world", "Dollar").add(amount));
-    stringAccounts.put(identifier, account);
-    return true;
+    return addHoldings(identifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -1123,11 +1624,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean addHoldings(UUID identifier, BigDecimal amount) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = idAccounts.get(identifier);
-    account.setHoldings("world", "Dollar", account.getHoldings("world", "Dollar").add(amount));
-    idAccounts.put(identifier, account);
-    return true;
+    return addHoldings(identifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -1139,11 +1636,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean addHoldings(String identifier, BigDecimal amount, String world) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = stringAccounts.get(identifier);
-    account.setHoldings(world, "Dollar", account.getHoldings(world, "Dollar").add(amount));
-    stringAccounts.put(identifier, account);
-    return true;
+    return addHoldings(identifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -1155,11 +1648,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean addHoldings(UUID identifier, BigDecimal amount, String world) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = idAccounts.get(identifier);
-    account.setHoldings(world, "Dollar", account.getHoldings(world, "Dollar").add(amount));
-    idAccounts.put(identifier, account);
-    return true;
+    return addHoldings(identifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -1172,11 +1661,13 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean addHoldings(String identifier, BigDecimal amount, String world, String currency) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = stringAccounts.get(identifier);
-    account.setHoldings(world, currency, account.getHoldings(world, currency).add(amount));
-    stringAccounts.put(identifier, account);
-    return true;
+    final long start = metrics.start();
+    try {
+      if(!admit(identifier, 1)) return false;
+      return store.addHoldings(store.getAccount(identifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.ADD_HOLDINGS, start);
+    }
   }
 
   /**
@@ -1189,11 +1680,13 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean addHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = idAccounts.get(identifier);
-    account.setHoldings(world, currency, account.getHoldings(world, currency).add(amount));
-    idAccounts.put(identifier, account);
-    return true;
+    final long start = metrics.start();
+    try {
+      if(!admit(identifier, 1)) return false;
+      return store.addHoldings(store.getAccount(identifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.ADD_HOLDINGS, start);
+    }
   }
 
   /**
@@ -1204,13 +1697,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncAddHoldings(String identifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = stringAccounts.get(identifier);
-      account.setHoldings("world", "Dollar", account.getHoldings("world", "Dollar").add(amount));
-      stringAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.ADD_HOLDINGS, OperationType.WRITE, ()->addHoldings(identifier, amount)));
   }
 
   /**
@@ -1221,13 +1708,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncAddHoldings(UUID identifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = idAccounts.get(identifier);
-      account.setHoldings("world", "Dollar", account.getHoldings("world", "Dollar").add(amount));
-      idAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.ADD_HOLDINGS, OperationType.WRITE, ()->addHoldings(identifier, amount)));
   }
 
   /**
@@ -1239,13 +1720,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncAddHoldings(String identifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = stringAccounts.get(identifier);
-      account.setHoldings(world, "Dollar", account.getHoldings(world, "Dollar").add(amount));
-      stringAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.ADD_HOLDINGS, OperationType.WRITE, ()->addHoldings(identifier, amount, world)));
   }
 
   /**
@@ -1257,13 +1732,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncAddHoldings(UUID identifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = idAccounts.get(identifier);
-      account.setHoldings(world, "Dollar", account.getHoldings(world, "Dollar").add(amount));
-      idAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.ADD_HOLDINGS, OperationType.WRITE, ()->addHoldings(identifier, amount, world)));
   }
 
   /**
@@ -1276,13 +1745,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncAddHoldings(String identifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = stringAccounts.get(identifier);
-      account.setHoldings(world, currency, account.getHoldings(world, currency).add(amount));
-      stringAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.ADD_HOLDINGS, OperationType.WRITE, ()->addHoldings(identifier, amount, world, currency)));
   }
 
   /**
@@ -1295,13 +1758,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncAddHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = idAccounts.get(identifier);
-      account.setHoldings(world, currency, account.getHoldings(world, currency).add(amount));
-      idAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.ADD_HOLDINGS, OperationType.WRITE, ()->addHoldings(identifier, amount, world, currency)));
   }
 
   /**
@@ -1309,11 +1766,11 @@ public class GhostProvider implements EconomyAPI {
    * affect an account's funds.
    * @param identifier The identifier of the account that is associated with this call.
    * @param amount The amount you wish to add to this account.
-   * @return hasAccount(identifier) if a call to the corresponding addHoldings method would return hasAccount(identifier), otherwise false.
+   * @return True if the account exists and the amount can be added within its currency's limits, otherwise false.
    */
   @Override
   public boolean canAddHoldings(String identifier, BigDecimal amount) {
-    return hasAccount(identifier);
+    return canAddHoldings(identifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -1321,11 +1778,11 @@ public class GhostProvider implements EconomyAPI {
    * affect an account's funds.
    * @param identifier The identifier of the account that is associated with this call.
    * @param amount The amount you wish to add to this account.
-   * @return hasAccount(identifier) if a call to the corresponding addHoldings method would return hasAccount(identifier), otherwise false.
+   * @return True if the account exists and the amount can be added within its currency's limits, otherwise false.
    */
   @Override
   public boolean canAddHoldings(UUID identifier, BigDecimal amount) {
-    return hasAccount(identifier);
+    return canAddHoldings(identifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -1334,11 +1791,11 @@ public class GhostProvider implements EconomyAPI {
    * @param identifier The identifier of the account that is associated with this call.
    * @param amount The amount you wish to add to this account.
    * @param world The name of the {@link World} associated with the amount.
-   * @return hasAccount(identifier) if a call to the corresponding addHoldings method would return hasAccount(identifier), otherwise false.
+   * @return True if the account exists and the amount can be added within its currency's limits, otherwise false.
    */
   @Override
   public boolean canAddHoldings(String identifier, BigDecimal amount, String world) {
-    return hasAccount(identifier);
+    return canAddHoldings(identifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -1347,11 +1804,11 @@ public class GhostProvider implements EconomyAPI {
    * @param identifier The identifier of the account that is associated with this call.
    * @param amount The amount you wish to add to this account.
    * @param world The name of the {@link World} associated with the amount.
-   * @return hasAccount(identifier) if a call to the corresponding addHoldings method would return hasAccount(identifier), otherwise false.
+   * @return True if the account exists and the amount can be added within its currency's limits, otherwise false.
    */
   @Override
   public boolean canAddHoldings(UUID identifier, BigDecimal amount, String world) {
-    return hasAccount(identifier);
+    return canAddHoldings(identifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -1361,11 +1818,16 @@ public class GhostProvider implements EconomyAPI {
    * @param amount The amount you wish to add to this account.
    * @param world The name of the {@link World} associated with the amount.
    * @param currency The {@link Currency} associated with the balance.
-   * @return hasAccount(identifier) if a call to the corresponding addHoldings method would return hasAccount(identifier), otherwise false.
+   * @return True if the account exists and the amount can be added within its currency's limits, otherwise false.
    */
   @Override
   public boolean canAddHoldings(String identifier, BigDecimal amount, String world, String currency) {
-    return hasAccount(identifier);
+    final long start = metrics.start();
+    try {
+      return store.checkHoldings(store.getAccount(identifier), world, currency, amount).isSuccess();
+    } finally {
+      metrics.record(Operation.CHECK_HOLDINGS, start);
+    }
   }
 
   /**
@@ -1375,11 +1837,16 @@ public class GhostProvider implements EconomyAPI {
    * @param amount The amount you wish to add to this account.
    * @param world The name of the {@link World} associated with the amount.
    * @param currency The {@link Currency} associated with the balance.
-   * @return hasAccount(identifier) if a call to the corresponding addHoldings method would return hasAccount(identifier), otherwise false.
+   * @return True if the account exists and the amount can be added within its currency's limits, otherwise false.
    */
   @Override
   public boolean canAddHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
-    return hasAccount(identifier);
+    final long start = metrics.start();
+    try {
+      return store.checkHoldings(store.getAccount(identifier), world, currency, amount).isSuccess();
+    } finally {
+      metrics.record(Operation.CHECK_HOLDINGS, start);
+    }
   }
 
   /**
@@ -1387,11 +1854,11 @@ public class GhostProvider implements EconomyAPI {
    * affect an account's funds.
    * @param identifier The identifier of the account that is associated with this call.
    * @param amount The amount you wish to add to this account.
-   * @return hasAccount(identifier) if a call to the corresponding addHoldings method would return hasAccount(identifier), otherwise false.
+   * @return True if the account exists and the amount can be added within its currency's limits, otherwise false.
    */
   @Override
   public CompletableFuture<Boolean> asyncCanAddHoldings(String identifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canAddHoldings(identifier, amount));
   }
 
   /**
@@ -1399,11 +1866,11 @@ public class GhostProvider implements EconomyAPI {
    * affect an account's funds.
    * @param identifier The identifier of the account that is associated with this call.
    * @param amount The amount you wish to add to this account.
-   * @return hasAccount(identifier) if a call to the corresponding addHoldings method would return hasAccount(identifier), otherwise false.
+   * @return True if the account exists and the amount can be added within its currency's limits, otherwise false.
    */
   @Override
   public CompletableFuture<Boolean> asyncCanAddHoldings(UUID identifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canAddHoldings(identifier, amount));
   }
 
   /**
@@ -1412,11 +1879,11 @@ public class GhostProvider implements EconomyAPI {
    * @param identifier The identifier of the account that is associated with this call.
    * @param amount The amount you wish to add to this account.
    * @param world The name of the {@link World} associated with the amount.
-   * @return hasAccount(identifier) if a call to the corresponding addHoldings method would return hasAccount(identifier), otherwise false.
+   * @return True if the account exists and the amount can be added within its currency's limits, otherwise false.
    */
   @Override
   public CompletableFuture<Boolean> asyncCanAddHoldings(String identifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canAddHoldings(identifier, amount, world));
   }
 
   /**
@@ -1425,11 +1892,11 @@ public class GhostProvider implements EconomyAPI {
    * @param identifier The identifier of the account that is associated with this call.
    * @param amount The amount you wish to add to this account.
    * @param world The name of the {@link World} associated with the amount.
-   * @return hasAccount(identifier) if a call to the corresponding addHoldings method would return hasAccount(identifier), otherwise false.
+   * @return True if the account exists and the amount can be added within its currency's limits, otherwise false.
    */
   @Override
   public CompletableFuture<Boolean> asyncCanAddHoldings(UUID identifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canAddHoldings(identifier, amount, world));
   }
 
   /**
@@ -1439,11 +1906,11 @@ public class GhostProvider implements EconomyAPI {
    * @param amount The amount you wish to add to this account.
    * @param world The name of the {@link World} associated with the amount.
    * @param currency The {@link Currency} associated with the balance.
-   * @return hasAccount(identifier) if a call to the corresponding addHoldings method would return hasAccount(identifier), otherwise false.
+   * @return True if the account exists and the amount can be added within its currency's limits, otherwise false.
    */
   @Override
   public CompletableFuture<Boolean> asyncCanAddHoldings(String identifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canAddHoldings(identifier, amount, world, currency));
   }
 
   /**
@@ -1453,11 +1920,11 @@ public class GhostProvider implements EconomyAPI {
    * @param amount The amount you wish to add to this account.
    * @param world The name of the {@link World} associated with the amount.
    * @param currency The {@link Currency} associated with the balance.
-   * @return hasAccount(identifier) if a call to the corresponding addHoldings method would return hasAccount(identifier), otherwise false.
+   * @return True if the account exists and the amount can be added within its currency's limits, otherwise false.
    */
   @Override
   public CompletableFuture<Boolean> asyncCanAddHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canAddHoldings(identifier, amount, world, currency));
   }
 
   /**
@@ -1468,11 +1935,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean removeHoldings(String identifier, BigDecimal amount) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = stringAccounts.get(identifier);
-    account.setHoldings("world", "Dollar", account.getHoldings("world", "Dollar").subtract(amount));
-    stringAccounts.put(identifier, account);
-    return true;
+    return removeHoldings(identifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -1483,11 +1946,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean removeHoldings(UUID identifier, BigDecimal amount) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = idAccounts.get(identifier);
-    account.setHoldings("world", "Dollar", account.getHoldings("world", "Dollar").subtract(amount));
-    idAccounts.put(identifier, account);
-    return true;
+    return removeHoldings(identifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -1499,11 +1958,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean removeHoldings(String identifier, BigDecimal amount, String world) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = stringAccounts.get(identifier);
-    account.setHoldings(world, "Dollar", account.getHoldings(world, "Dollar").subtract(amount));
-    stringAccounts.put(identifier, account);
-    return true;
+    return removeHoldings(identifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -1515,11 +1970,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean removeHoldings(UUID identifier, BigDecimal amount, String world) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = idAccounts.get(identifier);
-    account.setHoldings(world, "Dollar", account.getHoldings(world, "Dollar").subtract(amount));
-    idAccounts.put(identifier, account);
-    return true;
+    return removeHoldings(identifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -1532,11 +1983,13 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean removeHoldings(String identifier, BigDecimal amount, String world, String currency) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = stringAccounts.get(identifier);
-    account.setHoldings(world, currency, account.getHoldings(world, currency).subtract(amount));
-    stringAccounts.put(identifier, account);
-    return true;
+    final long start = metrics.start();
+    try {
+      if(!admit(identifier, 1)) return false;
+      return store.removeHoldings(store.getAccount(identifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.REMOVE_HOLDINGS, start);
+    }
   }
 
   /**
@@ -1549,11 +2002,13 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean removeHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
-    if(!hasAccount(identifier)) return false;
-    GhostAccount account = idAccounts.get(identifier);
-    account.setHoldings(world, currency, account.getHoldings(world, currency).subtract(amount));
-    idAccounts.put(identifier, account);
-    return true;
+    final long start = metrics.start();
+    try {
+      if(!admit(identifier, 1)) return false;
+      return store.removeHoldings(store.getAccount(identifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.REMOVE_HOLDINGS, start);
+    }
   }
 
   /**
@@ -1564,13 +2019,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncRemoveHoldings(String identifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = stringAccounts.get(identifier);
-      account.setHoldings("world", "Dollar", account.getHoldings("world", "Dollar").subtract(amount));
-      stringAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.REMOVE_HOLDINGS, OperationType.WRITE, ()->removeHoldings(identifier, amount)));
   }
 
   /**
@@ -1581,13 +2030,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncRemoveHoldings(UUID identifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = idAccounts.get(identifier);
-      account.setHoldings("world", "Dollar", account.getHoldings("world", "Dollar").subtract(amount));
-      idAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.REMOVE_HOLDINGS, OperationType.WRITE, ()->removeHoldings(identifier, amount)));
   }
 
   /**
@@ -1599,13 +2042,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncRemoveHoldings(String identifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = stringAccounts.get(identifier);
-      account.setHoldings(world, "Dollar", account.getHoldings(world, "Dollar").subtract(amount));
-      stringAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.REMOVE_HOLDINGS, OperationType.WRITE, ()->removeHoldings(identifier, amount, world)));
   }
 
   /**
@@ -1617,13 +2054,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncRemoveHoldings(UUID identifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = idAccounts.get(identifier);
-      account.setHoldings(world, "Dollar", account.getHoldings(world, "Dollar").subtract(amount));
-      idAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.REMOVE_HOLDINGS, OperationType.WRITE, ()->removeHoldings(identifier, amount, world)));
   }
 
   /**
@@ -1636,13 +2067,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncRemoveHoldings(String identifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = stringAccounts.get(identifier);
-      account.setHoldings(world, currency, account.getHoldings(world, currency).subtract(amount));
-      stringAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.REMOVE_HOLDINGS, OperationType.WRITE, ()->removeHoldings(identifier, amount, world, currency)));
   }
 
   /**
@@ -1655,13 +2080,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncRemoveHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->{
-      if(!hasAccount(identifier)) return false;
-      GhostAccount account = idAccounts.get(identifier);
-      account.setHoldings(world, currency, account.getHoldings(world, currency).subtract(amount));
-      idAccounts.put(identifier, account);
-      return true;
-    });
+    return limited(identifier, 1, false, ()->supply(Operation.REMOVE_HOLDINGS, OperationType.WRITE, ()->removeHoldings(identifier, amount, world, currency)));
   }
 
   /**
@@ -1673,7 +2092,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canRemoveHoldings(String identifier, BigDecimal amount) {
-    return hasAccount(identifier);
+    return canRemoveHoldings(identifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -1685,7 +2104,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canRemoveHoldings(UUID identifier, BigDecimal amount) {
-    return hasAccount(identifier);
+    return canRemoveHoldings(identifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -1698,7 +2117,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canRemoveHoldings(String identifier, BigDecimal amount, String world) {
-    return hasAccount(identifier);
+    return canRemoveHoldings(identifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -1711,7 +2130,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canRemoveHoldings(UUID identifier, BigDecimal amount, String world) {
-    return hasAccount(identifier);
+    return canRemoveHoldings(identifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -1725,7 +2144,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canRemoveHoldings(String identifier, BigDecimal amount, String world, String currency) {
-    return hasAccount(identifier);
+    final long start = metrics.start();
+    try {
+      return store.checkHoldings(store.getAccount(identifier), world, currency, amount.negate()).isSuccess();
+    } finally {
+      metrics.record(Operation.CHECK_HOLDINGS, start);
+    }
   }
 
   /**
@@ -1739,7 +2163,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public boolean canRemoveHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
-    return hasAccount(identifier);
+    final long start = metrics.start();
+    try {
+      return store.checkHoldings(store.getAccount(identifier), world, currency, amount.negate()).isSuccess();
+    } finally {
+      metrics.record(Operation.CHECK_HOLDINGS, start);
+    }
   }
 
   /**
@@ -1751,7 +2180,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanRemoveHoldings(String identifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canRemoveHoldings(identifier, amount));
   }
 
   /**
@@ -1763,7 +2192,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanRemoveHoldings(UUID identifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canRemoveHoldings(identifier, amount));
   }
 
   /**
@@ -1776,7 +2205,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanRemoveHoldings(String identifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canRemoveHoldings(identifier, amount, world));
   }
 
   /**
@@ -1789,7 +2218,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanRemoveHoldings(UUID identifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canRemoveHoldings(identifier, amount, world));
   }
 
   /**
@@ -1803,7 +2232,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanRemoveHoldings(String identifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canRemoveHoldings(identifier, amount, world, currency));
   }
 
   /**
@@ -1817,7 +2246,278 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanRemoveHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->hasAccount(identifier));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canRemoveHoldings(identifier, amount, world, currency));
+  }
+
+  /**
+   * Used to apply many balance changes at once, such as paying every online player. Each account's
+   * lock is taken once for all of its changes, instead of once per addHoldings/removeHoldings call.
+   * @param operations The changes to apply. A positive delta adds funds, a negative one removes them.
+   * @return The result of each change, in the same order as the operations.
+   */
+  public boolean[] changeHoldings(List<HoldingsOperation> operations) {
+    final long start = metrics.start();
+    try {
+      if(!admit(null, operations.size())) return new boolean[operations.size()];
+      return store.changeHoldings(operations);
+    } finally {
+      metrics.record(Operation.CHANGE_HOLDINGS, start);
+    }
+  }
+
+  /**
+   * Used to apply many balance changes at once, such as paying every online player. Each account's
+   * lock is taken once for all of its changes, instead of once per addHoldings/removeHoldings call.
+   * @param operations The changes to apply. A positive delta adds funds, a negative one removes them.
+   * @return The result of each change, in the same order as the operations.
+   */
+  public CompletableFuture<boolean[]> asyncChangeHoldings(List<HoldingsOperation> operations) {
+    return limited(null, operations.size(), new boolean[operations.size()],
+                   ()->supply(Operation.CHANGE_HOLDINGS, OperationType.WRITE, ()->changeHoldings(operations)));
+  }
+
+  /**
+   * Used to transfer funds from one account to another. The debit and credit are applied atomically.
+   * @param fromIdentifier The identifier of the account that the holdings will be coming from.
+   * @param toIdentifier The identifier of the account that the holdings will be going to.
+   * @param amount The amount you wish to remove from this account.
+   * @return True if the funds were transferred.
+   */
+  @Override
+  public boolean transferHoldings(String fromIdentifier, String toIdentifier, BigDecimal amount) {
+    return transferHoldings(fromIdentifier, toIdentifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
+  }
+
+  /**
+   * Used to transfer funds from one account to another. The debit and credit are applied atomically.
+   * @param fromIdentifier The identifier of the account that the holdings will be coming from.
+   * @param toIdentifier The identifier of the account that the holdings will be going to.
+   * @param amount The amount you wish to remove from this account.
+   * @return True if the funds were transferred.
+   */
+  @Override
+  public boolean transferHoldings(UUID fromIdentifier, UUID toIdentifier, BigDecimal amount) {
+    return transferHoldings(fromIdentifier, toIdentifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
+  }
+
+  /**
+   * Used to transfer funds from one account to another. The debit and credit are applied atomically.
+   * @param fromIdentifier The identifier of the account that the holdings will be coming from.
+   * @param toIdentifier The identifier of the account that the holdings will be going to.
+   * @param amount The amount you wish to remove from this account.
+   * @param world The name of the {@link World} associated with the amount.
+   * @return True if the funds were transferred.
+   */
+  @Override
+  public boolean transferHoldings(String fromIdentifier, String toIdentifier, BigDecimal amount, String world) {
+    return transferHoldings(fromIdentifier, toIdentifier, amount, world, currencyDefaultSingular(world));
+  }
+
+  /**
+   * Used to transfer funds from one account to another. The debit and credit are applied atomically.
+   * @param fromIdentifier The identifier of the account that the holdings will be coming from.
+   * @param toIdentifier The identifier of the account that the holdings will be going to.
+   * @param amount The amount you wish to remove from this account.
+   * @param world The name of the {@link World} associated with the amount.
+   * @return True if the funds were transferred.
+   */
+  @Override
+  public boolean transferHoldings(UUID fromIdentifier, UUID toIdentifier, BigDecimal amount, String world) {
+    return transferHoldings(fromIdentifier, toIdentifier, amount, world, currencyDefaultSingular(world));
+  }
+
+  /**
+   * Used to transfer funds from one account to another. The debit and credit are applied atomically.
+   * @param fromIdentifier The identifier of the account that the holdings will be coming from.
+   * @param toIdentifier The identifier of the account that the holdings will be going to.
+   * @param amount The amount you wish to remove from this account.
+   * @param world The name of the {@link World} associated with the amount.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return True if the funds were transferred.
+   */
+  @Override
+  public boolean transferHoldings(String fromIdentifier, String toIdentifier, BigDecimal amount, String world, String currency) {
+    final long start = metrics.start();
+    try {
+      if(!admit(fromIdentifier, 1)) return false;
+      return store.transferHoldings(store.getAccount(fromIdentifier), store.getAccount(toIdentifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.TRANSFER_HOLDINGS, start);
+    }
+  }
+
+  /**
+   * Used to transfer funds from one account to another. The debit and credit are applied atomically.
+   * @param fromIdentifier The identifier of the account that the holdings will be coming from.
+   * @param toIdentifier The identifier of the account that the holdings will be going to.
+   * @param amount The amount you wish to remove from this account.
+   * @param world The name of the {@link World} associated with the amount.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return True if the funds were transferred.
+   */
+  @Override
+  public boolean transferHoldings(UUID fromIdentifier, UUID toIdentifier, BigDecimal amount, String world, String currency) {
+    final long start = metrics.start();
+    try {
+      if(!admit(fromIdentifier, 1)) return false;
+      return store.transferHoldings(store.getAccount(fromIdentifier), store.getAccount(toIdentifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.TRANSFER_HOLDINGS, start);
+    }
+  }
+
+  /**
+   * Used to set an account's funds if the result is within its currency's limits. The limits are checked and the
+   * change is made atomically, so there's no need to call a can method first.
+   * @param identifier The identifier of the account that is associated with this call.
+   * @param amount The amount.
+   * @param world The name of the {@link World} associated with the amount.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return The result, which gives the reason if the change was rejected.
+   */
+  public HoldingsResult trySetHoldings(String identifier, BigDecimal amount, String world, String currency) {
+    final long start = metrics.start();
+    try {
+      if(!admit(identifier, 1)) return HoldingsResult.RATE_LIMITED;
+      return store.trySetHoldings(store.getAccount(identifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.SET_HOLDINGS, start);
+    }
+  }
+
+  /**
+   * Used to set an account's funds if the result is within its currency's limits. The limits are checked and the
+   * change is made atomically, so there's no need to call a can method first.
+   * @param identifier The identifier of the account that is associated with this call.
+   * @param amount The amount.
+   * @param world The name of the {@link World} associated with the amount.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return The result, which gives the reason if the change was rejected.
+   */
+  public HoldingsResult trySetHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
+    final long start = metrics.start();
+    try {
+      if(!admit(identifier, 1)) return HoldingsResult.RATE_LIMITED;
+      return store.trySetHoldings(store.getAccount(identifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.SET_HOLDINGS, start);
+    }
+  }
+
+  /**
+   * Used to add funds to an account if the result is within its currency's limits. The limits are checked and the
+   * change is made atomically, so there's no need to call a can method first.
+   * @param identifier The identifier of the account that is associated with this call.
+   * @param amount The amount.
+   * @param world The name of the {@link World} associated with the amount.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return The result, which gives the reason if the change was rejected.
+   */
+  public HoldingsResult tryAddHoldings(String identifier, BigDecimal amount, String world, String currency) {
+    final long start = metrics.start();
+    try {
+      if(!admit(identifier, 1)) return HoldingsResult.RATE_LIMITED;
+      return store.tryAddHoldings(store.getAccount(identifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.ADD_HOLDINGS, start);
+    }
+  }
+
+  /**
+   * Used to add funds to an account if the result is within its currency's limits. The limits are checked and the
+   * change is made atomically, so there's no need to call a can method first.
+   * @param identifier The identifier of the account that is associated with this call.
+   * @param amount The amount.
+   * @param world The name of the {@link World} associated with the amount.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return The result, which gives the reason if the change was rejected.
+   */
+  public HoldingsResult tryAddHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
+    final long start = metrics.start();
+    try {
+      if(!admit(identifier, 1)) return HoldingsResult.RATE_LIMITED;
+      return store.tryAddHoldings(store.getAccount(identifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.ADD_HOLDINGS, start);
+    }
+  }
+
+  /**
+   * Used to remove funds from an account if the result is within its currency's limits. The limits are checked and the
+   * change is made atomically, so there's no need to call a can method first.
+   * @param identifier The identifier of the account that is associated with this call.
+   * @param amount The amount.
+   * @param world The name of the {@link World} associated with the amount.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return The result, which gives the reason if the change was rejected.
+   */
+  public HoldingsResult tryRemoveHoldings(String identifier, BigDecimal amount, String world, String currency) {
+    final long start = metrics.start();
+    try {
+      if(!admit(identifier, 1)) return HoldingsResult.RATE_LIMITED;
+      return store.tryRemoveHoldings(store.getAccount(identifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.REMOVE_HOLDINGS, start);
+    }
+  }
+
+  /**
+   * Used to remove funds from an account if the result is within its currency's limits. The limits are checked and the
+   * change is made atomically, so there's no need to call a can method first.
+   * @param identifier The identifier of the account that is associated with this call.
+   * @param amount The amount.
+   * @param world The name of the {@link World} associated with the amount.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return The result, which gives the reason if the change was rejected.
+   */
+  public HoldingsResult tryRemoveHoldings(UUID identifier, BigDecimal amount, String world, String currency) {
+    final long start = metrics.start();
+    try {
+      if(!admit(identifier, 1)) return HoldingsResult.RATE_LIMITED;
+      return store.tryRemoveHoldings(store.getAccount(identifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.REMOVE_HOLDINGS, start);
+    }
+  }
+
+  /**
+   * Used to transfer funds from one account to another if both results are within the currency's
+   * limits. The limits are checked and the debit and credit are applied atomically.
+   * @param fromIdentifier The identifier of the account that the holdings will be coming from.
+   * @param toIdentifier The identifier of the account that the holdings will be going to.
+   * @param amount The amount.
+   * @param world The name of the {@link World} associated with the amount.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return The result, which gives the reason if the transfer was rejected.
+   */
+  public HoldingsResult tryTransferHoldings(String fromIdentifier, String toIdentifier, BigDecimal amount, String world, String currency) {
+    final long start = metrics.start();
+    try {
+      if(!admit(fromIdentifier, 1)) return HoldingsResult.RATE_LIMITED;
+      return store.tryTransferHoldings(store.getAccount(fromIdentifier), store.getAccount(toIdentifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.TRANSFER_HOLDINGS, start);
+    }
+  }
+
+  /**
+   * Used to transfer funds from one account to another if both results are within the currency's
+   * limits. The limits are checked and the debit and credit are applied atomically.
+   * @param fromIdentifier The identifier of the account that the holdings will be coming from.
+   * @param toIdentifier The identifier of the account that the holdings will be going to.
+   * @param amount The amount.
+   * @param world The name of the {@link World} associated with the amount.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return The result, which gives the reason if the transfer was rejected.
+   */
+  public HoldingsResult tryTransferHoldings(UUID fromIdentifier, UUID toIdentifier, BigDecimal amount, String world, String currency) {
+    final long start = metrics.start();
+    try {
+      if(!admit(fromIdentifier, 1)) return HoldingsResult.RATE_LIMITED;
+      return store.tryTransferHoldings(store.getAccount(fromIdentifier), store.getAccount(toIdentifier), world, currency, amount);
+    } finally {
+      metrics.record(Operation.TRANSFER_HOLDINGS, start);
+    }
   }
 
   /**
@@ -1831,7 +2531,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncTransferHoldings(String fromIdentifier, String toIdentifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->transferHoldings(fromIdentifier, toIdentifier, amount));
+    return asyncTransferHoldings(fromIdentifier, toIdentifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -1844,7 +2544,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncTransferHoldings(String fromIdentifier, String toIdentifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->transferHoldings(fromIdentifier, toIdentifier, amount, world));
+    return asyncTransferHoldings(fromIdentifier, toIdentifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -1858,7 +2558,11 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncTransferHoldings(String fromIdentifier, String toIdentifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->transferHoldings(fromIdentifier, toIdentifier, amount, world, currency));
+    if(batcher != null) {
+      final long start = metrics.start();
+      return limited(fromIdentifier, 1, false, ()->timed(Operation.TRANSFER_HOLDINGS, start, batcher.submit(new HoldingsTransfer(fromIdentifier, toIdentifier, world, currency, amount))));
+    }
+    return limited(fromIdentifier, 1, false, ()->supply(Operation.TRANSFER_HOLDINGS, OperationType.TRANSFER, ()->transferHoldings(fromIdentifier, toIdentifier, amount, world, currency)));
   }
 
   /**
@@ -1870,7 +2574,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncTransferHoldings(UUID fromIdentifier, UUID toIdentifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->transferHoldings(fromIdentifier, toIdentifier, amount));
+    return asyncTransferHoldings(fromIdentifier, toIdentifier, amount, DEFAULT_WORLD, currencyDefaultSingular());
   }
 
   /**
@@ -1883,7 +2587,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncTransferHoldings(UUID fromIdentifier, UUID toIdentifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->transferHoldings(fromIdentifier, toIdentifier, amount, world));
+    return asyncTransferHoldings(fromIdentifier, toIdentifier, amount, world, currencyDefaultSingular(world));
   }
 
   /**
@@ -1897,7 +2601,11 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncTransferHoldings(UUID fromIdentifier, UUID toIdentifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->transferHoldings(fromIdentifier, toIdentifier, amount, world, currency));
+    if(batcher != null) {
+      final long start = metrics.start();
+      return limited(fromIdentifier, 1, false, ()->timed(Operation.TRANSFER_HOLDINGS, start, batcher.submit(new HoldingsTransfer(fromIdentifier, toIdentifier, world, currency, amount))));
+    }
+    return limited(fromIdentifier, 1, false, ()->supply(Operation.TRANSFER_HOLDINGS, OperationType.TRANSFER, ()->transferHoldings(fromIdentifier, toIdentifier, amount, world, currency)));
   }
 
   /**
@@ -1910,7 +2618,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanTransferHoldings(String fromIdentifier, String toIdentifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->canTransferHoldings(fromIdentifier, toIdentifier, amount));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canTransferHoldings(fromIdentifier, toIdentifier, amount));
   }
 
   /**
@@ -1924,7 +2632,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanTransferHoldings(String fromIdentifier, String toIdentifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->canTransferHoldings(fromIdentifier, toIdentifier, amount, world));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canTransferHoldings(fromIdentifier, toIdentifier, amount, world));
   }
 
   /**
@@ -1939,7 +2647,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanTransferHoldings(String fromIdentifier, String toIdentifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->canTransferHoldings(fromIdentifier, toIdentifier, amount, world, currency));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canTransferHoldings(fromIdentifier, toIdentifier, amount, world, currency));
   }
 
   /**
@@ -1952,7 +2660,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanTransferHoldings(UUID fromIdentifier, UUID toIdentifier, BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->canTransferHoldings(fromIdentifier, toIdentifier, amount));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canTransferHoldings(fromIdentifier, toIdentifier, amount));
   }
 
   /**
@@ -1969,7 +2677,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanTransferHoldings(UUID fromIdentifier, UUID toIdentifier, BigDecimal amount, String world) {
-    return CompletableFuture.supplyAsync(()->canTransferHoldings(fromIdentifier, toIdentifier, amount, world));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canTransferHoldings(fromIdentifier, toIdentifier, amount, world));
   }
 
   /**
@@ -1987,7 +2695,7 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncCanTransferHoldings(UUID fromIdentifier, UUID toIdentifier, BigDecimal amount, String world, String currency) {
-    return CompletableFuture.supplyAsync(()->canTransferHoldings(fromIdentifier, toIdentifier, amount, world, currency));
+    return supply(Operation.CHECK_HOLDINGS, OperationType.READ, ()->canTransferHoldings(fromIdentifier, toIdentifier, amount, world, currency));
   }
 
   /**
@@ -1997,7 +2705,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public String format(BigDecimal amount) {
-    return "Ghost Formatted: " + amount.toPlainString();
+    final long start = metrics.start();
+    try {
+      return formatter.format(amount, currencyDefaultSingular());
+    } finally {
+      metrics.record(Operation.FORMAT, start);
+    }
   }
 
   /**
@@ -2008,7 +2721,12 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public String format(BigDecimal amount, String world) {
-    return "Ghost Formatted: " + amount.toPlainString();
+    final long start = metrics.start();
+    try {
+      return formatter.format(amount, currencyDefaultSingular(world));
+    } finally {
+      metrics.record(Operation.FORMAT, start);
+    }
   }
 
   /**
@@ -2020,26 +2738,34 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public String format(BigDecimal amount, String world, String currency) {
-    return "Ghost Formatted: " + amount.toPlainString();
+    final long start = metrics.start();
+    try {
+      return formatter.format(amount, currency);
+    } finally {
+      metrics.record(Operation.FORMAT, start);
+    }
   }
 
   /**
-   * Purges the database of accounts with the default balance.
-   * @return True if the purge was completed successfully.
+   * Purges the database of accounts with the default balance. A purge waits for every account to be
+   * loaded and then checks each of them, so it's started on Ghost's purge thread and this returns
+   * straight away; {@link #asyncPurgeAccounts()} tells when it's done.
+   * @return True if the purge was started, false if Ghost is shutting down or too busy.
    */
   @Override
   public boolean purgeAccounts() {
-    return true;
+    return !asyncPurgeAccounts().isCompletedExceptionally();
   }
 
   /**
-   * Purges the database of accounts with a balance under the specified one.
+   * Purges the database of accounts with a balance under the specified one. Started on Ghost's purge
+   * thread like {@link #purgeAccounts()}, so this returns straight away.
    * @param amount The amount that an account's balance has to be under in order to be removed.
-   * @return True if the purge was completed successfully.
+   * @return True if the purge was started, false if Ghost is shutting down or too busy.
    */
   @Override
   public boolean purgeAccountsUnder(BigDecimal amount) {
-    return true;
+    return !asyncPurgeAccountsUnder(amount).isCompletedExceptionally();
   }
 
   /**
@@ -2048,7 +2774,10 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncPurgeAccounts() {
-    return CompletableFuture.supplyAsync(()->true);
+    return supply(Operation.PURGE, OperationType.PURGE, ()->{
+      purgeEmpty();
+      return true;
+    });
   }
 
   /**
@@ -2058,6 +2787,258 @@ public class GhostProvider implements EconomyAPI {
    */
   @Override
   public CompletableFuture<Boolean> asyncPurgeAccountsUnder(BigDecimal amount) {
-    return CompletableFuture.supplyAsync(()->true);
+    return supply(Operation.PURGE, OperationType.PURGE, ()->{
+      purgeUnder(amount);
+      return true;
+    });
+  }
+
+  /**
+   * Used to remove every account that has no balance other than zero. Runs on Ghost's purge thread
+   * and blocks until every account has been loaded and checked, which can take seconds on a large
+   * economy, so it shouldn't be called from the server thread; use {@link #asyncRemoveDefaultAccounts()}.
+   * @return The number of accounts removed, or zero if the purge couldn't run.
+   */
+  public int removeDefaultAccounts() {
+    if(GhostExecutor.isWorkerThread()) return purgeEmpty();
+    return await(asyncRemoveDefaultAccounts());
+  }
+
+  /**
+   * Used to remove every account whose balances are all under the specified amount. Blocks like
+   * {@link #removeDefaultAccounts()}; use {@link #asyncRemoveAccountsUnder} from the server thread.
+   * @param amount The amount that every balance of an account has to be under in order to be removed.
+   * @return The number of accounts removed, or zero if the purge couldn't run.
+   */
+  public int removeAccountsUnder(BigDecimal amount) {
+    if(GhostExecutor.isWorkerThread()) return purgeUnder(amount);
+    return await(asyncRemoveAccountsUnder(amount));
+  }
+
+  /**
+   * Used to remove every account that has no balance other than zero.
+   * @return The number of accounts removed.
+   */
+  public CompletableFuture<Integer> asyncRemoveDefaultAccounts() {
+    return supply(Operation.PURGE, OperationType.PURGE, this::purgeEmpty);
+  }
+
+  /**
+   * Used to remove every account whose balances are all under the specified amount.
+   * @param amount The amount that every balance of an account has to be under in order to be removed.
+   * @return The number of accounts removed.
+   */
+  public CompletableFuture<Integer> asyncRemoveAccountsUnder(BigDecimal amount) {
+    return supply(Operation.PURGE, OperationType.PURGE, ()->purgeUnder(amount));
+  }
+
+  private int purgeEmpty() {
+    persistence.awaitLoadedQuietly();
+    return purger.purgeEmpty();
+  }
+
+  private int purgeUnder(BigDecimal amount) {
+    persistence.awaitLoadedQuietly();
+    return purger.purgeUnder(amount);
+  }
+
+  private int await(CompletableFuture<Integer> purge) {
+    try {
+      return purge.join();
+    } catch(CompletionException | CancellationException e) {
+      logger.log(Level.WARNING, "Unable to purge Ghost accounts.", e);
+      return 0;
+    }
+  }
+
+  /**
+   * Used to write every account and balance to a compressed ledger file, which can be imported into
+   * this or another server with {@link #importLedger}. Blocks until the ledger is written.
+   * @param file The ledger file, replaced if it exists.
+   * @param progress Told the number of accounts exported as the export runs.
+   * @return The number of accounts exported.
+   * @throws IOException If the ledger can't be written.
+   */
+  public long exportLedger(File file, LedgerProgress progress) throws IOException {
+    persistence.awaitLoadedQuietly();
+    return exporter.export(file, progress);
+  }
+
+  /**
+   * Used to read a ledger file written by {@link #exportLedger} into the economy. Accounts that don't
+   * exist are created, and the imported balances replace existing ones. Blocks until the ledger is read.
+   * @param file The ledger file.
+   * @param progress Told the number of bytes read as the import runs.
+   * @return The number of accounts imported.
+   * @throws IOException If the ledger can't be read or is corrupt.
+   */
+  public long importLedger(File file, LedgerProgress progress) throws IOException {
+    persistence.awaitLoadedQuietly();
+    return importer.importLedger(file, progress);
+  }
+
+  /**
+   * Used to be told about every balance change from now on, instead of polling balances. Changes are
+   * read with {@link ChangeSubscription#poll()}, on whichever thread suits the subscriber. Changes are
+   * never waited on, so a subscriber that falls far behind skips the oldest ones.
+   * @param batchSize The most changes returned by one poll.
+   * @param coalesce True to merge the changes to the same balance within a batch into one.
+   * @return The subscription, to be closed once it's no longer needed, or null if change
+   * notifications are disabled.
+   */
+  public ChangeSubscription subscribeChanges(int batchSize, boolean coalesce) {
+    return (changes == null)? null : changes.subscribe(batchSize, coalesce);
+  }
+
+  /**
+   * Used to be told about every balance change from now on, instead of polling balances. Changes are
+   * delivered in batches on a thread of the subscription's own, never the thread making the change.
+   * @param consumer Receives each batch of changes.
+   * @param batchSize The most changes delivered at once.
+   * @param coalesce True to merge the changes to the same balance within a batch into one.
+   * @return The subscription, to be closed once it's no longer needed, or null if change
+   * notifications are disabled.
+   */
+  public ChangeSubscription subscribeChanges(Consumer<List<BalanceChange>> consumer, int batchSize, boolean coalesce) {
+    return (changes == null)? null : changes.subscribe(consumer, batchSize, coalesce);
+  }
+
+  /**
+   * @return True once every stored account has been loaded. Until then, leaderboards read without
+   * the async methods only rank the accounts loaded so far.
+   */
+  public boolean isLoaded() {
+    return persistence.isLoaded();
+  }
+
+  /**
+   * Used to get the highest balances in a world and currency. Never waits for stored accounts to
+   * load, so until {@link #isLoaded()} the leaderboards only rank the accounts loaded so far; the
+   * async leaderboard methods wait for them.
+   * @param world The name of the {@link World} associated with the balances.
+   * @param currency The {@link Currency} associated with the balances.
+   * @param count The maximum number of balances to return.
+   * @return The highest balances, highest first, or an empty list if leaderboards are disabled.
+   */
+  public List<RankedBalance> getTopHoldings(String world, String currency, int count) {
+    return getRankedHoldings(world, currency, 0, count);
+  }
+
+  /**
+   * Used to get a page of a world and currency's leaderboard.
+   * @param world The name of the {@link World} associated with the balances.
+   * @param currency The {@link Currency} associated with the balances.
+   * @param offset The number of balances to skip from the top.
+   * @param count The maximum number of balances to return.
+   * @return The balances from this position down, highest first, or an empty list if leaderboards
+   * are disabled.
+   */
+  public List<RankedBalance> getRankedHoldings(String world, String currency, int offset, int count) {
+    if(ranking == null) return Collections.emptyList();
+
+    final long start = metrics.start();
+    try {
+      return ranking.getRange(world, currency, offset, count);
+    } finally {
+      metrics.record(Operation.RANKING, start);
+    }
+  }
+
+  /**
+   * Used to get the leaderboard position of an account's balance.
+   * @param identifier The identifier of the account.
+   * @param world The name of the {@link World} associated with the balance.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return The rank of the balance, starting at 1 for the highest, or -1 if the account has no
+   * balance here or leaderboards are disabled.
+   */
+  public int getRank(String identifier, String world, String currency) {
+    if(ranking == null) return -1;
+
+    final long start = metrics.start();
+    try {
+      return ranking.getRank(store.getAccount(identifier), world, currency);
+    } finally {
+      metrics.record(Operation.RANKING, start);
+    }
+  }
+
+  /**
+   * Used to get the leaderboard position of an account's balance.
+   * @param identifier The {@link UUID} of the account.
+   * @param world The name of the {@link World} associated with the balance.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return The rank of the balance, starting at 1 for the highest, or -1 if the account has no
+   * balance here or leaderboards are disabled.
+   */
+  public int getRank(UUID identifier, String world, String currency) {
+    if(ranking == null) return -1;
+
+    final long start = metrics.start();
+    try {
+      return ranking.getRank(store.getAccount(identifier), world, currency);
+    } finally {
+      metrics.record(Operation.RANKING, start);
+    }
+  }
+
+  /**
+   * Used to get the number of balances on a world and currency's leaderboard, for paging it.
+   * @param world The name of the {@link World} associated with the balances.
+   * @param currency The {@link Currency} associated with the balances.
+   * @return The number of accounts with a balance other than zero, or zero if leaderboards are disabled.
+   */
+  public int getRankedCount(String world, String currency) {
+    if(ranking == null) return 0;
+
+    return ranking.size(world, currency);
+  }
+
+  /**
+   * Used to get the highest balances in a world and currency.
+   * @param world The name of the {@link World} associated with the balances.
+   * @param currency The {@link Currency} associated with the balances.
+   * @param count The maximum number of balances to return.
+   * @return The highest balances, highest first, or an empty list if leaderboards are disabled.
+   */
+  public CompletableFuture<List<RankedBalance>> asyncGetTopHoldings(String world, String currency, int count) {
+    return persistence.getLoaded().thenCompose((ignore)->supply(Operation.RANKING, OperationType.READ, ()->getTopHoldings(world, currency, count)));
+  }
+
+  /**
+   * Used to get a page of a world and currency's leaderboard.
+   * @param world The name of the {@link World} associated with the balances.
+   * @param currency The {@link Currency} associated with the balances.
+   * @param offset The number of balances to skip from the top.
+   * @param count The maximum number of balances to return.
+   * @return The balances from this position down, highest first, or an empty list if leaderboards
+   * are disabled.
+   */
+  public CompletableFuture<List<RankedBalance>> asyncGetRankedHoldings(String world, String currency, int offset, int count) {
+    return persistence.getLoaded().thenCompose((ignore)->supply(Operation.RANKING, OperationType.READ, ()->getRankedHoldings(world, currency, offset, count)));
+  }
+
+  /**
+   * Used to get the leaderboard position of an account's balance.
+   * @param identifier The identifier of the account.
+   * @param world The name of the {@link World} associated with the balance.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return The rank of the balance, starting at 1 for the highest, or -1 if the account has no
+   * balance here or leaderboards are disabled.
+   */
+  public CompletableFuture<Integer> asyncGetRank(String identifier, String world, String currency) {
+    return persistence.getLoaded().thenCompose((ignore)->supply(Operation.RANKING, OperationType.READ, ()->getRank(identifier, world, currency)));
+  }
+
+  /**
+   * Used to get the leaderboard position of an account's balance.
+   * @param identifier The {@link UUID} of the account.
+   * @param world The name of the {@link World} associated with the balance.
+   * @param currency The {@link Currency} associated with the balance.
+   * @return The rank of the balance, starting at 1 for the highest, or -1 if the account has no
+   * balance here or leaderboards are disabled.
+   */
+  public CompletableFuture<Integer> asyncGetRank(UUID identifier, String world, String currency) {
+    return persistence.getLoaded().thenCompose((ignore)->supply(Operation.RANKING, OperationType.READ, ()->getRank(identifier, world, currency)));
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,336 @@
+package net.tnemc.ghost.core.access;
+
+import net.tnemc.ghost.core.account.AccountIndex;
+import net.tnemc.ghost.core.account.AccountListener;
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.io.GhostIO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The accessors of shared accounts, such as banks and factions, and whether each may withdraw from
+ * or deposit into them. The owner of an account, the player with its UUID or the holder of its
+ * identifier, can always do both, and anyone else needs to be granted access first.
+ *
+ * Accounts and accessors are keyed by UUID, or by identifier if they aren't a known player, so
+ * checks never load an account and grants survive the account being unloaded by the cache. Every
+ * accessor gets a compact id, and each account's accessors are an {@link AccessList} checked without
+ * a lock. Most checks are made for players who aren't accessors at all, so denials are remembered in
+ * a small direct-mapped cache keyed by the arguments as given, which skips resolving names on the
+ * next check. Every change to the lists bumps an epoch that invalidates the whole cache.
+ *
+ * Grants are rare, so the lists are saved to their own file on every change.
+ */
+public class AccessControl implements AccountListener {
+
+  public static final int WITHDRAW = 1;
+  public static final int DEPOSIT = 2;
+
+  private static final int MAGIC = 0x47484143; //GHAC
+  private static final int VERSION = 1;
+
+  private final Map<Object, AccessList> lists = new ConcurrentHashMap<>();
+  private final Map<Object, Integer> ids = new ConcurrentHashMap<>();
+
+  //The accessor of each id, guarded by this object's monitor along with every change to the lists.
+  private final List<Object> accessors = new ArrayList<>();
+
+  private final AtomicLong epoch = new AtomicLong();
+  private final AtomicReferenceArray<Denial> denials;
+  private final int mask;
+
+  private final AccountIndex index;
+  private final File file;
+  private final Logger logger;
+
+  /**
+   * @param index The identity index of the store, for resolving player names.
+   * @param file The file the lists are kept in, or null to keep them in memory only.
+   * @param cacheSize The number of denials remembered, rounded up to a power of two.
+   * @param logger The logger.
+   */
+  public AccessControl(AccountIndex index, File file, int cacheSize, Logger logger) {
+    this.index = index;
+    this.file = file;
+    this.logger = logger;
+
+    final int size = Integer.highestOneBit(Math.max(16, Math.min(1 << 16, cacheSize) - 1) << 1);
+    this.denials = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /**
+   * @param account The UUID or identifier of the account.
+   * @param accessor The UUID or name of the player, or the identifier of the accessor.
+   * @return True if the accessor owns the account or has been granted any access to it.
+   */
+  public boolean isAccessor(Object account, Object accessor) {
+    return check(account, accessor, 0);
+  }
+
+  /**
+   * @param account The UUID or identifier of the account.
+   * @param accessor The UUID or name of the player, or the identifier of the accessor.
+   * @return True if the accessor owns the account or has been granted withdraw access to it.
+   */
+  public boolean canWithdraw(Object account, Object accessor) {
+    return check(account, accessor, WITHDRAW);
+  }
+
+  /**
+   * @param account The UUID or identifier of the account.
+   * @param accessor The UUID or name of the player, or the identifier of the accessor.
+   * @return True if the accessor owns the account or has been granted deposit access to it.
+   */
+  public boolean canDeposit(Object account, Object accessor) {
+    return check(account, accessor, DEPOSIT);
+  }
+
+  private boolean check(Object account, Object accessor, int flag) {
+    //Read first, so a denial cached from lists older than a change is already stale.
+    final long current = epoch.get();
+    final int slot = (account.hashCode() * 31 + accessor.hashCode()) * 0x9E3779B9 >>> 16 & mask;
+    final Denial denial = denials.get(slot);
+    if(denial != null && denial.epoch == current && denial.account.equals(account) && denial.accessor.equals(accessor)) {
+      return false;
+    }
+
+    final Object owner = key(account);
+    final Object user = key(accessor);
+    if(owner.equals(user)) return true;
+
+    final AccessList list = lists.get(owner);
+    final Integer id = ids.get(user);
+    final int flags = (list == null || id == null)? -1 : list.flags(id);
+    if(flags < 0) {
+      denials.set(slot, new Denial(account, accessor, current));
+      return false;
+    }
+    return (flags & flag) == flag;
+  }
+
+  /**
+   * Grants access to an account, or changes the access already granted.
+   * @param account The UUID or identifier of the account.
+   * @param accessor The UUID or name of the player, or the identifier of the accessor.
+   * @param withdraw True if the accessor may withdraw from the account.
+   * @param deposit True if the accessor may deposit into the account.
+   * @return True if the access changed.
+   */
+  public synchronized boolean grant(Object account, Object accessor, boolean withdraw, boolean deposit) {
+    final Object owner = key(account);
+    final Object user = key(accessor);
+    if(owner.equals(user)) return false;
+
+    Integer id = ids.get(user);
+    if(id == null) {
+      id = accessors.size();
+      accessors.add(user);
+      ids.put(user, id);
+    }
+
+    final AccessList list = lists.getOrDefault(owner, AccessList.EMPTY);
+    final AccessList changed = list.with(id, ((withdraw)? WITHDRAW : 0) | ((deposit)? DEPOSIT : 0));
+    if(changed == list) return false;
+
+    publish(owner, changed);
+    return true;
+  }
+
+  /**
+   * Removes every access an accessor has to an account.
+   * @param account The UUID or identifier of the account.
+   * @param accessor The UUID or name of the player, or the identifier of the accessor.
+   * @return True if the accessor had access.
+   */
+  public synchronized boolean revoke(Object account, Object accessor) {
+    final Object owner = key(account);
+    final Integer id = ids.get(key(accessor));
+    final AccessList list = lists.get(owner);
+    if(id == null || list == null) return false;
+
+    final AccessList changed = list.without(id);
+    if(changed == list) return false;
+
+    publish(owner, changed);
+    return true;
+  }
+
+  /**
+   * @param account The UUID or identifier of the account.
+   * @return The number of accessors granted access to the account, not counting its owner.
+   */
+  public int size(Object account) {
+    final AccessList list = lists.get(key(account));
+    return (list == null)? 0 : list.size();
+  }
+
+  /**
+   * Reads the lists saved by an earlier run. Called once on startup, before any checks.
+   */
+  public synchronized void load() {
+    if(file == null || !file.isFile()) return;
+
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if(in.readInt() != MAGIC || in.readInt() != VERSION) throw new IOException("Unknown format.");
+
+      final int count = GhostIO.readVarInt(in);
+      for(int i = 0; i < count; i++) {
+        final Object owner = readKey(in);
+        AccessList list = lists.getOrDefault(owner, AccessList.EMPTY);
+        final int members = GhostIO.readVarInt(in);
+        for(int member = 0; member < members; member++) {
+          final Object user = readKey(in);
+          Integer id = ids.get(user);
+          if(id == null) {
+            id = accessors.size();
+            accessors.add(user);
+            ids.put(user, id);
+          }
+          list = list.with(id, in.readByte());
+        }
+        if(list.size() > 0) lists.put(owner, list);
+      }
+      epoch.incrementAndGet();
+    } catch(IOException e) {
+      logger.log(Level.SEVERE, "Unable to read the account accessors in " + file.getName() + ".", e);
+    }
+  }
+
+  @Override
+  public void accountDeleted(GhostAccount account) {
+    final Object owner = (account.getId() != null)? account.getId() : account.getName();
+    if(!lists.containsKey(owner)) return;
+
+    //A new account under the same identifier mustn't inherit the old one's accessors.
+    synchronized(this) {
+      if(lists.remove(owner) != null) {
+        epoch.incrementAndGet();
+        save();
+      }
+    }
+  }
+
+  @Override
+  public void accountIdentified(UUID id, String name) {
+    synchronized(this) {
+      //Names resolve differently now, so cached denials may be wrong.
+      epoch.incrementAndGet();
+
+      //Accessors granted to a string account from before the player was identified follow its
+      //balances into the player's account.
+      final AccessList legacy = lists.remove(name);
+      if(legacy == null) return;
+
+      AccessList list = lists.getOrDefault(id, AccessList.EMPTY);
+      for(int position = 0; position < legacy.size(); position++) {
+        if(!accessors.get(legacy.member(position)).equals(id)) list = list.with(legacy.member(position), legacy.flagsAt(position));
+      }
+      publish(id, list);
+    }
+  }
+
+  private void publish(Object owner, AccessList list) {
+    if(list.size() == 0) lists.remove(owner); else lists.put(owner, list);
+
+    //After the list, so a check that read the old list caches its denial under the old epoch.
+    epoch.incrementAndGet();
+    save();
+  }
+
+  /**
+   * @return The UUID of the player using this name, unless an account is registered under exactly
+   * this identifier, otherwise the identifier itself.
+   */
+  private Object key(Object identifier) {
+    if(identifier instanceof UUID) return identifier;
+
+    final String name = (String)identifier;
+    if(index.get(name) != null) return name;
+
+    final UUID player = index.getPlayer(name);
+    return (player != null)? player : name;
+  }
+
+  private void save() {
+    if(file == null) return;
+
+    final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+    try {
+      try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        GhostIO.writeVarInt(out, lists.size());
+        for(Map.Entry<Object, AccessList> entry : lists.entrySet()) {
+          final AccessList list = entry.getValue();
+          writeKey(out, entry.getKey());
+          GhostIO.writeVarInt(out, list.size());
+          for(int position = 0; position < list.size(); position++) {
+            writeKey(out, accessors.get(list.member(position)));
+            out.writeByte(list.flagsAt(position));
+          }
+        }
+      }
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch(IOException e) {
+      logger.log(Level.SEVERE, "Unable to save the account accessors to " + file.getName() + ".", e);
+    }
+  }
+
+  private static void writeKey(DataOutputStream out, Object key) throws IOException {
+    out.writeBoolean(key instanceof UUID);
+    if(key instanceof UUID) GhostIO.writeUUID(out, (UUID)key); else out.writeUTF((String)key);
+  }
+
+  private static Object readKey(DataInputStream in) throws IOException {
+    return (in.readBoolean())? GhostIO.readUUID(in) : in.readUTF();
+  }
+
+  private static final class Denial {
+
+    final Object account;
+    final Object accessor;
+    final long epoch;
+
+    Denial(Object account, Object accessor, long epoch) {
+      this.account = account;
+      this.accessor = accessor;
+      this.epoch = epoch;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package net.tnemc.ghost.core.access;
+
+import java.util.Arrays;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The accessors of a single account and what each may do, as a sorted array of accessor ids with a
+ * withdraw and a deposit bitset indexed by position in it. Lists are immutable, so they're checked
+ * without a lock, and every change publishes a copy.
+ */
+final class AccessList {
+
+  static final AccessList EMPTY = new AccessList(new int[0], new long[0], new long[0]);
+
+  private final int[] members;
+  private final long[] withdraw;
+  private final long[] deposit;
+
+  private AccessList(int[] members, long[] withdraw, long[] deposit) {
+    this.members = members;
+    this.withdraw = withdraw;
+    this.deposit = deposit;
+  }
+
+  /**
+   * @param id The accessor id.
+   * @return The {@link AccessControl#WITHDRAW} and {@link AccessControl#DEPOSIT} flags of the
+   * accessor, or -1 if it isn't an accessor of this account.
+   */
+  int flags(int id) {
+    final int position = Arrays.binarySearch(members, id);
+    return (position < 0)? -1 : flagsAt(position);
+  }
+
+  int size() {
+    return members.length;
+  }
+
+  int member(int position) {
+    return members[position];
+  }
+
+  int flagsAt(int position) {
+    return ((isSet(withdraw, position))? AccessControl.WITHDRAW : 0) | ((isSet(deposit, position))? AccessControl.DEPOSIT : 0);
+  }
+
+  /**
+   * @return A copy of this list with the accessor added, or its flags replaced if it's already here.
+   */
+  AccessList with(int id, int flags) {
+    final int position = Arrays.binarySearch(members, id);
+    if(position >= 0) {
+      if(flagsAt(position) == flags) return this;
+
+      final long[] withdrawCopy = withdraw.clone();
+      final long[] depositCopy = deposit.clone();
+      set(withdrawCopy, position, (flags & AccessControl.WITHDRAW) != 0);
+      set(depositCopy, position, (flags & AccessControl.DEPOSIT) != 0);
+      return new AccessList(members, withdrawCopy, depositCopy);
+    }
+
+    final int insert = -position - 1;
+    final int size = members.length + 1;
+    final int[] membersCopy = new int[size];
+    System.arraycopy(members, 0, membersCopy, 0, insert);
+    membersCopy[insert] = id;
+    System.arraycopy(members, insert, membersCopy, insert + 1, members.length - insert);
+
+    final long[] withdrawCopy = new long[(size + 63) >>> 6];
+    final long[] depositCopy = new long[withdrawCopy.length];
+    for(int i = 0; i < size; i++) {
+      final int from = (i < insert)? i : i - 1;
+      set(withdrawCopy, i, (i == insert)? (flags & AccessControl.WITHDRAW) != 0 : isSet(withdraw, from));
+      set(depositCopy, i, (i == insert)? (flags & AccessControl.DEPOSIT) != 0 : isSet(deposit, from));
+    }
+    return new AccessList(membersCopy, withdrawCopy, depositCopy);
+  }
+
+  /**
+   * @return A copy of this list without the accessor, or this list if it isn't here.
+   */
+  AccessList without(int id) {
+    final int position = Arrays.binarySearch(members, id);
+    if(position < 0) return this;
+    if(members.length == 1) return EMPTY;
+
+    final int size = members.length - 1;
+    final int[] membersCopy = new int[size];
+    System.arraycopy(members, 0, membersCopy, 0, position);
+    System.arraycopy(members, position + 1, membersCopy, position, size - position);
+
+    final long[] withdrawCopy = new long[(size + 63) >>> 6];
+    final long[] depositCopy = new long[withdrawCopy.length];
+    for(int i = 0; i < size; i++) {
+      final int from = (i < position)? i : i + 1;
+      set(withdrawCopy, i, isSet(withdraw, from));
+      set(depositCopy, i, isSet(deposit, from));
+    }
+    return new AccessList(membersCopy, withdrawCopy, depositCopy);
+  }
+
+  private static boolean isSet(long[] bits, int position) {
+    return (bits[position >>> 6] & (1L << position)) != 0L;
+  }
+
+  private static void set(long[] bits, int position, boolean value) {
+    if(value) bits[position >>> 6] |= 1L << position; else bits[position >>> 6] &= ~(1L << position);
+  }
+}
@@ -0,0 +1,239 @@
+package net.tnemc.ghost.core.account;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The identity index of a {@link GhostAccountStore}. Every registered account gets a compact id, its
+ * slot in a flat table, and is indexed by its UUID or its string identifier. Player names are a
+ * separate index from name to UUID, so an account looked up by a player's name resolves to the same
+ * account as one looked up by their UUID, and a rename only replaces the name entries.
+ *
+ * Names are matched case-insensitively. Each name is indexed both as it was last seen and lower
+ * cased, so a lookup with the exact name doesn't allocate.
+ *
+ * String accounts known to have been a player's account from before their UUID was known are marked
+ * as legacy, and only those are merged into the player's UUID account once the player is identified.
+ */
+public class AccountIndex {
+
+  private final Map<UUID, GhostAccount> ids = new ConcurrentHashMap<>();
+
+  private final Map<String, GhostAccount> identifiers = new ConcurrentHashMap<>();
+
+  private final Map<String, UUID> names = new ConcurrentHashMap<>();
+
+  //The current name of each known player, guarded by this index's monitor along with the name index.
+  private final Map<UUID, String> players = new HashMap<>();
+
+  private final Set<String> legacy = ConcurrentHashMap.newKeySet();
+
+  private volatile GhostAccount[] slots = new GhostAccount[64];
+  private int[] free = new int[16];
+  private int freeCount = 0;
+  private int next = 0;
+  private int size = 0;
+
+  public GhostAccount get(UUID id) {
+    return ids.get(id);
+  }
+
+  /**
+   * @param identifier The string identifier of the account.
+   * @return The account registered under exactly this identifier, or null. Player names aren't
+   * resolved, see {@link #getPlayer(String)}.
+   */
+  public GhostAccount get(String identifier) {
+    return identifiers.get(identifier);
+  }
+
+  /**
+   * @param index The compact id of the account.
+   * @return The account with this compact id, or null if the slot is empty.
+   */
+  public GhostAccount get(int index) {
+    final GhostAccount[] current = slots;
+    return (index >= 0 && index < current.length)? current[index] : null;
+  }
+
+  /**
+   * @param name The name of the player, in any case.
+   * @return The UUID of the player that last used this name, or null if no player has.
+   */
+  public UUID getPlayer(String name) {
+    final UUID id = names.get(name);
+    return (id != null)? id : names.get(name.toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * @param id The UUID of the player.
+   * @return The name this player was last seen with, or null if it isn't known.
+   */
+  public synchronized String getName(UUID id) {
+    return players.get(id);
+  }
+
+  /**
+   * @return A copy of every known player, mapped to their current name.
+   */
+  public synchronized Map<UUID, String> getPlayers() {
+    return new HashMap<>(players);
+  }
+
+  /**
+   * Records the current name of a player. The player's previous name is dropped, and if another
+   * player last used this name, it's taken from them.
+   * @param id The UUID of the player.
+   * @param name The current name of the player.
+   * @return The name the player had before, or null if none was known.
+   */
+  public synchronized String link(UUID id, String name) {
+    final String previous = players.put(id, name);
+    if(previous != null && !previous.equals(name)) {
+      names.remove(previous, id);
+      names.remove(previous.toLowerCase(Locale.ROOT), id);
+    }
+
+    final String lower = name.toLowerCase(Locale.ROOT);
+    final UUID owner = names.get(lower);
+    if(owner != null && !owner.equals(id)) {
+      final String stale = players.remove(owner);
+      if(stale != null) names.remove(stale, owner);
+    }
+
+    names.put(lower, id);
+    names.put(name, id);
+    return previous;
+  }
+
+  /**
+   * Registers an account under its UUID, or under its name if it doesn't have one.
+   * @param account The account.
+   * @return True if it was registered, false if another account is already registered under the same
+   * identifier.
+   */
+  public boolean putIfAbsent(GhostAccount account) {
+    final boolean added = (account.getId() != null)? ids.putIfAbsent(account.getId(), account) == null
+                                                   : identifiers.putIfAbsent(account.getName(), account) == null;
+    if(added) assign(account);
+    return added;
+  }
+
+  /**
+   * Unregisters an account and frees its compact id.
+   * @param account The account.
+   * @return True if the account was registered and has been removed.
+   */
+  public boolean remove(GhostAccount account) {
+    final boolean removed = (account.getId() != null)? ids.remove(account.getId(), account)
+                                                     : identifiers.remove(account.getName(), account);
+    if(removed) release(account);
+    return removed;
+  }
+
+  /**
+   * Marks a string identifier as a legacy player account.
+   * @param identifier The exact identifier of the string account.
+   * @return True if it wasn't marked already.
+   */
+  public boolean markLegacy(String identifier) {
+    return legacy.add(identifier);
+  }
+
+  /**
+   * @param identifier The exact identifier of the string account.
+   * @return True if it was marked and no longer is.
+   */
+  public boolean unmarkLegacy(String identifier) {
+    return legacy.remove(identifier);
+  }
+
+  /**
+   * @param identifier The exact identifier of a string account.
+   * @return True if it's marked as a legacy player account.
+   */
+  public boolean isLegacy(String identifier) {
+    return legacy.contains(identifier);
+  }
+
+  /**
+   * @return A copy of every identifier marked as a legacy player account.
+   */
+  public Set<String> getLegacy() {
+    return new HashSet<>(legacy);
+  }
+
+  public Collection<GhostAccount> getIdAccounts() {
+    return ids.values();
+  }
+
+  public Collection<GhostAccount> getStringAccounts() {
+    return identifiers.values();
+  }
+
+  /**
+   * @return The number of registered accounts.
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  /**
+   * @return One more than the highest compact id handed out so far, for sizing tables indexed by it.
+   */
+  public synchronized int capacity() {
+    return next;
+  }
+
+  private synchronized GhostAccount assign(GhostAccount account) {
+    if(account == null) return null;
+
+    final int index = (freeCount > 0)? free[--freeCount] : next++;
+    GhostAccount[] current = slots;
+    if(index >= current.length) {
+      current = Arrays.copyOf(current, current.length << 1);
+    }
+    current[index] = account;
+    account.setIndex(index);
+    slots = current;
+    size++;
+    return account;
+  }
+
+  private synchronized void release(GhostAccount account) {
+    final int index = account.getIndex();
+    if(index < 0 || slots[index] != account) return;
+
+    slots[index] = null;
+    account.setIndex(-1);
+    if(freeCount == free.length) {
+      free = Arrays.copyOf(free, free.length << 1);
+    }
+    free[freeCount++] = index;
+    size--;
+  }
+}
@@ -0,0 +1,80 @@
+package net.tnemc.ghost.core.account;
+
+import java.util.UUID;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Notified by the {@link GhostAccountStore} whenever an account or one of its balances changes.
+ * Holdings changes are delivered while the account's lock is held, so listeners see the changes of
+ * a single account in the order they were applied, and must return quickly.
+ */
+public interface AccountListener {
+
+  default void accountCreated(GhostAccount account) {
+  }
+
+  default void accountDeleted(GhostAccount account) {
+  }
+
+  /**
+   * Called when an account is loaded on demand from the store's {@link AccountLoader}, along with the
+   * balances it was loaded with, including accounts the {@link net.tnemc.ghost.core.cache.AccountCache}
+   * unloaded earlier. Called with the account's lock held, right after it's registered, so listeners
+   * must not look up other accounts.
+   * @param account The account.
+   */
+  default void accountLoaded(GhostAccount account) {
+  }
+
+  /**
+   * Called after the current name of a player has been recorded.
+   * @param id The UUID of the player.
+   * @param name The player's current name.
+   */
+  default void accountIdentified(UUID id, String name) {
+  }
+
+  /**
+   * Called after a string account has been marked as a legacy player account, see
+   * {@link GhostAccountStore#markLegacy(String)}.
+   * @param identifier The identifier of the string account.
+   */
+  default void accountMarked(String identifier) {
+  }
+
+  /**
+   * Called after a balance of an account has been changed.
+   * @param account The account.
+   * @param key The {@link HoldingsKeys} id of the balance that changed.
+   */
+  default void holdingsChanged(GhostAccount account, int key) {
+  }
+
+  /**
+   * Called after an amount has been moved between two accounts. Both locks are held, and the debit
+   * and credit were applied together, so listeners that persist changes should record them together.
+   * @param from The account the amount was taken from.
+   * @param to The account the amount was given to.
+   * @param key The {@link HoldingsKeys} id of the balance that changed on both accounts.
+   */
+  default void holdingsTransferred(GhostAccount from, GhostAccount to, int key) {
+    holdingsChanged(from, key);
+    holdingsChanged(to, key);
+  }
+}
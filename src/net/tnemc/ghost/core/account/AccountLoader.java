@@ -0,0 +1,101 @@
+package net.tnemc.ghost.core.account;
+
+import java.util.UUID;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A source of accounts that haven't been loaded into the {@link GhostAccountStore} yet. The store
+ * asks its loader whenever an account it doesn't hold is looked up, and loads it on demand.
+ *
+ * Each account is handed out by {@link #load} at most once; after that the store owns it.
+ */
+public interface AccountLoader {
+
+  /**
+   * @param identifier The identifier of the account.
+   * @return True if this loader holds an account for this identifier that hasn't been deleted.
+   */
+  boolean contains(String identifier);
+
+  boolean contains(UUID identifier);
+
+  /**
+   * Decodes an account. Called at most once per identifier at a time by the store.
+   * @param identifier The identifier of the account.
+   * @param keys The key registry of the store the account will belong to.
+   * @return The account, or null if this loader doesn't hold it or it was already loaded.
+   */
+  GhostAccount load(String identifier, HoldingsKeys keys);
+
+  GhostAccount load(UUID identifier, HoldingsKeys keys);
+
+  /**
+   * Tells the loader an account was deleted, so {@link #contains} stops reporting it.
+   * @param identifier The identifier of the account.
+   */
+  void forget(String identifier);
+
+  void forget(UUID identifier);
+
+  /**
+   * @param first The loader asked first.
+   * @param second The loader asked for accounts the first doesn't hold.
+   * @return A loader that hands out the accounts of both, or whichever one isn't null.
+   */
+  static AccountLoader chain(AccountLoader first, AccountLoader second) {
+    if(first == null) return second;
+    if(second == null) return first;
+
+    return new AccountLoader() {
+      @Override
+      public boolean contains(String identifier) {
+        return first.contains(identifier) || second.contains(identifier);
+      }
+
+      @Override
+      public boolean contains(UUID identifier) {
+        return first.contains(identifier) || second.contains(identifier);
+      }
+
+      @Override
+      public GhostAccount load(String identifier, HoldingsKeys keys) {
+        final GhostAccount account = first.load(identifier, keys);
+        return (account != null)? account : second.load(identifier, keys);
+      }
+
+      @Override
+      public GhostAccount load(UUID identifier, HoldingsKeys keys) {
+        final GhostAccount account = first.load(identifier, keys);
+        return (account != null)? account : second.load(identifier, keys);
+      }
+
+      @Override
+      public void forget(String identifier) {
+        first.forget(identifier);
+        second.forget(identifier);
+      }
+
+      @Override
+      public void forget(UUID identifier) {
+        first.forget(identifier);
+        second.forget(identifier);
+      }
+    };
+  }
+}
@@ -0,0 +1,183 @@
+package net.tnemc.ghost.core.account;
+
+import net.tnemc.ghost.core.cache.AccountCache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Removes accounts matching a condition from a {@link GhostAccountStore}. The accounts are split
+ * into slices that are scanned in parallel on a small fork/join pool, and each worker pauses between
+ * slices so a purge can run on a live server without holding up other operations. The condition is
+ * checked again under the account's lock before it's removed, so an account that receives funds
+ * mid-scan is kept.
+ */
+public class AccountPurger {
+
+  private final GhostAccountStore store;
+  private final ForkJoinPool pool;
+  private final int sliceSize;
+  private final long pause;
+
+  /**
+   * @param store The store to purge.
+   * @param parallelism The number of threads scanning at once.
+   * @param sliceSize The number of accounts each thread scans between pauses.
+   * @param pause How long to pause between slices, zero to only yield.
+   * @param unit The unit of the pause.
+   */
+  public AccountPurger(GhostAccountStore store, int parallelism, int sliceSize, long pause, TimeUnit unit) {
+    this.store = store;
+    this.sliceSize = Math.max(1, sliceSize);
+    this.pause = unit.toNanos(Math.max(0L, pause));
+    this.pool = new ForkJoinPool(Math.max(1, parallelism), (pool)->{
+      final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      thread.setName("Ghost-Purge-" + thread.getPoolIndex());
+      thread.setDaemon(true);
+      return thread;
+    }, null, false);
+  }
+
+  /**
+   * Removes every account without a nonzero balance.
+   * @return The number of accounts removed.
+   */
+  public int purgeEmpty() {
+    return purge(this::empty);
+  }
+
+  /**
+   * Removes every account whose balances are all under the specified amount.
+   * @param amount The amount every balance has to be under for an account to be removed.
+   * @return The number of accounts removed.
+   */
+  public int purgeUnder(BigDecimal amount) {
+    return purge((account)->under(account, amount));
+  }
+
+  /**
+   * Removes every account matching a condition.
+   * @param condition The condition. It's tested without a lock while scanning, then again under the
+   * account's lock before the account is removed. Accounts with balances in evicted worlds are never
+   * removed, since the condition can't see those balances. Accounts unloaded by the store's cache
+   * are read back to be scanned, and only loaded back into memory if they match.
+   * @return The number of accounts removed.
+   */
+  public int purge(Predicate<GhostAccount> condition) {
+    final Predicate<GhostAccount> resident = condition.and((account)->!store.hasEvicted(account));
+    int removed = scan(store.getIdAccounts(), resident) + scan(store.getStringAccounts(), resident);
+
+    final AccountCache cache = store.getCache();
+    if(cache != null) {
+      try {
+        removed += scan(cache.getCold().readAll(), resident);
+      } catch(IOException e) {
+        throw new UncheckedIOException("Unable to read the unloaded accounts.", e);
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Stops the scanning threads. Purges already running are left to finish.
+   */
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  private int scan(Collection<GhostAccount> accounts, Predicate<GhostAccount> condition) {
+    final GhostAccount[] snapshot = accounts.toArray(new GhostAccount[0]);
+    if(snapshot.length == 0) return 0;
+
+    return pool.invoke(new Slice(snapshot, 0, snapshot.length, condition));
+  }
+
+  private boolean empty(GhostAccount account) {
+    final GhostHoldings holdings = account.getHoldingsContainer();
+    final HoldingsKeys keys = store.getKeys();
+    for(int key = 0; key < holdings.capacity(); key++) {
+      if(keys.isFixedPoint(key)) {
+        if(holdings.getMinor(key) != 0L) return false;
+      } else {
+        final BigDecimal value = holdings.get(key);
+        if(value != null && value.signum() != 0) return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean under(GhostAccount account, BigDecimal amount) {
+    final GhostHoldings holdings = account.getHoldingsContainer();
+    final HoldingsKeys keys = store.getKeys();
+    for(int key = 0; key < holdings.capacity(); key++) {
+      final BigDecimal value = (keys.isFixedPoint(key))? keys.toDecimal(key, holdings.getMinor(key)) : holdings.get(key);
+      if(value != null && value.compareTo(amount) >= 0) return false;
+    }
+
+    //Balances that were never set count as zero.
+    return BigDecimal.ZERO.compareTo(amount) < 0;
+  }
+
+  private class Slice extends RecursiveTask<Integer> {
+
+    private final GhostAccount[] accounts;
+    private final int from;
+    private final int to;
+    private final Predicate<GhostAccount> condition;
+
+    Slice(GhostAccount[] accounts, int from, int to, Predicate<GhostAccount> condition) {
+      this.accounts = accounts;
+      this.from = from;
+      this.to = to;
+      this.condition = condition;
+    }
+
+    @Override
+    protected Integer compute() {
+      if(to - from > sliceSize) {
+        final int middle = (from + to) >>> 1;
+        final Slice left = new Slice(accounts, from, middle, condition);
+        left.fork();
+        final int right = new Slice(accounts, middle, to, condition).compute();
+        return right + left.join();
+      }
+
+      int removed = 0;
+      for(int i = from; i < to; i++) {
+        if(condition.test(accounts[i]) && store.deleteIf(accounts[i], condition)) removed++;
+      }
+
+      if(pause > 0L) {
+        LockSupport.parkNanos(pause);
+      } else {
+        Thread.yield();
+      }
+      return removed;
+    }
+  }
+}
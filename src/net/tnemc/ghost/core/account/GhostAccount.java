@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /*
  * Ghost Server Plugin
@@ -23,25 +24,67 @@ import java.util.UUID;
  */
 public class GhostAccount {
 
-  Map<String, BigDecimal> holdings = new HashMap<>();
+  private static final AtomicLong SEQUENCE = new AtomicLong();
 
-  private String name;
+  private final GhostHoldings holdings = new GhostHoldings();
+
+  private final HoldingsKeys keys;
+
+  private volatile String name;
   private UUID id;
 
-  public GhostAccount(String name) {
+  //The compact id assigned by the store's AccountIndex, or -1 while unregistered.
+  private volatile int index = -1;
+
+  //Unique per account object and never reused, unlike the index.
+  private final long sequence = SEQUENCE.getAndIncrement();
+
+  public GhostAccount(String name, HoldingsKeys keys) {
     this.name = name;
+    this.keys = keys;
   }
 
-  public GhostAccount(UUID id) {
+  public GhostAccount(UUID id, HoldingsKeys keys) {
     this.id = id;
+    this.keys = keys;
   }
 
+  /**
+   * @return A copy of this account's holdings, keyed by "world:currency".
+   */
   public Map<String, BigDecimal> getHoldings() {
-    return holdings;
+    final Map<String, BigDecimal> copy = new HashMap<>();
+    for(int key = 0; key < holdings.capacity(); key++) {
+      if(keys.isFixedPoint(key)) {
+        final long minor = holdings.getMinor(key);
+        if(minor != 0L) {
+          copy.put(keys.world(key) + ":" + keys.currency(key), keys.toDecimal(key, minor));
+        }
+        continue;
+      }
+
+      final BigDecimal value = holdings.get(key);
+      if(value != null) {
+        copy.put(keys.world(key) + ":" + keys.currency(key), value);
+      }
+    }
+    return copy;
   }
 
+  /**
+   * Replaces this account's holdings.
+   * @param holdings The new holdings, keyed by "world:currency".
+   */
   public void setHoldings(Map<String, BigDecimal> holdings) {
-    this.holdings = holdings;
+    for(int key = 0; key < this.holdings.capacity(); key++) {
+      this.holdings.set(key, null);
+      this.holdings.setMinor(key, 0L);
+    }
+
+    for(Map.Entry<String, BigDecimal> entry : holdings.entrySet()) {
+      final int split = entry.getKey().indexOf(':');
+      setHoldings(entry.getKey().substring(0, split), entry.getKey().substring(split + 1), entry.getValue());
+    }
   }
 
   public String getName() {
@@ -52,6 +95,24 @@ public class GhostAccount {
     this.name = name;
   }
 
+  /**
+   * @return The compact id of this account in its store, or -1 if it isn't registered.
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  void setIndex(int index) {
+    this.index = index;
+  }
+
+  /**
+   * @return A number unique to this account object, in order of creation.
+   */
+  long getSequence() {
+    return sequence;
+  }
+
   public UUID getId() {
     return id;
   }
@@ -61,10 +122,42 @@ public class GhostAccount {
   }
 
   public void setHoldings(String world, String currency, BigDecimal holdings) {
-    this.holdings.put(world + ":" + currency, holdings);
+    setHoldings(keys.id(world, currency), holdings);
   }
 
   public BigDecimal getHoldings(String world, String currency) {
-    return this.holdings.getOrDefault(world + ":" + currency, BigDecimal.ZERO);
+    return getHoldings(keys.find(world, currency));
+  }
+
+  /**
+   * @param key The {@link HoldingsKeys} id of the world/currency pair.
+   * @param holdings The new balance.
+   * @throws ArithmeticException If the pair is fixed point and the balance doesn't fit in a long.
+   */
+  public void setHoldings(int key, BigDecimal holdings) {
+    if(keys.isFixedPoint(key)) {
+      this.holdings.setMinor(key, keys.toMinor(key, holdings));
+      return;
+    }
+    this.holdings.set(key, holdings);
+  }
+
+  /**
+   * @param key The {@link HoldingsKeys} id of the world/currency pair.
+   * @return The balance stored under this key, or zero if there isn't one.
+   */
+  public BigDecimal getHoldings(int key) {
+    if(keys.isFixedPoint(key)) {
+      return keys.toDecimal(key, holdings.getMinor(key));
+    }
+    final BigDecimal value = holdings.get(key);
+    return (value == null)? BigDecimal.ZERO : value;
+  }
+
+  /**
+   * @return This account's raw holdings container.
+   */
+  public GhostHoldings getHoldingsContainer() {
+    return holdings;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,1326 @@
+package net.tnemc.ghost.core.account;
+
+import net.tnemc.ghost.core.cache.AccountCache;
+import net.tnemc.ghost.core.change.ChangeCause;
+import net.tnemc.ghost.core.change.ChangeStream;
+import net.tnemc.ghost.core.currency.BalanceRule;
+import net.tnemc.ghost.core.currency.BalanceRules;
+import net.tnemc.ghost.core.currency.CurrencySettings;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Holds every {@link GhostAccount} and guards their holdings. Account lookups go through an
+ * {@link AccountIndex}, balance reads never lock, and every read-modify-write of a balance happens
+ * while holding the account's lock stripe, so the sync and async API methods can share it safely.
+ *
+ * With an {@link AccountCache}, cold accounts are unloaded from memory and loaded back when they're
+ * looked up. An account passed to a method may have been unloaded or deleted since it was looked up,
+ * so every write checks that it's still registered once its lock is held, and follows it to the
+ * registered account if it isn't.
+ */
+public class GhostAccountStore {
+
+  private final AccountIndex index = new AccountIndex();
+
+  private final List<AccountListener> listeners = new CopyOnWriteArrayList<>();
+
+  private final HoldingsKeys keys;
+
+  //The snapshot loader and the cache's cold accounts chained together, or whichever is set.
+  private volatile AccountLoader loader;
+  private AccountLoader source;
+
+  //The loads in progress, by UUID or string identifier.
+  private final Map<Object, CompletableFuture<GhostAccount>> loading = new ConcurrentHashMap<>();
+
+  private volatile WorldPartitions partitions;
+
+  private volatile AccountCache cache;
+
+  private volatile BalanceRules rules;
+
+  private volatile ChangeStream changes;
+
+  private final ReentrantLock[] locks;
+  private final int mask;
+
+  public GhostAccountStore(CurrencySettings currencies) {
+    this(currencies, Runtime.getRuntime().availableProcessors() * 16);
+  }
+
+  /**
+   * @param currencies The currency settings, which decide how each currency's balances are stored.
+   * @param stripes The minimum number of lock stripes, rounded up to the next power of two.
+   */
+  public GhostAccountStore(CurrencySettings currencies, int stripes) {
+    this.keys = new HoldingsKeys(currencies);
+
+    int size = 1;
+    while(size < stripes) {
+      size <<= 1;
+    }
+
+    locks = new ReentrantLock[size];
+    for(int i = 0; i < size; i++) {
+      locks[i] = new ReentrantLock();
+    }
+    mask = size - 1;
+  }
+
+  /**
+   * @param identifier The string identifier of the account, or the name of a player whose
+   * {@link #identify UUID is known}, in which case the player's UUID account is returned.
+   * @return The account, or null if there isn't one.
+   */
+  public GhostAccount getAccount(String identifier) {
+    final GhostAccount account = index.get(identifier);
+    if(account != null) return touched(account);
+
+    final UUID player = index.getPlayer(identifier);
+    if(player != null) return getAccount(player);
+
+    final AccountLoader current = loader;
+    if(current == null) return null;
+    return load(identifier, current);
+  }
+
+  /**
+   * Looks up the string account with exactly this identifier. Unlike {@link #getAccount(String)}, a
+   * player's name is never resolved to their UUID account, so storage and import paths replaying
+   * a string account's changes always reach the string account.
+   * @param identifier The string identifier of the account.
+   * @return The account, or null if there isn't one.
+   */
+  public GhostAccount getStringAccount(String identifier) {
+    final GhostAccount account = index.get(identifier);
+    if(account != null) return touched(account);
+
+    final AccountLoader current = loader;
+    return (current == null)? null : load(identifier, current);
+  }
+
+  public GhostAccount getAccount(UUID identifier) {
+    final GhostAccount account = index.get(identifier);
+    if(account != null) return touched(account);
+
+    final AccountLoader current = loader;
+    if(current == null) return null;
+    return load(identifier, current);
+  }
+
+  /**
+   * @param index The compact id of the account, see {@link GhostAccount#getIndex()}.
+   * @return The account, or null if no account has this id.
+   */
+  public GhostAccount getAccount(int index) {
+    return this.index.get(index);
+  }
+
+  public boolean hasAccount(String identifier) {
+    if(index.get(identifier) != null) return true;
+
+    final UUID player = index.getPlayer(identifier);
+    if(player != null) return hasAccount(player);
+
+    final AccountLoader current = loader;
+    return current != null && current.contains(identifier);
+  }
+
+  public boolean hasAccount(UUID identifier) {
+    if(index.get(identifier) != null) return true;
+
+    final AccountLoader current = loader;
+    return current != null && current.contains(identifier);
+  }
+
+  /**
+   * Records the current name of a player, so their name resolves to their UUID account. If the
+   * player was known under another name, it's replaced. If a string account with exactly this name
+   * is {@link #markLegacy marked} as the player's account from before they were identified, its
+   * balances are moved into the player's UUID account, which is created if needed, and the string
+   * account is deleted. Any other string account with the same name, such as a bank or town, is
+   * left alone.
+   * @param id The UUID of the player.
+   * @param name The current name of the player.
+   * @return True if the name was new or changed.
+   */
+  public boolean identify(UUID id, String name) {
+    if(!link(id, name)) return false;
+    if(!index.isLegacy(name)) return true;
+
+    final GhostAccount legacy = getStringAccount(name);
+    if(legacy == null) return true;
+
+    createAccount(id);
+    merge(legacy, getAccount(id));
+    return true;
+  }
+
+  /**
+   * Records the current name of a player like {@link #identify} without merging any legacy account.
+   * Used when loading stored names, since a merge was stored as the changes it made.
+   * @param id The UUID of the player.
+   * @param name The current name of the player.
+   * @return True if the name was new or changed.
+   */
+  public boolean link(UUID id, String name) {
+    if(name.equals(index.link(id, name))) return false;
+
+    final GhostAccount account = index.get(id);
+    if(account != null) account.setName(name);
+    fireIdentified(id, name);
+    return true;
+  }
+
+  /**
+   * Marks a string account as a player's account from before the player's UUID was known, so it's
+   * merged into their UUID account once they're {@link #identify identified} under exactly this name.
+   * @param identifier The exact identifier of the string account.
+   * @return True if the account was marked, false if there's no such account or it already was.
+   */
+  public boolean markLegacy(String identifier) {
+    GhostAccount account = getStringAccount(identifier);
+    while(account != null) {
+      final ReentrantLock lock = lock(account);
+      lock.lock();
+      try {
+        if(account.getIndex() >= 0) {
+          if(!index.markLegacy(identifier)) return false;
+
+          fireMarked(identifier);
+          return true;
+        }
+      } finally {
+        lock.unlock();
+      }
+      account = reload(account);
+    }
+    return false;
+  }
+
+  /**
+   * @return The identity index of this store.
+   */
+  public AccountIndex getIndex() {
+    return index;
+  }
+
+  private GhostAccount named(GhostAccount account) {
+    if(account != null && account.getName() == null) account.setName(index.getName(account.getId()));
+    return account;
+  }
+
+  private GhostAccount touched(GhostAccount account) {
+    final AccountCache current = cache;
+    if(current != null) current.touch(account);
+    return account;
+  }
+
+  private GhostAccount load(String identifier, AccountLoader loader) {
+    return load(identifier, ()->loader.load(identifier, keys));
+  }
+
+  private GhostAccount load(UUID identifier, AccountLoader loader) {
+    return load(identifier, ()->named(loader.load(identifier, keys)));
+  }
+
+  /**
+   * Registers an account from the loader, unless another thread got there first. One thread at a
+   * time loads each identifier, outside of any index lock, and threads looking up the same
+   * identifier meanwhile wait for its result. Listeners are told once it's registered, while
+   * holding its lock.
+   */
+  private GhostAccount load(Object identifier, Supplier<GhostAccount> source) {
+    final CompletableFuture<GhostAccount> pending = new CompletableFuture<>();
+    final CompletableFuture<GhostAccount> other = loading.putIfAbsent(identifier, pending);
+    if(other != null) {
+      final GhostAccount account = other.join();
+      return (account != null)? touched(account) : null;
+    }
+
+    GhostAccount account = null;
+    GhostAccount loaded = null;
+    try {
+      //Registered, or unloaded and registered again, before this thread started loading it.
+      account = registered(identifier);
+      if(account == null) {
+        loaded = source.get();
+        if(loaded != null) account = (index.putIfAbsent(loaded))? loaded : registered(identifier);
+      }
+    } catch(RuntimeException e) {
+      loading.remove(identifier, pending);
+      pending.completeExceptionally(e);
+      throw e;
+    }
+    loading.remove(identifier, pending);
+    pending.complete(account);
+
+    if(account != null && account == loaded) fireLoaded(account);
+    return account;
+  }
+
+  private GhostAccount registered(Object identifier) {
+    return (identifier instanceof UUID)? index.get((UUID)identifier) : index.get((String)identifier);
+  }
+
+  /**
+   * Looks an account up again after finding it unregistered under its lock.
+   * @param account An account that has been unloaded or deleted since it was looked up.
+   * @return The account registered under the same identifier, loaded back if it was unloaded, or
+   * null if it was deleted. String accounts are never resolved to a player with the same name.
+   */
+  private GhostAccount reload(GhostAccount account) {
+    return (account.getId() != null)? getAccount(account.getId()) : getStringAccount(account.getName());
+  }
+
+  /**
+   * Moves every balance of one account into another and deletes the first. Each balance is moved
+   * like a transfer, so a listener never sees the amount in both accounts or in neither. The
+   * {@link BalanceRules} aren't checked, since a rejected move would lose the balance.
+   */
+  private void merge(GhostAccount legacy, GhostAccount player) {
+    GhostAccount from = legacy;
+    GhostAccount to = player;
+    int first;
+    int second;
+    while(true) {
+      first = Math.min(stripe(from), stripe(to));
+      second = Math.max(stripe(from), stripe(to));
+      lockPair(first, second);
+      if(from.getIndex() < 0 || to.getIndex() < 0) {
+        unlockPair(first, second);
+        if(from.getIndex() < 0) from = reload(from);
+        if(to.getIndex() < 0) to = reload(to);
+        if(from == null || to == null) return;
+        continue;
+      }
+
+      final WorldPartitions current = partitions;
+      if(current == null || !current.hasEvicted(from)) break;
+
+      unlockPair(first, second);
+      current.restoreAll();
+    }
+    try {
+      if(!index.remove(from)) return;
+
+      final int limit = Math.min(keys.size(), from.getHoldingsContainer().capacity());
+      for(int key = 0; key < limit; key++) {
+        if(keys.isFixedPoint(key)) {
+          final long minor = from.getHoldingsContainer().getMinor(key);
+          if(minor != 0L) applyTransfer(from, to, key, null, minor, BalanceRule.NONE, ChangeCause.MERGE);
+        } else if(from.getHoldingsContainer().get(key) != null) {
+          applyTransfer(from, to, key, from.getHoldings(key), 0L, BalanceRule.NONE, ChangeCause.MERGE);
+        }
+      }
+
+      final AccountLoader current = loader;
+      if(current != null) current.forget(from.getName());
+      index.unmarkLegacy(from.getName());
+      fireDeleted(from);
+    } finally {
+      unlockPair(first, second);
+    }
+  }
+
+  /**
+   * Sets where accounts that aren't in memory yet are loaded from on demand. Accounts unloaded by the
+   * {@link #setCache cache} are loaded from it as well.
+   * @param loader The loader, or null once every account has been loaded.
+   */
+  public synchronized void setLoader(AccountLoader loader) {
+    this.source = loader;
+    this.loader = AccountLoader.chain(loader, (cache == null)? null : cache.getCold());
+  }
+
+  /**
+   * Sets the cache that tracks which accounts are used and unloads the cold ones.
+   * @param cache The cache, or null to keep every account in memory.
+   */
+  public synchronized void setCache(AccountCache cache) {
+    this.cache = cache;
+    this.loader = AccountLoader.chain(source, (cache == null)? null : cache.getCold());
+  }
+
+  /**
+   * @return The account cache, or null if every account is kept in memory.
+   */
+  public AccountCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Sets where the balances of evicted worlds are restored from.
+   * @param partitions The partitions, or null if worlds are never evicted.
+   */
+  public void setPartitions(WorldPartitions partitions) {
+    this.partitions = partitions;
+  }
+
+  /**
+   * @return The evicted world partitions, or null if worlds are never evicted.
+   */
+  public WorldPartitions getPartitions() {
+    return partitions;
+  }
+
+  /**
+   * Sets the limits balance changes are checked against. Without any, only fixed point overflow is
+   * rejected.
+   * @param rules The rules, or null for none.
+   */
+  public void setRules(BalanceRules rules) {
+    this.rules = rules;
+  }
+
+  /**
+   * Sets the stream every balance change is published to from now on.
+   * @param changes The stream, or null to stop publishing changes.
+   */
+  public void setChanges(ChangeStream changes) {
+    this.changes = changes;
+  }
+
+  /**
+   * @return The rule of a key, or {@link BalanceRule#NONE} if there aren't any rules.
+   */
+  private BalanceRule rule(int key) {
+    final BalanceRules current = rules;
+    return (current == null)? BalanceRule.NONE : current.get(keys, key);
+  }
+
+  /**
+   * @param account The account.
+   * @return True if any of this account's balances are evicted from memory.
+   */
+  public boolean hasEvicted(GhostAccount account) {
+    final WorldPartitions current = partitions;
+    return current != null && current.hasEvicted(account);
+  }
+
+  /**
+   * Creates an account for this identifier if one doesn't exist yet.
+   * @param identifier The identifier of the account.
+   * @return True if a new account was created, false if one already existed.
+   */
+  public boolean createAccount(String identifier) {
+    final UUID player = index.getPlayer(identifier);
+    if(player != null) return createAccount(player);
+    return createStringAccount(identifier);
+  }
+
+  /**
+   * Creates a string account with exactly this identifier if one doesn't exist yet, even if it's the
+   * name of a player.
+   * @param identifier The string identifier of the account.
+   * @return True if a new account was created, false if one already existed.
+   */
+  public boolean createStringAccount(String identifier) {
+    if(getStringAccount(identifier) != null) return false;
+
+    final GhostAccount account = new GhostAccount(identifier, keys);
+    final ReentrantLock lock = lock(account);
+    lock.lock();
+    try {
+      if(!index.putIfAbsent(account)) return false;
+      fireCreated(account);
+    } finally {
+      lock.unlock();
+    }
+    return true;
+  }
+
+  /**
+   * Creates an account for this identifier if one doesn't exist yet.
+   * @param identifier The {@link UUID} of the account.
+   * @return True if a new account was created, false if one already existed.
+   */
+  public boolean createAccount(UUID identifier) {
+    if(getAccount(identifier) != null) return false;
+
+    final GhostAccount account = new GhostAccount(identifier, keys);
+    account.setName(index.getName(identifier));
+    final ReentrantLock lock = lock(account);
+    lock.lock();
+    try {
+      if(!index.putIfAbsent(account)) return false;
+      fireCreated(account);
+    } finally {
+      lock.unlock();
+    }
+    return true;
+  }
+
+  /**
+   * Adds accounts built outside the store, such as by a ledger import, in one pass rather than a
+   * create and a set for every balance. An account that already exists has every balance of the
+   * imported one set on it instead. Listeners are told about each new account and balance as usual,
+   * so the accounts are persisted and ranked.
+   * @param accounts Accounts created with this store's keys that aren't registered anywhere. New
+   * accounts are registered as they are, so they mustn't be used afterwards.
+   * @return The number of accounts that didn't exist yet.
+   */
+  public int importAccounts(Collection<GhostAccount> accounts) {
+    int created = 0;
+    for(GhostAccount account : accounts) {
+      if(importAccount(account)) created++;
+    }
+    return created;
+  }
+
+  private boolean importAccount(GhostAccount imported) {
+    final GhostHoldings holdings = imported.getHoldingsContainer();
+    final int limit = Math.min(keys.size(), holdings.capacity());
+    while(true) {
+      final int evicted = evicted(holdings, limit);
+      if(evicted != HoldingsKeys.NONE) {
+        restore(evicted);
+        continue;
+      }
+
+      final GhostAccount existing = (imported.getId() != null)? getAccount(imported.getId()) : getStringAccount(imported.getName());
+      final GhostAccount target = (existing != null)? existing : imported;
+      final ReentrantLock lock = lock(target);
+      lock.lock();
+      try {
+        //Unloaded, deleted or created since it was looked up, or the world was evicted again.
+        if(existing != null && existing.getIndex() < 0) continue;
+        if(evicted(holdings, limit) != HoldingsKeys.NONE) continue;
+
+        if(existing == null) {
+          if(imported.getId() != null) imported.setName(index.getName(imported.getId()));
+          if(!index.putIfAbsent(imported)) continue;
+
+          fireCreated(imported);
+        }
+        for(int key = 0; key < limit; key++) {
+          final long oldMinor = (existing != null)? existing.getHoldingsContainer().getMinor(key) : 0L;
+          final BigDecimal oldValue = (existing != null)? existing.getHoldingsContainer().get(key) : null;
+          if(keys.isFixedPoint(key)) {
+            final long minor = holdings.getMinor(key);
+            if(minor == 0L) continue;
+
+            if(existing != null) existing.getHoldingsContainer().setMinor(key, minor);
+          } else {
+            final BigDecimal value = holdings.get(key);
+            if(value == null) continue;
+
+            if(existing != null) existing.getHoldingsContainer().set(key, value);
+          }
+          fireChanged(target, key);
+          publish(target, key, ChangeCause.IMPORT, oldMinor, oldValue);
+        }
+        return existing == null;
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * @return The first key with a balance whose world is evicted, or {@link HoldingsKeys#NONE}.
+   */
+  private int evicted(GhostHoldings holdings, int limit) {
+    for(int key = 0; key < limit; key++) {
+      if(keys.isEvicted(key) && ((keys.isFixedPoint(key))? holdings.getMinor(key) != 0L : holdings.get(key) != null)) return key;
+    }
+    return HoldingsKeys.NONE;
+  }
+
+  public boolean deleteAccount(String identifier) {
+    final GhostAccount account = getAccount(identifier);
+    return account != null && deleteIf(account, (ignore)->true);
+  }
+
+  public boolean deleteAccount(UUID identifier) {
+    final GhostAccount account = getAccount(identifier);
+    return account != null && deleteIf(account, (ignore)->true);
+  }
+
+  /**
+   * Deletes the string account with exactly this identifier, never a player's UUID account with
+   * this name, see {@link #getStringAccount(String)}.
+   * @param identifier The string identifier of the account.
+   * @return True if the account was deleted.
+   */
+  public boolean deleteStringAccount(String identifier) {
+    final GhostAccount account = getStringAccount(identifier);
+    return account != null && deleteIf(account, (ignore)->true);
+  }
+
+  /**
+   * Deletes an account if it still matches a condition once its lock is held.
+   * @param account The account.
+   * @param condition The condition, tested while holding the account's lock.
+   * @return True if the account was deleted.
+   */
+  public boolean deleteIf(GhostAccount account, Predicate<GhostAccount> condition) {
+    GhostAccount target = account;
+    while(true) {
+      final ReentrantLock lock = lock(target);
+      lock.lock();
+      try {
+        if(target.getIndex() >= 0) {
+          if(!condition.test(target)) return false;
+
+          if(!index.remove(target)) return false;
+
+          final AccountLoader current = loader;
+          if(current != null) {
+            if(target.getId() != null) current.forget(target.getId()); else current.forget(target.getName());
+          }
+          if(target.getId() == null) index.unmarkLegacy(target.getName());
+          fireDeleted(target);
+          return true;
+        }
+      } finally {
+        lock.unlock();
+      }
+
+      target = reload(target);
+      if(target == null) return false;
+    }
+  }
+
+  /**
+   * Moves an account out of memory into the cache's cold accounts. It's loaded back the next time
+   * it's looked up; until then it isn't registered, so writes through a reference taken earlier
+   * follow it to the account loaded back.
+   * @param account The account.
+   * @return True if it was unloaded; false if there's no cache, the account isn't registered, it has
+   * balances in an evicted world, or it couldn't be written.
+   */
+  public boolean unload(GhostAccount account) {
+    final AccountCache current = cache;
+    if(current == null) return false;
+
+    final ReentrantLock lock = lock(account);
+    lock.lock();
+    try {
+      if(account.getIndex() < 0 || hasEvicted(account)) return false;
+      if(!current.getCold().write(account)) return false;
+
+      index.remove(account);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Registers a listener to be told about account and holdings changes.
+   * @param listener The listener.
+   */
+  public void addListener(AccountListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(AccountListener listener) {
+    listeners.remove(listener);
+  }
+
+  private void fireCreated(GhostAccount account) {
+    for(AccountListener listener : listeners) {
+      listener.accountCreated(account);
+    }
+  }
+
+  private void fireLoaded(GhostAccount account) {
+    final ReentrantLock lock = lock(account);
+    lock.lock();
+    try {
+      //Already unloaded or deleted again, and listeners have been told.
+      if(account.getIndex() < 0) return;
+
+      for(AccountListener listener : listeners) {
+        listener.accountLoaded(account);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void fireDeleted(GhostAccount account) {
+    for(AccountListener listener : listeners) {
+      listener.accountDeleted(account);
+    }
+  }
+
+  private void fireIdentified(UUID id, String name) {
+    for(AccountListener listener : listeners) {
+      listener.accountIdentified(id, name);
+    }
+  }
+
+  private void fireMarked(String identifier) {
+    for(AccountListener listener : listeners) {
+      listener.accountMarked(identifier);
+    }
+  }
+
+  private void fireChanged(GhostAccount account, int key) {
+    for(AccountListener listener : listeners) {
+      listener.holdingsChanged(account, key);
+    }
+  }
+
+  private void fireTransferred(GhostAccount from, GhostAccount to, int key) {
+    for(AccountListener listener : listeners) {
+      listener.holdingsTransferred(from, to, key);
+    }
+  }
+
+  /**
+   * Publishes a balance change to the change stream, if there is one. Must be called right after the
+   * change, while holding the account's lock.
+   */
+  private void publish(GhostAccount account, int key, ChangeCause cause, long oldMinor, BigDecimal oldValue) {
+    final ChangeStream current = changes;
+    if(current != null) current.publish(account, key, cause, oldMinor, oldValue);
+  }
+
+  public HoldingsKeys getKeys() {
+    return keys;
+  }
+
+  public Collection<GhostAccount> getStringAccounts() {
+    return index.getStringAccounts();
+  }
+
+  public Collection<GhostAccount> getIdAccounts() {
+    return index.getIdAccounts();
+  }
+
+  /**
+   * Used to get the lock stripe that guards the holdings of an account. Callers that need to
+   * perform several holdings operations atomically may hold this lock while doing so.
+   * @param account The account.
+   * @return The lock guarding the account's holdings.
+   */
+  public ReentrantLock lock(GhostAccount account) {
+    return locks[stripe(account)];
+  }
+
+  /**
+   * @param account The account.
+   * @return The index of the lock stripe for this account, used to order lock acquisition.
+   */
+  public int stripe(GhostAccount account) {
+    final int hash = System.identityHashCode(account);
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  public BigDecimal getHoldings(GhostAccount account, String world, String currency) {
+    if(account == null) return BigDecimal.ZERO;
+
+    final int key = keys.find(world, currency);
+    GhostAccount current = account;
+    while(true) {
+      if(keys.isEvicted(key)) restore(key);
+
+      final BigDecimal holdings = current.getHoldings(key);
+      //Checked again, in case the world was evicted while the balance was being read.
+      if(keys.isEvicted(key)) continue;
+      if(current.getIndex() >= 0) return holdings;
+
+      current = reload(current);
+      if(current == null) return BigDecimal.ZERO;
+    }
+  }
+
+  public boolean hasHoldings(GhostAccount account, String world, String currency, BigDecimal amount) {
+    return account != null && getHoldings(account, world, currency).compareTo(amount) >= 0;
+  }
+
+  /**
+   * Sets a balance without checking the {@link BalanceRules}, for restoring balances that were
+   * already accepted, such as when storage is replayed. See {@link #trySetHoldings} for everything else.
+   * @return True if the balance was set, false if there's no account or a fixed point balance would
+   * overflow.
+   */
+  public boolean setHoldings(GhostAccount account, String world, String currency, BigDecimal amount) {
+    if(account == null) return false;
+
+    final int key = keys.id(world, currency);
+    final GhostAccount target = lockResident(account, key);
+    if(target == null) return false;
+
+    final ReentrantLock lock = lock(target);
+    try {
+      final long oldMinor = target.getHoldingsContainer().getMinor(key);
+      final BigDecimal oldValue = target.getHoldingsContainer().get(key);
+      target.setHoldings(key, amount);
+      fireChanged(target, key);
+      publish(target, key, ChangeCause.SET, oldMinor, oldValue);
+    } catch(ArithmeticException e) {
+      return false;
+    } finally {
+      lock.unlock();
+    }
+    return true;
+  }
+
+  /**
+   * Sets a balance if it's within the {@link BalanceRules} of its currency. The check and the change
+   * are made under the account's lock, so nothing can change the balance in between.
+   * @return The result of the change.
+   */
+  public HoldingsResult trySetHoldings(GhostAccount account, String world, String currency, BigDecimal amount) {
+    if(account == null) return HoldingsResult.NO_ACCOUNT;
+
+    final int key = keys.id(world, currency);
+    final BalanceRule rule = rule(key);
+    final long minor;
+    try {
+      minor = (keys.isFixedPoint(key))? keys.toMinor(key, amount) : 0L;
+    } catch(ArithmeticException e) {
+      return HoldingsResult.OVERFLOW;
+    }
+
+    final HoldingsResult result = (keys.isFixedPoint(key))? rule.checkSet(minor) : rule.checkSet(amount);
+    if(!result.isSuccess()) return result;
+
+    final GhostAccount target = lockResident(account, key);
+    if(target == null) return HoldingsResult.NO_ACCOUNT;
+
+    final ReentrantLock lock = lock(target);
+    try {
+      final long oldMinor = target.getHoldingsContainer().getMinor(key);
+      final BigDecimal oldValue = target.getHoldingsContainer().get(key);
+      if(keys.isFixedPoint(key)) target.getHoldingsContainer().setMinor(key, minor); else target.getHoldingsContainer().set(key, amount);
+      fireChanged(target, key);
+      publish(target, key, ChangeCause.SET, oldMinor, oldValue);
+    } finally {
+      lock.unlock();
+    }
+    return HoldingsResult.SUCCESS;
+  }
+
+  public boolean addHoldings(GhostAccount account, String world, String currency, BigDecimal amount) {
+    return tryAddHoldings(account, world, currency, amount).isSuccess();
+  }
+
+  public boolean removeHoldings(GhostAccount account, String world, String currency, BigDecimal amount) {
+    return tryRemoveHoldings(account, world, currency, amount).isSuccess();
+  }
+
+  /**
+   * Adds an amount to a balance if the result is within the {@link BalanceRules} of its currency.
+   * @return The result of the change.
+   */
+  public HoldingsResult tryAddHoldings(GhostAccount account, String world, String currency, BigDecimal amount) {
+    return changeHoldings(account, world, currency, amount, false);
+  }
+
+  /**
+   * Removes an amount from a balance if the result is within the {@link BalanceRules} of its currency.
+   * @return The result of the change.
+   */
+  public HoldingsResult tryRemoveHoldings(GhostAccount account, String world, String currency, BigDecimal amount) {
+    return changeHoldings(account, world, currency, amount, true);
+  }
+
+  /**
+   * Checks whether an amount could be added to a balance, without changing it. The balance is read
+   * without a lock, so the answer may be out of date by the time it's acted on; changes made with
+   * {@link #tryAddHoldings} and the like are checked again atomically.
+   * @param delta The amount that would be added, negative if it would be removed.
+   * @return The result the change would have.
+   */
+  public HoldingsResult checkHoldings(GhostAccount account, String world, String currency, BigDecimal delta) {
+    if(account == null) return HoldingsResult.NO_ACCOUNT;
+
+    final int key = keys.id(world, currency);
+    final BigDecimal balance = getHoldings(account, world, currency);
+    if(!keys.isFixedPoint(key)) return rule(key).check(delta, balance.add(delta));
+
+    try {
+      final long minor = keys.toMinor(key, delta);
+      return rule(key).check(minor, Math.addExact(keys.toMinor(key, balance), minor));
+    } catch(ArithmeticException e) {
+      return HoldingsResult.OVERFLOW;
+    }
+  }
+
+  /**
+   * Adds an amount to, or subtracts it from, a balance, checking the {@link BalanceRules} under the
+   * same lock. Fixed point balances are updated with long arithmetic; the BigDecimal amount is only
+   * converted once, before the lock is taken.
+   */
+  private HoldingsResult changeHoldings(GhostAccount account, String world, String currency, BigDecimal amount, boolean subtract) {
+    if(account == null) return HoldingsResult.NO_ACCOUNT;
+
+    final int key = keys.id(world, currency);
+    final boolean fixed = keys.isFixedPoint(key);
+    final BalanceRule rule = rule(key);
+
+    long minor = 0L;
+    if(fixed) {
+      try {
+        minor = keys.toMinor(key, amount);
+        if(subtract) minor = Math.negateExact(minor);
+      } catch(ArithmeticException e) {
+        return HoldingsResult.OVERFLOW;
+      }
+    }
+
+    final GhostAccount target = lockResident(account, key);
+    if(target == null) return HoldingsResult.NO_ACCOUNT;
+
+    final ReentrantLock lock = lock(target);
+    try {
+      final long oldMinor = target.getHoldingsContainer().getMinor(key);
+      final BigDecimal oldValue = target.getHoldingsContainer().get(key);
+      final HoldingsResult result = (fixed)? apply(target, key, rule, minor) : apply(target, key, rule, (subtract)? amount.negate() : amount);
+      if(result.isSuccess()) {
+        fireChanged(target, key);
+        publish(target, key, (subtract)? ChangeCause.REMOVE : ChangeCause.ADD, oldMinor, oldValue);
+      }
+      return result;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Adds to a fixed point balance if the rule allows it. Must be called while holding the account's lock.
+   */
+  private HoldingsResult apply(GhostAccount account, int key, BalanceRule rule, long delta) {
+    final long updated;
+    try {
+      updated = Math.addExact(account.getHoldingsContainer().getMinor(key), delta);
+    } catch(ArithmeticException e) {
+      return HoldingsResult.OVERFLOW;
+    }
+
+    final HoldingsResult result = rule.check(delta, updated);
+    if(result.isSuccess()) account.getHoldingsContainer().setMinor(key, updated);
+    return result;
+  }
+
+  /**
+   * Adds to a BigDecimal balance if the rule allows it. Must be called while holding the account's lock.
+   */
+  private HoldingsResult apply(GhostAccount account, int key, BalanceRule rule, BigDecimal delta) {
+    final BigDecimal updated = account.getHoldings(key).add(delta);
+    final HoldingsResult result = rule.check(delta, updated);
+    if(result.isSuccess()) account.getHoldingsContainer().set(key, updated);
+    return result;
+  }
+
+  /**
+   * Applies a batch of balance changes. The operations are grouped by lock stripe and account, each
+   * stripe is locked once for all of its operations, and listeners are told about each changed
+   * balance once rather than once per operation. Operations on the same balance are applied in the
+   * order they were given. Each operation succeeds or fails on its own.
+   * @param operations The operations to apply.
+   * @return The result of each operation, in the same order: true if it was applied, false if the
+   * account doesn't exist, the {@link BalanceRules} don't allow it or a fixed point balance would overflow.
+   */
+  public boolean[] changeHoldings(List<HoldingsOperation> operations) {
+    final int size = operations.size();
+    final boolean[] results = new boolean[size];
+    final GhostAccount[] accounts = new GhostAccount[size];
+    final int[] ids = new int[size];
+    final long[] minors = new long[size];
+
+    //The balance before each operation, for the change stream.
+    final long[] oldMinors = new long[size];
+    final BigDecimal[] oldValues = new BigDecimal[size];
+
+    final List<Integer> order = new ArrayList<>(size);
+    for(int i = 0; i < size; i++) {
+      final HoldingsOperation operation = operations.get(i);
+      accounts[i] = (operation.getId() != null)? getAccount(operation.getId()) : getAccount(operation.getName());
+      if(accounts[i] == null) continue;
+
+      ids[i] = keys.id(operation.getWorld(), operation.getCurrency());
+      if(keys.isFixedPoint(ids[i])) {
+        try {
+          minors[i] = keys.toMinor(ids[i], operation.getDelta());
+        } catch(ArithmeticException e) {
+          continue;
+        }
+      }
+      order.add(i);
+    }
+
+    //A stable sort, so operations on the same balance keep their order. Identity hashes can collide,
+    //so the account sequence settles ties between different accounts.
+    final Comparator<Integer> lockOrder = Comparator.<Integer>comparingInt(i->stripe(accounts[i]))
+                                                    .thenComparingInt(i->System.identityHashCode(accounts[i]))
+                                                    .thenComparingLong(i->accounts[i].getSequence())
+                                                    .thenComparingInt(i->ids[i]);
+    order.sort(lockOrder);
+
+    int start = 0;
+    while(start < order.size()) {
+      final int stripe = stripe(accounts[order.get(start)]);
+      int end = start;
+      while(end < order.size() && stripe(accounts[order.get(end)]) == stripe) {
+        end++;
+      }
+
+      locks[stripe].lock();
+      if(detached(accounts, order, start, end)) {
+        locks[stripe].unlock();
+        reload(accounts, order, start);
+        order.subList(start, order.size()).sort(lockOrder);
+        continue;
+      }
+
+      final int evicted = evicted(ids, order, start, end);
+      if(evicted != HoldingsKeys.NONE) {
+        locks[stripe].unlock();
+        restore(evicted);
+        continue;
+      }
+
+      try {
+        for(int position = start; position < end; position++) {
+          final int i = order.get(position);
+          final BalanceRule rule = rule(ids[i]);
+          oldMinors[i] = accounts[i].getHoldingsContainer().getMinor(ids[i]);
+          oldValues[i] = accounts[i].getHoldingsContainer().get(ids[i]);
+          results[i] = ((keys.isFixedPoint(ids[i]))? apply(accounts[i], ids[i], rule, minors[i])
+                                                   : apply(accounts[i], ids[i], rule, operations.get(i).getDelta())).isSuccess();
+        }
+
+        GhostAccount last = null;
+        int lastKey = HoldingsKeys.NONE;
+        for(int position = start; position < end; position++) {
+          final int i = order.get(position);
+          if(!results[i] || (accounts[i] == last && ids[i] == lastKey)) continue;
+
+          fireChanged(accounts[i], ids[i]);
+          publish(accounts[i], ids[i], ChangeCause.BATCH, oldMinors[i], oldValues[i]);
+          last = accounts[i];
+          lastKey = ids[i];
+        }
+      } finally {
+        locks[stripe].unlock();
+      }
+      start = end;
+    }
+    return results;
+  }
+
+  /**
+   * Moves an amount from one account's balance to another's. Both lock stripes are taken in stripe
+   * order, so transfers running in opposite directions can't deadlock, and the debit and credit are
+   * applied together or not at all.
+   * @return True if the amount was moved, false if either account is missing or a fixed point
+   * balance would overflow.
+   */
+  public boolean transferHoldings(GhostAccount from, GhostAccount to, String world, String currency, BigDecimal amount) {
+    return tryTransferHoldings(from, to, world, currency, amount).isSuccess();
+  }
+
+  /**
+   * Moves an amount from one account's balance to another's if both results are within the
+   * {@link BalanceRules} of the currency, see {@link #transferHoldings(GhostAccount, GhostAccount, String, String, BigDecimal)}.
+   * @return The result of the transfer. A debit below the sender's minimum is
+   * {@link HoldingsResult#INSUFFICIENT_FUNDS}, a credit above the receiver's maximum is
+   * {@link HoldingsResult#ABOVE_MAXIMUM}. An amount that isn't positive, which would move the balance
+   * the other way, is {@link HoldingsResult#INVALID_AMOUNT}.
+   */
+  public HoldingsResult tryTransferHoldings(GhostAccount from, GhostAccount to, String world, String currency, BigDecimal amount) {
+    if(amount == null || amount.signum() <= 0) return HoldingsResult.INVALID_AMOUNT;
+    if(from == null || to == null) return HoldingsResult.NO_ACCOUNT;
+
+    final int key = keys.id(world, currency);
+    final long minor;
+    try {
+      minor = (keys.isFixedPoint(key))? keys.toMinor(key, amount) : 0L;
+    } catch(ArithmeticException e) {
+      return HoldingsResult.OVERFLOW;
+    }
+
+    GhostAccount source = from;
+    GhostAccount target = to;
+    while(true) {
+      final int first = Math.min(stripe(source), stripe(target));
+      final int second = Math.max(stripe(source), stripe(target));
+      lockPair(first, second);
+      if(source.getIndex() < 0 || target.getIndex() < 0) {
+        unlockPair(first, second);
+        if(source.getIndex() < 0) source = reload(source);
+        if(target.getIndex() < 0) target = reload(target);
+        if(source == null || target == null) return HoldingsResult.NO_ACCOUNT;
+        continue;
+      }
+
+      if(keys.isEvicted(key)) {
+        unlockPair(first, second);
+        restore(key);
+        continue;
+      }
+
+      try {
+        return applyTransfer(source, target, key, amount, minor, rule(key), ChangeCause.TRANSFER);
+      } finally {
+        unlockPair(first, second);
+      }
+    }
+  }
+
+  /**
+   * Applies a batch of transfers. The batch is sorted by lock stripe pair, and each pair is locked
+   * once for every transfer that needs it, so many small transfers between unrelated accounts cost
+   * far fewer lock acquisitions than applying them one by one. Transfers queued by identifier have
+   * their accounts looked up here, on the thread applying the batch. The result of each transfer is
+   * completed after its locks have been released.
+   * @param transfers The transfers to apply.
+   */
+  public void transferHoldings(List<HoldingsTransfer> transfers) {
+    final List<HoldingsTransfer> sorted = new ArrayList<>(transfers.size());
+    for(HoldingsTransfer transfer : transfers) {
+      transfer.resolve(this);
+      if(transfer.getFrom() == null || transfer.getTo() == null || transfer.getAmount() == null || transfer.getAmount().signum() <= 0) {
+        transfer.getResult().complete(false);
+        continue;
+      }
+      sorted.add(transfer);
+    }
+    sorted.sort(Comparator.comparingLong(this::lockOrder));
+
+    final boolean[] results = new boolean[sorted.size()];
+    final int[] ids = new int[sorted.size()];
+    for(int i = 0; i < ids.length; i++) {
+      ids[i] = keys.id(sorted.get(i).getWorld(), sorted.get(i).getCurrency());
+    }
+
+    int start = 0;
+    while(start < sorted.size()) {
+      final long order = lockOrder(sorted.get(start));
+      final int first = (int)(order >>> 32);
+      final int second = (int)order;
+
+      int end = start;
+      while(end < sorted.size() && lockOrder(sorted.get(end)) == order) {
+        end++;
+      }
+
+      lockPair(first, second);
+      if(detached(sorted, start, end)) {
+        unlockPair(first, second);
+        reload(sorted, start);
+        sorted.subList(start, sorted.size()).sort(Comparator.comparingLong(this::lockOrder));
+        for(int i = start; i < sorted.size(); i++) {
+          ids[i] = keys.id(sorted.get(i).getWorld(), sorted.get(i).getCurrency());
+        }
+        continue;
+      }
+
+      final int evicted = evicted(ids, start, end);
+      if(evicted != HoldingsKeys.NONE) {
+        unlockPair(first, second);
+        restore(evicted);
+        continue;
+      }
+
+      try {
+        for(int position = start; position < end; position++) {
+          final HoldingsTransfer transfer = sorted.get(position);
+          final int key = ids[position];
+          try {
+            final long minor = (keys.isFixedPoint(key))? keys.toMinor(key, transfer.getAmount()) : 0L;
+            results[position] = applyTransfer(transfer.getFrom(), transfer.getTo(), key, transfer.getAmount(), minor, rule(key), ChangeCause.TRANSFER).isSuccess();
+          } catch(ArithmeticException e) {
+            results[position] = false;
+          }
+        }
+      } finally {
+        unlockPair(first, second);
+      }
+
+      for(int i = start; i < end; i++) {
+        sorted.get(i).getResult().complete(results[i]);
+      }
+      start = end;
+    }
+  }
+
+  /**
+   * Must be called while holding the lock stripes of both accounts. Both sides are checked against
+   * the rule before either is changed.
+   */
+  private HoldingsResult applyTransfer(GhostAccount from, GhostAccount to, int key, BigDecimal amount, long minor,
+                                       BalanceRule rule, ChangeCause cause) {
+    if(from == to) return HoldingsResult.SUCCESS;
+
+    final long fromMinor = from.getHoldingsContainer().getMinor(key);
+    final long toMinor = to.getHoldingsContainer().getMinor(key);
+    final BigDecimal fromValue = from.getHoldingsContainer().get(key);
+    final BigDecimal toValue = to.getHoldingsContainer().get(key);
+
+    HoldingsResult result;
+    if(keys.isFixedPoint(key)) {
+      final long debited;
+      final long credited;
+      try {
+        debited = Math.subtractExact(fromMinor, minor);
+        credited = Math.addExact(toMinor, minor);
+        result = rule.check(Math.negateExact(minor), debited);
+      } catch(ArithmeticException e) {
+        return HoldingsResult.OVERFLOW;
+      }
+      if(result.isSuccess()) result = rule.check(minor, credited);
+      if(!result.isSuccess()) return result;
+
+      from.getHoldingsContainer().setMinor(key, debited);
+      to.getHoldingsContainer().setMinor(key, credited);
+    } else {
+      final BigDecimal debited = from.getHoldings(key).subtract(amount);
+      final BigDecimal credited = to.getHoldings(key).add(amount);
+      result = rule.check(amount.negate(), debited);
+      if(result.isSuccess()) result = rule.check(amount, credited);
+      if(!result.isSuccess()) return result;
+
+      from.getHoldingsContainer().set(key, debited);
+      to.getHoldingsContainer().set(key, credited);
+    }
+    fireTransferred(from, to, key);
+    publish(from, key, cause, fromMinor, fromValue);
+    publish(to, key, cause, toMinor, toValue);
+    return HoldingsResult.SUCCESS;
+  }
+
+  /**
+   * Locks an account's stripe, first restoring the world of the key if its balances are evicted, and
+   * following the account if it was unloaded or deleted since it was looked up.
+   * @return The registered account, whose stripe is locked by the calling thread, or null if the
+   * account was deleted.
+   */
+  private GhostAccount lockResident(GhostAccount account, int key) {
+    GhostAccount current = account;
+    while(true) {
+      final ReentrantLock lock = lock(current);
+      lock.lock();
+      if(current.getIndex() < 0) {
+        lock.unlock();
+        current = reload(current);
+        if(current == null) return null;
+        continue;
+      }
+      if(!keys.isEvicted(key)) return current;
+
+      lock.unlock();
+      restore(key);
+    }
+  }
+
+  private boolean detached(GhostAccount[] accounts, List<Integer> order, int start, int end) {
+    for(int position = start; position < end; position++) {
+      if(accounts[order.get(position)].getIndex() < 0) return true;
+    }
+    return false;
+  }
+
+  private boolean detached(List<HoldingsTransfer> transfers, int start, int end) {
+    for(int position = start; position < end; position++) {
+      if(transfers.get(position).getFrom().getIndex() < 0 || transfers.get(position).getTo().getIndex() < 0) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Follows every account from this position on that has been unloaded or deleted. Operations on a
+   * deleted account are dropped, leaving their result false.
+   */
+  private void reload(GhostAccount[] accounts, List<Integer> order, int start) {
+    for(int position = order.size() - 1; position >= start; position--) {
+      final int i = order.get(position);
+      if(accounts[i].getIndex() >= 0) continue;
+
+      accounts[i] = reload(accounts[i]);
+      if(accounts[i] == null) order.remove(position);
+    }
+  }
+
+  /**
+   * Follows every account from this position on that has been unloaded or deleted. Transfers with a
+   * deleted account are completed with false and dropped.
+   */
+  private void reload(List<HoldingsTransfer> transfers, int start) {
+    for(int position = transfers.size() - 1; position >= start; position--) {
+      final HoldingsTransfer transfer = transfers.get(position);
+      final GhostAccount from = (transfer.getFrom().getIndex() < 0)? reload(transfer.getFrom()) : transfer.getFrom();
+      final GhostAccount to = (transfer.getTo().getIndex() < 0)? reload(transfer.getTo()) : transfer.getTo();
+      if(from == null || to == null) {
+        transfer.getResult().complete(false);
+        transfers.remove(position);
+        continue;
+      }
+      transfer.setAccounts(from, to);
+    }
+  }
+
+  /**
+   * Restores the world of an evicted key. Must not be called while holding a stripe.
+   */
+  private void restore(int key) {
+    final WorldPartitions current = partitions;
+    if(current != null) current.restore(keys.world(key));
+  }
+
+  private int evicted(int[] ids, List<Integer> order, int start, int end) {
+    for(int position = start; position < end; position++) {
+      if(keys.isEvicted(ids[order.get(position)])) return ids[order.get(position)];
+    }
+    return HoldingsKeys.NONE;
+  }
+
+  private int evicted(int[] ids, int start, int end) {
+    for(int position = start; position < end; position++) {
+      if(keys.isEvicted(ids[position])) return ids[position];
+    }
+    return HoldingsKeys.NONE;
+  }
+
+  private long lockOrder(HoldingsTransfer transfer) {
+    final int from = stripe(transfer.getFrom());
+    final int to = stripe(transfer.getTo());
+    return ((long)Math.min(from, to) << 32) | Math.max(from, to);
+  }
+
+  private void lockPair(int first, int second) {
+    locks[first].lock();
+    if(second != first) locks[second].lock();
+  }
+
+  private void unlockPair(int first, int second) {
+    if(second != first) locks[second].unlock();
+    locks[first].unlock();
+  }
+}
@@ -1,5 +1,9 @@
 package net.tnemc.ghost.core.account;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 /*
  * Ghost Server Plugin
  *
@@ -16,5 +20,122 @@ package net.tnemc.ghost.core.account;
  * You should have received a copy of the GNU Affero General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
+
+/**
+ * The balances of a single account, indexed by {@link HoldingsKeys} id. Balances of fixed point
+ * currencies are kept as long minor units, everything else as BigDecimals. Reads never lock; writes
+ * must be made while holding the account's lock in the {@link GhostAccountStore}.
+ */
 public class GhostHoldings {
-}
\ No newline at end of file
+
+  private static final BigDecimal[] EMPTY = new BigDecimal[0];
+
+  private static final AtomicLongArray EMPTY_MINOR = new AtomicLongArray(0);
+
+  private volatile BigDecimal[] values = EMPTY;
+
+  private volatile AtomicLongArray minor = EMPTY_MINOR;
+
+  /**
+   * @param key The holdings key id.
+   * @return The balance stored under this key, or null if there isn't one.
+   */
+  public BigDecimal get(int key) {
+    final BigDecimal[] current = values;
+    if(key < 0 || key >= current.length) return null;
+    return current[key];
+  }
+
+  /**
+   * Stores a balance under a key. Must be called while holding the account's lock.
+   * @param key The holdings key id.
+   * @param amount The balance, or null to clear it.
+   */
+  public void set(int key, BigDecimal amount) {
+    BigDecimal[] current = values;
+    if(key >= current.length) {
+      if(amount == null) return;
+      current = Arrays.copyOf(current, Math.max(key + 1, current.length + (current.length >> 1)));
+    }
+    current[key] = amount;
+
+    //Republish the array so lock-free readers are guaranteed to see the new element.
+    values = current;
+  }
+
+  /**
+   * @param key The holdings key id of a fixed point pair.
+   * @return The balance stored under this key in minor units, zero if there isn't one.
+   */
+  public long getMinor(int key) {
+    final AtomicLongArray current = minor;
+    if(key < 0 || key >= current.length()) return 0L;
+    return current.get(key);
+  }
+
+  /**
+   * Stores a fixed point balance under a key. Must be called while holding the account's lock.
+   * @param key The holdings key id of a fixed point pair.
+   * @param amount The balance in minor units.
+   */
+  public void setMinor(int key, long amount) {
+    AtomicLongArray current = minor;
+    if(key >= current.length()) {
+      if(amount == 0L) return;
+
+      final AtomicLongArray grown = new AtomicLongArray(Math.max(key + 1, current.length() + (current.length() >> 1)));
+      for(int i = 0; i < current.length(); i++) {
+        grown.set(i, current.get(i));
+      }
+      minor = current = grown;
+    }
+    current.set(key, amount);
+  }
+
+  /**
+   * Adds to a fixed point balance. Must be called while holding the account's lock.
+   * @param key The holdings key id of a fixed point pair.
+   * @param amount The amount to add in minor units, negative to subtract.
+   * @return The new balance in minor units.
+   * @throws ArithmeticException If the new balance would overflow a long, in which case the
+   * balance is left unchanged.
+   */
+  public long addMinor(int key, long amount) {
+    final long updated = Math.addExact(getMinor(key), amount);
+    setMinor(key, updated);
+    return updated;
+  }
+
+  /**
+   * Shrinks the storage to the highest key that still has a balance. Must be called while holding
+   * the account's lock.
+   */
+  public void trim() {
+    final BigDecimal[] current = values;
+    int length = current.length;
+    while(length > 0 && current[length - 1] == null) {
+      length--;
+    }
+    if(length < current.length) values = (length == 0)? EMPTY : Arrays.copyOf(current, length);
+
+    final AtomicLongArray currentMinor = minor;
+    int minorLength = currentMinor.length();
+    while(minorLength > 0 && currentMinor.get(minorLength - 1) == 0L) {
+      minorLength--;
+    }
+    if(minorLength < currentMinor.length()) {
+      final AtomicLongArray trimmed = (minorLength == 0)? EMPTY_MINOR : new AtomicLongArray(minorLength);
+      for(int i = 0; i < minorLength; i++) {
+        trimmed.set(i, currentMinor.get(i));
+      }
+      minor = trimmed;
+    }
+  }
+
+  /**
+   * @return The number of key slots this container has room for. Keys at or above this have no balance.
+   */
+  public int capacity() {
+    return Math.max(values.length, minor.length());
+  }
+}
@@ -0,0 +1,196 @@
+package net.tnemc.ghost.core.account;
+
+import net.tnemc.ghost.core.currency.CurrencySettings;
+import net.tnemc.ghost.core.currency.GhostCurrency;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Interns every world/currency pair that holdings are stored under and assigns it a small int id.
+ * Accounts index their balances by this id, so looking up a balance never builds or hashes a
+ * combined String key. Ids are never reused.
+ *
+ * Each id also records how its currency is stored: as a BigDecimal, or as a scaled long number of
+ * minor units for currencies configured as fixed point.
+ */
+public class HoldingsKeys {
+
+  /**
+   * The id returned by {@link #find(String, String)} for a pair that has never been assigned one.
+   */
+  public static final int NONE = -1;
+
+  private final Map<String, Map<String, Integer>> ids = new ConcurrentHashMap<>();
+
+  private volatile String[] worlds = new String[16];
+  private volatile String[] currencies = new String[16];
+  private volatile int[] scales = new int[16];
+  //Copied on write, so a lock-free reader always sees a consistent flag.
+  private volatile boolean[] evicted = new boolean[16];
+  private volatile int size = 0;
+
+  private final CurrencySettings settings;
+
+  public HoldingsKeys(CurrencySettings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * Used to look up the id of a world/currency pair without assigning one.
+   * @param world The name of the world.
+   * @param currency The name of the currency.
+   * @return The id of the pair, or {@link #NONE} if no holdings have ever been stored under it.
+   */
+  public int find(String world, String currency) {
+    final Map<String, Integer> byCurrency = ids.get(world);
+    if(byCurrency == null) return NONE;
+
+    final Integer id = byCurrency.get(currency);
+    return (id == null)? NONE : id;
+  }
+
+  /**
+   * Used to get the id of a world/currency pair, assigning one if needed.
+   * @param world The name of the world.
+   * @param currency The name of the currency.
+   * @return The id of the pair.
+   */
+  public int id(String world, String currency) {
+    final int id = find(world, currency);
+    if(id != NONE) return id;
+    return assign(world, currency);
+  }
+
+  private synchronized int assign(String world, String currency) {
+    final Map<String, Integer> byCurrency = ids.computeIfAbsent(world, (key)->new ConcurrentHashMap<>());
+
+    final Integer existing = byCurrency.get(currency);
+    if(existing != null) return existing;
+
+    final int id = size;
+    if(id == worlds.length) {
+      worlds = Arrays.copyOf(worlds, id << 1);
+      currencies = Arrays.copyOf(currencies, id << 1);
+      scales = Arrays.copyOf(scales, id << 1);
+      evicted = Arrays.copyOf(evicted, id << 1);
+    }
+    final GhostCurrency settings = this.settings.get(currency);
+    worlds[id] = world;
+    currencies[id] = currency;
+    scales[id] = (settings.isFixedPoint())? settings.getScale() : -1;
+    size = id + 1;
+
+    byCurrency.put(currency, id);
+    return id;
+  }
+
+  public String world(int id) {
+    return worlds[id];
+  }
+
+  public String currency(int id) {
+    return currencies[id];
+  }
+
+  /**
+   * @param id The holdings key id, may be {@link #NONE}.
+   * @return Whether balances stored under this id are kept as scaled long minor units.
+   */
+  public boolean isFixedPoint(int id) {
+    return id >= 0 && scales[id] >= 0;
+  }
+
+  /**
+   * @param id The holdings key id of a fixed point pair.
+   * @return The number of decimal places a minor unit represents.
+   */
+  public int scale(int id) {
+    return scales[id];
+  }
+
+  /**
+   * Converts an amount into minor units for a fixed point pair, rounding to the currency's scale.
+   * @param id The holdings key id of a fixed point pair.
+   * @param amount The amount to convert.
+   * @return The amount in minor units.
+   * @throws ArithmeticException If the amount doesn't fit in a long.
+   */
+  public long toMinor(int id, BigDecimal amount) {
+    return amount.setScale(scales[id], RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+  }
+
+  /**
+   * @param id The holdings key id of a fixed point pair.
+   * @param minor The amount in minor units.
+   * @return The amount as a BigDecimal.
+   */
+  public BigDecimal toDecimal(int id, long minor) {
+    return BigDecimal.valueOf(minor, scales[id]);
+  }
+
+  /**
+   * @param world The name of the world.
+   * @return The ids of every pair in this world.
+   */
+  public int[] keys(String world) {
+    final Map<String, Integer> byCurrency = ids.get(world);
+    if(byCurrency == null) return new int[0];
+
+    return byCurrency.values().stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * @return The name of every world that has at least one pair.
+   */
+  public Set<String> worlds() {
+    return Collections.unmodifiableSet(ids.keySet());
+  }
+
+  /**
+   * @param id The holdings key id, may be {@link #NONE}.
+   * @return True if the balances stored under this id have been evicted from memory, see
+   * {@link WorldPartitions}.
+   */
+  public boolean isEvicted(int id) {
+    final boolean[] current = evicted;
+    return id >= 0 && id < current.length && current[id];
+  }
+
+  synchronized void setEvicted(int[] ids, boolean value) {
+    final boolean[] copy = Arrays.copyOf(evicted, evicted.length);
+    for(int id : ids) {
+      copy[id] = value;
+    }
+    evicted = copy;
+  }
+
+  /**
+   * @return The number of ids that have been assigned; every id is below this value.
+   */
+  public int size() {
+    return size;
+  }
+}
@@ -0,0 +1,76 @@
+package net.tnemc.ghost.core.account;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A single balance change in a batch applied by {@link GhostAccountStore#changeHoldings(java.util.List)}.
+ * A positive delta adds to the balance, a negative one removes from it.
+ */
+public class HoldingsOperation {
+
+  private final String name;
+  private final UUID id;
+  private final String world;
+  private final String currency;
+  private final BigDecimal delta;
+
+  public HoldingsOperation(String identifier, String world, String currency, BigDecimal delta) {
+    this.name = identifier;
+    this.id = null;
+    this.world = world;
+    this.currency = currency;
+    this.delta = delta;
+  }
+
+  public HoldingsOperation(UUID identifier, String world, String currency, BigDecimal delta) {
+    this.name = null;
+    this.id = identifier;
+    this.world = world;
+    this.currency = currency;
+    this.delta = delta;
+  }
+
+  /**
+   * @return The name of the account, or null if it's identified by {@link #getId()}.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return The {@link UUID} of the account, or null if it's identified by {@link #getName()}.
+   */
+  public UUID getId() {
+    return id;
+  }
+
+  public String getWorld() {
+    return world;
+  }
+
+  public String getCurrency() {
+    return currency;
+  }
+
+  public BigDecimal getDelta() {
+    return delta;
+  }
+}
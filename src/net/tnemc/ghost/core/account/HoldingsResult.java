@@ -0,0 +1,55 @@
+package net.tnemc.ghost.core.account;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The outcome of a balance change checked against the {@link net.tnemc.ghost.core.currency.BalanceRules},
+ * so callers can tell why a change was rejected.
+ */
+public enum HoldingsResult {
+
+  SUCCESS("The balance was changed."),
+  NO_ACCOUNT("The account doesn't exist."),
+  INVALID_AMOUNT("The amount must be greater than zero."),
+  INSUFFICIENT_FUNDS("The balance would fall below its minimum, including any overdraft."),
+  BELOW_MINIMUM("The balance would be below its minimum, including any overdraft."),
+  ABOVE_MAXIMUM("The balance would be above its maximum."),
+  OVER_TRANSACTION_LIMIT("The amount is more than a single transaction may move."),
+  OVERFLOW("The balance or amount doesn't fit in the currency's fixed point range."),
+  RATE_LIMITED("Too many changes have been made to the account, or by the calling plugin, recently.");
+
+  private final String message;
+
+  HoldingsResult(String message) {
+    this.message = message;
+  }
+
+  /**
+   * @return True if the change was applied, or would be.
+   */
+  public boolean isSuccess() {
+    return this == SUCCESS;
+  }
+
+  /**
+   * @return A human readable reason for this result.
+   */
+  public String getMessage() {
+    return message;
+  }
+}
@@ -0,0 +1,117 @@
+package net.tnemc.ghost.core.account;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A transfer waiting to be applied as part of a batch by
+ * {@link GhostAccountStore#transferHoldings(java.util.List)}.
+ */
+public class HoldingsTransfer {
+
+  private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+  private GhostAccount from;
+  private GhostAccount to;
+  private Object fromIdentifier;
+  private Object toIdentifier;
+  private final String world;
+  private final String currency;
+  private final BigDecimal amount;
+
+  public HoldingsTransfer(GhostAccount from, GhostAccount to, String world, String currency, BigDecimal amount) {
+    this.from = from;
+    this.to = to;
+    this.world = world;
+    this.currency = currency;
+    this.amount = amount;
+  }
+
+  /**
+   * A transfer between the accounts of two players, which are looked up when the batch is applied
+   * rather than on the thread that queued it.
+   */
+  public HoldingsTransfer(UUID from, UUID to, String world, String currency, BigDecimal amount) {
+    this((GhostAccount)null, null, world, currency, amount);
+    this.fromIdentifier = from;
+    this.toIdentifier = to;
+  }
+
+  /**
+   * A transfer between two accounts by identifier, see {@link GhostAccountStore#getAccount(String)},
+   * which are looked up when the batch is applied rather than on the thread that queued it.
+   */
+  public HoldingsTransfer(String from, String to, String world, String currency, BigDecimal amount) {
+    this((GhostAccount)null, null, world, currency, amount);
+    this.fromIdentifier = from;
+    this.toIdentifier = to;
+  }
+
+  public GhostAccount getFrom() {
+    return from;
+  }
+
+  public GhostAccount getTo() {
+    return to;
+  }
+
+  /**
+   * Replaces the accounts with the ones they were loaded back as after being unloaded.
+   */
+  void setAccounts(GhostAccount from, GhostAccount to) {
+    this.from = from;
+    this.to = to;
+  }
+
+  /**
+   * Looks up the accounts of a transfer queued by identifier. Called once, by the thread applying
+   * the batch, before the transfer is sorted into it.
+   */
+  void resolve(GhostAccountStore store) {
+    if(fromIdentifier != null) {
+      from = (fromIdentifier instanceof UUID)? store.getAccount((UUID)fromIdentifier) : store.getAccount((String)fromIdentifier);
+      fromIdentifier = null;
+    }
+    if(toIdentifier != null) {
+      to = (toIdentifier instanceof UUID)? store.getAccount((UUID)toIdentifier) : store.getAccount((String)toIdentifier);
+      toIdentifier = null;
+    }
+  }
+
+  public String getWorld() {
+    return world;
+  }
+
+  public String getCurrency() {
+    return currency;
+  }
+
+  public BigDecimal getAmount() {
+    return amount;
+  }
+
+  /**
+   * @return A future completed with true once the transfer has been applied, or false if it failed.
+   */
+  public CompletableFuture<Boolean> getResult() {
+    return result;
+  }
+}
@@ -0,0 +1,328 @@
+package net.tnemc.ghost.core.account;
+
+import net.tnemc.ghost.core.io.GhostIO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Moves the balances of whole worlds out of memory and back. Evicting a world writes every balance
+ * stored in it to a partition file, clears them from the accounts and flags the world's
+ * {@link HoldingsKeys} ids as evicted. The store checks that flag, under the account's lock for
+ * writes, and restores the world before it touches one of its balances, so an evicted world
+ * behaves exactly like a resident one, only slower on first use.
+ *
+ * Partition files only live as long as the process. Snapshots include evicted balances, see
+ * {@link #readEvicted()}, so the files are deleted on startup.
+ */
+public class WorldPartitions {
+
+  private static final byte KIND_MINOR = 0;
+  private static final byte KIND_DECIMAL = 1;
+
+  private final GhostAccountStore store;
+  private final HoldingsKeys keys;
+  private final File directory;
+  private final Logger logger;
+
+  private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+  private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+  public WorldPartitions(GhostAccountStore store, File directory, Logger logger) {
+    this.store = store;
+    this.keys = store.getKeys();
+    this.directory = directory;
+    this.logger = logger;
+  }
+
+  /**
+   * Deletes partition files left behind by an earlier run.
+   */
+  public void clean() {
+    final File[] files = directory.listFiles();
+    if(files == null) return;
+
+    for(File file : files) {
+      if(!file.delete()) logger.warning("Unable to delete the stale world partition " + file.getName() + ".");
+    }
+  }
+
+  /**
+   * @param world The name of the world.
+   * @return True if this world's balances are currently evicted.
+   */
+  public boolean isEvicted(String world) {
+    return partitions.containsKey(world);
+  }
+
+  /**
+   * @return The names of every evicted world.
+   */
+  public Set<String> getEvicted() {
+    return Collections.unmodifiableSet(partitions.keySet());
+  }
+
+  /**
+   * @param account The account.
+   * @return True if any of this account's balances are evicted. Must be called while holding the
+   * account's lock for the answer to stay true.
+   */
+  public boolean hasEvicted(GhostAccount account) {
+    for(Partition partition : partitions.values()) {
+      if(partition.holders.contains(account)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Writes every balance stored in a world to its partition file and frees them from memory.
+   * Accounts that are loaded lazily afterwards keep their balances for this world in memory.
+   * @param world The name of the world.
+   * @return The number of balances evicted.
+   * @throws IOException If the partition can't be written, in which case every balance is put back.
+   */
+  public int evict(String world) throws IOException {
+    final int[] ids = keys.keys(world);
+    if(ids.length == 0) return 0;
+
+    final ReentrantLock lock = lock(world);
+    lock.lock();
+    try {
+      if(partitions.containsKey(world)) return 0;
+
+      //Flagged first, so anything that takes an account's lock after it has been evicted restores it.
+      keys.setEvicted(ids, true);
+
+      final Partition partition = new Partition(new File(directory, fileName(world)));
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream out = new DataOutputStream(bytes);
+      int evicted = 0;
+
+      for(GhostAccount account : accounts()) {
+        final ReentrantLock stripe = store.lock(account);
+        stripe.lock();
+        try {
+          if(account.getIndex() < 0) continue;
+
+          final int before = evicted;
+          final GhostHoldings holdings = account.getHoldingsContainer();
+          for(int id : ids) {
+            if(keys.isFixedPoint(id)) {
+              final long minor = holdings.getMinor(id);
+              if(minor == 0L) continue;
+
+              writeEntry(out, partition.accounts.size(), id);
+              out.writeByte(KIND_MINOR);
+              out.writeLong(minor);
+              holdings.setMinor(id, 0L);
+            } else {
+              final BigDecimal value = holdings.get(id);
+              if(value == null) continue;
+
+              writeEntry(out, partition.accounts.size(), id);
+              out.writeByte(KIND_DECIMAL);
+              GhostIO.writeDecimal(out, value);
+              holdings.set(id, null);
+            }
+            evicted++;
+          }
+
+          if(evicted > before) {
+            partition.accounts.add(account);
+            partition.holders.add(account);
+            holdings.trim();
+          }
+        } finally {
+          stripe.unlock();
+        }
+      }
+      out.flush();
+
+      try {
+        directory.mkdirs();
+        try(FileOutputStream file = new FileOutputStream(partition.file)) {
+          bytes.writeTo(file);
+        }
+      } catch(IOException e) {
+        apply(partition, new ByteArrayInputStream(bytes.toByteArray()));
+        keys.setEvicted(ids, false);
+        throw e;
+      }
+
+      partitions.put(world, partition);
+      return evicted;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Puts an evicted world's balances back into its accounts. Balances of accounts that were deleted
+   * while the world was evicted are dropped.
+   * @param world The name of the world.
+   * @return The number of balances restored.
+   */
+  public int restore(String world) {
+    final ReentrantLock lock = lock(world);
+    lock.lock();
+    try {
+      final Partition partition = partitions.get(world);
+      if(partition == null) {
+        keys.setEvicted(keys.keys(world), false);
+        return 0;
+      }
+
+      int restored;
+      try(InputStream in = new BufferedInputStream(new FileInputStream(partition.file))) {
+        restored = apply(partition, in);
+      } catch(IOException e) {
+        //The flags stay set, so every later access tries again rather than reading an empty balance.
+        logger.log(Level.SEVERE, "Unable to restore the balances of world " + world + ".", e);
+        return 0;
+      }
+
+      keys.setEvicted(keys.keys(world), false);
+      partitions.remove(world);
+      if(!partition.file.delete()) partition.file.deleteOnExit();
+      return restored;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Restores every evicted world.
+   */
+  public void restoreAll() {
+    for(String world : new ArrayList<>(partitions.keySet())) {
+      restore(world);
+    }
+  }
+
+  /**
+   * Reads every evicted balance, for writing a snapshot. Worlds evicted while this runs may be
+   * missed, so callers must keep evictions from running at the same time.
+   * @return Each account that has evicted balances, mapped to them.
+   */
+  public Map<GhostAccount, GhostHoldings> readEvicted() {
+    final Map<GhostAccount, GhostHoldings> evicted = new IdentityHashMap<>();
+    for(Partition partition : partitions.values()) {
+      try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(partition.file)))) {
+        while(in.available() > 0) {
+          final GhostAccount account = partition.accounts.get(GhostIO.readVarInt(in));
+          final int id = GhostIO.readVarInt(in);
+          final GhostHoldings holdings = evicted.computeIfAbsent(account, (key)->new GhostHoldings());
+          if(in.readByte() == KIND_MINOR) holdings.setMinor(id, in.readLong()); else holdings.set(id, GhostIO.readDecimal(in));
+        }
+      } catch(FileNotFoundException e) {
+        //Restored since the partition was listed, so its balances are back in the accounts.
+      } catch(IOException e) {
+        logger.log(Level.SEVERE, "Unable to read the evicted balances in " + partition.file.getName() + ".", e);
+      }
+    }
+    return evicted;
+  }
+
+  private int apply(Partition partition, InputStream stream) throws IOException {
+    final DataInputStream in = new DataInputStream(stream);
+    int restored = 0;
+    while(in.available() > 0) {
+      final GhostAccount account = partition.accounts.get(GhostIO.readVarInt(in));
+      final int id = GhostIO.readVarInt(in);
+      final boolean minor = in.readByte() == KIND_MINOR;
+      final long minorValue = (minor)? in.readLong() : 0L;
+      final BigDecimal decimal = (minor)? null : GhostIO.readDecimal(in);
+
+      final ReentrantLock stripe = store.lock(account);
+      stripe.lock();
+      try {
+        //A deleted account keeps its compact id at -1.
+        if(account.getIndex() < 0) continue;
+
+        if(minor) account.getHoldingsContainer().setMinor(id, minorValue); else account.getHoldingsContainer().set(id, decimal);
+        partition.holders.remove(account);
+        restored++;
+      } finally {
+        stripe.unlock();
+      }
+    }
+    return restored;
+  }
+
+  private List<GhostAccount> accounts() {
+    final List<GhostAccount> accounts = new ArrayList<>(store.getIdAccounts());
+    accounts.addAll(store.getStringAccounts());
+    return accounts;
+  }
+
+  private ReentrantLock lock(String world) {
+    return locks.computeIfAbsent(world, (key)->new ReentrantLock());
+  }
+
+  private static void writeEntry(DataOutputStream out, int account, int id) throws IOException {
+    GhostIO.writeVarInt(out, account);
+    GhostIO.writeVarInt(out, id);
+  }
+
+  private static String fileName(String world) {
+    final StringBuilder name = new StringBuilder();
+    for(byte value : world.getBytes(StandardCharsets.UTF_8)) {
+      name.append(String.format("%02x", value));
+    }
+    return name.append(".partition").toString();
+  }
+
+  private static class Partition {
+
+    private final File file;
+
+    //Indexed by the account number written with each balance.
+    private final List<GhostAccount> accounts = new ArrayList<>();
+
+    //The accounts that still have a balance in this partition.
+    private final Set<GhostAccount> holders = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    Partition(File file) {
+      this.file = file;
+    }
+  }
+}
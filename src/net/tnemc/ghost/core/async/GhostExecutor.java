@@ -0,0 +1,250 @@
+package net.tnemc.ghost.core.async;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Runs Ghost's async economy operations. Each {@link OperationType} has its own fixed-size pool and
+ * bounded queue so economy work never shares the common pool with the rest of the server, and a
+ * burst of one kind of operation can't starve the others.
+ */
+public class GhostExecutor {
+
+  //Set while the current thread runs the work of a supplied operation.
+  private static final ThreadLocal<Boolean> RUNNING = new ThreadLocal<>();
+
+  private final Map<OperationType, ThreadPoolExecutor> executors = new EnumMap<>(OperationType.class);
+
+  public GhostExecutor(Map<OperationType, Integer> threads, int queue, BackPressure policy) {
+    for(OperationType type : OperationType.values()) {
+      final int size = Math.max(1, threads.getOrDefault(type, type.getDefaultThreads()));
+
+      final ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 30L, TimeUnit.SECONDS,
+                                                                 new ArrayBlockingQueue<>(Math.max(1, queue)),
+                                                                 new GhostThreadFactory(type),
+                                                                 policy.handler());
+      executor.allowCoreThreadTimeOut(true);
+      executors.put(type, executor);
+    }
+  }
+
+  /**
+   * Builds an executor from the Ghost.Executor configuration section.
+   * @param section The configuration section, may be null to use the defaults.
+   * @return The executor.
+   */
+  public static GhostExecutor fromConfig(ConfigurationSection section) {
+    final Map<OperationType, Integer> threads = new EnumMap<>(OperationType.class);
+    int queue = 1024;
+    BackPressure policy = BackPressure.ABORT;
+
+    if(section != null) {
+      for(OperationType type : OperationType.values()) {
+        threads.put(type, section.getInt("Threads." + type.getConfigNode(), type.getDefaultThreads()));
+      }
+      queue = section.getInt("Queue", queue);
+      policy = BackPressure.fromName(section.getString("Policy", "Abort"));
+    }
+    return new GhostExecutor(threads, queue, policy);
+  }
+
+  /**
+   * @return True if the current thread is one of the pool threads of a Ghost executor.
+   */
+  public static boolean isWorkerThread() {
+    return Thread.currentThread() instanceof Worker;
+  }
+
+  /**
+   * @return True while the current thread is running the work of an operation passed to
+   * {@link #supply}, whether on a pool thread or, under {@link BackPressure#CALLER_RUNS}, on the
+   * thread that supplied it. Callbacks run once the operation's future completes aren't part of it.
+   */
+  public static boolean isRunningOperation() {
+    return RUNNING.get() != null;
+  }
+
+  /**
+   * Runs a supplier on the pool for the specified operation type.
+   * @param type The type of operation being run.
+   * @param supplier The work to run.
+   * @param <T> The result type.
+   * @return A future completed with the result of the supplier. If the executor has been shut down,
+   * or the queue is full and the back-pressure policy is {@link BackPressure#ABORT}, the future is
+   * completed exceptionally with a {@link RejectedExecutionException}.
+   */
+  public <T> CompletableFuture<T> supply(OperationType type, Supplier<T> supplier) {
+    try {
+      return CompletableFuture.supplyAsync(()->run(supplier), executors.get(type));
+    } catch(RejectedExecutionException e) {
+      final CompletableFuture<T> future = new CompletableFuture<>();
+      future.completeExceptionally(e);
+      return future;
+    }
+  }
+
+  private static <T> T run(Supplier<T> supplier) {
+    if(RUNNING.get() != null) return supplier.get();
+
+    RUNNING.set(Boolean.TRUE);
+    try {
+      return supplier.get();
+    } finally {
+      RUNNING.remove();
+    }
+  }
+
+  /**
+   * Runs a task on the pool for the specified operation type.
+   * @param type The type of operation being run.
+   * @param task The work to run.
+   * @return True if the task was accepted, false if the executor has been shut down or the queue is
+   * full and the back-pressure policy is {@link BackPressure#ABORT}.
+   */
+  public boolean execute(OperationType type, Runnable task) {
+    try {
+      executors.get(type).execute(task);
+      return true;
+    } catch(RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  /**
+   * @param type The operation type.
+   * @return The number of operations of this type waiting for a worker.
+   */
+  public int queued(OperationType type) {
+    return executors.get(type).getQueue().size();
+  }
+
+  /**
+   * @param type The operation type.
+   * @return The number of workers currently running an operation of this type.
+   */
+  public int active(OperationType type) {
+    return executors.get(type).getActiveCount();
+  }
+
+  /**
+   * Stops accepting new operations and waits for the queued ones to finish.
+   * @param timeout The maximum time to wait for the queues to drain, shared by all types.
+   * @param unit The unit of the timeout.
+   * @return True if every queued operation finished, false if some had to be dropped.
+   */
+  public boolean shutdown(long timeout, TimeUnit unit) {
+    for(ThreadPoolExecutor executor : executors.values()) {
+      executor.shutdown();
+    }
+
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    boolean drained = true;
+    for(ThreadPoolExecutor executor : executors.values()) {
+      try {
+        if(!executor.awaitTermination(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+          executor.shutdownNow();
+          drained = false;
+        }
+      } catch(InterruptedException e) {
+        executor.shutdownNow();
+        Thread.currentThread().interrupt();
+        drained = false;
+      }
+    }
+    return drained;
+  }
+
+  /**
+   * What to do with an operation when its queue is full.
+   */
+  public enum BackPressure {
+
+    /**
+     * Run the operation on the calling thread, slowing the caller down to the speed of the pool. The
+     * caller is usually the server thread, which then does the economy work itself and lags while
+     * the queue is full.
+     */
+    CALLER_RUNS,
+
+    /**
+     * Reject the operation, completing its future exceptionally.
+     */
+    ABORT;
+
+    RejectedExecutionHandler handler() {
+      if(this == ABORT) return new ThreadPoolExecutor.AbortPolicy();
+      return new CallerRuns();
+    }
+
+    public static BackPressure fromName(String name) {
+      if(name != null && name.equalsIgnoreCase("CallerRuns")) return CALLER_RUNS;
+      return ABORT;
+    }
+  }
+
+  /**
+   * Runs rejected operations on the calling thread while the executor is running. Once it's shut
+   * down they're rejected like {@link BackPressure#ABORT} does, rather than silently dropped, so
+   * their futures are completed instead of never finishing.
+   */
+  private static class CallerRuns implements RejectedExecutionHandler {
+
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+      if(executor.isShutdown()) throw new RejectedExecutionException("Ghost is shutting down.");
+      task.run();
+    }
+  }
+
+  private static class GhostThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+    private final String prefix;
+
+    GhostThreadFactory(OperationType type) {
+      this.prefix = "Ghost-" + type.getConfigNode() + "-";
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      final Thread thread = new Worker(runnable, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  private static class Worker extends Thread {
+
+    Worker(Runnable runnable, String name) {
+      super(runnable, name);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package net.tnemc.ghost.core.async;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Runs tasks on the server's main thread, such as callbacks of async economy calls that use Bukkit
+ * objects. Tasks are queued, and a single scheduler task runs every task queued by the next tick,
+ * so thousands of completions a tick cost one scheduler task rather than one each.
+ *
+ * The scheduler task is only scheduled by the first task queued after the queue was last drained.
+ * Each tick runs tasks for at most the budget, leaving the rest for the next tick, so a flood of
+ * completions can't stall the server.
+ */
+public class MainThreadExecutor implements Executor {
+
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+  private final Plugin plugin;
+  private final long budget;
+  private final Logger logger;
+
+  private volatile boolean closed = false;
+
+  /**
+   * @param plugin The plugin the scheduler tasks belong to.
+   * @param budget The longest tasks are run for each tick in milliseconds, zero to always run every
+   * queued task.
+   * @param logger The logger exceptions thrown by tasks are reported to.
+   */
+  public MainThreadExecutor(Plugin plugin, long budget, Logger logger) {
+    this.plugin = plugin;
+    this.budget = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, budget));
+    this.logger = logger;
+  }
+
+  /**
+   * Queues a task to run on the main thread, at the next tick at the earliest. Once closed, tasks run
+   * right away on the calling thread instead.
+   * @param task The task.
+   */
+  @Override
+  public void execute(Runnable task) {
+    if(closed) {
+      run(task);
+      return;
+    }
+
+    tasks.add(task);
+    if(!scheduled.get() && scheduled.compareAndSet(false, true)) schedule();
+  }
+
+  private void schedule() {
+    if(closed) {
+      drain(false);
+      return;
+    }
+    Bukkit.getScheduler().runTask(plugin, ()->drain(true));
+  }
+
+  private void drain(boolean budgeted) {
+    final long start = System.nanoTime();
+    Runnable task;
+    while((task = tasks.poll()) != null) {
+      run(task);
+      if(budgeted && budget > 0L && System.nanoTime() - start > budget) break;
+    }
+
+    //Cleared before checking the queue again, so a task queued in between is never left unscheduled.
+    scheduled.set(false);
+    if(!tasks.isEmpty() && scheduled.compareAndSet(false, true)) schedule();
+  }
+
+  private void run(Runnable task) {
+    try {
+      task.run();
+    } catch(RuntimeException e) {
+      logger.log(Level.WARNING, "A Ghost main thread callback threw an exception.", e);
+    }
+  }
+
+  /**
+   * @return The number of tasks waiting for the next tick.
+   */
+  public int pending() {
+    return tasks.size();
+  }
+
+  /**
+   * Runs every task still queued on the calling thread, which should be the main thread, and runs
+   * tasks queued from now on right away, since the scheduler can't be used once Ghost is disabled.
+   */
+  public void close() {
+    closed = true;
+    drain(false);
+  }
+}
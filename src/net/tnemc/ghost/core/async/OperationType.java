@@ -0,0 +1,49 @@
+package net.tnemc.ghost.core.async;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The families of async economy operations. Each one is given its own queue and workers by the
+ * {@link GhostExecutor}.
+ */
+public enum OperationType {
+
+  READ("Read", 2),
+  WRITE("Write", 2),
+  TRANSFER("Transfer", 1),
+  MAINTENANCE("Maintenance", 1),
+
+  //Separate from maintenance, so a long purge doesn't hold back cache eviction and world restores.
+  PURGE("Purge", 1);
+
+  private final String configNode;
+  private final int defaultThreads;
+
+  OperationType(String configNode, int defaultThreads) {
+    this.configNode = configNode;
+    this.defaultThreads = defaultThreads;
+  }
+
+  public String getConfigNode() {
+    return configNode;
+  }
+
+  public int getDefaultThreads() {
+    return defaultThreads;
+  }
+}
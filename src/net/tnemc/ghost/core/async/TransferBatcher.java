@@ -0,0 +1,127 @@
+package net.tnemc.ghost.core.async;
+
+import net.tnemc.ghost.core.account.GhostAccountStore;
+import net.tnemc.ghost.core.account.HoldingsTransfer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The throughput mode for async transfers. Instead of one pool task per transfer, transfers are
+ * queued and a bounded number of drain tasks apply them in batches through
+ * {@link GhostAccountStore#transferHoldings(List)}, which locks each stripe pair once per batch.
+ */
+public class TransferBatcher {
+
+  private final ConcurrentLinkedQueue<HoldingsTransfer> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger drainers = new AtomicInteger();
+
+  private final GhostAccountStore store;
+  private final GhostExecutor executor;
+  private final int workers;
+  private final int batchSize;
+
+  /**
+   * @param store The store to apply transfers to.
+   * @param executor The executor the drain tasks run on, as {@link OperationType#TRANSFER} operations.
+   * @param workers The maximum number of drain tasks running at once.
+   * @param batchSize The maximum number of transfers applied per batch.
+   */
+  public TransferBatcher(GhostAccountStore store, GhostExecutor executor, int workers, int batchSize) {
+    this.store = store;
+    this.executor = executor;
+    this.workers = Math.max(1, workers);
+    this.batchSize = Math.max(1, batchSize);
+  }
+
+  /**
+   * Queues a transfer.
+   * @param transfer The transfer.
+   * @return A future completed with true once the transfer has been applied, or false if it failed.
+   * Completed exceptionally with a {@link RejectedExecutionException} if no drain task could be started.
+   */
+  public CompletableFuture<Boolean> submit(HoldingsTransfer transfer) {
+    queue.add(transfer);
+    schedule();
+    return transfer.getResult();
+  }
+
+  /**
+   * @return The number of transfers waiting to be applied.
+   */
+  public int pending() {
+    return queue.size();
+  }
+
+  private void schedule() {
+    int current;
+    while((current = drainers.get()) < workers) {
+      if(drainers.compareAndSet(current, current + 1)) {
+        if(!executor.execute(OperationType.TRANSFER, this::drain)) {
+          //Failing the queue keeps the transfer queue's back-pressure, instead of applying it on the caller.
+          if(drainers.decrementAndGet() == 0) reject();
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Fails every queued transfer once no drain task could be started to apply them.
+   */
+  private void reject() {
+    final RejectedExecutionException rejected = new RejectedExecutionException("The transfer queue is full or Ghost is shutting down.");
+    HoldingsTransfer transfer;
+    while((transfer = queue.poll()) != null) {
+      transfer.getResult().completeExceptionally(rejected);
+    }
+  }
+
+  private void drain() {
+    try {
+      final List<HoldingsTransfer> batch = new ArrayList<>(batchSize);
+      while(true) {
+        HoldingsTransfer transfer;
+        while(batch.size() < batchSize && (transfer = queue.poll()) != null) {
+          batch.add(transfer);
+        }
+        if(batch.isEmpty()) break;
+
+        try {
+          store.transferHoldings(batch);
+        } catch(RuntimeException e) {
+          for(HoldingsTransfer failed : batch) {
+            failed.getResult().completeExceptionally(e);
+          }
+        }
+        batch.clear();
+      }
+    } finally {
+      drainers.decrementAndGet();
+    }
+
+    //A transfer queued while this drain was finishing may have seen every drainer busy.
+    if(!queue.isEmpty()) schedule();
+  }
+}
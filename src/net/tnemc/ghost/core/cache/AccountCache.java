@@ -0,0 +1,351 @@
+package net.tnemc.ghost.core.cache;
+
+import net.tnemc.ghost.core.account.AccountListener;
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostAccountStore;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Bounds the number of accounts a {@link GhostAccountStore} keeps in memory, unloading cold accounts
+ * to {@link ColdAccounts}. The store loads them back as soon as they're looked up again.
+ *
+ * Which accounts stay follows W-TinyLFU. New and loaded accounts enter a small LRU window; when it
+ * overflows, its oldest account only displaces the oldest account of the main space if a
+ * {@link FrequencySketch} says it has been used more often recently. The main space is a segmented
+ * LRU, so accounts used again after being admitted are protected from one-off scans. Accounts of
+ * online players are pinned and never unloaded.
+ *
+ * Lookups only record the account in a lossy, striped buffer; the buffers are replayed and accounts
+ * unloaded on the maintenance executor, so the policy never adds a lock to the hot path.
+ */
+public class AccountCache implements AccountListener {
+
+  private static final int BUFFER_SIZE = 128;
+  private static final int BUFFER_MASK = BUFFER_SIZE - 1;
+
+  //How many of the oldest main space accounts are considered as a victim before giving up.
+  private static final int VICTIM_SCAN = 16;
+
+  private final GhostAccountStore store;
+  private final ColdAccounts cold;
+  private final int maximum;
+  private final int windowMaximum;
+  private final int protectedMaximum;
+  private final Executor executor;
+
+  private final Set<UUID> pinned = ConcurrentHashMap.newKeySet();
+
+  private final ReadBuffer[] reads;
+  private final int readMask;
+  private final Queue<GhostAccount> added = new ConcurrentLinkedQueue<>();
+  private final Queue<GhostAccount> removed = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  //Everything below is guarded by the eviction lock.
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final FrequencySketch sketch;
+  private final LinkedHashMap<GhostAccount, Boolean> window = new LinkedHashMap<>(16, 0.75F, true);
+  private final LinkedHashMap<GhostAccount, Boolean> probation = new LinkedHashMap<>(16, 0.75F, true);
+  private final LinkedHashMap<GhostAccount, Boolean> protectedSpace = new LinkedHashMap<>(16, 0.75F, true);
+  private long unloaded = 0L;
+  private boolean closed = false;
+
+  /**
+   * @param store The store whose accounts are cached.
+   * @param cold Where unloaded accounts are written.
+   * @param maximum The number of accounts kept in memory, besides pinned ones.
+   * @param executor The executor maintenance runs on, which throws a RejectedExecutionException if
+   * it doesn't accept a task.
+   */
+  public AccountCache(GhostAccountStore store, ColdAccounts cold, int maximum, Executor executor) {
+    this.store = store;
+    this.cold = cold;
+    this.maximum = Math.max(2, maximum);
+    this.windowMaximum = Math.max(1, this.maximum / 100);
+    this.protectedMaximum = (int)((this.maximum - windowMaximum) * 0.8D);
+    this.executor = executor;
+    this.sketch = new FrequencySketch(this.maximum);
+
+    int stripes = 1;
+    while(stripes < Runtime.getRuntime().availableProcessors() * 4) {
+      stripes <<= 1;
+    }
+    reads = new ReadBuffer[stripes];
+    for(int i = 0; i < stripes; i++) {
+      reads[i] = new ReadBuffer();
+    }
+    readMask = stripes - 1;
+  }
+
+  /**
+   * @return Where unloaded accounts are kept.
+   */
+  public ColdAccounts getCold() {
+    return cold;
+  }
+
+  /**
+   * Records a use of an account. Called by the store on every lookup that finds one in memory.
+   * @param account The account.
+   */
+  public void touch(GhostAccount account) {
+    if(!reads[(int)Thread.currentThread().getId() & readMask].offer(account)) schedule();
+  }
+
+  /**
+   * Keeps a player's account in memory until {@link #unpin} is called, such as while they're online.
+   * @param id The UUID of the player.
+   */
+  public void pin(UUID id) {
+    pinned.add(id);
+  }
+
+  public void unpin(UUID id) {
+    pinned.remove(id);
+  }
+
+  /**
+   * @return The number of accounts this cache has unloaded since it was created.
+   */
+  public long getUnloaded() {
+    evictionLock.lock();
+    try {
+      return unloaded;
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  /**
+   * Stops accounts from being unloaded until {@link #resume()} is called by the same thread, so a
+   * snapshot sees every account either in memory or cold, never on its way between the two.
+   */
+  public void pause() {
+    evictionLock.lock();
+  }
+
+  public void resume() {
+    evictionLock.unlock();
+    schedule();
+  }
+
+  /**
+   * Stops unloading accounts and deletes the cold accounts file. Called once the final snapshot,
+   * which includes the cold accounts, has been written.
+   */
+  public void close() {
+    evictionLock.lock();
+    try {
+      closed = true;
+      cold.close();
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  @Override
+  public void accountCreated(GhostAccount account) {
+    added.add(account);
+    schedule();
+  }
+
+  @Override
+  public void accountLoaded(GhostAccount account) {
+    added.add(account);
+    schedule();
+  }
+
+  @Override
+  public void accountDeleted(GhostAccount account) {
+    removed.add(account);
+    schedule();
+  }
+
+  /**
+   * Replays the recorded lookups and unloads accounts until the cache is back within its size.
+   * Returns straight away if maintenance is already running or the cache is paused.
+   */
+  public void maintain() {
+    scheduled.set(false);
+    if(!evictionLock.tryLock()) return;
+
+    try {
+      if(closed) return;
+
+      GhostAccount account;
+      while((account = added.poll()) != null) {
+        sketch.increment(hash(account));
+        window.put(account, Boolean.TRUE);
+      }
+      while((account = removed.poll()) != null) {
+        forget(account);
+      }
+      for(ReadBuffer buffer : reads) {
+        buffer.drain(this);
+      }
+
+      evict();
+      cold.prune();
+      cold.compact();
+    } finally {
+      evictionLock.unlock();
+    }
+
+    if(!added.isEmpty() || !removed.isEmpty()) schedule();
+  }
+
+  private void schedule() {
+    if(!scheduled.compareAndSet(false, true)) return;
+
+    try {
+      executor.execute(this::maintain);
+    } catch(RejectedExecutionException e) {
+      //Never ran, so the next change or lookup schedules it again.
+      scheduled.set(false);
+    }
+  }
+
+  private void accessed(GhostAccount account) {
+    sketch.increment(hash(account));
+    if(window.get(account) != null || protectedSpace.get(account) != null) return;
+
+    if(probation.remove(account) != null) {
+      protectedSpace.put(account, Boolean.TRUE);
+      if(protectedSpace.size() > protectedMaximum) {
+        final GhostAccount demoted = protectedSpace.keySet().iterator().next();
+        protectedSpace.remove(demoted);
+        probation.put(demoted, Boolean.TRUE);
+      }
+    }
+  }
+
+  private void forget(GhostAccount account) {
+    if(window.remove(account) == null && probation.remove(account) == null) protectedSpace.remove(account);
+  }
+
+  private void evict() {
+    while(window.size() > windowMaximum) {
+      final GhostAccount candidate = window.keySet().iterator().next();
+      window.remove(candidate);
+      if(probation.size() + protectedSpace.size() < maximum - windowMaximum) {
+        probation.put(candidate, Boolean.TRUE);
+        continue;
+      }
+
+      final GhostAccount victim = victim();
+      if(victim == null) {
+        //Everything in the main space is pinned, so the cache grows past its size.
+        probation.put(candidate, Boolean.TRUE);
+        continue;
+      }
+
+      if(pinned(candidate) || sketch.frequency(hash(candidate)) > sketch.frequency(hash(victim))) {
+        forget(victim);
+        if(!unload(victim)) probation.put(victim, Boolean.TRUE);
+        probation.put(candidate, Boolean.TRUE);
+      } else if(!unload(candidate)) {
+        probation.put(candidate, Boolean.TRUE);
+      }
+    }
+  }
+
+  /**
+   * @return The oldest account in the main space that may be unloaded, or null if none is found.
+   */
+  private GhostAccount victim() {
+    final GhostAccount victim = victim(probation);
+    return (victim != null)? victim : victim(protectedSpace);
+  }
+
+  private GhostAccount victim(LinkedHashMap<GhostAccount, Boolean> space) {
+    final Iterator<GhostAccount> iterator = space.keySet().iterator();
+    for(int i = 0; i < VICTIM_SCAN && iterator.hasNext(); i++) {
+      final GhostAccount account = iterator.next();
+      if(!pinned(account)) return account;
+    }
+    return null;
+  }
+
+  /**
+   * @return True if the account is no longer in memory, false if it has to stay.
+   */
+  private boolean unload(GhostAccount account) {
+    if(store.unload(account)) {
+      unloaded++;
+      return true;
+    }
+    //Deleted since it was added.
+    return account.getIndex() < 0;
+  }
+
+  private boolean pinned(GhostAccount account) {
+    return account.getId() != null && pinned.contains(account.getId());
+  }
+
+  private static int hash(GhostAccount account) {
+    return ColdAccounts.key(account).hashCode();
+  }
+
+  /**
+   * A ring of recent lookups for the threads that share a stripe. Lookups are dropped when it's full
+   * or another thread wins the slot, which only costs the policy a little accuracy.
+   */
+  private static class ReadBuffer {
+
+    private final AtomicReferenceArray<GhostAccount> slots = new AtomicReferenceArray<>(BUFFER_SIZE);
+    private final AtomicLong writes = new AtomicLong();
+
+    //Only written while holding the eviction lock.
+    private volatile long reads = 0L;
+
+    /**
+     * @return False if the buffer is full and should be drained.
+     */
+    boolean offer(GhostAccount account) {
+      final long tail = writes.get();
+      if(tail - reads >= BUFFER_SIZE) return false;
+
+      if(writes.compareAndSet(tail, tail + 1)) slots.lazySet((int)tail & BUFFER_MASK, account);
+      return true;
+    }
+
+    void drain(AccountCache cache) {
+      final long tail = writes.get();
+      for(long head = reads; head < tail; head++) {
+        final GhostAccount account = slots.getAndSet((int)head & BUFFER_MASK, null);
+        if(account != null) cache.accessed(account);
+      }
+      reads = tail;
+    }
+  }
+}
@@ -0,0 +1,422 @@
+package net.tnemc.ghost.core.cache;
+
+import net.tnemc.ghost.core.account.AccountLoader;
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostHoldings;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+import net.tnemc.ghost.core.io.GhostIO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The accounts an {@link AccountCache} has unloaded from memory. Each one is appended to a single
+ * file as a record of its identifier and balances, and only the identifier and the record's position
+ * stay in memory. Loading an account hands it back to the store and leaves its record as dead space,
+ * which is reclaimed by {@link #compact()} once it outweighs the live records.
+ *
+ * An unloaded account can still be referenced by a call that looked it up earlier. Until that
+ * reference is gone the same instance is handed back, so there's never more than one live instance
+ * of an account.
+ *
+ * Like world partitions, the file only lives as long as the process; snapshots include every cold
+ * account, see {@link #readAll()}.
+ */
+public class ColdAccounts implements AccountLoader {
+
+  private static final byte KIND_MINOR = 0;
+  private static final byte KIND_DECIMAL = 1;
+
+  private final File file;
+  private final HoldingsKeys keys;
+  private final Logger logger;
+
+  //Keyed by the UUID of player accounts and the identifier of string accounts.
+  private final Map<Object, Entry> entries = new ConcurrentHashMap<>();
+
+  private final ReferenceQueue<GhostAccount> cleared = new ReferenceQueue<>();
+
+  //Appends and loads share the read lock, compaction takes the write lock.
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private FileChannel channel;
+  private long live = 0L;
+  private long dead = 0L;
+
+  public ColdAccounts(File file, HoldingsKeys keys, Logger logger) {
+    this.file = file;
+    this.keys = keys;
+    this.logger = logger;
+  }
+
+  /**
+   * Deletes the file left behind by an earlier run.
+   */
+  public void clean() {
+    try {
+      Files.deleteIfExists(file.toPath());
+    } catch(IOException e) {
+      logger.log(Level.WARNING, "Unable to delete the stale cold accounts file.", e);
+    }
+  }
+
+  /**
+   * @return The number of accounts held here.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Appends an account's record. Must be called while holding the account's lock, just before it's
+   * unregistered from the store.
+   * @param account The account.
+   * @return True if it was written, false if the file couldn't be written.
+   */
+  public boolean write(GhostAccount account) {
+    final byte[] record;
+    try {
+      record = encode(account);
+    } catch(IOException e) {
+      return false;
+    }
+
+    lock.readLock().lock();
+    try {
+      final long position;
+      synchronized(this) {
+        if(channel == null) {
+          file.getParentFile().mkdirs();
+          channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                     StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        position = channel.size();
+        final ByteBuffer buffer = ByteBuffer.wrap(record);
+        while(buffer.hasRemaining()) {
+          channel.write(buffer, position + buffer.position());
+        }
+        live += record.length;
+      }
+
+      final Object key = key(account);
+      entries.put(key, new Entry(position, record.length, new Detached(account, key, cleared)));
+      return true;
+    } catch(IOException e) {
+      logger.log(Level.SEVERE, "Unable to unload an account, it'll stay in memory.", e);
+      return false;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean contains(String identifier) {
+    return entries.containsKey(identifier);
+  }
+
+  @Override
+  public boolean contains(UUID identifier) {
+    return entries.containsKey(identifier);
+  }
+
+  @Override
+  public GhostAccount load(String identifier, HoldingsKeys keys) {
+    return load((Object)identifier);
+  }
+
+  @Override
+  public GhostAccount load(UUID identifier, HoldingsKeys keys) {
+    return load((Object)identifier);
+  }
+
+  @Override
+  public void forget(String identifier) {
+    forget((Object)identifier);
+  }
+
+  @Override
+  public void forget(UUID identifier) {
+    forget((Object)identifier);
+  }
+
+  private void forget(Object identifier) {
+    lock.readLock().lock();
+    try {
+      release(entries.remove(identifier));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @throws UncheckedIOException If the account's record can't be read, in which case it stays here.
+   */
+  private GhostAccount load(Object identifier) {
+    lock.readLock().lock();
+    try {
+      final Entry entry = entries.remove(identifier);
+      if(entry == null) return null;
+
+      //Still referenced by an earlier call, so it's handed back as-is, balances and all.
+      final GhostAccount detached = (entry.account == null)? null : entry.account.get();
+      if(detached != null) {
+        release(entry);
+        return detached;
+      }
+
+      try {
+        final GhostAccount account = decode(read(entry));
+        release(entry);
+        return account;
+      } catch(IOException e) {
+        entries.put(identifier, entry);
+        throw new UncheckedIOException("Unable to load the cold account " + identifier + ".", e);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Decodes every account held here into a new instance that isn't registered anywhere, for writing a
+   * snapshot or scanning for a purge. Accounts unloaded or loaded while this runs may be missed or
+   * included, so snapshots must pause the cache while they're written.
+   * @return The accounts.
+   * @throws IOException If the file can't be read.
+   */
+  public List<GhostAccount> readAll() throws IOException {
+    final List<GhostAccount> accounts = new ArrayList<>(entries.size());
+    forEach(accounts::add);
+    return accounts;
+  }
+
+  /**
+   * Decodes the accounts held here one at a time, into new instances that aren't registered
+   * anywhere, without reading them all into memory first.
+   * @param consumer Given each account in turn.
+   * @throws IOException If the file can't be read.
+   */
+  public void forEach(Consumer<GhostAccount> consumer) throws IOException {
+    lock.readLock().lock();
+    try {
+      for(Entry entry : entries.values()) {
+        consumer.accept(decode(read(entry)));
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Drops the instances of unloaded accounts that nothing references any more.
+   */
+  public void prune() {
+    Detached polled;
+    while((polled = (Detached)cleared.poll()) != null) {
+      final Detached reference = polled;
+      entries.computeIfPresent(reference.key, (key, entry)->(entry.account == reference)? new Entry(entry.position, entry.length, null) : entry);
+    }
+  }
+
+  /**
+   * Rewrites the file without dead records, if they take up more space than the live ones.
+   * @return True if the file was compacted.
+   */
+  public boolean compact() {
+    lock.writeLock().lock();
+    try {
+      if(channel == null || dead < (1L << 20) || dead < live) return false;
+
+      final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+      final Map<Object, Entry> moved = new HashMap<>();
+      long position = 0L;
+      try(FileChannel copy = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                              StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        for(Map.Entry<Object, Entry> entry : entries.entrySet()) {
+          final ByteBuffer record = ByteBuffer.wrap(read(entry.getValue()));
+          final long start = position;
+          while(record.hasRemaining()) {
+            position += copy.write(record, position);
+          }
+          moved.put(entry.getKey(), new Entry(start, entry.getValue().length, entry.getValue().account));
+        }
+      } catch(IOException e) {
+        logger.log(Level.WARNING, "Unable to compact the cold accounts file.", e);
+        return false;
+      }
+
+      try {
+        channel.close();
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+      } catch(IOException e) {
+        //Without the file every cold account is lost, so this can't be recovered from.
+        throw new UncheckedIOException("Unable to replace the cold accounts file.", e);
+      }
+      entries.putAll(moved);
+      live = position;
+      dead = 0L;
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Closes and deletes the file. Must only be called once a final snapshot has been written.
+   */
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      if(channel != null) channel.close();
+      channel = null;
+      entries.clear();
+    } catch(IOException e) {
+      logger.log(Level.WARNING, "Unable to close the cold accounts file.", e);
+    } finally {
+      lock.writeLock().unlock();
+    }
+    clean();
+  }
+
+  private synchronized void release(Entry entry) {
+    if(entry == null) return;
+
+    live -= entry.length;
+    dead += entry.length;
+  }
+
+  private byte[] read(Entry entry) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+    while(buffer.hasRemaining()) {
+      if(channel.read(buffer, entry.position + buffer.position()) < 0) {
+        throw new IOException("The cold accounts file ends in the middle of a record.");
+      }
+    }
+    return buffer.array();
+  }
+
+  private byte[] encode(GhostAccount account) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.writeBoolean(account.getId() != null);
+    if(account.getId() != null) {
+      GhostIO.writeUUID(out, account.getId());
+    } else {
+      out.writeUTF(account.getName());
+    }
+
+    final GhostHoldings holdings = account.getHoldingsContainer();
+    final int limit = Math.min(keys.size(), holdings.capacity());
+    int count = 0;
+    for(int key = 0; key < limit; key++) {
+      if((keys.isFixedPoint(key))? holdings.getMinor(key) != 0L : holdings.get(key) != null) count++;
+    }
+
+    GhostIO.writeVarInt(out, count);
+    for(int key = 0; key < limit; key++) {
+      if(keys.isFixedPoint(key)) {
+        final long minor = holdings.getMinor(key);
+        if(minor == 0L) continue;
+
+        GhostIO.writeVarInt(out, key);
+        out.writeByte(KIND_MINOR);
+        out.writeLong(minor);
+      } else {
+        final BigDecimal value = holdings.get(key);
+        if(value == null) continue;
+
+        GhostIO.writeVarInt(out, key);
+        out.writeByte(KIND_DECIMAL);
+        GhostIO.writeDecimal(out, value);
+      }
+    }
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private GhostAccount decode(byte[] record) throws IOException {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+    final GhostAccount account = (in.readBoolean())? new GhostAccount(GhostIO.readUUID(in), keys) : new GhostAccount(in.readUTF(), keys);
+
+    final int count = GhostIO.readVarInt(in);
+    for(int i = 0; i < count; i++) {
+      final int key = GhostIO.readVarInt(in);
+      if(in.readByte() == KIND_MINOR) {
+        account.getHoldingsContainer().setMinor(key, in.readLong());
+      } else {
+        account.getHoldingsContainer().set(key, GhostIO.readDecimal(in));
+      }
+    }
+    return account;
+  }
+
+  static Object key(GhostAccount account) {
+    return (account.getId() != null)? account.getId() : account.getName();
+  }
+
+  private static class Entry {
+
+    private final long position;
+    private final int length;
+
+    //The unloaded instance, or null once nothing references it.
+    private final Detached account;
+
+    Entry(long position, int length, Detached account) {
+      this.position = position;
+      this.length = length;
+      this.account = account;
+    }
+  }
+
+  private static class Detached extends WeakReference<GhostAccount> {
+
+    private final Object key;
+
+    Detached(GhostAccount account, Object key, ReferenceQueue<GhostAccount> queue) {
+      super(account, queue);
+      this.key = key;
+    }
+  }
+}
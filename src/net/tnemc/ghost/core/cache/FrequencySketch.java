@@ -0,0 +1,106 @@
+package net.tnemc.ghost.core.cache;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A count-min sketch of how often accounts are used, with four 4-bit counters per account. Counts are
+ * halved every time the number of increments reaches ten times the cache's size, so the sketch
+ * favours recent popularity and forgets accounts that stopped being used. Not thread-safe; only used
+ * while holding the cache's eviction lock.
+ */
+class FrequencySketch {
+
+  private static final long[] SEEDS = {0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+  private static final long RESET_MASK = 0x7777777777777777L;
+  private static final long ONE_MASK = 0x1111111111111111L;
+
+  private final long[] table;
+  private final int mask;
+  private final int sampleSize;
+  private int size = 0;
+
+  FrequencySketch(int maximum) {
+    int length = 16;
+    while(length < maximum && length < (1 << 30)) {
+      length <<= 1;
+    }
+    table = new long[length];
+    mask = length - 1;
+    sampleSize = (int)Math.min(Integer.MAX_VALUE, 10L * Math.max(1, maximum));
+  }
+
+  /**
+   * @param hash The hash of the account.
+   * @return The estimated number of recent uses, at most 15.
+   */
+  int frequency(int hash) {
+    final int spread = spread(hash);
+    final int start = (spread & 3) << 2;
+    int frequency = 15;
+    for(int i = 0; i < 4; i++) {
+      final int count = (int)((table[index(spread, i)] >>> ((start + i) << 2)) & 0xFL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * Counts a use of an account.
+   * @param hash The hash of the account.
+   */
+  void increment(int hash) {
+    final int spread = spread(hash);
+    final int start = (spread & 3) << 2;
+    boolean added = false;
+    for(int i = 0; i < 4; i++) {
+      added |= increment(index(spread, i), start + i);
+    }
+
+    if(added && ++size == sampleSize) reset();
+  }
+
+  private boolean increment(int index, int counter) {
+    final int offset = counter << 2;
+    final long full = 0xFL << offset;
+    if((table[index] & full) == full) return false;
+
+    table[index] += 1L << offset;
+    return true;
+  }
+
+  private void reset() {
+    int odd = 0;
+    for(int i = 0; i < table.length; i++) {
+      odd += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    size = (size >>> 1) - (odd >>> 2);
+  }
+
+  private int index(int hash, int i) {
+    long mixed = (hash + SEEDS[i]) * SEEDS[i];
+    mixed += mixed >>> 32;
+    return (int)mixed & mask;
+  }
+
+  private static int spread(int hash) {
+    int mixed = ((hash >>> 16) ^ hash) * 0x45D9F3B;
+    mixed = ((mixed >>> 16) ^ mixed) * 0x45D9F3B;
+    return (mixed >>> 16) ^ mixed;
+  }
+}
@@ -0,0 +1,131 @@
+package net.tnemc.ghost.core.change;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A single balance change, as published to the subscribers of a {@link ChangeStream}. Changes are
+ * immutable, so one instance is shared by every subscriber.
+ *
+ * Fixed point balances are kept in minor units and only turned into a BigDecimal when
+ * {@link #getOld()} or {@link #getNew()} is called, on the subscriber's thread.
+ */
+public final class BalanceChange {
+
+  //Written before the change is published, and never after.
+  long sequence;
+
+  private final UUID id;
+  private final String name;
+  final int key;
+  private final String world;
+  private final String currency;
+  private final ChangeCause cause;
+
+  //The scale of fixed point balances, or -1 for BigDecimal ones, which are kept in the values instead.
+  private final int scale;
+  private final long oldMinor;
+  private final long newMinor;
+  private final BigDecimal oldValue;
+  private final BigDecimal newValue;
+
+  BalanceChange(UUID id, String name, int key, String world, String currency, ChangeCause cause,
+                int scale, long oldMinor, long newMinor, BigDecimal oldValue, BigDecimal newValue) {
+    this.id = id;
+    this.name = name;
+    this.key = key;
+    this.world = world;
+    this.currency = currency;
+    this.cause = cause;
+    this.scale = scale;
+    this.oldMinor = oldMinor;
+    this.newMinor = newMinor;
+    this.oldValue = oldValue;
+    this.newValue = newValue;
+  }
+
+  /**
+   * @return A change from this change's old balance to a later change's new balance, as if the two
+   * were made at once.
+   */
+  BalanceChange merge(BalanceChange later) {
+    final BalanceChange merged = new BalanceChange(id, name, key, world, currency, later.cause, scale,
+                                                   oldMinor, later.newMinor, oldValue, later.newValue);
+    merged.sequence = later.sequence;
+    return merged;
+  }
+
+  /**
+   * @return The account the change was made to, its UUID if it has one or its identifier otherwise.
+   */
+  Object account() {
+    return (id != null)? id : name;
+  }
+
+  /**
+   * @return The position of the change in the stream. Changes are numbered in the order they were
+   * published, and changes to the same balance are always published in the order they were made.
+   */
+  public long getSequence() {
+    return sequence;
+  }
+
+  /**
+   * @return The UUID of the account, or null if it's a string account.
+   */
+  public UUID getId() {
+    return id;
+  }
+
+  /**
+   * @return The identifier of the account, or the name of its player if it's known.
+   */
+  public String getName() {
+    return name;
+  }
+
+  public String getWorld() {
+    return world;
+  }
+
+  public String getCurrency() {
+    return currency;
+  }
+
+  public ChangeCause getCause() {
+    return cause;
+  }
+
+  /**
+   * @return The balance before the change.
+   */
+  public BigDecimal getOld() {
+    if(scale < 0) return (oldValue == null)? BigDecimal.ZERO : oldValue;
+    return BigDecimal.valueOf(oldMinor, scale);
+  }
+
+  /**
+   * @return The balance after the change.
+   */
+  public BigDecimal getNew() {
+    if(scale < 0) return (newValue == null)? BigDecimal.ZERO : newValue;
+    return BigDecimal.valueOf(newMinor, scale);
+  }
+}
@@ -0,0 +1,59 @@
+package net.tnemc.ghost.core.change;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * What made a balance change, as reported in a {@link BalanceChange}.
+ */
+public enum ChangeCause {
+
+  /**
+   * The balance was set, by setHoldings or a restored balance.
+   */
+  SET,
+
+  /**
+   * An amount was added by addHoldings.
+   */
+  ADD,
+
+  /**
+   * An amount was removed by removeHoldings.
+   */
+  REMOVE,
+
+  /**
+   * An amount was moved to or from another account.
+   */
+  TRANSFER,
+
+  /**
+   * One or more changes from a single changeHoldings batch.
+   */
+  BATCH,
+
+  /**
+   * The balance of a string account was moved into the player account that took its name.
+   */
+  MERGE,
+
+  /**
+   * The balance was replaced by an imported ledger.
+   */
+  IMPORT
+}
@@ -0,0 +1,171 @@
+package net.tnemc.ghost.core.change;
+
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostHoldings;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Publishes every balance change to subscribers, such as scoreboards and chat bridges, so they don't
+ * have to poll balances.
+ *
+ * Changes are published into a fixed size ring by the thread making them, while it holds the
+ * account's lock, so changes to the same balance are always published in order. Publishing is one
+ * increment of the shared sequence and one store into the ring, and never waits for subscribers.
+ * Each subscriber has its own cursor into the ring and reads batches at its own pace, on its own
+ * thread. A subscriber that falls more than the ring's capacity behind is lapped: the changes it
+ * missed are skipped and counted, rather than holding up the economy.
+ *
+ * Nothing is published while there are no subscribers.
+ */
+public class ChangeStream {
+
+  private final AtomicReferenceArray<BalanceChange> ring;
+  private final int mask;
+  private final AtomicLong sequence = new AtomicLong();
+
+  private final List<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+  private volatile boolean active = false;
+
+  private final AtomicInteger threads = new AtomicInteger();
+  private final HoldingsKeys keys;
+  private final long interval;
+  private final Logger logger;
+
+  /**
+   * @param keys The holdings keys of the store the changes are made to.
+   * @param capacity The number of changes kept for subscribers that fall behind, rounded up to a power of two.
+   * @param interval How long subscriber threads wait for more changes once they've caught up, in milliseconds.
+   * @param logger The logger errors thrown by subscribers are reported to.
+   */
+  public ChangeStream(HoldingsKeys keys, int capacity, long interval, Logger logger) {
+    final int size = Integer.highestOneBit(Math.max(2, Math.min(capacity, 1 << 24)) * 2 - 1);
+    this.ring = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+    this.keys = keys;
+    this.interval = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, interval));
+    this.logger = logger;
+  }
+
+  /**
+   * Publishes a change to every subscriber. Must be called right after the balance was changed,
+   * while holding the account's lock.
+   * @param account The account.
+   * @param key The {@link HoldingsKeys} id of the balance that changed.
+   * @param cause What changed it.
+   * @param oldMinor The balance before the change in minor units, if it's fixed point.
+   * @param oldValue The balance before the change, if it isn't fixed point.
+   */
+  public void publish(GhostAccount account, int key, ChangeCause cause, long oldMinor, BigDecimal oldValue) {
+    if(!active) return;
+
+    final GhostHoldings holdings = account.getHoldingsContainer();
+    final BalanceChange change = (keys.isFixedPoint(key))?
+        new BalanceChange(account.getId(), account.getName(), key, keys.world(key), keys.currency(key), cause,
+                          keys.scale(key), oldMinor, holdings.getMinor(key), null, null)
+        : new BalanceChange(account.getId(), account.getName(), key, keys.world(key), keys.currency(key), cause,
+                            -1, 0L, 0L, oldValue, holdings.get(key));
+
+    //Nothing between taking a sequence and storing the change can throw, so no sequence is left
+    //without a change for subscribers to wait on.
+    final long next = sequence.getAndIncrement();
+    change.sequence = next;
+    ring.lazySet((int)next & mask, change);
+  }
+
+  /**
+   * Subscribes to changes made from now on, read by calling {@link ChangeSubscription#poll()} on
+   * whichever thread the subscriber likes.
+   * @param batchSize The most changes returned by one poll.
+   * @param coalesce True to merge the changes to the same balance within a batch into one.
+   * @return The subscription.
+   */
+  public ChangeSubscription subscribe(int batchSize, boolean coalesce) {
+    synchronized(subscriptions) {
+      final ChangeSubscription subscription = new ChangeSubscription(this, sequence.get(), batchSize, coalesce);
+      subscriptions.add(subscription);
+      active = true;
+      return subscription;
+    }
+  }
+
+  /**
+   * Subscribes to changes made from now on, delivered in batches on a thread of the subscription's own.
+   * @param consumer Receives each batch. It may take as long as it needs, the economy never waits for it.
+   * @param batchSize The most changes delivered at once.
+   * @param coalesce True to merge the changes to the same balance within a batch into one.
+   * @return The subscription, which stops its thread once it's closed.
+   */
+  public ChangeSubscription subscribe(Consumer<List<BalanceChange>> consumer, int batchSize, boolean coalesce) {
+    final ChangeSubscription subscription = subscribe(batchSize, coalesce);
+    final Thread thread = new Thread(()->subscription.deliver(consumer, interval, logger),
+                                     "Ghost-Changes-" + threads.incrementAndGet());
+    thread.setDaemon(true);
+    thread.start();
+    return subscription;
+  }
+
+  void unsubscribe(ChangeSubscription subscription) {
+    synchronized(subscriptions) {
+      subscriptions.remove(subscription);
+      active = !subscriptions.isEmpty();
+    }
+  }
+
+  /**
+   * Closes every subscription.
+   */
+  public void close() {
+    for(ChangeSubscription subscription : subscriptions) {
+      subscription.close();
+    }
+  }
+
+  /**
+   * @return The number of changes published.
+   */
+  public long getPublished() {
+    return sequence.get();
+  }
+
+  /**
+   * @return The number of open subscriptions.
+   */
+  public int getSubscribers() {
+    return subscriptions.size();
+  }
+
+  BalanceChange get(long position) {
+    return ring.get((int)position & mask);
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+}
@@ -0,0 +1,164 @@
+package net.tnemc.ghost.core.change;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A subscriber's cursor into a {@link ChangeStream}. Changes are read in the order they were
+ * published, a batch at a time, and the stream never waits for the subscriber to read them.
+ */
+public class ChangeSubscription implements AutoCloseable {
+
+  private final ChangeStream stream;
+  private final int batchSize;
+  private final boolean coalesce;
+
+  //Guarded by this subscription's monitor, which only the subscriber's own threads take.
+  private long cursor;
+  private long missed = 0L;
+
+  private volatile boolean closed = false;
+
+  ChangeSubscription(ChangeStream stream, long cursor, int batchSize, boolean coalesce) {
+    this.stream = stream;
+    this.cursor = cursor;
+    this.batchSize = Math.max(1, batchSize);
+    this.coalesce = coalesce;
+  }
+
+  /**
+   * Reads the next batch of changes, without waiting for any.
+   * @return The changes published since the last poll, at most the batch size, or an empty list if
+   * there are none. With coalescing, changes to the same balance are merged into one, in the
+   * position of the first.
+   */
+  public synchronized List<BalanceChange> poll() {
+    if(closed) return Collections.emptyList();
+
+    final List<BalanceChange> batch = new ArrayList<>();
+    final Map<Balance, Integer> positions = (coalesce)? new HashMap<>() : null;
+    for(int read = 0; read < batchSize; read++) {
+      final BalanceChange change = stream.get(cursor);
+
+      //Not published yet, the ring still holds an older change in its place.
+      if(change == null || change.sequence < cursor) break;
+
+      if(change.sequence > cursor) {
+        //Lapped, so skip ahead to the oldest change still in the ring.
+        final long resume = Math.max(cursor + 1L, stream.getPublished() - stream.capacity());
+        missed += resume - cursor;
+        cursor = resume;
+        continue;
+      }
+      cursor++;
+
+      if(positions == null) {
+        batch.add(change);
+        continue;
+      }
+
+      final Balance balance = new Balance(change.account(), change.key);
+      final Integer position = positions.get(balance);
+      if(position == null) {
+        positions.put(balance, batch.size());
+        batch.add(change);
+      } else {
+        batch.set(position, batch.get(position).merge(change));
+      }
+    }
+    return batch;
+  }
+
+  void deliver(Consumer<List<BalanceChange>> consumer, long interval, Logger logger) {
+    while(!closed) {
+      final List<BalanceChange> batch = poll();
+      if(batch.isEmpty()) {
+        LockSupport.parkNanos(interval);
+        continue;
+      }
+
+      try {
+        consumer.accept(batch);
+      } catch(RuntimeException e) {
+        logger.log(Level.WARNING, "A Ghost balance change subscriber failed to handle a batch of changes.", e);
+      }
+    }
+  }
+
+  /**
+   * @return The number of changes skipped because this subscriber fell more than the stream's
+   * capacity behind.
+   */
+  public synchronized long getMissed() {
+    return missed;
+  }
+
+  /**
+   * @return The number of changes published that this subscriber hasn't read yet.
+   */
+  public synchronized long getLag() {
+    return Math.max(0L, stream.getPublished() - cursor);
+  }
+
+  /**
+   * @return True if this subscription has been closed.
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Stops receiving changes. A subscription with its own thread stops the thread as well.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    stream.unsubscribe(this);
+  }
+
+  private static final class Balance {
+
+    private final Object account;
+    private final int key;
+
+    Balance(Object account, int key) {
+      this.account = account;
+      this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if(!(other instanceof Balance)) return false;
+      return key == ((Balance)other).key && account.equals(((Balance)other).account);
+    }
+
+    @Override
+    public int hashCode() {
+      return account.hashCode() * 31 + key;
+    }
+  }
+}
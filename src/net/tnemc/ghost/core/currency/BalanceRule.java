@@ -0,0 +1,149 @@
+package net.tnemc.ghost.core.currency;
+
+import net.tnemc.ghost.core.account.HoldingsKeys;
+import net.tnemc.ghost.core.account.HoldingsResult;
+
+import java.math.BigDecimal;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The limits on a currency's balances: a minimum, which may be overdrawn by a further allowance, a
+ * maximum, and the most a single transaction may move. A limit of null is unlimited.
+ *
+ * The floor only stops changes that lower a balance and the maximum only stops changes that raise
+ * it, so a balance left outside the limits by a config change can still move back towards them.
+ * Rules bound to a fixed point key with {@link #bind} carry their limits in minor units, so fixed
+ * point balances are checked with long comparisons.
+ */
+public final class BalanceRule {
+
+  public static final BalanceRule NONE = new BalanceRule(null, null, null, null);
+
+  private final BigDecimal minimum;
+  private final BigDecimal maximum;
+  private final BigDecimal overdraft;
+  private final BigDecimal limit;
+
+  private final BigDecimal floor;
+  private final long floorMinor;
+  private final long maximumMinor;
+  private final long limitMinor;
+
+  /**
+   * @param minimum The lowest balance, or null for no minimum.
+   * @param maximum The highest balance, or null for no maximum.
+   * @param overdraft How far below the minimum a balance may be taken, or null for none.
+   * @param limit The most a single transaction may move, or null for no limit.
+   */
+  public BalanceRule(BigDecimal minimum, BigDecimal maximum, BigDecimal overdraft, BigDecimal limit) {
+    this(minimum, maximum, overdraft, limit, Long.MIN_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+  }
+
+  private BalanceRule(BigDecimal minimum, BigDecimal maximum, BigDecimal overdraft, BigDecimal limit,
+                      long floorMinor, long maximumMinor, long limitMinor) {
+    this.minimum = minimum;
+    this.maximum = maximum;
+    this.overdraft = overdraft;
+    this.limit = limit;
+    this.floor = (minimum == null || overdraft == null)? minimum : minimum.subtract(overdraft);
+    this.floorMinor = floorMinor;
+    this.maximumMinor = maximumMinor;
+    this.limitMinor = limitMinor;
+  }
+
+  /**
+   * @return A copy of this rule with its limits converted to the minor units of a fixed point key.
+   * Limits outside the range of a long are treated as unlimited.
+   */
+  public BalanceRule bind(HoldingsKeys keys, int key) {
+    if(!keys.isFixedPoint(key)) return this;
+
+    return new BalanceRule(minimum, maximum, overdraft, limit, minor(keys, key, floor, Long.MIN_VALUE),
+                           minor(keys, key, maximum, Long.MAX_VALUE), minor(keys, key, limit, Long.MAX_VALUE));
+  }
+
+  private static long minor(HoldingsKeys keys, int key, BigDecimal value, long unlimited) {
+    if(value == null) return unlimited;
+    try {
+      return keys.toMinor(key, value);
+    } catch(ArithmeticException e) {
+      return unlimited;
+    }
+  }
+
+  /**
+   * Checks a change to a fixed point balance. Must be called on a rule bound to the balance's key.
+   * @param delta The amount added in minor units, negative if removed.
+   * @param updated The balance after the change in minor units.
+   */
+  public HoldingsResult check(long delta, long updated) {
+    if(limitMinor != Long.MAX_VALUE && (delta > limitMinor || delta < -limitMinor)) return HoldingsResult.OVER_TRANSACTION_LIMIT;
+    if(delta < 0L && updated < floorMinor) return HoldingsResult.INSUFFICIENT_FUNDS;
+    if(delta > 0L && updated > maximumMinor) return HoldingsResult.ABOVE_MAXIMUM;
+    return HoldingsResult.SUCCESS;
+  }
+
+  /**
+   * Checks a change to a BigDecimal balance.
+   * @param delta The amount added, negative if removed.
+   * @param updated The balance after the change.
+   */
+  public HoldingsResult check(BigDecimal delta, BigDecimal updated) {
+    if(limit != null && delta.abs().compareTo(limit) > 0) return HoldingsResult.OVER_TRANSACTION_LIMIT;
+    if(floor != null && delta.signum() < 0 && updated.compareTo(floor) < 0) return HoldingsResult.INSUFFICIENT_FUNDS;
+    if(maximum != null && delta.signum() > 0 && updated.compareTo(maximum) > 0) return HoldingsResult.ABOVE_MAXIMUM;
+    return HoldingsResult.SUCCESS;
+  }
+
+  /**
+   * Checks a fixed point balance being set outright. Must be called on a rule bound to its key.
+   * @param value The new balance in minor units.
+   */
+  public HoldingsResult checkSet(long value) {
+    if(value < floorMinor) return HoldingsResult.BELOW_MINIMUM;
+    if(value > maximumMinor) return HoldingsResult.ABOVE_MAXIMUM;
+    return HoldingsResult.SUCCESS;
+  }
+
+  /**
+   * Checks a BigDecimal balance being set outright.
+   * @param value The new balance.
+   */
+  public HoldingsResult checkSet(BigDecimal value) {
+    if(floor != null && value.compareTo(floor) < 0) return HoldingsResult.BELOW_MINIMUM;
+    if(maximum != null && value.compareTo(maximum) > 0) return HoldingsResult.ABOVE_MAXIMUM;
+    return HoldingsResult.SUCCESS;
+  }
+
+  public BigDecimal getMinimum() {
+    return minimum;
+  }
+
+  public BigDecimal getMaximum() {
+    return maximum;
+  }
+
+  public BigDecimal getOverdraft() {
+    return overdraft;
+  }
+
+  public BigDecimal getLimit() {
+    return limit;
+  }
+}
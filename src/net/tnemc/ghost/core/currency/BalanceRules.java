@@ -0,0 +1,126 @@
+package net.tnemc.ghost.core.currency;
+
+import net.tnemc.ghost.core.account.HoldingsKeys;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The {@link BalanceRule} of every currency, read from the Limits section of each entry in
+ * Ghost.Currencies. Each currency's Limits override the Default currency's, which override the
+ * built in rule of non-negative balances with no other limits. Like the {@link CurrencyFormatter},
+ * a reload builds new rules and swaps them in, so checks never lock.
+ *
+ * Rules are looked up by holdings key inside the account lock on every balance change, so each key's
+ * rule is bound to its scale once and kept in an array indexed by key until the next reload.
+ */
+public class BalanceRules {
+
+  private static final BalanceRule BUILT_IN = new BalanceRule(BigDecimal.ZERO, null, null, null);
+
+  private final AtomicReference<Rules> rules = new AtomicReference<>(new Rules(Collections.emptyMap(), BUILT_IN, new BalanceRule[0]));
+
+  /**
+   * Reads the limits in the Ghost.Currencies configuration section. Each limit is a number, or None
+   * for no limit.
+   * @param section The configuration section, may be null for only the built in rule.
+   */
+  public void reload(ConfigurationSection section) {
+    final ConfigurationSection base = (section == null)? null : section.getConfigurationSection("Default.Limits");
+    final BalanceRule fallback = load(base, null);
+
+    final Map<String, BalanceRule> loaded = new HashMap<>();
+    if(section != null) {
+      for(String name : section.getKeys(false)) {
+        if(name.equalsIgnoreCase("Default")) continue;
+        loaded.put(name, load(section.getConfigurationSection(name + ".Limits"), base));
+      }
+    }
+
+    rules.set(new Rules(loaded, fallback, new BalanceRule[0]));
+  }
+
+  /**
+   * @param currency The name of the currency.
+   * @return The rule of this currency, or the default rule if it doesn't have its own.
+   */
+  public BalanceRule get(String currency) {
+    return rules.get().get(currency);
+  }
+
+  /**
+   * @param keys The keys of the store.
+   * @param key The holdings key id.
+   * @return The rule of the key's currency, bound to the key's scale.
+   */
+  public BalanceRule get(HoldingsKeys keys, int key) {
+    final Rules current = rules.get();
+    if(key < current.bound.length && current.bound[key] != null) return current.bound[key];
+
+    final BalanceRule rule = current.get(keys.currency(key)).bind(keys, key);
+
+    //Published as a copy, and only if there hasn't been a reload since, so a rule from before a
+    //reload is never cached after it. Losing a race only costs binding the rule again.
+    final BalanceRule[] copy = Arrays.copyOf(current.bound, Math.max(current.bound.length, Math.max(key + 1, keys.size())));
+    copy[key] = rule;
+    rules.compareAndSet(current, new Rules(current.currencies, current.defaults, copy));
+    return rule;
+  }
+
+  private static BalanceRule load(ConfigurationSection limits, ConfigurationSection base) {
+    return new BalanceRule(decimal(limits, base, "Minimum", BigDecimal.ZERO), decimal(limits, base, "Maximum", null),
+                           decimal(limits, base, "Overdraft", null), decimal(limits, base, "MaxTransaction", null));
+  }
+
+  private static BigDecimal decimal(ConfigurationSection limits, ConfigurationSection base, String key, BigDecimal value) {
+    final String configured = (limits != null && limits.contains(key))? limits.getString(key)
+                            : (base != null && base.contains(key))? base.getString(key) : null;
+    if(configured == null) return value;
+    if(configured.equalsIgnoreCase("None")) return null;
+
+    try {
+      return new BigDecimal(configured.trim());
+    } catch(NumberFormatException e) {
+      return value;
+    }
+  }
+
+  private static final class Rules {
+
+    final Map<String, BalanceRule> currencies;
+    final BalanceRule defaults;
+    final BalanceRule[] bound;
+
+    Rules(Map<String, BalanceRule> currencies, BalanceRule defaults, BalanceRule[] bound) {
+      this.currencies = currencies;
+      this.defaults = defaults;
+      this.bound = bound;
+    }
+
+    BalanceRule get(String currency) {
+      return currencies.getOrDefault(currency, defaults);
+    }
+  }
+}
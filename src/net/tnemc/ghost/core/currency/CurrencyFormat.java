@@ -0,0 +1,327 @@
+package net.tnemc.ghost.core.currency;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A currency format template, compiled once into a list of literal and placeholder segments, so
+ * formatting an amount never parses the template or uses a regex. Each thread reuses its own
+ * builder and digit buffer.
+ *
+ * Placeholders:
+ * <pre>
+ * &lt;symbol&gt;      the currency symbol
+ * &lt;amount&gt;      the amount with thousands separators and every decimal place, 1,234.50
+ * &lt;major&gt;       the whole part with thousands separators, 1,234
+ * &lt;minor&gt;       the decimal places, 50
+ * &lt;major.name&gt;  the singular or plural name of the major unit
+ * &lt;minor.name&gt;  the singular or plural name of the minor unit
+ * &lt;short&gt;       the amount with a compact suffix, 1.2k
+ * </pre>
+ * The first symbol or number in the template carries the minus sign of a negative amount.
+ */
+public final class CurrencyFormat {
+
+  static final int LITERAL = 0;
+  static final int SYMBOL = 1;
+  static final int AMOUNT = 2;
+  static final int MAJOR = 3;
+  static final int MINOR = 4;
+  static final int MAJOR_NAME = 5;
+  static final int MINOR_NAME = 6;
+  static final int SHORT = 7;
+
+  private static final String[] PLACEHOLDERS = {
+      null, "<symbol>", "<amount>", "<major>", "<minor>", "<major.name>", "<minor.name>", "<short>"
+  };
+
+  private static final long[] POWERS = new long[19];
+
+  static {
+    POWERS[0] = 1L;
+    for(int i = 1; i < POWERS.length; i++) {
+      POWERS[i] = POWERS[i - 1] * 10L;
+    }
+  }
+
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  private final int[] segments;
+  private final String[] literals;
+
+  private final String symbol;
+  private final String decimal;
+  private final String thousands;
+  private final int decimals;
+  private final String majorSingle;
+  private final String majorPlural;
+  private final String minorSingle;
+  private final String minorPlural;
+  private final String[] suffixes;
+
+  private CurrencyFormat(int[] segments, String[] literals, String symbol, String decimal, String thousands, int decimals,
+                         String majorSingle, String majorPlural, String minorSingle, String minorPlural, String[] suffixes) {
+    this.segments = segments;
+    this.literals = literals;
+    this.symbol = symbol;
+    this.decimal = decimal;
+    this.thousands = thousands;
+    this.decimals = Math.max(0, Math.min(decimals, POWERS.length - 1));
+    this.majorSingle = majorSingle;
+    this.majorPlural = majorPlural;
+    this.minorSingle = minorSingle;
+    this.minorPlural = minorPlural;
+    this.suffixes = suffixes;
+  }
+
+  /**
+   * Compiles a format template.
+   * @param template The template, see the placeholders above. Anything else is copied as is.
+   * @param symbol The currency symbol.
+   * @param decimal The decimal separator.
+   * @param thousands The thousands separator, may be empty.
+   * @param decimals The number of decimal places shown.
+   * @param majorSingle The singular name of the major unit.
+   * @param majorPlural The plural name of the major unit.
+   * @param minorSingle The singular name of the minor unit.
+   * @param minorPlural The plural name of the minor unit.
+   * @param suffixes The compact suffixes for thousands, millions and so on.
+   * @return The compiled format.
+   */
+  public static CurrencyFormat compile(String template, String symbol, String decimal, String thousands, int decimals,
+                                       String majorSingle, String majorPlural, String minorSingle, String minorPlural,
+                                       String[] suffixes) {
+    final List<Integer> segments = new ArrayList<>();
+    final List<String> literals = new ArrayList<>();
+    final StringBuilder literal = new StringBuilder();
+
+    int position = 0;
+    while(position < template.length()) {
+      int matched = LITERAL;
+      for(int type = SYMBOL; type < PLACEHOLDERS.length; type++) {
+        if(template.startsWith(PLACEHOLDERS[type], position)) {
+          matched = type;
+          break;
+        }
+      }
+
+      if(matched == LITERAL) {
+        literal.append(template.charAt(position++));
+        continue;
+      }
+
+      if(literal.length() > 0) {
+        segments.add(LITERAL);
+        literals.add(literal.toString());
+        literal.setLength(0);
+      }
+      segments.add(matched);
+      literals.add(null);
+      position += PLACEHOLDERS[matched].length();
+    }
+    if(literal.length() > 0) {
+      segments.add(LITERAL);
+      literals.add(literal.toString());
+    }
+
+    final int[] compiled = new int[segments.size()];
+    for(int i = 0; i < compiled.length; i++) {
+      compiled[i] = segments.get(i);
+    }
+    return new CurrencyFormat(compiled, literals.toArray(new String[0]), symbol, decimal, thousands, decimals,
+                              majorSingle, majorPlural, minorSingle, minorPlural, suffixes);
+  }
+
+  /**
+   * @param amount The amount.
+   * @return The amount formatted with this template, rounded half even to this format's decimal places.
+   */
+  public String format(BigDecimal amount) {
+    final BigDecimal rounded = (amount.scale() == decimals)? amount : amount.setScale(decimals, RoundingMode.HALF_EVEN);
+    final boolean negative = rounded.signum() < 0;
+
+    final BigInteger unscaled = rounded.unscaledValue();
+    if(unscaled.bitLength() >= 63) return formatLarge(unscaled.abs(), negative);
+
+    final long absolute = Math.abs(unscaled.longValue());
+    final long major = absolute / POWERS[decimals];
+    final long minor = absolute % POWERS[decimals];
+
+    final Scratch scratch = SCRATCH.get();
+    final StringBuilder builder = scratch.builder;
+    builder.setLength(0);
+
+    boolean signed = !negative;
+    for(int i = 0; i < segments.length; i++) {
+      switch(segments[i]) {
+        case LITERAL:
+          builder.append(literals[i]);
+          break;
+        case SYMBOL:
+          if(!signed) builder.append('-');
+          signed = true;
+          builder.append(symbol);
+          break;
+        case AMOUNT:
+          if(!signed) builder.append('-');
+          signed = true;
+          appendGrouped(builder, scratch.digits, major);
+          appendMinor(builder, minor);
+          break;
+        case MAJOR:
+          if(!signed) builder.append('-');
+          signed = true;
+          appendGrouped(builder, scratch.digits, major);
+          break;
+        case MINOR:
+          appendPadded(builder, minor, decimals);
+          break;
+        case MAJOR_NAME:
+          builder.append((major == 1L)? majorSingle : majorPlural);
+          break;
+        case MINOR_NAME:
+          builder.append((minor == 1L)? minorSingle : minorPlural);
+          break;
+        case SHORT:
+          if(!signed) builder.append('-');
+          signed = true;
+          appendShort(builder, scratch.digits, major, minor);
+          break;
+        default:
+          break;
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Formats amounts too large for a long, which is rare enough to not be worth optimising.
+   */
+  private String formatLarge(BigInteger absolute, boolean negative) {
+    final BigInteger[] parts = absolute.divideAndRemainder(BigInteger.TEN.pow(decimals));
+    final String major = group(parts[0].toString());
+    final long minor = parts[1].longValue();
+
+    final StringBuilder builder = new StringBuilder();
+    boolean signed = !negative;
+    for(int i = 0; i < segments.length; i++) {
+      switch(segments[i]) {
+        case LITERAL:
+          builder.append(literals[i]);
+          break;
+        case SYMBOL:
+          if(!signed) builder.append('-');
+          signed = true;
+          builder.append(symbol);
+          break;
+        case AMOUNT:
+        case MAJOR:
+        case SHORT:
+          if(!signed) builder.append('-');
+          signed = true;
+          builder.append(major);
+          if(segments[i] == AMOUNT) appendMinor(builder, minor);
+          break;
+        case MINOR:
+          appendPadded(builder, minor, decimals);
+          break;
+        case MAJOR_NAME:
+          builder.append(majorPlural);
+          break;
+        case MINOR_NAME:
+          builder.append((minor == 1L)? minorSingle : minorPlural);
+          break;
+        default:
+          break;
+      }
+    }
+    return builder.toString();
+  }
+
+  private void appendMinor(StringBuilder builder, long minor) {
+    if(decimals == 0) return;
+
+    builder.append(decimal);
+    appendPadded(builder, minor, decimals);
+  }
+
+  private void appendShort(StringBuilder builder, char[] digits, long major, long minor) {
+    int tier = 0;
+    long divisor = 1L;
+    while(tier < suffixes.length && major / divisor >= 1000L) {
+      divisor *= 1000L;
+      tier++;
+    }
+
+    if(tier == 0) {
+      appendGrouped(builder, digits, major);
+      if(minor != 0L) appendMinor(builder, minor);
+      return;
+    }
+
+    //Truncated rather than rounded, so 999,999 never shows as 1000.0k.
+    final long tenths = major / (divisor / 10L);
+    appendGrouped(builder, digits, tenths / 10L);
+    if(tenths % 10L != 0L) {
+      builder.append(decimal).append((char)('0' + tenths % 10L));
+    }
+    builder.append(suffixes[tier - 1]);
+  }
+
+  private void appendGrouped(StringBuilder builder, char[] digits, long value) {
+    int length = 0;
+    do {
+      digits[length++] = (char)('0' + value % 10L);
+      value /= 10L;
+    } while(value > 0L);
+
+    for(int i = length - 1; i >= 0; i--) {
+      builder.append(digits[i]);
+      if(i > 0 && i % 3 == 0) builder.append(thousands);
+    }
+  }
+
+  private static void appendPadded(StringBuilder builder, long value, int width) {
+    for(int place = width - 1; place >= 0; place--) {
+      builder.append((char)('0' + (value / POWERS[place]) % 10L));
+    }
+  }
+
+  private String group(String digits) {
+    final StringBuilder builder = new StringBuilder(digits.length() + digits.length() / 3 * thousands.length());
+    for(int i = 0; i < digits.length(); i++) {
+      builder.append(digits.charAt(i));
+      final int remaining = digits.length() - i - 1;
+      if(remaining > 0 && remaining % 3 == 0) builder.append(thousands);
+    }
+    return builder.toString();
+  }
+
+  private static class Scratch {
+
+    private final StringBuilder builder = new StringBuilder(32);
+
+    //Long enough for every digit of a long.
+    private final char[] digits = new char[20];
+  }
+}
@@ -0,0 +1,105 @@
+package net.tnemc.ghost.core.currency;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Holds the compiled {@link CurrencyFormat} of every configured currency. Like the
+ * {@link CurrencyRegistry}, a reload compiles a new map and swaps it in, so formatting never locks.
+ */
+public class CurrencyFormatter {
+
+  private static final String[] SUFFIXES = { "k", "M", "B", "T", "Q" };
+
+  private volatile Map<String, CurrencyFormat> formats = Collections.emptyMap();
+
+  private volatile CurrencyFormat defaults = load(null, null);
+
+  /**
+   * Compiles the formats in the Ghost.Currencies configuration section. Each currency's Format
+   * section overrides the Default currency's, which overrides the built in format.
+   * @param section The configuration section, may be null for only the built in format.
+   */
+  public void reload(ConfigurationSection section) {
+    final ConfigurationSection base = (section == null)? null : section.getConfigurationSection("Default");
+    final CurrencyFormat fallback = load(base, null);
+
+    final Map<String, CurrencyFormat> compiled = new HashMap<>();
+    if(section != null) {
+      for(String name : section.getKeys(false)) {
+        if(name.equalsIgnoreCase("Default")) continue;
+        compiled.put(name, load(section.getConfigurationSection(name), base));
+      }
+    }
+
+    formats = compiled;
+    defaults = fallback;
+  }
+
+  /**
+   * @param currency The name of the currency.
+   * @return The format of this currency, or the default format if it doesn't have its own.
+   */
+  public CurrencyFormat get(String currency) {
+    return formats.getOrDefault(currency, defaults);
+  }
+
+  public String format(BigDecimal amount, String currency) {
+    return get(currency).format(amount);
+  }
+
+  /**
+   * @return The format used for currencies that don't have their own.
+   */
+  public CurrencyFormat getDefault() {
+    return defaults;
+  }
+
+  private static CurrencyFormat load(ConfigurationSection currency, ConfigurationSection base) {
+    final ConfigurationSection format = (currency == null)? null : currency.getConfigurationSection("Format");
+    final ConfigurationSection fallback = (base == null)? null : base.getConfigurationSection("Format");
+
+    final List<String> suffixes = (format != null && format.isList("Suffixes"))? format.getStringList("Suffixes")
+                                : (fallback != null && fallback.isList("Suffixes"))? fallback.getStringList("Suffixes") : null;
+
+    return CurrencyFormat.compile(string(format, fallback, "Template", "<symbol><amount>"),
+                                  string(format, fallback, "Symbol", "$"),
+                                  string(format, fallback, "Decimal", "."),
+                                  string(format, fallback, "Thousands", ","),
+                                  (currency != null && currency.isInt("Scale"))? currency.getInt("Scale")
+                                                                               : (base == null)? 2 : base.getInt("Scale", 2),
+                                  string(format, fallback, "Major", "Dollar"),
+                                  string(format, fallback, "MajorPlural", "Dollars"),
+                                  string(format, fallback, "Minor", "Cent"),
+                                  string(format, fallback, "MinorPlural", "Cents"),
+                                  (suffixes == null)? SUFFIXES : suffixes.toArray(new String[0]));
+  }
+
+  private static String string(ConfigurationSection format, ConfigurationSection fallback, String key, String value) {
+    if(format != null && format.isString(key)) return format.getString(key);
+    if(fallback != null && fallback.isString(key)) return fallback.getString(key);
+    return value;
+  }
+}
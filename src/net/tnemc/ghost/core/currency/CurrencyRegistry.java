@@ -0,0 +1,197 @@
+package net.tnemc.ghost.core.currency;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Knows which currencies exist and in which worlds they can be used.
+ *
+ * Lookups read an immutable {@link CurrencyTable} through a volatile field and never lock. Every
+ * change builds a new table and swaps it in, so a reload never blocks or tears a concurrent
+ * lookup. Changes are rare, so the cost of rebuilding the table doesn't matter.
+ */
+public class CurrencyRegistry {
+
+  private final String defaultCurrency;
+  private final UnaryOperator<String> worldDefault;
+
+  //Guarded by this registry's monitor, the inputs the current table was built from.
+  private final Set<String> worlds = new LinkedHashSet<>();
+  private Map<String, Set<String>> configured = new HashMap<>();
+
+  private volatile CurrencyTable table = CurrencyTable.EMPTY;
+
+  /**
+   * @param defaultCurrency The name of the default currency, which exists in every world.
+   * @param worldDefault Gives the name of a world's default currency, which exists in that world.
+   */
+  public CurrencyRegistry(String defaultCurrency, UnaryOperator<String> worldDefault) {
+    this.defaultCurrency = defaultCurrency;
+    this.worldDefault = worldDefault;
+  }
+
+  /**
+   * @param name The name of the currency.
+   * @return True if this currency exists in any world.
+   */
+  public boolean has(String name) {
+    return table.contains(name);
+  }
+
+  /**
+   * @param name The name of the currency.
+   * @param world The name of the world.
+   * @return True if this currency can be used in this world.
+   */
+  public boolean has(String name, String world) {
+    return table.contains(name, world);
+  }
+
+  /**
+   * @return The names of every currency.
+   */
+  public Set<String> getCurrencies() {
+    return table.getCurrencies();
+  }
+
+  /**
+   * @param world The name of the world.
+   * @return The names of every currency that can be used in this world.
+   */
+  public Set<String> getCurrencies(String world) {
+    return table.getCurrencies(world);
+  }
+
+  /**
+   * Replaces the configured currencies with those in the Ghost.Currencies configuration section.
+   * Every key other than Default is a currency. A currency with a Worlds list can only be used in
+   * those worlds; one without can be used in every world.
+   * @param section The configuration section, may be null for only the default currencies.
+   */
+  public synchronized void reload(ConfigurationSection section) {
+    final Map<String, Set<String>> currencies = new HashMap<>();
+    if(section != null) {
+      for(String name : section.getKeys(false)) {
+        if(name.equalsIgnoreCase("Default")) continue;
+
+        final List<String> limited = section.getStringList(name + ".Worlds");
+        currencies.put(name, (limited.isEmpty())? null : new HashSet<>(limited));
+      }
+    }
+    configured = currencies;
+    rebuild();
+  }
+
+  /**
+   * Adds a world, giving it its default currency and the currencies that can be used everywhere.
+   * @param world The name of the world.
+   */
+  public synchronized void addWorld(String world) {
+    if(worlds.add(world)) rebuild();
+  }
+
+  /**
+   * Removes a world and its default currency.
+   * @param world The name of the world.
+   */
+  public synchronized void removeWorld(String world) {
+    if(worlds.remove(world)) rebuild();
+  }
+
+  /**
+   * Adds several worlds at once, rebuilding the table only once.
+   * @param names The names of the worlds.
+   */
+  public synchronized void addWorlds(Collection<String> names) {
+    if(worlds.addAll(names)) rebuild();
+  }
+
+  private void rebuild() {
+    final Map<String, Set<String>> currencies = new HashMap<>(configured);
+    currencies.put(defaultCurrency, null);
+    for(String world : worlds) {
+      currencies.computeIfAbsent(worldDefault.apply(world), (key)->new HashSet<>()).add(world);
+    }
+    table = new CurrencyTable(currencies, worlds);
+  }
+
+  /**
+   * An immutable view of every currency and where it can be used.
+   */
+  static final class CurrencyTable {
+
+    static final CurrencyTable EMPTY = new CurrencyTable(Collections.emptyMap(), Collections.emptySet());
+
+    //Maps each currency to the worlds it's limited to, or null if it can be used everywhere.
+    private final Map<String, Set<String>> currencies;
+    private final Map<String, Set<String>> byWorld = new HashMap<>();
+    private final Set<String> global = new HashSet<>();
+    private final Set<String> globalView = Collections.unmodifiableSet(global);
+    private final Set<String> names;
+
+    CurrencyTable(Map<String, Set<String>> currencies, Collection<String> worlds) {
+      this.currencies = new HashMap<>(currencies.size() * 2);
+      for(Map.Entry<String, Set<String>> entry : currencies.entrySet()) {
+        final Set<String> limited = entry.getValue();
+        this.currencies.put(entry.getKey(), (limited == null)? null : Collections.unmodifiableSet(new HashSet<>(limited)));
+        if(limited == null) global.add(entry.getKey());
+      }
+      names = Collections.unmodifiableSet(new HashSet<>(currencies.keySet()));
+
+      final Set<String> known = new HashSet<>(worlds);
+      for(Set<String> limited : currencies.values()) {
+        if(limited != null) known.addAll(limited);
+      }
+      for(String world : known) {
+        final Set<String> usable = new HashSet<>(global);
+        for(Map.Entry<String, Set<String>> entry : currencies.entrySet()) {
+          if(entry.getValue() != null && entry.getValue().contains(world)) usable.add(entry.getKey());
+        }
+        byWorld.put(world, Collections.unmodifiableSet(usable));
+      }
+    }
+
+    boolean contains(String name) {
+      return currencies.containsKey(name);
+    }
+
+    boolean contains(String name, String world) {
+      final Set<String> limited = currencies.get(name);
+      return (limited == null)? currencies.containsKey(name) : limited.contains(world);
+    }
+
+    Set<String> getCurrencies() {
+      return names;
+    }
+
+    Set<String> getCurrencies(String world) {
+      return byWorld.getOrDefault(world, globalView);
+    }
+  }
+}
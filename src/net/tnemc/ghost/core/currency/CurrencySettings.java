@@ -0,0 +1,71 @@
+package net.tnemc.ghost.core.currency;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The configured {@link GhostCurrency} settings, with a default for currencies that aren't listed.
+ */
+public class CurrencySettings {
+
+  private final Map<String, GhostCurrency> currencies = new HashMap<>();
+  private final GhostCurrency defaults;
+
+  public CurrencySettings(GhostCurrency defaults) {
+    this.defaults = defaults;
+  }
+
+  /**
+   * Builds the settings from the Ghost.Currencies configuration section.
+   * @param section The configuration section, may be null to store every currency as BigDecimal.
+   * @return The currency settings.
+   */
+  public static CurrencySettings fromConfig(ConfigurationSection section) {
+    if(section == null) return new CurrencySettings(new GhostCurrency("Default", false, 2));
+
+    final CurrencySettings settings = new CurrencySettings(load(section, "Default", new GhostCurrency("Default", false, 2)));
+    for(String name : section.getKeys(false)) {
+      if(!name.equalsIgnoreCase("Default")) {
+        settings.add(load(section, name, settings.defaults));
+      }
+    }
+    return settings;
+  }
+
+  private static GhostCurrency load(ConfigurationSection section, String name, GhostCurrency defaults) {
+    return new GhostCurrency(name,
+                             section.getBoolean(name + ".FixedPoint", defaults.isFixedPoint()),
+                             section.getInt(name + ".Scale", defaults.getScale()));
+  }
+
+  public void add(GhostCurrency currency) {
+    currencies.put(currency.getName(), currency);
+  }
+
+  /**
+   * @param name The name of the currency.
+   * @return The settings for this currency, or the default settings if it isn't configured.
+   */
+  public GhostCurrency get(String name) {
+    return currencies.getOrDefault(name, defaults);
+  }
+}
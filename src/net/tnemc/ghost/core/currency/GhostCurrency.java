@@ -0,0 +1,48 @@
+package net.tnemc.ghost.core.currency;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+public class GhostCurrency {
+
+  private final String name;
+  private final boolean fixedPoint;
+  private final int scale;
+
+  public GhostCurrency(String name, boolean fixedPoint, int scale) {
+    this.name = name;
+    this.fixedPoint = fixedPoint;
+    this.scale = scale;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return Whether balances of this currency are stored as a scaled long number of minor units.
+   */
+  public boolean isFixedPoint() {
+    return fixedPoint;
+  }
+
+  /**
+   * @return The number of decimal places kept for balances of this currency.
+   */
+  public int getScale() {
+    return scale;
+  }
+}
@@ -0,0 +1,109 @@
+package net.tnemc.ghost.core.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Shared helpers for Ghost's binary file formats.
+ */
+public final class GhostIO {
+
+  private GhostIO() {
+  }
+
+  public static void writeVarInt(DataOutput out, int value) throws IOException {
+    while((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  public static int readVarInt(DataInput in) throws IOException {
+    int value = 0;
+    for(int shift = 0; shift < 35; shift += 7) {
+      final byte b = in.readByte();
+      value |= (b & 0x7F) << shift;
+      if((b & 0x80) == 0) return value;
+    }
+    throw new IOException("Malformed varint.");
+  }
+
+  public static void writeUUID(DataOutput out, UUID id) throws IOException {
+    out.writeLong(id.getMostSignificantBits());
+    out.writeLong(id.getLeastSignificantBits());
+  }
+
+  public static UUID readUUID(DataInput in) throws IOException {
+    return new UUID(in.readLong(), in.readLong());
+  }
+
+  public static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+    final byte[] unscaled = value.unscaledValue().toByteArray();
+    writeVarInt(out, value.scale());
+    writeVarInt(out, unscaled.length);
+    out.write(unscaled);
+  }
+
+  public static BigDecimal readDecimal(DataInput in) throws IOException {
+    final int scale = readVarInt(in);
+    final byte[] unscaled = new byte[readVarInt(in)];
+    in.readFully(unscaled);
+    return new BigDecimal(new BigInteger(unscaled), scale);
+  }
+
+  public static int readVarInt(ByteBuffer in) throws IOException {
+    int value = 0;
+    for(int shift = 0; shift < 35; shift += 7) {
+      final byte b = in.get();
+      value |= (b & 0x7F) << shift;
+      if((b & 0x80) == 0) return value;
+    }
+    throw new IOException("Malformed varint.");
+  }
+
+  public static BigDecimal readDecimal(ByteBuffer in) throws IOException {
+    final int scale = readVarInt(in);
+    final byte[] unscaled = new byte[readVarInt(in)];
+    in.get(unscaled);
+    return new BigDecimal(new BigInteger(unscaled), scale);
+  }
+
+  /**
+   * Writes a short length-prefixed UTF-8 string.
+   */
+  public static void putString(ByteBuffer out, String value) {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.putShort((short)bytes.length);
+    out.put(bytes);
+  }
+
+  public static String getString(ByteBuffer in) {
+    final byte[] bytes = new byte[in.getShort() & 0xFFFF];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
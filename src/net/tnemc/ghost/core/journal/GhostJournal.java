@@ -0,0 +1,589 @@
+package net.tnemc.ghost.core.journal;
+
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostAccountStore;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+import net.tnemc.ghost.core.io.GhostIO;
+import net.tnemc.ghost.core.storage.StorageChange;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * An append-only journal of every account and holdings change, written in batches by a
+ * {@link net.tnemc.ghost.core.storage.FileStorage}.
+ *
+ * Callers only queue a small {@link JournalRecord}; a single writer thread drains the queue
+ * and writes everything it finds as one frame (group commit), so no disk latency is added to the
+ * calling thread. Each frame is length-prefixed and CRC32 checked, which lets a replay stop cleanly at
+ * a frame that was torn by a crash. World/currency pairs are written once per file as KEY records and
+ * referenced by a varint id afterwards.
+ *
+ * The journal is split into numbered segment files. {@link #rotate()} starts a new segment so that
+ * older ones can be deleted once a snapshot covering them has been written. A write that fails is
+ * reported back to its caller and the writer carries on in a new segment, since the failed one may
+ * end in a torn frame.
+ */
+public class GhostJournal {
+
+  private static final int MAGIC = 0x47484A31; //GHJ1
+  private static final int MAX_FRAME = 64 * 1024 * 1024;
+
+  //A frame is cut at the first batch boundary past this size, so the writer never holds more than
+  //about this much plus one batch.
+  private static final int FRAME_TARGET = 1024 * 1024;
+
+  //A single batch too big for one frame is split between records once a frame gets this big, which
+  //leaves room for the largest record.
+  private static final int FRAME_SPLIT = MAX_FRAME - 1024 * 1024;
+
+  private final LinkedBlockingQueue<JournalRecord> queue = new LinkedBlockingQueue<>();
+
+  private final File directory;
+  private final HoldingsKeys keys;
+  private final SyncPolicy policy;
+  private final long syncInterval;
+  private final int groupSize;
+  private final Logger logger;
+
+  //Maps a store key id to its id in the current segment, plus one so zero means not written yet.
+  private int[] localKeys = new int[16];
+  private int nextLocal = 0;
+
+  private volatile int segment = 1;
+  private FileChannel channel;
+  private Thread writer;
+  private volatile boolean running = false;
+  private long lastSync = System.nanoTime();
+
+  public GhostJournal(File directory, HoldingsKeys keys, SyncPolicy policy, long syncInterval, int groupSize, Logger logger) {
+    this.directory = directory;
+    this.keys = keys;
+    this.policy = policy;
+    this.syncInterval = TimeUnit.MILLISECONDS.toNanos(syncInterval);
+    this.groupSize = Math.max(1, groupSize);
+    this.logger = logger;
+  }
+
+  /**
+   * Replays every segment numbered at or above the specified one into the store, and deletes the
+   * older segments. Must be called before this journal is registered as a listener of the store,
+   * and before {@link #start()}. A torn or corrupt tail is truncated.
+   *
+   * The records of a string account are applied to exactly that account, never to a player with
+   * the same name, and player names are recorded without merging legacy accounts, since a merge was
+   * journaled as the changes it made. Records of different accounts may be in any order.
+   * @param store The store to rebuild.
+   * @param from The first segment that isn't covered by the snapshot the store was loaded from.
+   * @return The number of records replayed.
+   * @throws IOException If the journal can't be read.
+   */
+  public int replay(GhostAccountStore store, int from) throws IOException {
+    segment = Math.max(1, from);
+    deleteBefore(segment);
+
+    List<String[]> definitions = new ArrayList<>();
+    int records = 0;
+    for(int number : segments()) {
+      definitions = new ArrayList<>();
+      records += replay(store, segmentFile(number), definitions);
+      segment = number;
+    }
+
+    for(String[] definition : definitions) {
+      localKey(keys.id(definition[0], definition[1]));
+    }
+    return records;
+  }
+
+  private int replay(GhostAccountStore store, File file, List<String[]> definitions) throws IOException {
+    if(file.length() == 0) return 0;
+
+    int records = 0;
+    long good = 4L;
+
+    try(FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        DataInputStream stream = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in)))) {
+
+      //A segment shorter than its header was torn while it was being started, so holds nothing.
+      final int magic;
+      try {
+        magic = stream.readInt();
+      } catch(EOFException e) {
+        logger.warning("Truncating a torn header of " + in.size() + " bytes from " + file.getName() + ".");
+        in.truncate(0L);
+        return 0;
+      }
+      if(magic != MAGIC) {
+        throw new IOException("The file " + file.getName() + " isn't a Ghost journal.");
+      }
+
+      final CRC32 crc = new CRC32();
+      while(true) {
+        final int length;
+        final int checksum;
+        final byte[] payload;
+        try {
+          length = stream.readInt();
+          checksum = stream.readInt();
+          if(length < 0 || length > MAX_FRAME) break;
+          payload = new byte[length];
+          stream.readFully(payload);
+        } catch(EOFException e) {
+          break;
+        }
+
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        if((int)crc.getValue() != checksum) break;
+
+        records += apply(store, new DataInputStream(new ByteArrayInputStream(payload)), definitions);
+        good += 8L + length;
+      }
+
+      if(good < in.size()) {
+        logger.warning("Truncating a torn tail of " + (in.size() - good) + " bytes from " + file.getName() + ".");
+        in.truncate(good);
+      }
+    }
+    return records;
+  }
+
+  private int apply(GhostAccountStore store, DataInputStream in, List<String[]> definitions) throws IOException {
+    int records = 0;
+    while(in.available() > 0) {
+      final byte type = in.readByte();
+      if(type == JournalRecord.KEY) {
+        definitions.add(new String[] { in.readUTF(), in.readUTF() });
+        continue;
+      }
+
+      final boolean uuid = in.readBoolean();
+      final String name = (uuid)? null : in.readUTF();
+      final UUID id = (uuid)? GhostIO.readUUID(in) : null;
+
+      switch(type) {
+        case JournalRecord.CREATE:
+          if(uuid) store.createAccount(id); else store.createStringAccount(name);
+          break;
+        case JournalRecord.DELETE:
+          if(uuid) store.deleteAccount(id); else store.deleteStringAccount(name);
+          break;
+        case JournalRecord.IDENTIFY:
+          store.link(id, in.readUTF());
+          break;
+        case JournalRecord.LEGACY:
+          store.markLegacy(name);
+          break;
+        case JournalRecord.SET_DECIMAL:
+        case JournalRecord.SET_MINOR:
+          final String[] definition = definitions.get(GhostIO.readVarInt(in));
+          final BigDecimal value;
+          if(type == JournalRecord.SET_MINOR) {
+            final int scale = GhostIO.readVarInt(in);
+            value = BigDecimal.valueOf(in.readLong(), scale);
+          } else {
+            value = GhostIO.readDecimal(in);
+          }
+          final GhostAccount account = (uuid)? store.getAccount(id) : store.getStringAccount(name);
+          store.setHoldings(account, definition[0], definition[1], value);
+          break;
+        default:
+          throw new IOException("Unknown journal record type " + type + ".");
+      }
+      records++;
+    }
+    return records;
+  }
+
+  /**
+   * Opens the current segment for appending and starts the writer thread.
+   * @throws IOException If the journal can't be opened.
+   */
+  public void start() throws IOException {
+    directory.mkdirs();
+    open(segment);
+
+    running = true;
+    writer = new Thread(this::run, "Ghost-Journal");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Writes everything still queued, forces it to disk and stops the writer thread.
+   */
+  public void close() {
+    running = false;
+    if(writer != null) {
+      try {
+        writer.join();
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    if(channel != null) {
+      try {
+        channel.force(false);
+        channel.close();
+      } catch(IOException e) {
+        logger.log(Level.SEVERE, "Unable to close the Ghost journal.", e);
+      }
+    }
+
+    //Appended while the writer was stopping.
+    for(JournalRecord record = queue.poll(); record != null; record = queue.poll()) {
+      fail(record, new IllegalStateException("The journal isn't running."));
+    }
+  }
+
+  /**
+   * Closes the current segment once everything queued before this call has been written, and
+   * starts a new one.
+   * @return A future completed with the number of the new segment. Every change made before this
+   * call is in an older segment.
+   */
+  public CompletableFuture<Integer> rotate() {
+    final CompletableFuture<Integer> future = new CompletableFuture<>();
+    if(!running) {
+      future.completeExceptionally(new IllegalStateException("The journal isn't running."));
+      return future;
+    }
+    queue.add(JournalRecord.rotate(future));
+    return future;
+  }
+
+  /**
+   * Deletes every segment numbered below the specified one.
+   * @param number The first segment to keep.
+   */
+  public void deleteBefore(int number) {
+    for(int existing : segments()) {
+      if(existing < number && !segmentFile(existing).delete()) {
+        logger.warning("Unable to delete the old journal segment " + existing + ".");
+      }
+    }
+  }
+
+  /**
+   * @return The number of the segment currently being written.
+   */
+  public int getSegment() {
+    return segment;
+  }
+
+  /**
+   * @return The number of records waiting to be written.
+   */
+  public int pending() {
+    return queue.size();
+  }
+
+  /**
+   * Queues a batch of changes to be written in a single frame, so it's replayed entirely or not at
+   * all. A batch too big for one frame, like a whole import, is split between frames. Never waits
+   * for the disk.
+   * @param changes The changes, in order.
+   * @return A future completed once the batch has been written, and forced to disk if the sync
+   * policy is {@link SyncPolicy#ALWAYS}. It completes exceptionally if the batch couldn't be
+   * written, in which case it can be appended again.
+   */
+  public CompletableFuture<Void> append(List<StorageChange> changes) {
+    final CompletableFuture<Void> written = new CompletableFuture<>();
+    if(!running) {
+      written.completeExceptionally(new IllegalStateException("The journal isn't running."));
+      return written;
+    }
+    if(changes.isEmpty()) {
+      written.complete(null);
+      return written;
+    }
+
+    final JournalRecord first = JournalRecord.of(changes.get(0));
+    first.written = written;
+    JournalRecord last = first;
+    for(int i = 1; i < changes.size(); i++) {
+      last.next = JournalRecord.of(changes.get(i));
+      last = last.next;
+    }
+    queue.add(first);
+    return written;
+  }
+
+  private void run() {
+    final List<JournalRecord> group = new ArrayList<>(groupSize);
+    final FrameBuffer bytes = new FrameBuffer();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    final CRC32 crc = new CRC32();
+
+    while(running || !queue.isEmpty()) {
+      try {
+        final JournalRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if(first == null) {
+          sync(false);
+          continue;
+        }
+        group.add(first);
+        queue.drainTo(group, groupSize - 1);
+
+        //The last write failed and so did starting a new segment after it.
+        if(channel == null) open(segment + 1);
+
+        bytes.reset();
+        for(JournalRecord record : group) {
+          if(record.type == JournalRecord.ROTATE) {
+            writeFrame(bytes, out, crc);
+
+            channel.force(false);
+            channel.close();
+            channel = null;
+            open(segment + 1);
+            record.rotated.complete(segment);
+            continue;
+          }
+
+          if(bytes.size() >= FRAME_TARGET) writeFrame(bytes, out, crc);
+          for(JournalRecord part = record; part != null; part = part.next) {
+            encode(out, part);
+            if(bytes.size() >= FRAME_SPLIT) writeFrame(bytes, out, crc);
+          }
+        }
+        writeFrame(bytes, out, crc);
+        sync(policy == SyncPolicy.ALWAYS);
+
+        for(JournalRecord record : group) {
+          if(record.written != null) record.written.complete(null);
+        }
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch(IOException | RuntimeException e) {
+        logger.log(Level.SEVERE, "Unable to write to the Ghost journal, the changes will be retried in a new segment.", e);
+        for(JournalRecord record : group) {
+          fail(record, e);
+        }
+        recover();
+      } finally {
+        group.clear();
+      }
+    }
+  }
+
+  /**
+   * Leaves a segment a write failed in and starts the next one. The failed segment may end in a torn
+   * frame, which replay truncates, and the KEY records in it may be lost with that frame, so the new
+   * segment gets its own.
+   */
+  private void recover() {
+    if(channel != null) {
+      try {
+        channel.close();
+      } catch(IOException ignore) {
+        //It's being abandoned anyway.
+      }
+      channel = null;
+    }
+
+    try {
+      open(segment + 1);
+    } catch(IOException e) {
+      logger.log(Level.SEVERE, "Unable to start a new Ghost journal segment, it'll be retried on the next write.", e);
+    }
+  }
+
+  private static void fail(JournalRecord record, Throwable cause) {
+    if(record.written != null) record.written.completeExceptionally(cause);
+    if(record.rotated != null) record.rotated.completeExceptionally(cause);
+  }
+
+  private void writeFrame(FrameBuffer bytes, DataOutputStream out, CRC32 crc) throws IOException {
+    out.flush();
+    final int length = bytes.size();
+    if(length == 0) return;
+    if(length > MAX_FRAME) {
+      throw new IOException("A journal frame of " + length + " bytes is over the limit of " + MAX_FRAME + ".");
+    }
+
+    crc.reset();
+    bytes.update(crc);
+
+    final ByteBuffer[] frame = { ByteBuffer.allocate(8), bytes.wrap() };
+    frame[0].putInt(length).putInt((int)crc.getValue());
+    frame[0].flip();
+    while(frame[1].hasRemaining()) {
+      channel.write(frame);
+    }
+    bytes.recycle();
+  }
+
+  private void open(int number) throws IOException {
+    final FileChannel opened = FileChannel.open(segmentFile(number).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    try {
+      //Anything shorter than the header was torn while the header was being written.
+      if(opened.size() < 4) {
+        opened.truncate(0);
+        final ByteBuffer header = ByteBuffer.allocate(4).putInt(MAGIC);
+        header.flip();
+        while(header.hasRemaining()) {
+          opened.write(header);
+        }
+      }
+      opened.position(opened.size());
+    } catch(IOException e) {
+      opened.close();
+      throw e;
+    }
+    channel = opened;
+
+    if(number != segment) {
+      segment = number;
+      Arrays.fill(localKeys, 0);
+      nextLocal = 0;
+    }
+  }
+
+  private File segmentFile(int number) {
+    return new File(directory, String.format("segment-%08d.journal", number));
+  }
+
+  private List<Integer> segments() {
+    final List<Integer> numbers = new ArrayList<>();
+    final File[] files = directory.listFiles();
+    if(files == null) return numbers;
+
+    for(File file : files) {
+      final String name = file.getName();
+      if(name.startsWith("segment-") && name.endsWith(".journal")) {
+        try {
+          numbers.add(Integer.parseInt(name.substring(8, name.length() - 8)));
+        } catch(NumberFormatException ignore) {
+          //Not one of ours.
+        }
+      }
+    }
+    Collections.sort(numbers);
+    return numbers;
+  }
+
+  private void sync(boolean force) throws IOException {
+    if(policy == SyncPolicy.NEVER || channel == null) return;
+
+    final long now = System.nanoTime();
+    if(force || now - lastSync >= syncInterval) {
+      channel.force(false);
+      lastSync = now;
+    }
+  }
+
+  private void encode(DataOutputStream out, JournalRecord record) throws IOException {
+    int local = -1;
+    if(record.type == JournalRecord.SET_DECIMAL || record.type == JournalRecord.SET_MINOR) {
+      local = localKey(record.key);
+      if(local < 0) {
+        local = -local - 1;
+        out.writeByte(JournalRecord.KEY);
+        out.writeUTF(keys.world(record.key));
+        out.writeUTF(keys.currency(record.key));
+      }
+    }
+
+    out.writeByte(record.type);
+    out.writeBoolean(record.id != null);
+    if(record.id != null) {
+      GhostIO.writeUUID(out, record.id);
+    } else {
+      out.writeUTF(record.name);
+    }
+
+    if(record.type == JournalRecord.IDENTIFY) {
+      out.writeUTF(record.name);
+    } else if(record.type == JournalRecord.SET_MINOR) {
+      GhostIO.writeVarInt(out, local);
+      GhostIO.writeVarInt(out, keys.scale(record.key));
+      out.writeLong(record.minor);
+    } else if(record.type == JournalRecord.SET_DECIMAL) {
+      GhostIO.writeVarInt(out, local);
+      GhostIO.writeDecimal(out, record.decimal);
+    }
+  }
+
+  /**
+   * @param key The store key id.
+   * @return The id of this key in the journal file, or -(id + 1) if it was just assigned and a KEY
+   * record needs to be written for it.
+   */
+  private int localKey(int key) {
+    if(key >= localKeys.length) {
+      localKeys = Arrays.copyOf(localKeys, Math.max(key + 1, localKeys.length << 1));
+    }
+    if(localKeys[key] != 0) return localKeys[key] - 1;
+
+    final int local = nextLocal++;
+    localKeys[key] = local + 1;
+    return -local - 1;
+  }
+
+  /**
+   * Hands its bytes to the channel without copying them, and lets go of a buffer grown by a big
+   * batch once its frame is written.
+   */
+  private static class FrameBuffer extends ByteArrayOutputStream {
+
+    FrameBuffer() {
+      super(4096);
+    }
+
+    void update(CRC32 crc) {
+      crc.update(buf, 0, count);
+    }
+
+    ByteBuffer wrap() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    void recycle() {
+      if(buf.length > FRAME_TARGET << 2) buf = new byte[4096];
+      reset();
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package net.tnemc.ghost.core.journal;
+
+import net.tnemc.ghost.core.storage.StorageChange;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A single change waiting to be written to the {@link GhostJournal}. Holdings changes are recorded
+ * as the resulting balance rather than the delta, so replaying a record twice is harmless.
+ */
+public class JournalRecord {
+
+  static final byte KEY = 0;
+  static final byte CREATE = 1;
+  static final byte DELETE = 2;
+  static final byte SET_DECIMAL = 3;
+  static final byte SET_MINOR = 4;
+  static final byte IDENTIFY = 5;
+  static final byte LEGACY = 6;
+
+  //Never written, tells the writer thread to start a new segment.
+  static final byte ROTATE = -1;
+
+  final byte type;
+  final String name;
+  final UUID id;
+  final int key;
+  final long minor;
+  final BigDecimal decimal;
+  final CompletableFuture<Integer> rotated;
+
+  //Written in the same frame as this record, so a whole batch is replayed or none of it is.
+  JournalRecord next;
+
+  //Set on the first record of a batch, completed once the whole batch has been written.
+  CompletableFuture<Void> written;
+
+  private JournalRecord(byte type, UUID id, String name, int key, long minor, BigDecimal decimal) {
+    this.type = type;
+    this.name = name;
+    this.id = id;
+    this.key = key;
+    this.minor = minor;
+    this.decimal = decimal;
+    this.rotated = null;
+  }
+
+  private JournalRecord(CompletableFuture<Integer> rotated) {
+    this.type = ROTATE;
+    this.name = null;
+    this.id = null;
+    this.key = -1;
+    this.minor = 0L;
+    this.decimal = null;
+    this.rotated = rotated;
+  }
+
+  static JournalRecord rotate(CompletableFuture<Integer> rotated) {
+    return new JournalRecord(rotated);
+  }
+
+  static JournalRecord of(StorageChange change) {
+    switch(change.getType()) {
+      case CREATE:
+        return new JournalRecord(CREATE, change.getId(), change.getName(), -1, 0L, null);
+      case DELETE:
+        return new JournalRecord(DELETE, change.getId(), change.getName(), -1, 0L, null);
+      case IDENTIFY:
+        return new JournalRecord(IDENTIFY, change.getId(), change.getName(), -1, 0L, null);
+      case LEGACY:
+        return new JournalRecord(LEGACY, null, change.getName(), -1, 0L, null);
+      default:
+        return (change.isMinor())? new JournalRecord(SET_MINOR, change.getId(), change.getName(), change.getKey(), change.getMinor(), null)
+                                 : new JournalRecord(SET_DECIMAL, change.getId(), change.getName(), change.getKey(), 0L, change.getDecimal());
+    }
+  }
+}
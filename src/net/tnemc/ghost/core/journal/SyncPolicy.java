@@ -0,0 +1,46 @@
+package net.tnemc.ghost.core.journal;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * When the {@link GhostJournal} forces its writes to disk.
+ */
+public enum SyncPolicy {
+
+  /**
+   * Force after every group commit.
+   */
+  ALWAYS,
+
+  /**
+   * Force at most once per configured interval.
+   */
+  INTERVAL,
+
+  /**
+   * Never force, leaving it up to the operating system.
+   */
+  NEVER;
+
+  public static SyncPolicy fromName(String name) {
+    for(SyncPolicy policy : values()) {
+      if(policy.name().equalsIgnoreCase(name)) return policy;
+    }
+    return INTERVAL;
+  }
+}
@@ -0,0 +1,231 @@
+package net.tnemc.ghost.core.ledger;
+
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostAccountStore;
+import net.tnemc.ghost.core.account.GhostHoldings;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+import net.tnemc.ghost.core.cache.AccountCache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Streams every account in a {@link GhostAccountStore}, including those unloaded by its cache and
+ * the balances of evicted worlds, to a ledger file in the {@link LedgerFormat}. Accounts are taken
+ * in chunks that are encoded and compressed on a small pool while earlier chunks are written, and
+ * only a few chunks are ever in flight, so memory stays flat however large the economy is.
+ *
+ * The export runs against the live store, so it isn't a point-in-time copy: an account changed
+ * mid-export has whichever balance it had when its chunk was encoded.
+ */
+public class LedgerExporter {
+
+  private final GhostAccountStore store;
+  private final int parallelism;
+  private final int chunkSize;
+
+  /**
+   * @param store The store to export.
+   * @param parallelism The number of threads encoding chunks at once.
+   * @param chunkSize The number of accounts in each chunk.
+   */
+  public LedgerExporter(GhostAccountStore store, int parallelism, int chunkSize) {
+    this.store = store;
+    this.parallelism = Math.max(1, parallelism);
+    this.chunkSize = Math.max(1, chunkSize);
+  }
+
+  /**
+   * Exports the store. The ledger is written next to the file and moved over it once complete.
+   * @param file The ledger file.
+   * @param progress Told the number of accounts exported after every chunk.
+   * @return The number of accounts exported.
+   * @throws IOException If the ledger can't be written.
+   */
+  public long export(File file, LedgerProgress progress) throws IOException {
+    final AtomicInteger threads = new AtomicInteger();
+    final ExecutorService pool = Executors.newFixedThreadPool(parallelism, (runnable)->{
+      final Thread thread = new Thread(runnable, "Ghost-Ledger-" + threads.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+    final AccountCache cache = store.getCache();
+    if(cache != null) cache.pause();
+    try {
+      final long exported = write(temp, cache, pool, progress);
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return exported;
+    } catch(IOException e) {
+      Files.deleteIfExists(temp.toPath());
+      throw e;
+    } finally {
+      if(cache != null) cache.resume();
+      pool.shutdownNow();
+    }
+  }
+
+  private long write(File temp, AccountCache cache, ExecutorService pool, LedgerProgress progress) throws IOException {
+    try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 65536))) {
+      out.writeInt(LedgerFormat.MAGIC);
+      out.writeInt(LedgerFormat.VERSION);
+      out.writeLong(System.currentTimeMillis());
+
+      //Balances of evicted worlds aren't in the accounts, so they're read back from their partitions.
+      final Map<GhostAccount, GhostHoldings> evicted = (store.getPartitions() == null)? Collections.emptyMap()
+                                                                                     : store.getPartitions().readEvicted();
+
+      final Writer writer = new Writer(out, pool, evicted, progress);
+      writer.total = store.getIndex().size() + ((cache != null)? cache.getCold().size() : 0);
+
+      final List<Map.Entry<UUID, String>> players = new ArrayList<>(chunkSize);
+      for(Map.Entry<UUID, String> player : store.getIndex().getPlayers().entrySet()) {
+        players.add(new AbstractMap.SimpleImmutableEntry<>(player.getKey(), player.getValue()));
+        if(players.size() < chunkSize) continue;
+
+        writer.players(new ArrayList<>(players));
+        players.clear();
+      }
+      if(!players.isEmpty()) writer.players(players);
+
+      //Nothing is unloaded while paused, so every account is either in memory or read here. Accounts
+      //loaded back in the meantime are in both, and the one in memory is written last so it wins.
+      if(cache != null) cache.getCold().forEach(writer::account);
+      writer.accounts(store.getIdAccounts());
+      writer.accounts(store.getStringAccounts());
+      writer.finish();
+
+      out.writeInt(0);
+      return writer.done;
+    }
+  }
+
+  /**
+   * Collects accounts into chunks, hands them to the pool and writes the encoded chunks in order.
+   */
+  private class Writer {
+
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final ArrayDeque<Integer> counts = new ArrayDeque<>();
+    private final DataOutputStream out;
+    private final ExecutorService pool;
+    private final Map<GhostAccount, GhostHoldings> evicted;
+    private final LedgerProgress progress;
+    private final HoldingsKeys keys = store.getKeys();
+
+    private GhostAccount[] chunk = new GhostAccount[chunkSize];
+    private int size = 0;
+    private long done = 0L;
+    private long total = 0L;
+
+    //Thrown out of a Consumer, so it's kept until the cold accounts have been read.
+    private IOException failure;
+
+    Writer(DataOutputStream out, ExecutorService pool, Map<GhostAccount, GhostHoldings> evicted, LedgerProgress progress) {
+      this.out = out;
+      this.pool = pool;
+      this.evicted = evicted;
+      this.progress = progress;
+    }
+
+    void players(List<Map.Entry<UUID, String>> players) throws IOException {
+      submit(pool.submit(()->LedgerFormat.encodePlayers(players)), 0);
+    }
+
+    void account(GhostAccount account) {
+      if(failure != null) return;
+      try {
+        add(account);
+      } catch(IOException e) {
+        failure = e;
+      }
+    }
+
+    void accounts(Collection<GhostAccount> accounts) throws IOException {
+      if(failure != null) throw failure;
+      for(GhostAccount account : accounts) {
+        add(account);
+      }
+    }
+
+    private void add(GhostAccount account) throws IOException {
+      chunk[size++] = account;
+      if(size == chunk.length) flush();
+    }
+
+    void finish() throws IOException {
+      if(size > 0) flush();
+      while(!pending.isEmpty()) {
+        write();
+      }
+    }
+
+    private void flush() throws IOException {
+      final GhostAccount[] accounts = chunk;
+      final int count = size;
+      chunk = new GhostAccount[chunkSize];
+      size = 0;
+      submit(pool.submit(()->LedgerFormat.encodeAccounts(accounts, count, keys, evicted)), count);
+    }
+
+    private void submit(Future<byte[]> future, int count) throws IOException {
+      pending.add(future);
+      counts.add(count);
+      if(pending.size() >= parallelism * 2) write();
+    }
+
+    private void write() throws IOException {
+      final byte[] bytes;
+      try {
+        bytes = pending.poll().get();
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while exporting the ledger.", e);
+      } catch(ExecutionException e) {
+        throw (e.getCause() instanceof IOException)? (IOException)e.getCause() : new IOException(e.getCause());
+      }
+      out.write(bytes);
+
+      final int count = counts.poll();
+      if(count == 0) return;
+      done += count;
+      progress.progress(done, Math.max(done, total));
+    }
+  }
+}
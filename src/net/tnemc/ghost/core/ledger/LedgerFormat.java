@@ -0,0 +1,248 @@
+package net.tnemc.ghost.core.ledger;
+
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostHoldings;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+import net.tnemc.ghost.core.io.GhostIO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The ledger file format, shared by {@link LedgerExporter} and {@link LedgerImporter}.
+ *
+ * Layout, big-endian:
+ * <pre>
+ * header  int magic, int version, long created
+ * chunks  int compressed length, int length, int crc, compressed payload; repeated
+ * end     int 0
+ * </pre>
+ * Each chunk is deflated on its own, so chunks are compressed and decompressed in parallel, and the
+ * CRC covers the uncompressed payload. A payload is a byte kind and a varint count, followed by
+ * that many players, as (UUID, name), or accounts, as (boolean uuid, UUID or identifier, varint
+ * count, then (world, currency, decimal) per balance). Strings are written by {@link DataOutputStream#writeUTF}.
+ * Worlds and currencies are written by name, so a ledger can be imported into any server.
+ */
+final class LedgerFormat {
+
+  static final int MAGIC = 0x47484C31; //GHL1
+  static final int VERSION = 1;
+
+  static final byte KIND_PLAYERS = 0;
+  static final byte KIND_ACCOUNTS = 1;
+
+  //Guards against reading a corrupt length as a huge allocation.
+  static final int MAX_CHUNK = 256 * 1024 * 1024;
+
+  private LedgerFormat() {
+  }
+
+  /**
+   * A chunk decoded by {@link #decode}, holding either players or accounts.
+   */
+  static final class Chunk {
+
+    final List<UUID> players = new ArrayList<>();
+    final List<String> names = new ArrayList<>();
+    final List<GhostAccount> accounts = new ArrayList<>();
+    int length;
+  }
+
+  static byte[] encodePlayers(List<Map.Entry<UUID, String>> players) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(players.size() * 32);
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(KIND_PLAYERS);
+    GhostIO.writeVarInt(out, players.size());
+    for(Map.Entry<UUID, String> player : players) {
+      GhostIO.writeUUID(out, player.getKey());
+      out.writeUTF(player.getValue());
+    }
+    out.flush();
+    return compress(bytes.toByteArray());
+  }
+
+  /**
+   * @param accounts The accounts.
+   * @param keys The keys the accounts' balances are stored under.
+   * @param evicted The balances of evicted worlds by account, merged into the account's own.
+   */
+  static byte[] encodeAccounts(GhostAccount[] accounts, int count, HoldingsKeys keys, Map<GhostAccount, GhostHoldings> evicted) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(count * 48);
+    final DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(KIND_ACCOUNTS);
+    GhostIO.writeVarInt(out, count);
+
+    final List<Integer> written = new ArrayList<>();
+    final List<BigDecimal> values = new ArrayList<>();
+    for(int i = 0; i < count; i++) {
+      final GhostAccount account = accounts[i];
+      out.writeBoolean(account.getId() != null);
+      if(account.getId() != null) GhostIO.writeUUID(out, account.getId()); else out.writeUTF(account.getName());
+
+      written.clear();
+      values.clear();
+      collect(account.getHoldingsContainer(), keys, written, values);
+      final GhostHoldings other = evicted.get(account);
+      if(other != null) collect(other, keys, written, values);
+
+      GhostIO.writeVarInt(out, written.size());
+      for(int balance = 0; balance < written.size(); balance++) {
+        out.writeUTF(keys.world(written.get(balance)));
+        out.writeUTF(keys.currency(written.get(balance)));
+        GhostIO.writeDecimal(out, values.get(balance));
+      }
+    }
+    out.flush();
+    return compress(bytes.toByteArray());
+  }
+
+  private static void collect(GhostHoldings holdings, HoldingsKeys keys, List<Integer> written, List<BigDecimal> values) {
+    final int limit = Math.min(keys.size(), holdings.capacity());
+    for(int key = 0; key < limit; key++) {
+      final BigDecimal value;
+      if(keys.isFixedPoint(key)) {
+        final long minor = holdings.getMinor(key);
+        value = (minor == 0L)? null : keys.toDecimal(key, minor);
+      } else {
+        value = holdings.get(key);
+      }
+      if(value == null || written.contains(key)) continue;
+
+      written.add(key);
+      values.add(value);
+    }
+  }
+
+  /**
+   * Decodes a chunk into accounts that aren't registered anywhere, using the keys of the store it's
+   * imported into.
+   */
+  static Chunk decode(byte[] compressed, int length, int crc, HoldingsKeys keys) throws IOException {
+    final byte[] payload = decompress(compressed, length);
+    final CRC32 check = new CRC32();
+    check.update(payload, 0, payload.length);
+    if((int)check.getValue() != crc) throw new IOException("A ledger chunk failed its checksum.");
+
+    final Chunk chunk = new Chunk();
+    chunk.length = compressed.length;
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    final byte kind = in.readByte();
+    final int count = GhostIO.readVarInt(in);
+    for(int i = 0; i < count; i++) {
+      if(kind == KIND_PLAYERS) {
+        chunk.players.add(GhostIO.readUUID(in));
+        chunk.names.add(in.readUTF());
+        continue;
+      }
+      if(kind != KIND_ACCOUNTS) throw new IOException("Unknown ledger chunk kind " + kind + ".");
+
+      final GhostAccount account = (in.readBoolean())? new GhostAccount(GhostIO.readUUID(in), keys) : new GhostAccount(in.readUTF(), keys);
+      final int balances = GhostIO.readVarInt(in);
+      for(int balance = 0; balance < balances; balance++) {
+        final String world = in.readUTF();
+        final String currency = in.readUTF();
+        final BigDecimal value = GhostIO.readDecimal(in);
+        try {
+          account.setHoldings(keys.id(world, currency), value);
+        } catch(ArithmeticException e) {
+          throw new IOException("The balance " + value + " of " + currency + " in " + world + " doesn't fit this server's currency.", e);
+        }
+      }
+      chunk.accounts.add(account);
+    }
+    return chunk;
+  }
+
+  /**
+   * @return The payload deflated, prefixed by its compressed length, length and CRC.
+   */
+  private static byte[] compress(byte[] payload) {
+    final CRC32 crc = new CRC32();
+    crc.update(payload, 0, payload.length);
+
+    final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(payload);
+      deflater.finish();
+
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length / 2 + 64);
+      bytes.write(0);
+      bytes.write(0);
+      bytes.write(0);
+      bytes.write(0);
+      final byte[] buffer = new byte[8192];
+      while(!deflater.finished()) {
+        bytes.write(buffer, 0, deflater.deflate(buffer));
+      }
+      final byte[] frame = bytes.toByteArray();
+      final int compressed = frame.length - 4;
+
+      final byte[] chunk = new byte[frame.length + 8];
+      writeInt(chunk, 0, compressed);
+      writeInt(chunk, 4, payload.length);
+      writeInt(chunk, 8, (int)crc.getValue());
+      System.arraycopy(frame, 4, chunk, 12, compressed);
+      return chunk;
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] decompress(byte[] compressed, int length) throws IOException {
+    if(length < 0 || length > MAX_CHUNK) throw new IOException("A ledger chunk is too large.");
+
+    final Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      final byte[] payload = new byte[length];
+      int read = 0;
+      while(read < length && !inflater.finished()) {
+        final int inflated = inflater.inflate(payload, read, length - read);
+        if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+        read += inflated;
+      }
+      if(read != length) throw new IOException("A ledger chunk is truncated.");
+      return payload;
+    } catch(DataFormatException e) {
+      throw new IOException("A ledger chunk is corrupt.", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static void writeInt(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte)(value >>> 24);
+    bytes[offset + 1] = (byte)(value >>> 16);
+    bytes[offset + 2] = (byte)(value >>> 8);
+    bytes[offset + 3] = (byte)value;
+  }
+}
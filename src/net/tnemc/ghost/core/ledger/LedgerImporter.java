@@ -0,0 +1,139 @@
+package net.tnemc.ghost.core.ledger;
+
+import net.tnemc.ghost.core.account.GhostAccountStore;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Reads a ledger file written by {@link LedgerExporter} into a {@link GhostAccountStore}. Chunks are
+ * read in order and decompressed and decoded on a small pool, then applied one chunk at a time on the
+ * calling thread through {@link GhostAccountStore#importAccounts}, so later entries for an account
+ * win and only a few chunks are held in memory at once.
+ *
+ * Imported balances replace the ones the store already has for the same world and currency, and
+ * the store's listeners are told about every change, so the import is persisted like any other.
+ */
+public class LedgerImporter {
+
+  private final GhostAccountStore store;
+  private final int parallelism;
+
+  /**
+   * @param store The store to import into.
+   * @param parallelism The number of threads decoding chunks at once.
+   */
+  public LedgerImporter(GhostAccountStore store, int parallelism) {
+    this.store = store;
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  /**
+   * Imports a ledger. A chunk that fails its checksum or doesn't fit this server's currencies stops
+   * the import, leaving the chunks before it applied.
+   * @param file The ledger file.
+   * @param progress Told the number of bytes read after every chunk.
+   * @return The number of accounts imported.
+   * @throws IOException If the ledger can't be read or is corrupt.
+   */
+  public long importLedger(File file, LedgerProgress progress) throws IOException {
+    final AtomicInteger threads = new AtomicInteger();
+    final ExecutorService pool = Executors.newFixedThreadPool(parallelism, (runnable)->{
+      final Thread thread = new Thread(runnable, "Ghost-Ledger-" + threads.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    final HoldingsKeys keys = store.getKeys();
+    final long total = file.length();
+    final ArrayDeque<Future<LedgerFormat.Chunk>> pending = new ArrayDeque<>();
+    long imported = 0L;
+    long read = 16L;
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536))) {
+      if(in.readInt() != LedgerFormat.MAGIC) throw new IOException(file.getName() + " isn't a Ghost ledger.");
+      final int version = in.readInt();
+      if(version != LedgerFormat.VERSION) throw new IOException("Unsupported ledger version " + version + ".");
+      in.readLong();
+
+      while(true) {
+        final int compressed = in.readInt();
+        if(compressed == 0) {
+          read += 4L;
+          break;
+        }
+        if(compressed < 0 || compressed > LedgerFormat.MAX_CHUNK) throw new IOException("A ledger chunk is corrupt.");
+
+        final int length = in.readInt();
+        final int crc = in.readInt();
+        final byte[] bytes = new byte[compressed];
+        in.readFully(bytes);
+        pending.add(pool.submit(()->LedgerFormat.decode(bytes, length, crc, keys)));
+
+        if(pending.size() >= parallelism * 2) {
+          final LedgerFormat.Chunk chunk = next(pending);
+          imported += apply(chunk);
+          read += 12L + chunk.length;
+          progress.progress(read, total);
+        }
+      }
+      while(!pending.isEmpty()) {
+        final LedgerFormat.Chunk chunk = next(pending);
+        imported += apply(chunk);
+        read += 12L + chunk.length;
+        progress.progress(read, total);
+      }
+      return imported;
+    } catch(EOFException e) {
+      throw new IOException(file.getName() + " is truncated.", e);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private int apply(LedgerFormat.Chunk chunk) {
+    for(int i = 0; i < chunk.players.size(); i++) {
+      store.link(chunk.players.get(i), chunk.names.get(i));
+    }
+    store.importAccounts(chunk.accounts);
+    return chunk.accounts.size();
+  }
+
+  private static LedgerFormat.Chunk next(ArrayDeque<Future<LedgerFormat.Chunk>> pending) throws IOException {
+    try {
+      return pending.poll().get();
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while importing the ledger.", e);
+    } catch(ExecutionException e) {
+      throw (e.getCause() instanceof IOException)? (IOException)e.getCause() : new IOException(e.getCause());
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package net.tnemc.ghost.core.ledger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Told how far a ledger export or import has got, from the thread running it.
+ */
+@FunctionalInterface
+public interface LedgerProgress {
+
+  LedgerProgress NONE = (done, total)->{};
+
+  /**
+   * @param done The accounts exported, or bytes imported, so far.
+   * @param total The accounts to export, or bytes to import, in total. Accounts created during an
+   * export may take done past it.
+   */
+  void progress(long done, long total);
+}
@@ -0,0 +1,191 @@
+package net.tnemc.ghost.core.limit;
+
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Works out which plugin made an economy call from the classes on the calling thread's stack. The
+ * first class loaded by another plugin's class loader is the caller, and calls with none, such as
+ * from the server itself or Ghost's own commands, are made by {@link #SERVER}.
+ *
+ * On Java 9 and later the stack is walked with a StackWalker, which stops at the first plugin frame
+ * instead of capturing the whole stack. Java 8 doesn't have one, so there the class context of a
+ * SecurityManager is used instead. Every class loader is only looked up once, so resolving a caller
+ * costs a map lookup per frame walked.
+ */
+final class CallerResolver {
+
+  /**
+   * The caller of economy calls that weren't made by a plugin.
+   */
+  static final String SERVER = "Server";
+
+  //Class loaders that don't belong to a plugin map to this, so they're only looked up once.
+  private static final String NONE = "";
+
+  private final Map<ClassLoader, String> plugins = new ConcurrentHashMap<>();
+  private final ClassLoader own = CallerResolver.class.getClassLoader();
+  private final Walker walker = Walker.create();
+  private final Context context = (walker == null)? context() : null;
+
+  /**
+   * @return The name of the plugin calling Ghost, or {@link #SERVER}.
+   */
+  String caller() {
+    final String plugin = (walker != null)? walker.find(this::pluginOf) : find(context);
+    return (plugin != null)? plugin : SERVER;
+  }
+
+  private String find(Context context) {
+    if(context == null) return null;
+
+    for(Class<?> frame : context.frames()) {
+      final String plugin = pluginOf(frame);
+      if(plugin != null) return plugin;
+    }
+    return null;
+  }
+
+  /**
+   * @return The name of the plugin that loaded this class, or null if it wasn't loaded by another plugin.
+   */
+  private String pluginOf(Class<?> frame) {
+    final ClassLoader loader = frame.getClassLoader();
+    if(loader == null || loader == own) return null;
+
+    final String plugin = plugins.computeIfAbsent(loader, (key)->plugin(frame));
+    return (plugin.isEmpty())? null : plugin;
+  }
+
+  private static String plugin(Class<?> frame) {
+    try {
+      return JavaPlugin.getProvidingPlugin(frame).getName();
+    } catch(RuntimeException e) {
+      //Not loaded by a plugin, such as the server's own classes.
+      return NONE;
+    }
+  }
+
+  private static Context context() {
+    try {
+      return new Context();
+    } catch(RuntimeException e) {
+      //Refused by the JVM, leaving every call to the server.
+      return null;
+    }
+  }
+
+  /**
+   * Walks the stack with java.lang.StackWalker, looked up reflectively since Ghost is built for Java 8.
+   * The handles are constants, so they're as cheap to call as the methods themselves.
+   */
+  private static final class Walker {
+
+    //A plugin's frame is a handful of frames above Ghost's, so a call from the server itself stops
+    //here rather than walking a deep stack to the bottom.
+    private static final int MAX_FRAMES = 32;
+
+    //Both are null before Java 9.
+    private static final MethodHandle WALK;
+    private static final MethodHandle DECLARING_CLASS;
+
+    static {
+      MethodHandle walk = null;
+      MethodHandle declaringClass = null;
+      try {
+        final Class<?> type = Class.forName("java.lang.StackWalker");
+        final Class<?> option = Class.forName("java.lang.StackWalker$Option");
+        final Class<?> frame = Class.forName("java.lang.StackWalker$StackFrame");
+        final Object retain = option.getField("RETAIN_CLASS_REFERENCE").get(null);
+        final Object instance = type.getMethod("getInstance", option).invoke(null, retain);
+
+        //A full privilege lookup, since walk is caller sensitive.
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        walk = lookup.findVirtual(type, "walk", MethodType.methodType(Object.class, Function.class)).bindTo(instance);
+        declaringClass = lookup.findVirtual(frame, "getDeclaringClass", MethodType.methodType(Class.class))
+                               .asType(MethodType.methodType(Class.class, Object.class));
+      } catch(ReflectiveOperationException | RuntimeException e) {
+        walk = null;
+      }
+      WALK = walk;
+      DECLARING_CLASS = declaringClass;
+    }
+
+    private Walker() {
+    }
+
+    /**
+     * @return A walker, or null before Java 9.
+     */
+    static Walker create() {
+      return (WALK != null)? new Walker() : null;
+    }
+
+    /**
+     * @param plugin Gives the plugin of a frame's class, or null to keep walking.
+     * @return The first plugin found, or null.
+     */
+    String find(Function<Class<?>, String> plugin) {
+      final Function<Stream<?>, String> search = (frames)->frames.limit(MAX_FRAMES)
+                                                                  .map((frame)->plugin.apply(declaringClass(frame)))
+                                                                  .filter(Objects::nonNull)
+                                                                  .findFirst()
+                                                                  .orElse(null);
+      try {
+        return (String)(Object)WALK.invokeExact(search);
+      } catch(RuntimeException | Error e) {
+        throw e;
+      } catch(Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private static Class<?> declaringClass(Object frame) {
+      try {
+        return (Class<?>)DECLARING_CLASS.invokeExact(frame);
+      } catch(RuntimeException | Error e) {
+        throw e;
+      } catch(Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * Only used for its access to the class context on Java 8, where SecurityManager isn't deprecated,
+   * and it's never installed. Later versions use the {@link Walker}, so the removal warning newer
+   * compilers give for extending it doesn't apply.
+   */
+  @SuppressWarnings("removal")
+  private static class Context extends SecurityManager {
+
+    Class<?>[] frames() {
+      return getClassContext();
+    }
+  }
+}
@@ -0,0 +1,294 @@
+package net.tnemc.ghost.core.limit;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Throttles balance changes, so a misbehaving plugin or a player spamming payments can't flood the
+ * economy. Every change takes a token from the calling plugin's bucket and from the changed
+ * account's bucket, and changes either bucket can't pay for are over their limit.
+ *
+ * Over the limit, sync changes are always rejected, since waiting would stall the calling thread.
+ * Async changes are rejected too with the {@link Policy#REJECT} policy, or with {@link Policy#QUEUE}
+ * are run once the buckets have refilled, as long as that's within the maximum delay.
+ *
+ * Account buckets are a fixed array of slots the accounts are hashed into, so their memory doesn't
+ * grow with the number of accounts. Accounts that share a slot share a limit, which only matters
+ * if both are busy at once, and the number of slots is configurable. Plugin buckets are kept per
+ * plugin, and calls that don't come from a plugin, such as Ghost's own commands, only count towards
+ * the account limit.
+ */
+public class RateLimits {
+
+  /**
+   * What happens to async changes over the limit.
+   */
+  public enum Policy {
+    REJECT,
+    QUEUE
+  }
+
+  //Plugins past this many share buckets, which takes far more plugins than servers run.
+  private static final int MAX_PLUGINS = 256;
+
+  private final LongAdder admitted = new LongAdder();
+  private final LongAdder delayed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  private final Map<String, PluginStats> plugins = new ConcurrentHashMap<>();
+  private final AtomicInteger pluginSlots = new AtomicInteger();
+  private final CallerResolver resolver = new CallerResolver();
+
+  //The nanoTime every bucket is relative to, so now is always positive and zero is a full bucket.
+  private final long origin = System.nanoTime() - 1L;
+
+  private final Policy policy;
+  private final long maxDelay;
+
+  //Either is null if its limit is disabled.
+  private final TokenBucket pluginRate;
+  private final AtomicLongArray pluginBuckets;
+  private final TokenBucket accountRate;
+  private final AtomicLongArray accountBuckets;
+  private final int accountMask;
+
+  private volatile ScheduledExecutorService scheduler;
+
+  /**
+   * @param policy What happens to async changes over the limit.
+   * @param maxDelay The longest an async change is queued for in milliseconds.
+   * @param pluginRate The changes each plugin may make per second, zero for no limit.
+   * @param pluginBurst The changes each plugin may make at once.
+   * @param accountRate The changes to each account per second, zero for no limit.
+   * @param accountBurst The changes to each account at once.
+   * @param accountSlots The number of account buckets, rounded up to a power of two.
+   */
+  public RateLimits(Policy policy, long maxDelay, double pluginRate, long pluginBurst,
+                    double accountRate, long accountBurst, int accountSlots) {
+    this.policy = policy;
+    this.maxDelay = (policy == Policy.QUEUE)? TimeUnit.MILLISECONDS.toNanos(Math.max(0L, maxDelay)) : 0L;
+
+    if(pluginRate > 0D) {
+      this.pluginRate = new TokenBucket(pluginRate, pluginBurst);
+      this.pluginBuckets = new AtomicLongArray(MAX_PLUGINS);
+    } else {
+      this.pluginRate = null;
+      this.pluginBuckets = null;
+    }
+
+    if(accountRate > 0D) {
+      final int slots = Integer.highestOneBit(Math.max(1, Math.min(accountSlots, 1 << 24)) * 2 - 1);
+      this.accountRate = new TokenBucket(accountRate, accountBurst);
+      this.accountBuckets = new AtomicLongArray(slots);
+      this.accountMask = slots - 1;
+    } else {
+      this.accountRate = null;
+      this.accountBuckets = null;
+      this.accountMask = 0;
+    }
+  }
+
+  /**
+   * @param section The RateLimit configuration section.
+   * @return The configured limits, or null if rate limiting is disabled.
+   */
+  public static RateLimits fromConfig(ConfigurationSection section) {
+    if(section == null || !section.getBoolean("Enabled", true)) return null;
+
+    final Policy policy = (section.getString("Policy", "Queue").equalsIgnoreCase("Reject"))? Policy.REJECT : Policy.QUEUE;
+    final RateLimits limits = new RateLimits(policy, section.getLong("MaxDelay", 2000L),
+                                             section.getDouble("Plugins.Rate", 5000D), section.getLong("Plugins.Burst", 20000L),
+                                             section.getDouble("Accounts.Rate", 100D), section.getLong("Accounts.Burst", 500L),
+                                             section.getInt("Accounts.Buckets", 65536));
+    return (limits.pluginRate == null && limits.accountRate == null)? null : limits;
+  }
+
+  /**
+   * Takes a token for a sync change, which is never queued.
+   * @param account The key of the changed account, or null to only count towards the plugin limit.
+   * @return True if the change is within the limits.
+   */
+  public boolean tryAcquire(Object account) {
+    return tryAcquire(account, 1);
+  }
+
+  /**
+   * Takes tokens for a sync change, or a batch of them, which are never queued.
+   * @param account The key of the changed account, or null to only count towards the plugin limit.
+   * @param changes The number of changes.
+   * @return True if the changes are within the limits.
+   */
+  public boolean tryAcquire(Object account, int changes) {
+    return acquire(account, changes, false) == 0L;
+  }
+
+  /**
+   * Takes tokens for an async change, or a batch of them.
+   * @param account The key of the changed account, or null to only count towards the plugin limit.
+   * @param changes The number of changes.
+   * @return Zero if the changes may run now, the nanoseconds to wait before running them, or a
+   * negative number if they're rejected.
+   */
+  public long acquireAsync(Object account, int changes) {
+    return acquire(account, changes, true);
+  }
+
+  private long acquire(Object account, int changes, boolean async) {
+    final long now = System.nanoTime() - origin;
+    final long limit = (async)? maxDelay : 0L;
+
+    final boolean accountLimited = accountRate != null && account != null;
+    final int slot = (accountLimited)? accountSlot(account) : -1;
+    long delay = 0L;
+    if(accountLimited) {
+      delay = accountRate.acquire(accountBuckets, slot, now, changes, limit);
+      if(delay < 0L) return reject(null, changes);
+    }
+
+    if(pluginRate != null) {
+      final String caller = resolver.caller();
+      if(!caller.equals(CallerResolver.SERVER)) {
+        final PluginStats stats = plugins.computeIfAbsent(caller, (name)->new PluginStats(pluginSlots.getAndIncrement() % MAX_PLUGINS));
+        final long pluginDelay = pluginRate.acquire(pluginBuckets, stats.slot, now, changes, limit);
+        if(pluginDelay < 0L) {
+          //The change never runs, so it mustn't use up the account's limit.
+          if(accountLimited) accountRate.release(accountBuckets, slot, changes);
+          return reject(stats, changes);
+        }
+
+        delay = Math.max(delay, pluginDelay);
+      }
+    }
+
+    admitted.add(changes);
+    if(delay > 0L) delayed.add(changes);
+    return delay;
+  }
+
+  private long reject(PluginStats stats, int changes) {
+    rejected.add(changes);
+    if(stats != null) stats.rejected.add(changes);
+    return TokenBucket.REJECTED;
+  }
+
+  private int accountSlot(Object account) {
+    final int hash = account.hashCode() * 0x9E3779B9;
+    return (hash ^ (hash >>> 16)) & accountMask;
+  }
+
+  /**
+   * @param nanos The delay returned by {@link #acquireAsync}.
+   * @return A future completed once the delay has passed.
+   */
+  public CompletableFuture<Void> delay(long nanos) {
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+    scheduler().schedule(()->future.complete(null), nanos, TimeUnit.NANOSECONDS);
+    return future;
+  }
+
+  private ScheduledExecutorService scheduler() {
+    ScheduledExecutorService current = scheduler;
+    if(current == null) {
+      synchronized(this) {
+        current = scheduler;
+        if(current == null) {
+          final ThreadFactory factory = (runnable)->{
+            final Thread thread = new Thread(runnable, "Ghost-RateLimit");
+            thread.setDaemon(true);
+            return thread;
+          };
+          current = Executors.newSingleThreadScheduledExecutor(factory);
+          scheduler = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Stops the thread queued changes wait on. Changes still queued are dropped with it, which only
+   * happens on shutdown, once the async executor has been drained.
+   */
+  public void shutdown() {
+    final ScheduledExecutorService current = scheduler;
+    if(current != null) current.shutdownNow();
+  }
+
+  /**
+   * @return What happens to async changes over the limit.
+   */
+  public Policy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * @return The number of changes let through, including queued ones.
+   */
+  public long getAdmitted() {
+    return admitted.sum();
+  }
+
+  /**
+   * @return The number of async changes queued until their buckets refilled.
+   */
+  public long getDelayed() {
+    return delayed.sum();
+  }
+
+  /**
+   * @return The number of changes rejected for being over the limit.
+   */
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * @return The number of changes rejected for being over each plugin's own limit, by plugin name.
+   */
+  public Map<String, Long> getRejectedByPlugin() {
+    final Map<String, Long> counts = new TreeMap<>();
+    for(Map.Entry<String, PluginStats> entry : plugins.entrySet()) {
+      final long count = entry.getValue().rejected.sum();
+      if(count > 0L) counts.put(entry.getKey(), count);
+    }
+    return counts;
+  }
+
+  private static class PluginStats {
+
+    private final int slot;
+    private final LongAdder rejected = new LongAdder();
+
+    PluginStats(int slot) {
+      this.slot = slot;
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package net.tnemc.ghost.core.limit;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A token bucket rate, applied to buckets kept as single slots of an {@link AtomicLongArray}.
+ *
+ * Each slot holds the time the bucket will next be full, so taking tokens is one compare and set
+ * and a bucket costs eight bytes however busy it is. A slot of zero is a full bucket. Tokens are
+ * refilled at the rate and the bucket holds at most the burst.
+ */
+final class TokenBucket {
+
+  /**
+   * Returned by {@link #acquire} when the tokens can't be taken within the maximum delay.
+   */
+  static final long REJECTED = -1L;
+
+  private final long interval;
+  private final long tolerance;
+  private final long burst;
+
+  /**
+   * @param rate The tokens refilled per second.
+   * @param burst The tokens a full bucket holds.
+   */
+  TokenBucket(double rate, long burst) {
+    this.interval = Math.max(1L, (long)(1000000000D / rate));
+    this.burst = Math.max(1L, burst);
+    this.tolerance = interval * this.burst;
+  }
+
+  /**
+   * Takes tokens from a bucket, borrowing from the future if it doesn't hold enough.
+   * @param buckets The buckets.
+   * @param slot The slot of the bucket.
+   * @param now The current time in nanoseconds, always positive.
+   * @param tokens The tokens to take. Requests for more than the burst take a full bucket.
+   * @param maxDelay The longest the caller is willing to wait for the tokens, zero to take them only if
+   * the bucket already holds them.
+   * @return Zero if the tokens were taken, the nanoseconds to wait before using them if they were
+   * borrowed, or {@link #REJECTED} if none were taken.
+   */
+  long acquire(AtomicLongArray buckets, int slot, long now, long tokens, long maxDelay) {
+    final long cost = interval * Math.min(tokens, burst);
+    while(true) {
+      final long full = buckets.get(slot);
+      final long next = Math.max(full, now) + cost;
+      final long delay = next - tolerance - now;
+      if(delay > maxDelay) return REJECTED;
+
+      if(buckets.compareAndSet(slot, full, next)) return Math.max(0L, delay);
+    }
+  }
+
+  /**
+   * Puts back tokens taken by {@link #acquire}, for a change that was rejected by another limit.
+   * @param buckets The buckets.
+   * @param slot The slot of the bucket.
+   * @param tokens The tokens that were taken.
+   */
+  void release(AtomicLongArray buckets, int slot, long tokens) {
+    final long cost = interval * Math.min(tokens, burst);
+    while(true) {
+      final long full = buckets.get(slot);
+      if(buckets.compareAndSet(slot, full, Math.max(0L, full - cost))) return;
+    }
+  }
+
+  /**
+   * @return The tokens refilled per second.
+   */
+  double rate() {
+    return 1000000000D / interval;
+  }
+
+  /**
+   * @return The tokens a full bucket holds.
+   */
+  long burst() {
+    return burst;
+  }
+}
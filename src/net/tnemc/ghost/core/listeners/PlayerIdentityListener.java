@@ -0,0 +1,45 @@
+package net.tnemc.ghost.core.listeners;
+
+import net.tnemc.ghost.core.GhostProvider;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Records each player's current name as they log in, so accounts looked up by name resolve to the
+ * player's UUID account and renames are picked up.
+ */
+public class PlayerIdentityListener implements Listener {
+
+  private final GhostProvider provider;
+
+  public PlayerIdentityListener(GhostProvider provider) {
+    this.provider = provider;
+  }
+
+  //Runs off the server thread, so a merge of an old name account never delays a tick.
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+    if(event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+
+    provider.identify(event.getUniqueId(), event.getName());
+  }
+}
@@ -0,0 +1,48 @@
+package net.tnemc.ghost.core.listeners;
+
+import net.tnemc.ghost.core.GhostProvider;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Keeps the provider's worlds in step with the server, so worlds loaded after startup get their
+ * default currency and unloaded worlds can have their balances evicted.
+ */
+public class WorldLifecycleListener implements Listener {
+
+  private final GhostProvider provider;
+
+  public WorldLifecycleListener(GhostProvider provider) {
+    this.provider = provider;
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR)
+  public void onLoad(WorldLoadEvent event) {
+    provider.worldLoaded(event.getWorld().getName());
+  }
+
+  @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+  public void onUnload(WorldUnloadEvent event) {
+    provider.worldUnloaded(event.getWorld().getName());
+  }
+}
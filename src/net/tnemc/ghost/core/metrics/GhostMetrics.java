@@ -0,0 +1,376 @@
+package net.tnemc.ghost.core.metrics;
+
+import net.tnemc.ghost.core.async.GhostExecutor;
+import net.tnemc.ghost.core.async.OperationType;
+import net.tnemc.ghost.core.limit.RateLimits;
+import net.tnemc.ghost.core.storage.WriteBehind;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Call counts and latency histograms for every {@link Operation}, kept separately for sync and async
+ * calls, plus the queue depth of the async executor.
+ *
+ * Sync latencies only count calls made outside the Ghost executor, so they show the time economy
+ * calls cost the calling thread, usually the server thread. Async latencies run from the call until
+ * the future is completed, including the time spent queued.
+ */
+public class GhostMetrics {
+
+  private static final String DOMAIN = "net.tnemc.ghost";
+
+  private final LatencyHistogram[] sync = new LatencyHistogram[Operation.values().length];
+  private final LatencyHistogram[] async = new LatencyHistogram[Operation.values().length];
+
+  private final List<ObjectName> registered = new ArrayList<>();
+
+  private final boolean enabled;
+  private final GhostExecutor executor;
+
+  //Set once persistence is open.
+  private volatile WriteBehind storage;
+
+  //Set if rate limiting is enabled.
+  private volatile RateLimits limits;
+
+  public GhostMetrics(boolean enabled, GhostExecutor executor) {
+    this.enabled = enabled;
+    this.executor = executor;
+
+    for(Operation operation : Operation.values()) {
+      sync[operation.ordinal()] = new LatencyHistogram();
+      async[operation.ordinal()] = new LatencyHistogram();
+    }
+  }
+
+  /**
+   * @return The start time to pass to {@link #record} or {@link #recordAsync}.
+   */
+  public long start() {
+    return (enabled)? System.nanoTime() : 0L;
+  }
+
+  /**
+   * Records a sync call that started at the specified time. Calls made while running an async
+   * operation are part of it, and it's recorded separately, so they're skipped.
+   * @param operation The operation.
+   * @param start The value returned by {@link #start()} when the call began.
+   */
+  public void record(Operation operation, long start) {
+    if(!enabled || GhostExecutor.isRunningOperation()) return;
+    sync[operation.ordinal()].record(System.nanoTime() - start);
+  }
+
+  /**
+   * Records an async call that started at the specified time and has just completed.
+   * @param operation The operation.
+   * @param start The value returned by {@link #start()} when the call began.
+   */
+  public void recordAsync(Operation operation, long start) {
+    if(!enabled) return;
+    async[operation.ordinal()].record(System.nanoTime() - start);
+  }
+
+  /**
+   * Includes the batches balance changes are written to storage in, from now on.
+   * @param storage The write-behind layer in front of storage.
+   */
+  public void watch(WriteBehind storage) {
+    this.storage = storage;
+  }
+
+  /**
+   * Includes the changes let through and rejected by the rate limits, from now on.
+   * @param limits The rate limits, or null if rate limiting is disabled.
+   */
+  public void watch(RateLimits limits) {
+    this.limits = limits;
+  }
+
+  /**
+   * @return True if metrics are being recorded.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @param operation The operation.
+   * @param asynchronous True for the async variants, false for the sync ones.
+   * @return The latency histogram for the operation.
+   */
+  public LatencyHistogram getLatency(Operation operation, boolean asynchronous) {
+    return (asynchronous)? async[operation.ordinal()] : sync[operation.ordinal()];
+  }
+
+  /**
+   * Clears every recorded latency.
+   */
+  public void reset() {
+    for(int i = 0; i < sync.length; i++) {
+      sync[i].reset();
+      async[i].reset();
+    }
+  }
+
+  /**
+   * @return A human readable summary of every operation that has been called, and of the executor.
+   */
+  public List<String> report() {
+    final List<String> lines = new ArrayList<>();
+    for(Operation operation : Operation.values()) {
+      report(lines, operation, false);
+      report(lines, operation, true);
+    }
+    if(lines.isEmpty()) {
+      lines.add("No economy operations have been recorded" + ((enabled)? "." : ", metrics are disabled."));
+    }
+
+    if(executor != null) {
+      for(OperationType type : OperationType.values()) {
+        lines.add(type.getConfigNode() + " executor: " + executor.queued(type) + " queued, " + executor.active(type) + " active");
+      }
+    }
+
+    final WriteBehind current = storage;
+    if(current != null) {
+      final long recorded = current.getRecorded();
+      final long written = current.getWritten();
+      lines.add("Storage: " + recorded + " changes recorded, " + written + " written in " + current.getBatches()
+                + " batches (" + String.format(Locale.ROOT, "%.1f", (recorded == 0L)? 0D : 100D - written * 100D / recorded)
+                + "% coalesced), " + current.pending() + " pending");
+    }
+
+    final RateLimits throttle = limits;
+    if(throttle != null) {
+      lines.add("Rate limits: " + throttle.getAdmitted() + " changes admitted, " + throttle.getDelayed() + " queued, "
+                + throttle.getRejected() + " rejected");
+      for(Map.Entry<String, Long> entry : throttle.getRejectedByPlugin().entrySet()) {
+        lines.add("  " + entry.getKey() + ": " + entry.getValue() + " rejected");
+      }
+    }
+    return lines;
+  }
+
+  private void report(List<String> lines, Operation operation, boolean asynchronous) {
+    final LatencyHistogram latency = getLatency(operation, asynchronous);
+    final long calls = latency.count();
+    if(calls == 0L) return;
+
+    lines.add(operation.getName() + ((asynchronous)? " (async)" : "") + ": " + calls + " calls, mean "
+              + format(latency.mean()) + ", p50 " + format(latency.percentile(50)) + ", p99 "
+              + format(latency.percentile(99)) + ", p99.9 " + format(latency.percentile(99.9))
+              + ", max " + format(latency.max()));
+  }
+
+  static String format(double nanos) {
+    if(nanos < 1000D) return String.format(Locale.ROOT, "%.0fns", nanos);
+    if(nanos < 1000000D) return String.format(Locale.ROOT, "%.1fus", nanos / 1000D);
+    return String.format(Locale.ROOT, "%.2fms", nanos / 1000000D);
+  }
+
+  /**
+   * Registers an MBean for every operation and executor queue, and storage and the rate limits if
+   * they're being watched, with the platform MBean server.
+   * @param logger The logger to warn if registration fails.
+   */
+  public void registerMBeans(Logger logger) {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      for(Operation operation : Operation.values()) {
+        register(server, new ObjectName(DOMAIN + ":type=Operation,name=" + operation.getName() + ",mode=Sync"),
+                 new OperationStats(sync[operation.ordinal()]));
+        register(server, new ObjectName(DOMAIN + ":type=Operation,name=" + operation.getName() + ",mode=Async"),
+                 new OperationStats(async[operation.ordinal()]));
+      }
+
+      if(executor != null) {
+        for(OperationType type : OperationType.values()) {
+          register(server, new ObjectName(DOMAIN + ":type=Executor,name=" + type.getConfigNode()), new ExecutorStats(executor, type));
+        }
+      }
+
+      if(storage != null) {
+        register(server, new ObjectName(DOMAIN + ":type=Storage"), new StorageStats(storage));
+      }
+
+      if(limits != null) {
+        register(server, new ObjectName(DOMAIN + ":type=RateLimit"), new RateLimitStats(limits));
+      }
+    } catch(JMException e) {
+      logger.log(Level.WARNING, "Unable to register the Ghost metrics with JMX.", e);
+    }
+  }
+
+  private void register(MBeanServer server, ObjectName name, Object bean) throws JMException {
+    //Left behind by a reload.
+    if(server.isRegistered(name)) server.unregisterMBean(name);
+
+    server.registerMBean(bean, name);
+    registered.add(name);
+  }
+
+  /**
+   * Unregisters every MBean registered by {@link #registerMBeans}.
+   */
+  public void unregisterMBeans() {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for(ObjectName name : registered) {
+      try {
+        if(server.isRegistered(name)) server.unregisterMBean(name);
+      } catch(JMException ignore) {
+        //Already gone.
+      }
+    }
+    registered.clear();
+  }
+
+  private static class OperationStats implements OperationStatsMXBean {
+
+    private final LatencyHistogram latency;
+
+    OperationStats(LatencyHistogram latency) {
+      this.latency = latency;
+    }
+
+    @Override
+    public long getCalls() {
+      return latency.count();
+    }
+
+    @Override
+    public double getMeanNanos() {
+      return latency.mean();
+    }
+
+    @Override
+    public long getP50Nanos() {
+      return latency.percentile(50);
+    }
+
+    @Override
+    public long getP90Nanos() {
+      return latency.percentile(90);
+    }
+
+    @Override
+    public long getP99Nanos() {
+      return latency.percentile(99);
+    }
+
+    @Override
+    public long getP999Nanos() {
+      return latency.percentile(99.9);
+    }
+
+    @Override
+    public long getMaxNanos() {
+      return latency.max();
+    }
+  }
+
+  private static class ExecutorStats implements ExecutorStatsMXBean {
+
+    private final GhostExecutor executor;
+    private final OperationType type;
+
+    ExecutorStats(GhostExecutor executor, OperationType type) {
+      this.executor = executor;
+      this.type = type;
+    }
+
+    @Override
+    public int getQueued() {
+      return executor.queued(type);
+    }
+
+    @Override
+    public int getActive() {
+      return executor.active(type);
+    }
+  }
+
+  private static class StorageStats implements StorageStatsMXBean {
+
+    private final WriteBehind storage;
+
+    StorageStats(WriteBehind storage) {
+      this.storage = storage;
+    }
+
+    @Override
+    public long getRecorded() {
+      return storage.getRecorded();
+    }
+
+    @Override
+    public long getWritten() {
+      return storage.getWritten();
+    }
+
+    @Override
+    public long getBatches() {
+      return storage.getBatches();
+    }
+
+    @Override
+    public int getPending() {
+      return storage.pending();
+    }
+  }
+
+  private static class RateLimitStats implements RateLimitStatsMXBean {
+
+    private final RateLimits limits;
+
+    RateLimitStats(RateLimits limits) {
+      this.limits = limits;
+    }
+
+    @Override
+    public long getAdmitted() {
+      return limits.getAdmitted();
+    }
+
+    @Override
+    public long getQueued() {
+      return limits.getDelayed();
+    }
+
+    @Override
+    public long getRejected() {
+      return limits.getRejected();
+    }
+
+    @Override
+    public Map<String, Long> getRejectedByPlugin() {
+      return limits.getRejectedByPlugin();
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package net.tnemc.ghost.core.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A lock-free latency histogram in the style of HdrHistogram. Each power of two is split into
+ * {@link #SUB_BUCKETS} linear buckets, so any recorded value is reported within 12.5% of its true
+ * value, from single nanoseconds up to hours. Every bucket is a {@link LongAdder}, so threads
+ * recording at once don't contend on a shared counter.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+  private final LongAdder[] buckets = new LongAdder[BUCKETS];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0L);
+
+  public LatencyHistogram() {
+    for(int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records a single latency.
+   * @param nanos The latency in nanoseconds.
+   */
+  public void record(long nanos) {
+    if(nanos < 0L) nanos = 0L;
+
+    buckets[index(nanos)].increment();
+    count.increment();
+    total.add(nanos);
+    max.accumulate(nanos);
+  }
+
+  /**
+   * @return The number of latencies recorded.
+   */
+  public long count() {
+    return count.sum();
+  }
+
+  /**
+   * @return The mean latency in nanoseconds, or zero if nothing has been recorded.
+   */
+  public double mean() {
+    final long recorded = count.sum();
+    return (recorded == 0L)? 0D : (double)total.sum() / recorded;
+  }
+
+  /**
+   * @return The highest latency recorded in nanoseconds.
+   */
+  public long max() {
+    return max.get();
+  }
+
+  /**
+   * @param percentile The percentile, from 0 to 100.
+   * @return The latency in nanoseconds that this percentage of recorded latencies were at or under,
+   * or zero if nothing has been recorded.
+   */
+  public long percentile(double percentile) {
+    final long[] counts = new long[BUCKETS];
+    long recorded = 0L;
+    for(int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets[i].sum();
+      recorded += counts[i];
+    }
+    if(recorded == 0L) return 0L;
+
+    final long target = Math.max(1L, (long)Math.ceil(recorded * Math.min(100D, Math.max(0D, percentile)) / 100D));
+    long seen = 0L;
+    for(int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if(seen >= target) return Math.min(highest(i), max());
+    }
+    return max();
+  }
+
+  /**
+   * Clears every recorded latency.
+   */
+  public void reset() {
+    for(LongAdder bucket : buckets) {
+      bucket.reset();
+    }
+    count.reset();
+    total.reset();
+    max.reset();
+  }
+
+  static int index(long value) {
+    if(value < SUB_BUCKETS) return (int)value;
+
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * @return The highest value that falls into a bucket.
+   */
+  static long highest(int index) {
+    if(index < SUB_BUCKETS) return index;
+
+    final int shift = index / SUB_BUCKETS - 1;
+    final long lowest = (long)(SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1L;
+  }
+}
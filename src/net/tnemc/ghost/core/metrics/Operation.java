@@ -0,0 +1,54 @@
+package net.tnemc.ghost.core.metrics;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The families of economy operations that Ghost keeps metrics for.
+ */
+public enum Operation {
+
+  HAS_ACCOUNT("HasAccount"),
+  CREATE_ACCOUNT("CreateAccount"),
+  DELETE_ACCOUNT("DeleteAccount"),
+  GET_HOLDINGS("GetHoldings"),
+  HAS_HOLDINGS("HasHoldings"),
+  SET_HOLDINGS("SetHoldings"),
+  ADD_HOLDINGS("AddHoldings"),
+  REMOVE_HOLDINGS("RemoveHoldings"),
+  TRANSFER_HOLDINGS("TransferHoldings"),
+  CHANGE_HOLDINGS("ChangeHoldings"),
+  CHECK_HOLDINGS("CheckHoldings"),
+  ACCESS("Access"),
+  CURRENCY("Currency"),
+  FORMAT("Format"),
+  RANKING("Ranking"),
+  PURGE("Purge");
+
+  private final String name;
+
+  Operation(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @return The name used for this operation in the stats command and JMX.
+   */
+  public String getName() {
+    return name;
+  }
+}
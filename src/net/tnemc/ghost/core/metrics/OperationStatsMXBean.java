@@ -0,0 +1,39 @@
+package net.tnemc.ghost.core.metrics;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The JMX view of the metrics for one {@link Operation}, either sync or async. Latencies are in
+ * nanoseconds.
+ */
+public interface OperationStatsMXBean {
+
+  long getCalls();
+
+  double getMeanNanos();
+
+  long getP50Nanos();
+
+  long getP90Nanos();
+
+  long getP99Nanos();
+
+  long getP999Nanos();
+
+  long getMaxNanos();
+}
@@ -0,0 +1,46 @@
+package net.tnemc.ghost.core.metrics;
+
+import java.util.Map;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The JMX view of the balance changes let through and rejected by the rate limits.
+ */
+public interface RateLimitStatsMXBean {
+
+  /**
+   * @return The number of changes let through, including queued ones.
+   */
+  long getAdmitted();
+
+  /**
+   * @return The number of async changes queued until they were within the limits.
+   */
+  long getQueued();
+
+  /**
+   * @return The number of changes rejected for being over the limits.
+   */
+  long getRejected();
+
+  /**
+   * @return The number of changes rejected for being over each plugin's own limit, by plugin name.
+   */
+  Map<String, Long> getRejectedByPlugin();
+}
@@ -0,0 +1,44 @@
+package net.tnemc.ghost.core.metrics;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The JMX view of the batches balance changes are written to storage in.
+ */
+public interface StorageStatsMXBean {
+
+  /**
+   * @return The number of changes recorded, before changes to the same balance were coalesced.
+   */
+  long getRecorded();
+
+  /**
+   * @return The number of changes written to storage.
+   */
+  long getWritten();
+
+  /**
+   * @return The number of batches written to storage.
+   */
+  long getBatches();
+
+  /**
+   * @return The number of changes waiting for the next batch.
+   */
+  int getPending();
+}
@@ -0,0 +1,182 @@
+package net.tnemc.ghost.core.ranking;
+
+import net.tnemc.ghost.core.account.AccountIndex;
+import net.tnemc.ghost.core.account.AccountListener;
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostHoldings;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Keeps a leaderboard of every world/currency pair up to date as balances change, so the top
+ * balances, a page of them or the rank of a single account can be read in O(log n) rather than by
+ * reading and sorting every account.
+ *
+ * Registered as an {@link AccountListener} before the journal is replayed, so it sees every balance
+ * replayed, loaded from the snapshot or changed afterwards. Balances of evicted worlds stay ranked,
+ * since evicting a world doesn't change them. Only non-zero balances are ranked.
+ */
+public class BalanceRanking implements AccountListener {
+
+  private final HoldingsKeys keys;
+  private final AccountIndex index;
+
+  //Indexed by holdings key id, grown under this ranking's monitor.
+  private volatile BalanceTree[] trees = new BalanceTree[16];
+
+  public BalanceRanking(HoldingsKeys keys, AccountIndex index) {
+    this.keys = keys;
+    this.index = index;
+  }
+
+  /**
+   * @param world The name of the world.
+   * @param currency The name of the currency.
+   * @param offset The number of balances to skip from the top.
+   * @param count The maximum number of entries to return.
+   * @return The ranked balances from this position down, highest first.
+   */
+  public List<RankedBalance> getRange(String world, String currency, int offset, int count) {
+    final int key = keys.find(world, currency);
+    final BalanceTree tree = find(key);
+    if(tree == null) return Collections.emptyList();
+
+    final List<BalanceTree.Node> nodes = tree.range(offset, count);
+    final List<RankedBalance> entries = new ArrayList<>(nodes.size());
+    for(int i = 0; i < nodes.size(); i++) {
+      final BalanceTree.Node node = nodes.get(i);
+      entries.add(new RankedBalance(offset + i + 1, node.id, (node.id == null)? node.name : index.getName(node.id),
+                                    (node.decimal == null)? keys.toDecimal(key, node.minor) : node.decimal));
+    }
+    return entries;
+  }
+
+  /**
+   * @param world The name of the world.
+   * @param currency The name of the currency.
+   * @param count The maximum number of entries to return.
+   * @return The highest balances, highest first.
+   */
+  public List<RankedBalance> getTop(String world, String currency, int count) {
+    return getRange(world, currency, 0, count);
+  }
+
+  /**
+   * @param account The account.
+   * @param world The name of the world.
+   * @param currency The name of the currency.
+   * @return The rank of the account's balance, starting at 1 for the highest, or -1 if it has no
+   * balance in this world and currency.
+   */
+  public int getRank(GhostAccount account, String world, String currency) {
+    final BalanceTree tree = find(keys.find(world, currency));
+    if(account == null || tree == null) return -1;
+
+    final int position = tree.position(key(account));
+    return (position < 0)? -1 : position + 1;
+  }
+
+  /**
+   * @param world The name of the world.
+   * @param currency The name of the currency.
+   * @return The number of ranked balances in this world and currency.
+   */
+  public int size(String world, String currency) {
+    final BalanceTree tree = find(keys.find(world, currency));
+    return (tree == null)? 0 : tree.size();
+  }
+
+  @Override
+  public void accountLoaded(GhostAccount account) {
+    final int limit = Math.min(keys.size(), account.getHoldingsContainer().capacity());
+    for(int key = 0; key < limit; key++) {
+      update(account, key);
+    }
+  }
+
+  @Override
+  public void accountDeleted(GhostAccount account) {
+    for(BalanceTree tree : trees) {
+      if(tree != null) tree.remove(key(account));
+    }
+  }
+
+  @Override
+  public void holdingsChanged(GhostAccount account, int key) {
+    update(account, key);
+  }
+
+  /**
+   * Called while holding the account's lock, so the balance read is the latest and updates of the
+   * same account never race. Accounts are ranked by their UUID or identifier rather than the account
+   * itself, so an account unloaded by the cache keeps its place without being kept in memory.
+   */
+  private void update(GhostAccount account, int key) {
+    final GhostHoldings holdings = account.getHoldingsContainer();
+    if(keys.isFixedPoint(key)) {
+      final long minor = holdings.getMinor(key);
+      if(minor == 0L && find(key) == null) return;
+
+      tree(key).update(key(account), account.getId(), account.getName(), minor, null, minor != 0L);
+      return;
+    }
+
+    final BigDecimal value = holdings.get(key);
+    final boolean ranked = value != null && value.signum() != 0;
+    if(!ranked && find(key) == null) return;
+
+    tree(key).update(key(account), account.getId(), account.getName(), 0L, value, ranked);
+  }
+
+  private static Object key(GhostAccount account) {
+    return (account.getId() != null)? account.getId() : account.getName();
+  }
+
+  private BalanceTree find(int key) {
+    final BalanceTree[] current = trees;
+    return (key >= 0 && key < current.length)? current[key] : null;
+  }
+
+  private BalanceTree tree(int key) {
+    final BalanceTree tree = find(key);
+    return (tree != null)? tree : create(key);
+  }
+
+  private synchronized BalanceTree create(int key) {
+    BalanceTree[] current = trees;
+    if(key >= current.length) {
+      current = Arrays.copyOf(current, Math.max(key + 1, current.length << 1));
+    } else if(current[key] != null) {
+      return current[key];
+    } else {
+      current = current.clone();
+    }
+
+    final BalanceTree tree = new BalanceTree();
+    current[key] = tree;
+    trees = current;
+    return tree;
+  }
+}
@@ -0,0 +1,265 @@
+package net.tnemc.ghost.core.ranking;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * The balances of a single world/currency pair, kept in rank order by a treap in which every node
+ * also counts the nodes below it. Moving a balance, finding an account's rank and finding the entry
+ * at a rank all take O(log n), and reading a page of n entries O(log n + n).
+ *
+ * Balances are ordered from highest to lowest. Equal balances are ordered by which one reached that
+ * balance first, so an account doesn't lose its place to one that only tied it later.
+ */
+class BalanceTree {
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  //Guarded by the write lock.
+  private final Map<Object, Node> nodes = new HashMap<>();
+  private Node root;
+  private long sequence = 0L;
+
+  //The halves produced by split, only used while holding the write lock.
+  private Node splitBefore;
+  private Node splitAfter;
+
+  /**
+   * Moves an account to the place of its new balance. Nothing changes if the balance is the same as
+   * the one already ranked, so the account keeps its place among equal balances.
+   * @param account The UUID or identifier of the account.
+   * @param id The UUID of the account, or null if it's a string account.
+   * @param name The identifier of a string account, or null.
+   * @param minor The balance in minor units, if the pair is fixed point.
+   * @param decimal The balance, if the pair isn't fixed point.
+   * @param ranked False if the account has no balance, in which case it's removed.
+   */
+  void update(Object account, UUID id, String name, long minor, BigDecimal decimal, boolean ranked) {
+    lock.writeLock().lock();
+    try {
+      final Node current = nodes.get(account);
+      if(current != null) {
+        if(ranked && current.minor == minor && ((decimal == null)? current.decimal == null
+                                                                 : current.decimal != null && decimal.compareTo(current.decimal) == 0)) {
+          return;
+        }
+        root = remove(root, current);
+        nodes.remove(account);
+      }
+
+      if(ranked) {
+        final Node node = new Node(id, name, minor, decimal, sequence++);
+        root = insert(root, node);
+        nodes.put(account, node);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @param account The UUID or identifier of the account to drop from the ranking.
+   */
+  void remove(Object account) {
+    lock.writeLock().lock();
+    try {
+      final Node node = nodes.remove(account);
+      if(node != null) root = remove(root, node);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * @param account The UUID or identifier of the account.
+   * @return The number of balances ranked above this account's, or -1 if it isn't ranked.
+   */
+  int position(Object account) {
+    lock.readLock().lock();
+    try {
+      final Node node = nodes.get(account);
+      if(node == null) return -1;
+
+      int position = 0;
+      Node current = root;
+      while(current != null) {
+        if(current == node) return position + size(current.left);
+
+        if(before(node, current)) {
+          current = current.left;
+        } else {
+          position += size(current.left) + 1;
+          current = current.right;
+        }
+      }
+      return -1;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param offset The number of balances to skip from the top.
+   * @param count The maximum number of entries to return.
+   * @return The entries from this position down, highest first.
+   */
+  List<Node> range(int offset, int count) {
+    lock.readLock().lock();
+    try {
+      final List<Node> entries = new ArrayList<>(Math.max(0, Math.min(count, size(root) - offset)));
+      if(offset >= 0 && count > 0) collect(root, offset, count, entries);
+      return entries;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return The number of ranked balances.
+   */
+  int size() {
+    lock.readLock().lock();
+    try {
+      return size(root);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private static void collect(Node node, int offset, int count, List<Node> entries) {
+    if(node == null || entries.size() >= count) return;
+
+    final int left = size(node.left);
+    if(offset < left) collect(node.left, offset, count, entries);
+    if(entries.size() >= count) return;
+
+    if(offset <= left) entries.add(node);
+    collect(node.right, Math.max(0, offset - left - 1), count, entries);
+  }
+
+  private Node insert(Node node, Node inserted) {
+    if(node == null) return inserted;
+
+    if(inserted.priority > node.priority) {
+      split(node, inserted);
+      inserted.left = splitBefore;
+      inserted.right = splitAfter;
+      resize(inserted);
+      return inserted;
+    }
+
+    if(before(inserted, node)) node.left = insert(node.left, inserted); else node.right = insert(node.right, inserted);
+    resize(node);
+    return node;
+  }
+
+  /**
+   * Splits a subtree into the nodes ranked before the pivot and the rest, into {@link #splitBefore}
+   * and {@link #splitAfter}.
+   */
+  private void split(Node node, Node pivot) {
+    if(node == null) {
+      splitBefore = null;
+      splitAfter = null;
+      return;
+    }
+
+    if(before(node, pivot)) {
+      split(node.right, pivot);
+      node.right = splitBefore;
+      resize(node);
+      splitBefore = node;
+    } else {
+      split(node.left, pivot);
+      node.left = splitAfter;
+      resize(node);
+      splitAfter = node;
+    }
+  }
+
+  private Node remove(Node node, Node removed) {
+    if(node == removed) return merge(node.left, node.right);
+
+    if(before(removed, node)) node.left = remove(node.left, removed); else node.right = remove(node.right, removed);
+    node.size--;
+    return node;
+  }
+
+  private static Node merge(Node before, Node after) {
+    if(before == null) return after;
+    if(after == null) return before;
+
+    if(before.priority > after.priority) {
+      before.right = merge(before.right, after);
+      resize(before);
+      return before;
+    }
+    after.left = merge(before, after.left);
+    resize(after);
+    return after;
+  }
+
+  /**
+   * @return True if the first node is ranked above the second.
+   */
+  private static boolean before(Node first, Node second) {
+    final int compare = (first.decimal == null)? Long.compare(second.minor, first.minor) : second.decimal.compareTo(first.decimal);
+    return (compare != 0)? compare < 0 : first.order < second.order;
+  }
+
+  private static int size(Node node) {
+    return (node == null)? 0 : node.size;
+  }
+
+  private static void resize(Node node) {
+    node.size = size(node.left) + size(node.right) + 1;
+  }
+
+  /**
+   * A ranked balance. The balance fields never change, so nodes can be read after the lock is released.
+   */
+  static final class Node {
+
+    final UUID id;
+    final String name;
+    final long minor;
+    final BigDecimal decimal;
+    final long order;
+    final int priority = ThreadLocalRandom.current().nextInt();
+
+    Node left;
+    Node right;
+    int size = 1;
+
+    Node(UUID id, String name, long minor, BigDecimal decimal, long order) {
+      this.id = id;
+      this.name = name;
+      this.minor = minor;
+      this.decimal = decimal;
+      this.order = order;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package net.tnemc.ghost.core.ranking;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A single entry of a balance leaderboard, as it was when the leaderboard was read.
+ */
+public class RankedBalance {
+
+  private final int rank;
+  private final UUID id;
+  private final String name;
+  private final BigDecimal holdings;
+
+  public RankedBalance(int rank, UUID id, String name, BigDecimal holdings) {
+    this.rank = rank;
+    this.id = id;
+    this.name = name;
+    this.holdings = holdings;
+  }
+
+  /**
+   * @return The position of this balance, starting at 1 for the highest.
+   */
+  public int getRank() {
+    return rank;
+  }
+
+  /**
+   * @return The UUID of the account, or null if it's a string account.
+   */
+  public UUID getId() {
+    return id;
+  }
+
+  /**
+   * @return The identifier of a string account, or the last known name of a player's account, which
+   * may be null.
+   */
+  public String getName() {
+    return name;
+  }
+
+  public BigDecimal getHoldings() {
+    return holdings;
+  }
+}
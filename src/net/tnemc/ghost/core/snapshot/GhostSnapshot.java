@@ -0,0 +1,360 @@
+package net.tnemc.ghost.core.snapshot;
+
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostAccountStore;
+import net.tnemc.ghost.core.account.GhostHoldings;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+import net.tnemc.ghost.core.cache.AccountCache;
+import net.tnemc.ghost.core.io.GhostIO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Writes snapshots of every account in a {@link GhostAccountStore}, to be loaded lazily by a
+ * {@link SnapshotLoader}.
+ *
+ * Layout, big-endian:
+ * <pre>
+ * header     64 bytes, see the offsets below
+ * uuids      uuidCount * (long most, long least, int balance), sorted by UUID
+ * names      nameCount * (int name, int balance), sorted by the UTF-8 bytes of the name
+ * name data  short length prefixed UTF-8 names
+ * dictionary worlds, then currencies, as a count and short length prefixed UTF-8 strings,
+ *            then keys as a count and (varint world, varint currency, int scale or -1)
+ * players    varint count, then (long most, long least, short length prefixed UTF-8 name) per
+ *            player whose name is known, then varint count and short length prefixed UTF-8
+ *            identifiers of the string accounts marked as legacy player accounts
+ * balances   per account: varint count, then (varint key, byte kind, value) per balance
+ * </pre>
+ * The tables before the balances are checksummed together and verified on load; the balance section
+ * has its own checksum, verified while it's decoded in the background.
+ */
+public final class GhostSnapshot {
+
+  static final int MAGIC = 0x47485331; //GHS1
+  static final int VERSION = 3;
+  static final int HEADER = 64;
+
+  static final int OFFSET_VERSION = 4;
+  static final int OFFSET_SEGMENT = 8;
+  static final int OFFSET_UUID_COUNT = 12;
+  static final int OFFSET_NAME_COUNT = 16;
+  static final int OFFSET_UUIDS = 20;
+  static final int OFFSET_NAMES = 24;
+  static final int OFFSET_NAME_DATA = 28;
+  static final int OFFSET_DICTIONARY = 32;
+  static final int OFFSET_BALANCES = 36;
+  static final int OFFSET_LENGTH = 40;
+  static final int OFFSET_TABLE_CRC = 44;
+  static final int OFFSET_BALANCE_CRC = 48;
+  static final int OFFSET_CREATED = 52;
+  static final int OFFSET_PLAYERS = 60;
+
+  static final int UUID_ENTRY = 20;
+  static final int NAME_ENTRY = 8;
+
+  static final byte KIND_MINOR = 0;
+  static final byte KIND_DECIMAL = 1;
+
+  private GhostSnapshot() {
+  }
+
+  /**
+   * Writes a snapshot of the store. The snapshot is written to a temporary file through a
+   * {@link MappedByteBuffer} and then atomically moved into place. The file shouldn't be mapped by a
+   * {@link SnapshotLoader}, since Windows won't replace a mapped file.
+   * @param store The store to snapshot. Every account must already be loaded, and no world may be
+   * evicted while it's written. Accounts unloaded by the store's cache are included.
+   * @param file The snapshot file.
+   * @param segment The first journal segment that isn't covered by this snapshot.
+   * @return The number of accounts written.
+   * @throws IOException If the snapshot can't be written.
+   */
+  public static int write(GhostAccountStore store, File file, int segment) throws IOException {
+    final AccountCache cache = store.getCache();
+    if(cache == null) return write(store, file, segment, Collections.emptyList());
+
+    //Nothing is unloaded while paused, so every account is either in memory or read here. Accounts
+    //loaded back in the meantime are in both, and the one in memory wins.
+    cache.pause();
+    try {
+      return write(store, file, segment, cache.getCold().readAll());
+    } finally {
+      cache.resume();
+    }
+  }
+
+  private static int write(GhostAccountStore store, File file, int segment, List<GhostAccount> cold) throws IOException {
+    final HoldingsKeys keys = store.getKeys();
+
+    //Balances of evicted worlds aren't in the accounts, so they're read back from their partitions.
+    final Map<GhostAccount, GhostHoldings> evicted = (store.getPartitions() == null)? Collections.emptyMap()
+                                                                                   : store.getPartitions().readEvicted();
+
+    final List<GhostAccount> ids = new ArrayList<>(store.getIdAccounts());
+    final List<GhostAccount> named = new ArrayList<>(store.getStringAccounts());
+    if(!cold.isEmpty()) {
+      final Set<Object> resident = new HashSet<>(ids.size() + named.size());
+      for(GhostAccount account : ids) {
+        resident.add(account.getId());
+      }
+      for(GhostAccount account : named) {
+        resident.add(account.getName());
+      }
+      for(GhostAccount account : cold) {
+        if(account.getId() != null) {
+          if(!resident.contains(account.getId())) ids.add(account);
+        } else if(!resident.contains(account.getName())) {
+          named.add(account);
+        }
+      }
+    }
+    ids.sort(Comparator.comparing(GhostAccount::getId));
+
+    final List<byte[]> nameBytes = new ArrayList<>();
+    final Map<byte[], GhostAccount> byName = new LinkedHashMap<>();
+    for(GhostAccount account : named) {
+      final byte[] bytes = account.getName().getBytes(StandardCharsets.UTF_8);
+      nameBytes.add(bytes);
+      byName.put(bytes, account);
+    }
+    nameBytes.sort(GhostSnapshot::compare);
+
+    //Every key the store knows about goes into the dictionary, indexed the same way as the store.
+    final int keyCount = keys.size();
+    final Map<String, Integer> worlds = new LinkedHashMap<>();
+    final Map<String, Integer> currencies = new LinkedHashMap<>();
+    for(int key = 0; key < keyCount; key++) {
+      worlds.putIfAbsent(keys.world(key), worlds.size());
+      currencies.putIfAbsent(keys.currency(key), currencies.size());
+    }
+
+    final ByteArrayOutputStream dictionaryBytes = new ByteArrayOutputStream();
+    final DataOutputStream dictionary = new DataOutputStream(dictionaryBytes);
+    writeStrings(dictionary, worlds);
+    writeStrings(dictionary, currencies);
+    GhostIO.writeVarInt(dictionary, keyCount);
+    for(int key = 0; key < keyCount; key++) {
+      GhostIO.writeVarInt(dictionary, worlds.get(keys.world(key)));
+      GhostIO.writeVarInt(dictionary, currencies.get(keys.currency(key)));
+      dictionary.writeInt((keys.isFixedPoint(key))? keys.scale(key) : -1);
+    }
+    dictionary.flush();
+
+    final ByteArrayOutputStream playerBytes = new ByteArrayOutputStream();
+    final DataOutputStream players = new DataOutputStream(playerBytes);
+    final Map<UUID, String> known = store.getIndex().getPlayers();
+    GhostIO.writeVarInt(players, known.size());
+    for(Map.Entry<UUID, String> player : known.entrySet()) {
+      GhostIO.writeUUID(players, player.getKey());
+      final byte[] bytes = player.getValue().getBytes(StandardCharsets.UTF_8);
+      players.writeShort(bytes.length);
+      players.write(bytes);
+    }
+    final Set<String> legacy = store.getIndex().getLegacy();
+    GhostIO.writeVarInt(players, legacy.size());
+    for(String identifier : legacy) {
+      final byte[] bytes = identifier.getBytes(StandardCharsets.UTF_8);
+      players.writeShort(bytes.length);
+      players.write(bytes);
+    }
+    players.flush();
+
+    final ByteArrayOutputStream balanceBytes = new ByteArrayOutputStream(Math.max(32, (ids.size() + nameBytes.size()) * 16));
+    final DataOutputStream balances = new DataOutputStream(balanceBytes);
+    final int[] idOffsets = new int[ids.size()];
+    for(int i = 0; i < ids.size(); i++) {
+      idOffsets[i] = balances.size();
+      writeBalances(balances, ids.get(i), keys, keyCount, evicted.get(ids.get(i)));
+    }
+    final int[] nameOffsets = new int[nameBytes.size()];
+    int nameDataLength = 0;
+    for(int i = 0; i < nameBytes.size(); i++) {
+      nameOffsets[i] = balances.size();
+      final GhostAccount account = byName.get(nameBytes.get(i));
+      writeBalances(balances, account, keys, keyCount, evicted.get(account));
+      nameDataLength += 2 + nameBytes.get(i).length;
+    }
+    balances.flush();
+
+    final long uuidsOffset = HEADER;
+    final long namesOffset = uuidsOffset + (long)ids.size() * UUID_ENTRY;
+    final long nameDataOffset = namesOffset + (long)nameBytes.size() * NAME_ENTRY;
+    final long dictionaryOffset = nameDataOffset + nameDataLength;
+    final long playersOffset = dictionaryOffset + dictionaryBytes.size();
+    final long balancesOffset = playersOffset + playerBytes.size();
+    final long length = balancesOffset + balanceBytes.size();
+    if(length > Integer.MAX_VALUE) {
+      throw new IOException("The snapshot would be larger than 2GB.");
+    }
+
+    final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+    Files.deleteIfExists(temp.toPath());
+    try(FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE_NEW,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+
+      buffer.position((int)uuidsOffset);
+      for(int i = 0; i < ids.size(); i++) {
+        final UUID id = ids.get(i).getId();
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+        buffer.putInt(idOffsets[i]);
+      }
+
+      int nameData = 0;
+      for(int i = 0; i < nameBytes.size(); i++) {
+        buffer.putInt(nameData);
+        buffer.putInt(nameOffsets[i]);
+        nameData += 2 + nameBytes.get(i).length;
+      }
+      for(byte[] name : nameBytes) {
+        buffer.putShort((short)name.length);
+        buffer.put(name);
+      }
+      buffer.put(dictionaryBytes.toByteArray());
+      buffer.put(playerBytes.toByteArray());
+      buffer.put(balanceBytes.toByteArray());
+
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(OFFSET_VERSION, VERSION);
+      buffer.putInt(OFFSET_SEGMENT, segment);
+      buffer.putInt(OFFSET_UUID_COUNT, ids.size());
+      buffer.putInt(OFFSET_NAME_COUNT, nameBytes.size());
+      buffer.putInt(OFFSET_UUIDS, (int)uuidsOffset);
+      buffer.putInt(OFFSET_NAMES, (int)namesOffset);
+      buffer.putInt(OFFSET_NAME_DATA, (int)nameDataOffset);
+      buffer.putInt(OFFSET_DICTIONARY, (int)dictionaryOffset);
+      buffer.putInt(OFFSET_BALANCES, (int)balancesOffset);
+      buffer.putInt(OFFSET_LENGTH, (int)length);
+      buffer.putInt(OFFSET_TABLE_CRC, crc(buffer, (int)uuidsOffset, (int)balancesOffset));
+      buffer.putInt(OFFSET_BALANCE_CRC, crc(buffer, (int)balancesOffset, (int)length));
+      buffer.putLong(OFFSET_CREATED, System.currentTimeMillis());
+      buffer.putInt(OFFSET_PLAYERS, (int)playersOffset);
+      buffer.force();
+    }
+
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return ids.size() + nameBytes.size();
+  }
+
+  /**
+   * Fills the gaps in an account's evicted balances with its resident ones. A world restored while the
+   * snapshot is written can briefly have a balance in both, and the resident one is newer.
+   */
+  private static GhostHoldings merge(GhostHoldings resident, GhostHoldings evicted) {
+    for(int key = 0; key < resident.capacity(); key++) {
+      final long minor = resident.getMinor(key);
+      if(minor != 0L) evicted.setMinor(key, minor);
+
+      final BigDecimal value = resident.get(key);
+      if(value != null) evicted.set(key, value);
+    }
+    return evicted;
+  }
+
+  private static void writeStrings(DataOutputStream out, Map<String, Integer> strings) throws IOException {
+    GhostIO.writeVarInt(out, strings.size());
+    for(String value : strings.keySet()) {
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeShort(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static void writeBalances(DataOutputStream out, GhostAccount account, HoldingsKeys keys, int keyCount,
+                                    GhostHoldings evicted) throws IOException {
+    final GhostHoldings holdings = (evicted == null)? account.getHoldingsContainer() : merge(account.getHoldingsContainer(), evicted);
+    final int limit = Math.min(keyCount, holdings.capacity());
+
+    int count = 0;
+    for(int key = 0; key < limit; key++) {
+      if((keys.isFixedPoint(key))? holdings.getMinor(key) != 0L : holdings.get(key) != null) count++;
+    }
+
+    GhostIO.writeVarInt(out, count);
+    for(int key = 0; key < limit && count > 0; key++) {
+      if(keys.isFixedPoint(key)) {
+        final long minor = holdings.getMinor(key);
+        if(minor == 0L) continue;
+
+        GhostIO.writeVarInt(out, key);
+        out.writeByte(KIND_MINOR);
+        out.writeLong(minor);
+      } else {
+        final BigDecimal value = holdings.get(key);
+        if(value == null) continue;
+
+        GhostIO.writeVarInt(out, key);
+        out.writeByte(KIND_DECIMAL);
+        GhostIO.writeDecimal(out, value);
+      }
+      count--;
+    }
+  }
+
+  static int crc(ByteBuffer buffer, int from, int to) {
+    final CRC32 crc = new CRC32();
+    final ByteBuffer section = buffer.duplicate();
+    section.limit(to);
+    section.position(from);
+
+    final byte[] chunk = new byte[8192];
+    while(section.hasRemaining()) {
+      final int length = Math.min(chunk.length, section.remaining());
+      section.get(chunk, 0, length);
+      crc.update(chunk, 0, length);
+    }
+    return (int)crc.getValue();
+  }
+
+  /**
+   * Compares UTF-8 names the same way the name table is sorted.
+   */
+  static int compare(byte[] a, byte[] b) {
+    final int length = Math.min(a.length, b.length);
+    for(int i = 0; i < length; i++) {
+      final int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+      if(diff != 0) return diff;
+    }
+    return a.length - b.length;
+  }
+}
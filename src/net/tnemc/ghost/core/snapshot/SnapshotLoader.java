@@ -0,0 +1,375 @@
+package net.tnemc.ghost.core.snapshot;
+
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostAccountStore;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+import net.tnemc.ghost.core.io.GhostIO;
+import net.tnemc.ghost.core.storage.StorageLoader;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Serves accounts straight out of a memory-mapped {@link GhostSnapshot}. Opening a snapshot only
+ * verifies its tables; {@link #contains} binary searches the mapped UUID and name tables, and an
+ * account's balances are only decoded when the store first asks for it.
+ */
+public class SnapshotLoader implements StorageLoader {
+
+  private final MappedByteBuffer buffer;
+
+  private final int segment;
+  private final int uuidCount;
+  private final int nameCount;
+  private final int uuids;
+  private final int names;
+  private final int nameData;
+  private final int balances;
+  private final int length;
+
+  //Maps a snapshot key to the store's key for the same world/currency pair, and the scale it was
+  //written with, or -1 if it was stored as a decimal.
+  private final int[] keyMap;
+  private final int[] scales;
+
+  private final Map<UUID, String> players = new HashMap<>();
+  private final Set<String> legacy = new HashSet<>();
+
+  //Set once an entry has been handed to the store or deleted.
+  private final AtomicLongArray uuidTaken;
+  private final AtomicLongArray nameTaken;
+
+  private SnapshotLoader(MappedByteBuffer buffer, HoldingsKeys keys) throws IOException {
+    this.buffer = buffer;
+
+    if(buffer.limit() < GhostSnapshot.HEADER || buffer.getInt(0) != GhostSnapshot.MAGIC) {
+      throw new IOException("Not a Ghost snapshot.");
+    }
+    final int version = buffer.getInt(GhostSnapshot.OFFSET_VERSION);
+    if(version < 1 || version > GhostSnapshot.VERSION) {
+      throw new IOException("Unsupported snapshot version " + buffer.getInt(GhostSnapshot.OFFSET_VERSION) + ".");
+    }
+
+    segment = buffer.getInt(GhostSnapshot.OFFSET_SEGMENT);
+    uuidCount = buffer.getInt(GhostSnapshot.OFFSET_UUID_COUNT);
+    nameCount = buffer.getInt(GhostSnapshot.OFFSET_NAME_COUNT);
+    uuids = buffer.getInt(GhostSnapshot.OFFSET_UUIDS);
+    names = buffer.getInt(GhostSnapshot.OFFSET_NAMES);
+    nameData = buffer.getInt(GhostSnapshot.OFFSET_NAME_DATA);
+    balances = buffer.getInt(GhostSnapshot.OFFSET_BALANCES);
+    length = buffer.getInt(GhostSnapshot.OFFSET_LENGTH);
+
+    if(length != buffer.limit() || balances > length) {
+      throw new IOException("The snapshot is truncated.");
+    }
+    if(GhostSnapshot.crc(buffer, uuids, balances) != buffer.getInt(GhostSnapshot.OFFSET_TABLE_CRC)) {
+      throw new IOException("The snapshot tables are corrupt.");
+    }
+
+    final ByteBuffer dictionary = buffer.duplicate();
+    dictionary.position(buffer.getInt(GhostSnapshot.OFFSET_DICTIONARY));
+    final String[] worlds = readStrings(dictionary);
+    final String[] currencies = readStrings(dictionary);
+    keyMap = new int[GhostIO.readVarInt(dictionary)];
+    scales = new int[keyMap.length];
+    for(int key = 0; key < keyMap.length; key++) {
+      final String world = worlds[GhostIO.readVarInt(dictionary)];
+      final String currency = currencies[GhostIO.readVarInt(dictionary)];
+      scales[key] = dictionary.getInt();
+      keyMap[key] = keys.id(world, currency);
+    }
+
+    //Version 1 snapshots were written before player names were recorded.
+    if(version >= 2) {
+      final ByteBuffer section = buffer.duplicate();
+      section.position(buffer.getInt(GhostSnapshot.OFFSET_PLAYERS));
+      final int count = GhostIO.readVarInt(section);
+      for(int i = 0; i < count; i++) {
+        final UUID id = new UUID(section.getLong(), section.getLong());
+        players.put(id, GhostIO.getString(section));
+      }
+
+      //Version 2 snapshots were written before legacy player accounts were marked.
+      if(version >= 3) {
+        final int marked = GhostIO.readVarInt(section);
+        for(int i = 0; i < marked; i++) {
+          legacy.add(GhostIO.getString(section));
+        }
+      }
+    }
+
+    uuidTaken = new AtomicLongArray((uuidCount + 63) >>> 6);
+    nameTaken = new AtomicLongArray((nameCount + 63) >>> 6);
+  }
+
+  /**
+   * Maps and verifies a snapshot.
+   * @param file The snapshot file.
+   * @param keys The key registry of the store the accounts will be loaded into.
+   * @return The loader.
+   * @throws IOException If the snapshot can't be read or fails verification.
+   */
+  public static SnapshotLoader open(File file, HoldingsKeys keys) throws IOException {
+    try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      return new SnapshotLoader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), keys);
+    }
+  }
+
+  /**
+   * @return The first journal segment that isn't covered by this snapshot.
+   */
+  public int getSegment() {
+    return segment;
+  }
+
+  /**
+   * @return The name of every player known when the snapshot was written, by UUID.
+   */
+  public Map<UUID, String> getPlayers() {
+    return players;
+  }
+
+  /**
+   * @return The identifier of every string account marked as a legacy player account when the
+   * snapshot was written.
+   */
+  public Set<String> getLegacy() {
+    return legacy;
+  }
+
+  /**
+   * @return The number of accounts in this snapshot.
+   */
+  @Override
+  public int size() {
+    return uuidCount + nameCount;
+  }
+
+  /**
+   * Verifies the balance section checksum.
+   * @return True if the balances are intact.
+   */
+  @Override
+  public boolean verifyBalances() {
+    return GhostSnapshot.crc(buffer, balances, length) == buffer.getInt(GhostSnapshot.OFFSET_BALANCE_CRC);
+  }
+
+  /**
+   * Loads every account that hasn't been loaded or deleted yet into the store.
+   * @param store The store.
+   * @return The number of accounts that were loaded by this call.
+   */
+  @Override
+  public int loadAll(GhostAccountStore store) {
+    int loaded = 0;
+    for(int i = 0; i < uuidCount; i++) {
+      if(taken(uuidTaken, i)) continue;
+
+      final int entry = uuids + i * GhostSnapshot.UUID_ENTRY;
+      if(store.getAccount(new UUID(buffer.getLong(entry), buffer.getLong(entry + 8))) != null) loaded++;
+    }
+    for(int i = 0; i < nameCount; i++) {
+      if(taken(nameTaken, i)) continue;
+
+      final ByteBuffer name = buffer.duplicate();
+      name.position(nameData + buffer.getInt(names + i * GhostSnapshot.NAME_ENTRY));
+      if(store.getStringAccount(GhostIO.getString(name)) != null) loaded++;
+    }
+    return loaded;
+  }
+
+  /**
+   * Decodes every account in the snapshot, whether or not it has been loaded, without registering
+   * them with a store.
+   * @param keys The keys this snapshot was opened with.
+   * @param consumer Given each account in turn.
+   */
+  public void forEach(HoldingsKeys keys, Consumer<GhostAccount> consumer) {
+    for(int i = 0; i < uuidCount; i++) {
+      final int entry = uuids + i * GhostSnapshot.UUID_ENTRY;
+      final GhostAccount account = new GhostAccount(new UUID(buffer.getLong(entry), buffer.getLong(entry + 8)), keys);
+      decode(account, keys, buffer.getInt(entry + 16));
+      consumer.accept(account);
+    }
+    for(int i = 0; i < nameCount; i++) {
+      final ByteBuffer name = buffer.duplicate();
+      name.position(nameData + buffer.getInt(names + i * GhostSnapshot.NAME_ENTRY));
+      final GhostAccount account = new GhostAccount(GhostIO.getString(name), keys);
+      decode(account, keys, buffer.getInt(names + i * GhostSnapshot.NAME_ENTRY + 4));
+      consumer.accept(account);
+    }
+  }
+
+  @Override
+  public boolean contains(String identifier) {
+    final int index = find(identifier);
+    return index >= 0 && !taken(nameTaken, index);
+  }
+
+  @Override
+  public boolean contains(UUID identifier) {
+    final int index = find(identifier);
+    return index >= 0 && !taken(uuidTaken, index);
+  }
+
+  @Override
+  public GhostAccount load(String identifier, HoldingsKeys keys) {
+    final int index = find(identifier);
+    if(index < 0 || !take(nameTaken, index)) return null;
+
+    final GhostAccount account = new GhostAccount(identifier, keys);
+    decode(account, keys, buffer.getInt(names + index * GhostSnapshot.NAME_ENTRY + 4));
+    return account;
+  }
+
+  @Override
+  public GhostAccount load(UUID identifier, HoldingsKeys keys) {
+    final int index = find(identifier);
+    if(index < 0 || !take(uuidTaken, index)) return null;
+
+    final GhostAccount account = new GhostAccount(identifier, keys);
+    decode(account, keys, buffer.getInt(uuids + index * GhostSnapshot.UUID_ENTRY + 16));
+    return account;
+  }
+
+  @Override
+  public void forget(String identifier) {
+    final int index = find(identifier);
+    if(index >= 0) take(nameTaken, index);
+  }
+
+  @Override
+  public void forget(UUID identifier) {
+    final int index = find(identifier);
+    if(index >= 0) take(uuidTaken, index);
+  }
+
+  private void decode(GhostAccount account, HoldingsKeys keys, int offset) {
+    final ByteBuffer in = buffer.duplicate();
+    in.position(balances + offset);
+
+    try {
+      final int count = GhostIO.readVarInt(in);
+      for(int i = 0; i < count; i++) {
+        final int snapshotKey = GhostIO.readVarInt(in);
+        final int key = keyMap[snapshotKey];
+
+        if(in.get() == GhostSnapshot.KIND_MINOR) {
+          final long minor = in.getLong();
+
+          //Copy the minor units across as-is unless the currency's scale changed since the snapshot.
+          if(keys.isFixedPoint(key) && keys.scale(key) == scales[snapshotKey]) {
+            account.getHoldingsContainer().setMinor(key, minor);
+          } else {
+            account.setHoldings(key, BigDecimal.valueOf(minor, scales[snapshotKey]));
+          }
+        } else {
+          account.setHoldings(key, GhostIO.readDecimal(in));
+        }
+      }
+    } catch(IOException | ArithmeticException e) {
+      throw new IllegalStateException("Corrupt snapshot balances at offset " + offset + ".", e);
+    }
+  }
+
+  private int find(UUID identifier) {
+    final long most = identifier.getMostSignificantBits();
+    final long least = identifier.getLeastSignificantBits();
+
+    int low = 0;
+    int high = uuidCount - 1;
+    while(low <= high) {
+      final int middle = (low + high) >>> 1;
+      final int entry = uuids + middle * GhostSnapshot.UUID_ENTRY;
+
+      int compare = Long.compare(buffer.getLong(entry), most);
+      if(compare == 0) compare = Long.compare(buffer.getLong(entry + 8), least);
+
+      if(compare < 0) low = middle + 1;
+      else if(compare > 0) high = middle - 1;
+      else return middle;
+    }
+    return -1;
+  }
+
+  private int find(String identifier) {
+    final byte[] bytes = identifier.getBytes(StandardCharsets.UTF_8);
+
+    int low = 0;
+    int high = nameCount - 1;
+    while(low <= high) {
+      final int middle = (low + high) >>> 1;
+      final int compare = compareName(nameData + buffer.getInt(names + middle * GhostSnapshot.NAME_ENTRY), bytes);
+
+      if(compare < 0) low = middle + 1;
+      else if(compare > 0) high = middle - 1;
+      else return middle;
+    }
+    return -1;
+  }
+
+  private int compareName(int offset, byte[] bytes) {
+    final int nameLength = buffer.getShort(offset) & 0xFFFF;
+    final int length = Math.min(nameLength, bytes.length);
+    for(int i = 0; i < length; i++) {
+      final int diff = (buffer.get(offset + 2 + i) & 0xFF) - (bytes[i] & 0xFF);
+      if(diff != 0) return diff;
+    }
+    return nameLength - bytes.length;
+  }
+
+  private static boolean taken(AtomicLongArray bits, int index) {
+    return (bits.get(index >>> 6) & (1L << index)) != 0L;
+  }
+
+  /**
+   * @return True if this call set the bit, false if it was already set.
+   */
+  private static boolean take(AtomicLongArray bits, int index) {
+    final int word = index >>> 6;
+    final long mask = 1L << index;
+    while(true) {
+      final long current = bits.get(word);
+      if((current & mask) != 0L) return false;
+      if(bits.compareAndSet(word, current, current | mask)) return true;
+    }
+  }
+
+  private static String[] readStrings(ByteBuffer in) throws IOException {
+    final String[] strings = new String[GhostIO.readVarInt(in)];
+    for(int i = 0; i < strings.length; i++) {
+      strings[i] = GhostIO.getString(in);
+    }
+    return strings;
+  }
+}
@@ -0,0 +1,222 @@
+package net.tnemc.ghost.core.storage;
+
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostAccountStore;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+import net.tnemc.ghost.core.journal.GhostJournal;
+import net.tnemc.ghost.core.journal.SyncPolicy;
+import net.tnemc.ghost.core.snapshot.GhostSnapshot;
+import net.tnemc.ghost.core.snapshot.SnapshotLoader;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Stores balances in the data folder as a {@link GhostSnapshot} plus a {@link GhostJournal} of every
+ * change written since. On open the snapshot is mapped and served lazily while the journal segments
+ * written after it are replayed on top. A snapshot rotates the journal, writes a new snapshot and
+ * deletes the segments it covers.
+ *
+ * Each snapshot is written to a new numbered file rather than over the last one, which may still be
+ * mapped, and Windows won't replace or delete a mapped file. Older snapshots are deleted once they
+ * can be.
+ */
+public class FileStorage implements StorageBackend {
+
+  private final File folder;
+  private final boolean snapshots;
+  private final Logger logger;
+
+  private GhostJournal journal;
+
+  public FileStorage(File folder, HoldingsKeys keys, ConfigurationSection journalConfig,
+                     ConfigurationSection snapshotConfig, Logger logger) {
+    this.folder = folder;
+    this.snapshots = snapshotConfig == null || snapshotConfig.getBoolean("Enabled", true);
+    this.logger = logger;
+
+    if(journalConfig == null || journalConfig.getBoolean("Enabled", true)) {
+      journal = new GhostJournal(new File(folder, "journal"), keys,
+                                 SyncPolicy.fromName((journalConfig == null)? "Interval" : journalConfig.getString("Sync", "Interval")),
+                                 (journalConfig == null)? 1000L : journalConfig.getLong("SyncInterval", 1000L),
+                                 (journalConfig == null)? 512 : journalConfig.getInt("GroupSize", 512), logger);
+    }
+  }
+
+  @Override
+  public StorageLoader open(GhostAccountStore store) throws IOException {
+    int segment = 1;
+
+    SnapshotLoader loader = null;
+    final File snapshotFile = latestSnapshot();
+    if(snapshots && snapshotFile != null) {
+      try {
+        loader = SnapshotLoader.open(snapshotFile, store.getKeys());
+        segment = loader.getSegment();
+        store.setLoader(loader);
+        for(Map.Entry<UUID, String> player : loader.getPlayers().entrySet()) {
+          store.link(player.getKey(), player.getValue());
+        }
+        for(String identifier : loader.getLegacy()) {
+          store.getIndex().markLegacy(identifier);
+        }
+        logger.info("Mapped a snapshot of " + loader.size() + " accounts.");
+      } catch(IOException e) {
+        logger.log(Level.SEVERE, "Unable to load the Ghost snapshot, only the journal will be replayed.", e);
+      }
+    }
+
+    if(journal != null) {
+      try {
+        logger.info("Replayed " + journal.replay(store, segment) + " journal records.");
+        journal.start();
+      } catch(IOException e) {
+        logger.log(Level.SEVERE, "Unable to open the Ghost journal, balances won't be persisted.", e);
+        journal = null;
+      }
+    }
+    return loader;
+  }
+
+  /**
+   * Waits for the journal's writer to write the batch, alongside any other batches it's grouping
+   * with it, so a write that fails is thrown here and the batch is retried.
+   */
+  @Override
+  public void write(List<StorageChange> changes) throws IOException {
+    if(journal == null) return;
+
+    try {
+      journal.append(changes).get();
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing to the journal.", e);
+    } catch(ExecutionException e) {
+      throw new IOException("Unable to write to the journal.", e.getCause());
+    }
+  }
+
+  /**
+   * Streams the accounts in the snapshot. Changes journaled since it was written aren't included.
+   */
+  @Override
+  public void forEach(HoldingsKeys keys, Consumer<GhostAccount> consumer) throws IOException {
+    final File snapshotFile = latestSnapshot();
+    if(snapshotFile == null) return;
+
+    SnapshotLoader.open(snapshotFile, keys).forEach(keys, consumer);
+  }
+
+  /**
+   * Writes a new snapshot and deletes the journal segments it covers. Does nothing if snapshots are
+   * disabled.
+   */
+  @Override
+  public int snapshot(GhostAccountStore store) throws IOException {
+    if(!snapshots) return 0;
+
+    try {
+      final int segment = (journal == null)? 1 : journal.rotate().get();
+
+      final int version = snapshotVersion(latestSnapshot()) + 1;
+      final int written = GhostSnapshot.write(store, snapshotFile(version), segment);
+      deleteSnapshotsBefore(version);
+      if(journal != null) journal.deleteBefore(segment);
+      return written;
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing a snapshot.", e);
+    } catch(ExecutionException e) {
+      throw new IOException("Unable to rotate the journal.", e.getCause());
+    }
+  }
+
+  @Override
+  public void close() {
+    if(journal != null) journal.close();
+  }
+
+  private File snapshotFile(int version) {
+    return new File(folder, String.format("snapshot-%08d.dat", version));
+  }
+
+  /**
+   * @return The newest snapshot, the single snapshot.dat written before snapshots were numbered if
+   * there's no numbered one, or null if there are none.
+   */
+  private File latestSnapshot() {
+    File latest = null;
+    final File[] files = folder.listFiles();
+    if(files != null) {
+      for(File file : files) {
+        if(snapshotVersion(file) > snapshotVersion(latest)) latest = file;
+      }
+    }
+
+    final File legacy = new File(folder, "snapshot.dat");
+    return (latest == null && legacy.isFile())? legacy : latest;
+  }
+
+  /**
+   * @return The version of a numbered snapshot file, or zero for anything else.
+   */
+  private static int snapshotVersion(File file) {
+    if(file == null) return 0;
+
+    final String name = file.getName();
+    if(!name.startsWith("snapshot-") || !name.endsWith(".dat")) return 0;
+    try {
+      return Integer.parseInt(name.substring(9, name.length() - 4));
+    } catch(NumberFormatException ignore) {
+      return 0;
+    }
+  }
+
+  /**
+   * Deletes every snapshot older than the specified version. One still mapped, by the loader or an
+   * export, can't be deleted on Windows, so it's left for the next snapshot to delete.
+   */
+  private void deleteSnapshotsBefore(int version) {
+    final File[] files = folder.listFiles();
+    if(files == null) return;
+
+    for(File file : files) {
+      final int existing = snapshotVersion(file);
+      if((existing > 0 && existing < version) || file.getName().equals("snapshot.dat")) {
+        if(!file.delete()) logger.fine("Unable to delete the old snapshot " + file.getName() + " yet.");
+      }
+    }
+  }
+
+  /**
+   * @return The journal, or null if journaling is disabled or it couldn't be opened.
+   */
+  public GhostJournal getJournal() {
+    return journal;
+  }
+}
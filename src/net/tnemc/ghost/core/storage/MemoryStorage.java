@@ -0,0 +1,145 @@
+package net.tnemc.ghost.core.storage;
+
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostAccountStore;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Keeps the stored balances in memory only, so they're gone once the server stops. Useful for
+ * benchmarks and test servers, or when another plugin copies the balances elsewhere.
+ *
+ * The accounts are kept current by every batch written, so a snapshot has nothing to do, and
+ * opening a store again within the same process loads them back.
+ */
+public class MemoryStorage implements StorageBackend {
+
+  //Guarded by this storage's monitor.
+  private final Map<Object, Stored> accounts = new LinkedHashMap<>();
+  private final Map<UUID, String> players = new HashMap<>();
+
+  //The keys the stored key ids belong to.
+  private HoldingsKeys keys;
+
+  @Override
+  public synchronized StorageLoader open(GhostAccountStore store) {
+    final HoldingsKeys target = store.getKeys();
+    if(keys != null && keys != target) {
+      for(Stored stored : accounts.values()) {
+        final Map<Integer, BigDecimal> balances = new HashMap<>();
+        for(Map.Entry<Integer, BigDecimal> balance : stored.balances.entrySet()) {
+          balances.put(target.id(keys.world(balance.getKey()), keys.currency(balance.getKey())), balance.getValue());
+        }
+        stored.balances = balances;
+      }
+    }
+    keys = target;
+
+    for(Map.Entry<UUID, String> player : players.entrySet()) {
+      store.link(player.getKey(), player.getValue());
+    }
+    for(Stored stored : accounts.values()) {
+      final GhostAccount account;
+      if(stored.id != null) {
+        store.createAccount(stored.id);
+        account = store.getAccount(stored.id);
+      } else {
+        store.createStringAccount(stored.name);
+        account = store.getStringAccount(stored.name);
+        if(stored.legacy) store.markLegacy(stored.name);
+      }
+
+      for(Map.Entry<Integer, BigDecimal> balance : stored.balances.entrySet()) {
+        store.setHoldings(account, keys.world(balance.getKey()), keys.currency(balance.getKey()), balance.getValue());
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public synchronized void write(List<StorageChange> changes) {
+    for(StorageChange change : changes) {
+      switch(change.getType()) {
+        case CREATE:
+          accounts.computeIfAbsent(change.getAccount(), (ignore)->new Stored(change.getId(), change.getName()));
+          break;
+        case DELETE:
+          accounts.remove(change.getAccount());
+          break;
+        case IDENTIFY:
+          players.put(change.getId(), change.getName());
+          break;
+        case LEGACY:
+          final Stored marked = accounts.get(change.getName());
+          if(marked != null) marked.legacy = true;
+          break;
+        default:
+          final Stored stored = accounts.computeIfAbsent(change.getAccount(), (ignore)->new Stored(change.getId(), change.getName()));
+          final BigDecimal value = change.getValue(keys);
+          if(value == null) stored.balances.remove(change.getKey()); else stored.balances.put(change.getKey(), value);
+      }
+    }
+  }
+
+  @Override
+  public void forEach(HoldingsKeys target, Consumer<GhostAccount> consumer) {
+    final List<GhostAccount> copies = new ArrayList<>();
+    synchronized(this) {
+      for(Stored stored : accounts.values()) {
+        final GhostAccount account = (stored.id != null)? new GhostAccount(stored.id, target) : new GhostAccount(stored.name, target);
+        for(Map.Entry<Integer, BigDecimal> balance : stored.balances.entrySet()) {
+          account.setHoldings(target.id(keys.world(balance.getKey()), keys.currency(balance.getKey())), balance.getValue());
+        }
+        copies.add(account);
+      }
+    }
+    copies.forEach(consumer);
+  }
+
+  @Override
+  public synchronized int snapshot(GhostAccountStore store) {
+    return accounts.size();
+  }
+
+  @Override
+  public void close() {
+  }
+
+  private static class Stored {
+
+    private final UUID id;
+    private final String name;
+    private Map<Integer, BigDecimal> balances = new HashMap<>();
+    private boolean legacy;
+
+    Stored(UUID id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+}
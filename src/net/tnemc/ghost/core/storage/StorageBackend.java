@@ -0,0 +1,97 @@
+package net.tnemc.ghost.core.storage;
+
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.GhostAccountStore;
+import net.tnemc.ghost.core.account.GhostHoldings;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Where balances are kept between restarts. Changes reach a backend in batches from a
+ * {@link WriteBehind}, never from the thread that made them, so a backend may block on I/O.
+ *
+ * Ghost ships a {@link FileStorage}, a snapshot and journal in the data folder, and a
+ * {@link MemoryStorage} that keeps nothing once the server stops.
+ */
+public interface StorageBackend {
+
+  /**
+   * Loads the stored accounts into a store. Called once, before anything records the store's
+   * changes, so the accounts loaded here aren't written back.
+   * @param store The store.
+   * @return A loader serving the accounts not loaded yet, which has already been set as the store's
+   * loader and is loaded in the background, or null if every account has been loaded.
+   * @throws IOException If the stored accounts can't be read.
+   */
+  StorageLoader open(GhostAccountStore store) throws IOException;
+
+  /**
+   * Writes a batch of changes, in order. A batch is written entirely or, if the server stops part
+   * way through, not at all, so both sides of a transfer are always in the same batch. Returns once
+   * the batch has been written, so a failed write can be retried.
+   * @param changes The changes.
+   * @throws IOException If the changes can't be written.
+   */
+  void write(List<StorageChange> changes) throws IOException;
+
+  /**
+   * Writes an account and every balance it has.
+   * @param account The account, whose lock must be held.
+   * @param keys The keys of the store the account is in.
+   * @throws IOException If the account can't be written.
+   */
+  default void save(GhostAccount account, HoldingsKeys keys) throws IOException {
+    final GhostHoldings holdings = account.getHoldingsContainer();
+    final List<StorageChange> changes = new ArrayList<>();
+    changes.add(StorageChange.create(account));
+    for(int key = 0; key < Math.min(keys.size(), holdings.capacity()); key++) {
+      if((keys.isFixedPoint(key))? holdings.getMinor(key) != 0L : holdings.get(key) != null) {
+        changes.add(StorageChange.balance(account, key, keys));
+      }
+    }
+    write(changes);
+  }
+
+  /**
+   * Streams every stored account, one at a time, without loading them into a store. The accounts
+   * include at least every change up to the last {@link #snapshot}.
+   * @param keys The keys to decode balances with.
+   * @param consumer Given each account in turn. The accounts aren't registered with any store.
+   * @throws IOException If the stored accounts can't be read.
+   */
+  void forEach(HoldingsKeys keys, Consumer<GhostAccount> consumer) throws IOException;
+
+  /**
+   * Replaces what's stored with every account in a store, so older changes can be discarded.
+   * @param store The store, every account of which must already be loaded.
+   * @return The number of accounts written.
+   * @throws IOException If the snapshot can't be written.
+   */
+  int snapshot(GhostAccountStore store) throws IOException;
+
+  /**
+   * Flushes and releases anything the backend holds open.
+   */
+  void close();
+}
@@ -0,0 +1,155 @@
+package net.tnemc.ghost.core.storage;
+
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A single change to be written to a {@link StorageBackend}. Balances are recorded as the resulting
+ * value rather than the delta, so writing the same change twice is harmless and only the latest
+ * change of a balance needs to be written.
+ */
+public final class StorageChange {
+
+  public enum Type {
+    CREATE,
+    DELETE,
+    IDENTIFY,
+    LEGACY,
+    BALANCE
+  }
+
+  private final Type type;
+  private final UUID id;
+  private final String name;
+  private final int key;
+  private final long minor;
+  private final BigDecimal decimal;
+
+  private StorageChange(Type type, UUID id, String name, int key, long minor, BigDecimal decimal) {
+    this.type = type;
+    this.id = id;
+    this.name = name;
+    this.key = key;
+    this.minor = minor;
+    this.decimal = decimal;
+  }
+
+  private StorageChange(Type type, GhostAccount account, int key, long minor, BigDecimal decimal) {
+    this(type, account.getId(), (account.getId() == null)? account.getName() : null, key, minor, decimal);
+  }
+
+  public static StorageChange create(GhostAccount account) {
+    return new StorageChange(Type.CREATE, account, -1, 0L, null);
+  }
+
+  public static StorageChange delete(GhostAccount account) {
+    return new StorageChange(Type.DELETE, account, -1, 0L, null);
+  }
+
+  public static StorageChange identify(UUID id, String name) {
+    return new StorageChange(Type.IDENTIFY, id, name, -1, 0L, null);
+  }
+
+  /**
+   * Records that a string account was marked as a legacy player account.
+   * @param identifier The identifier of the string account.
+   * @return The change.
+   */
+  public static StorageChange legacy(String identifier) {
+    return new StorageChange(Type.LEGACY, null, identifier, -1, 0L, null);
+  }
+
+  /**
+   * Records the current value of one of an account's balances. Must be called while holding the
+   * account's lock, such as from an {@link net.tnemc.ghost.core.account.AccountListener}.
+   * @param account The account.
+   * @param key The holdings key id of the balance.
+   * @param keys The keys of the store the account is in.
+   * @return The change.
+   */
+  public static StorageChange balance(GhostAccount account, int key, HoldingsKeys keys) {
+    if(keys.isFixedPoint(key)) {
+      return new StorageChange(Type.BALANCE, account, key, account.getHoldingsContainer().getMinor(key), null);
+    }
+    return new StorageChange(Type.BALANCE, account, key, 0L, account.getHoldings(key));
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * @return The UUID of the account, or null if it's a string account.
+   */
+  public UUID getId() {
+    return id;
+  }
+
+  /**
+   * @return The identifier of a string account, the new name of a player for
+   * {@link Type#IDENTIFY}, or null.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return The UUID or identifier this change is keyed by.
+   */
+  public Object getAccount() {
+    return (id != null)? id : name;
+  }
+
+  /**
+   * @return The holdings key id of a {@link Type#BALANCE} change, or -1.
+   */
+  public int getKey() {
+    return key;
+  }
+
+  /**
+   * @return True if the balance is in minor units, see {@link #getMinor()}.
+   */
+  public boolean isMinor() {
+    return type == Type.BALANCE && decimal == null;
+  }
+
+  public long getMinor() {
+    return minor;
+  }
+
+  /**
+   * @return The balance if it isn't in minor units, which may be null if it was never set.
+   */
+  public BigDecimal getDecimal() {
+    return decimal;
+  }
+
+  /**
+   * @param keys The keys of the store the change was recorded in.
+   * @return The balance as a decimal, or null if it was never set.
+   */
+  public BigDecimal getValue(HoldingsKeys keys) {
+    return (isMinor())? keys.toDecimal(key, minor) : decimal;
+  }
+}
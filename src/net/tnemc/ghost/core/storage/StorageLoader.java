@@ -0,0 +1,45 @@
+package net.tnemc.ghost.core.storage;
+
+import net.tnemc.ghost.core.account.AccountLoader;
+import net.tnemc.ghost.core.account.GhostAccountStore;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Serves the accounts of a {@link StorageBackend} on demand while they're loaded in the background.
+ */
+public interface StorageLoader extends AccountLoader {
+
+  /**
+   * @return The number of accounts stored.
+   */
+  int size();
+
+  /**
+   * Verifies the stored balances, such as against a checksum.
+   * @return False if they're known to be corrupt.
+   */
+  boolean verifyBalances();
+
+  /**
+   * Loads every account that hasn't been loaded on demand yet into the store.
+   * @param store The store.
+   * @return The number of accounts loaded.
+   */
+  int loadAll(GhostAccountStore store);
+}
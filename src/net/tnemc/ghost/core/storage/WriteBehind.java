@@ -0,0 +1,395 @@
+package net.tnemc.ghost.core.storage;
+
+import net.tnemc.ghost.core.account.AccountListener;
+import net.tnemc.ghost.core.account.GhostAccount;
+import net.tnemc.ghost.core.account.HoldingsKeys;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * Ghost Server Plugin
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Records the changes of a store and writes them to a {@link StorageBackend} in batches from a
+ * background thread, so an economy call never waits for the disk.
+ *
+ * Only the latest value of each balance, per account, world and currency, is kept until the next
+ * batch, so a balance changed many times between batches is written once. A replaced balance moves
+ * to the end of the batch, which keeps it after any create or delete of its account recorded before
+ * it. Batches are written every interval, or as soon as a batch reaches about the flush size,
+ * whichever comes first.
+ *
+ * Pending changes are split into shards by account, each with its own lock, so threads changing
+ * different accounts rarely wait on each other. Every change of an account is in the same shard,
+ * which keeps them in order.
+ *
+ * Every value written is a balance as it was at some point, and both sides of a transfer are always
+ * in the same batch, so a backend that writes each batch atomically, such as the journal, never
+ * holds a state the store wasn't in. A crash only loses the changes not written yet.
+ */
+public class WriteBehind implements AccountListener {
+
+  private final StorageBackend backend;
+  private final HoldingsKeys keys;
+  private final long interval;
+  private final Logger logger;
+
+  private final Shard[] shards;
+  private final int mask;
+
+  //The size a single shard reaches, on average, when the whole batch reaches the flush size.
+  private final int shardFlushSize;
+
+  //Held while writing a batch, so batches reach the backend in order.
+  private final Object flushLock = new Object();
+
+  //Set while an early flush for a batch that reached the flush size is queued.
+  private final AtomicBoolean flushQueued = new AtomicBoolean();
+
+  private final LongAdder recorded = new LongAdder();
+
+  //Only written while holding the flush lock.
+  private volatile long written = 0L;
+  private volatile long batches = 0L;
+
+  private volatile ScheduledExecutorService scheduler;
+
+  /**
+   * @param backend The backend to write to.
+   * @param keys The keys of the store whose changes are recorded.
+   * @param interval How often to write a batch, in milliseconds.
+   * @param flushSize The number of pending changes that has a batch written straight away.
+   * @param logger The logger to report failed writes to.
+   */
+  public WriteBehind(StorageBackend backend, HoldingsKeys keys, long interval, int flushSize, Logger logger) {
+    this.backend = backend;
+    this.keys = keys;
+    this.interval = Math.max(1L, interval);
+    this.logger = logger;
+
+    int size = 1;
+    while(size < Math.min(64, Runtime.getRuntime().availableProcessors() * 4)) {
+      size <<= 1;
+    }
+
+    shards = new Shard[size];
+    for(int i = 0; i < size; i++) {
+      shards[i] = new Shard();
+    }
+    mask = size - 1;
+    shardFlushSize = Math.max(1, flushSize / size);
+  }
+
+  /**
+   * Starts writing batches in the background.
+   */
+  public void start() {
+    scheduler = Executors.newSingleThreadScheduledExecutor(runnable->{
+      final Thread thread = new Thread(runnable, "Ghost-Write-Behind");
+      thread.setDaemon(true);
+      return thread;
+    });
+    scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Writes everything recorded so far as one batch. If the backend fails, the batch is kept and
+   * written again with the next one.
+   * @return The number of changes written.
+   */
+  public int flush() {
+    synchronized(flushLock) {
+      flushQueued.set(false);
+
+      //Taken from every shard while holding all of their locks, so a transfer between accounts in
+      //different shards is entirely in this batch or entirely in the next.
+      final List<LinkedHashMap<Object, StorageChange>> batch = new ArrayList<>(shards.length);
+      int size = 0;
+      lockAll();
+      try {
+        for(Shard shard : shards) {
+          if(shard.pending.isEmpty()) {
+            batch.add(null);
+            continue;
+          }
+          batch.add(shard.pending);
+          size += shard.pending.size();
+          shard.pending = new LinkedHashMap<>();
+        }
+      } finally {
+        unlockAll();
+      }
+      if(size == 0) return 0;
+
+      final List<StorageChange> changes = new ArrayList<>(size);
+      for(LinkedHashMap<Object, StorageChange> taken : batch) {
+        if(taken != null) changes.addAll(taken.values());
+      }
+
+      try {
+        backend.write(changes);
+        written += size;
+        batches++;
+        return size;
+      } catch(IOException | RuntimeException e) {
+        logger.log(Level.SEVERE, "Unable to write " + size + " balance changes, they'll be retried.", e);
+        restore(batch);
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Stops the background thread and writes everything still recorded.
+   */
+  public void close() {
+    if(scheduler != null) {
+      scheduler.shutdown();
+      try {
+        scheduler.awaitTermination(30, TimeUnit.SECONDS);
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flush();
+  }
+
+  /**
+   * @return The number of changes waiting for the next batch.
+   */
+  public int pending() {
+    int size = 0;
+    for(Shard shard : shards) {
+      shard.lock.lock();
+      try {
+        size += shard.pending.size();
+      } finally {
+        shard.lock.unlock();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return The number of changes recorded since this was created, before coalescing.
+   */
+  public long getRecorded() {
+    return recorded.sum();
+  }
+
+  /**
+   * @return The number of changes written to the backend.
+   */
+  public long getWritten() {
+    return written;
+  }
+
+  /**
+   * @return The number of batches written to the backend.
+   */
+  public long getBatches() {
+    return batches;
+  }
+
+  @Override
+  public void accountCreated(GhostAccount account) {
+    record(StorageChange.create(account));
+  }
+
+  @Override
+  public void accountDeleted(GhostAccount account) {
+    record(StorageChange.delete(account));
+  }
+
+  @Override
+  public void accountIdentified(UUID id, String name) {
+    record(StorageChange.identify(id, name));
+  }
+
+  @Override
+  public void accountMarked(String identifier) {
+    record(StorageChange.legacy(identifier));
+  }
+
+  @Override
+  public void holdingsChanged(GhostAccount account, int key) {
+    final StorageChange change = StorageChange.balance(account, key, keys);
+    final Shard shard = shards[shard(change.getAccount())];
+    final int size;
+    shard.lock.lock();
+    try {
+      size = shard.replace(change);
+    } finally {
+      shard.lock.unlock();
+    }
+    recorded(1, size);
+  }
+
+  @Override
+  public void holdingsTransferred(GhostAccount from, GhostAccount to, int key) {
+    final StorageChange withdrawn = StorageChange.balance(from, key, keys);
+    final StorageChange deposited = StorageChange.balance(to, key, keys);
+
+    //Recorded under both shards' locks, taken in order, so both sides are always in the same batch.
+    final int first = shard(withdrawn.getAccount());
+    final int second = shard(deposited.getAccount());
+    final Shard lower = shards[Math.min(first, second)];
+    final Shard upper = shards[Math.max(first, second)];
+    final int size;
+    lower.lock.lock();
+    upper.lock.lock();
+    try {
+      final int withdrawnSize = shards[first].replace(withdrawn);
+      size = Math.max(withdrawnSize, shards[second].replace(deposited));
+    } finally {
+      upper.lock.unlock();
+      lower.lock.unlock();
+    }
+    recorded(2, size);
+  }
+
+  private void record(StorageChange change) {
+    final Shard shard = shards[shard(change.getAccount())];
+    final int size;
+    shard.lock.lock();
+    try {
+      shard.pending.put(change, change);
+      size = shard.pending.size();
+    } finally {
+      shard.lock.unlock();
+    }
+    recorded(1, size);
+  }
+
+  private int shard(Object account) {
+    final int hash = account.hashCode();
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  private void lockAll() {
+    for(Shard shard : shards) {
+      shard.lock.lock();
+    }
+  }
+
+  private void unlockAll() {
+    for(int i = shards.length - 1; i >= 0; i--) {
+      shards[i].lock.unlock();
+    }
+  }
+
+  /**
+   * @param changes The number of changes just recorded.
+   * @param size The number of changes pending in the shard they were recorded in.
+   */
+  private void recorded(int changes, int size) {
+    recorded.add(changes);
+    if(size < shardFlushSize || scheduler == null || !flushQueued.compareAndSet(false, true)) return;
+
+    try {
+      scheduler.execute(this::flush);
+    } catch(RejectedExecutionException e) {
+      //Closing, which writes everything left.
+      flushQueued.set(false);
+    }
+  }
+
+  /**
+   * Puts a batch that couldn't be written back in front of what was recorded since, shard by shard,
+   * keeping the newer value of any balance in both.
+   */
+  private void restore(List<LinkedHashMap<Object, StorageChange>> batch) {
+    for(int i = 0; i < shards.length; i++) {
+      final LinkedHashMap<Object, StorageChange> failed = batch.get(i);
+      if(failed == null) continue;
+
+      final Shard shard = shards[i];
+      shard.lock.lock();
+      try {
+        for(Map.Entry<Object, StorageChange> change : shard.pending.entrySet()) {
+          failed.remove(change.getKey());
+          failed.put(change.getKey(), change.getValue());
+        }
+        shard.pending = failed;
+      } finally {
+        shard.lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * The changes of the accounts that hash to one shard.
+   */
+  private static final class Shard {
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    //Guarded by the lock. Balances are keyed by their Slot, everything else by the change itself.
+    private LinkedHashMap<Object, StorageChange> pending = new LinkedHashMap<>();
+
+    /**
+     * @return The number of pending changes.
+     */
+    int replace(StorageChange change) {
+      final Slot slot = new Slot(change.getAccount(), change.getKey());
+      pending.remove(slot);
+      pending.put(slot, change);
+      return pending.size();
+    }
+  }
+
+  /**
+   * A single balance of an account.
+   */
+  private static final class Slot {
+
+    private final Object account;
+    private final int key;
+
+    Slot(Object account, int key) {
+      this.account = account;
+      this.key = key;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if(!(other instanceof Slot)) return false;
+
+      final Slot slot = (Slot)other;
+      return key == slot.key && account.equals(slot.account);
+    }
+
+    @Override
+    public int hashCode() {
+      return account.hashCode() * 31 + key;
+    }
+  }
+}